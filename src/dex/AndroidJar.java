@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/*
+ * Reads the classes of android.jar (see the class file format in the JVM specification, chapter 4), keeping only
+ * what ClassInfo needs. Reading takes a few seconds, so the classes are kept for all APKs.
+ */
+class AndroidJar {
+	
+	private static final int CLASS_MAGIC = 0xCAFEBABE;
+	
+	// constant pool tags
+	private static final int UTF8 = 1;
+	
+	private static final int LONG = 5;
+	
+	private static final int DOUBLE = 6;
+	
+	private static final int CLASS = 7;
+	
+	private static final int STRING = 8;
+	
+	private static final int METHOD_HANDLE = 15;
+	
+	private static final int METHOD_TYPE = 16;
+	
+	private static final int MODULE = 19;
+	
+	private static final int PACKAGE = 20;
+	
+	private static final Map<Path, Map<String, ClassInfo>> CLASSES_BY_JAR = new HashMap<Path, Map<String, ClassInfo>>();
+	
+	// classes by descriptor like "Landroid/app/Activity;"
+	static synchronized Map<String, ClassInfo> getClasses(Path jar) {
+		Map<String, ClassInfo> classes = CLASSES_BY_JAR.get(jar);
+		if (classes == null) {
+			classes = readClasses(jar);
+			CLASSES_BY_JAR.put(jar, classes);
+		}
+		return classes;
+	}
+	
+	private static Map<String, ClassInfo> readClasses(Path jar) {
+		Map<String, ClassInfo> classes = new HashMap<String, ClassInfo>();
+		try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(jar))) {
+			ZipEntry entry = zip.getNextEntry();
+			while (entry != null) {
+				if (entry.getName().endsWith(".class")) {
+					ClassInfo classInfo = readClass(new DataInputStream(zip));
+					classes.put(classInfo.getDescriptor(), classInfo);
+				}
+				entry = zip.getNextEntry();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading classes of " + jar, e);
+		}
+		return classes;
+	}
+	
+	private static ClassInfo readClass(DataInputStream in) throws IOException {
+		if (in.readInt() != CLASS_MAGIC) {
+			throw new IOException("no class file, magic is missing");
+		}
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+		int constantCount = in.readUnsignedShort();
+		String[] utf8s = new String[constantCount];
+		int[] classNameIndices = new int[constantCount];
+		for (int constantIdx = 1; constantIdx < constantCount; constantIdx++) {
+			int tag = in.readUnsignedByte();
+			if (tag == UTF8) {
+				utf8s[constantIdx] = in.readUTF(); // the same modified UTF-8 as in DataInput
+			} else if (tag == CLASS) {
+				classNameIndices[constantIdx] = in.readUnsignedShort();
+			} else if (tag == LONG || tag == DOUBLE) {
+				in.readLong();
+				constantIdx++; // takes two entries
+			} else if (tag == METHOD_HANDLE) {
+				in.readUnsignedByte();
+				in.readUnsignedShort();
+			} else if (tag == STRING || tag == METHOD_TYPE || tag == MODULE || tag == PACKAGE) {
+				in.readUnsignedShort();
+			} else {
+				in.readInt(); // integer, float, refs, name and type, (invoke) dynamic
+			}
+		}
+		in.readUnsignedShort(); // access flags
+		String descriptor = toDescriptor(utf8s[classNameIndices[in.readUnsignedShort()]]);
+		int superclassIdx = in.readUnsignedShort();
+		ClassInfo classInfo = new ClassInfo(descriptor, superclassIdx == 0 ? null : toDescriptor(utf8s[classNameIndices[superclassIdx]]));
+		int interfaceCount = in.readUnsignedShort();
+		for (int interfaceIdx = 0; interfaceIdx < interfaceCount; interfaceIdx++) {
+			classInfo.addInterface(toDescriptor(utf8s[classNameIndices[in.readUnsignedShort()]]));
+		}
+		int fieldCount = in.readUnsignedShort();
+		for (int fieldIdx = 0; fieldIdx < fieldCount; fieldIdx++) {
+			in.readUnsignedShort(); // access flags
+			String name = utf8s[in.readUnsignedShort()];
+			classInfo.addField(name + ":" + utf8s[in.readUnsignedShort()]);
+			skipAttributes(in);
+		}
+		int methodCount = in.readUnsignedShort();
+		for (int methodIdx = 0; methodIdx < methodCount; methodIdx++) {
+			in.readUnsignedShort(); // access flags
+			String name = utf8s[in.readUnsignedShort()];
+			classInfo.addMethod(name + utf8s[in.readUnsignedShort()]);
+			skipAttributes(in);
+		}
+		return classInfo;
+	}
+	
+	private static void skipAttributes(DataInputStream in) throws IOException {
+		int attributeCount = in.readUnsignedShort();
+		for (int attributeIdx = 0; attributeIdx < attributeCount; attributeIdx++) {
+			in.readUnsignedShort(); // name
+			int length = in.readInt();
+			in.readFully(new byte[length]);
+		}
+	}
+	
+	// "java/lang/Object" to "Ljava/lang/Object;", like in dex files
+	private static String toDescriptor(String className) {
+		if (className.startsWith("[")) {
+			return className;
+		}
+		return "L" + className + ";";
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// the declared members of a class from a dex file or android.jar, for resolving field and method references
+class ClassInfo {
+	
+	private final String descriptor;
+	
+	// null for java.lang.Object
+	private final String superclass;
+	
+	private final List<String> interfaces = new ArrayList<String>();
+	
+	// like "bar(ILjava/lang/String;)V"
+	private final Set<String> methods = new HashSet<String>();
+	
+	// like "count:I"
+	private final Set<String> fields = new HashSet<String>();
+	
+	ClassInfo(String descriptor, String superclass) {
+		this.descriptor = descriptor;
+		this.superclass = superclass;
+	}
+	
+	void addInterface(String interfaceDescriptor) {
+		interfaces.add(interfaceDescriptor);
+	}
+	
+	void addMethod(String method) {
+		methods.add(method);
+	}
+	
+	void addField(String field) {
+		fields.add(field);
+	}
+	
+	String getDescriptor() {
+		return descriptor;
+	}
+	
+	String getSuperclass() {
+		return superclass;
+	}
+	
+	List<String> getInterfaces() {
+		return interfaces;
+	}
+	
+	Set<String> getMethods() {
+		return methods;
+	}
+	
+	Set<String> getFields() {
+		return fields;
+	}
+}
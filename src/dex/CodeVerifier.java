@@ -0,0 +1,713 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import static dex.Instructions.FILL_ARRAY_DATA_PAYLOAD;
+import static dex.Instructions.PACKED_SWITCH_PAYLOAD;
+import static dex.Instructions.SPARSE_SWITCH_PAYLOAD;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Verifies the code of one method roughly like the VM does before running it: the structure (instruction
+ * boundaries, branch targets, switch and array payloads, try blocks) and the flow of register categories
+ * (undefined, primitive, reference, wide pairs) along all paths. It does not distinguish int and float, or
+ * the classes of references, so it finds less than the VM's verifier, but what it finds makes the VM reject the method.
+ */
+class CodeVerifier {
+	
+	// at most that many failures per method, the later ones are usually caused by the first
+	private static final int MAX_FAILURES = 5;
+	
+	// register categories
+	private static final byte UNDEFINED = 0;
+	
+	// the constant 0, which can be used as primitive or as null
+	private static final byte ZERO = 1;
+	
+	private static final byte PRIMITIVE = 2;
+	
+	private static final byte REFERENCE = 3;
+	
+	private static final byte WIDE_LOW = 4;
+	
+	private static final byte WIDE_HIGH = 5;
+	
+	// different categories on different paths
+	private static final byte CONFLICT = 6;
+	
+	// what an operand expects, besides the categories above (as written category: wide, taking two registers)
+	private static final byte ANY_NARROW = 7;
+	
+	private static final byte WIDE = 8;
+	
+	// opcodes which might throw, so their registers flow into the handlers of their try blocks
+	private static final boolean[] THROWS = new boolean[256];
+	
+	static {
+		setThrows(0x1a, 0x26); // const-string, const-class, monitors, casts, allocations, fill-array-data
+		setThrows(0x27, 0x27); // throw
+		setThrows(0x44, 0x78); // array and field accesses, invocations
+		setThrows(0x93, 0x94); // div-int, rem-int
+		setThrows(0x9e, 0x9f); // div-long, rem-long
+		setThrows(0xb3, 0xb4);
+		setThrows(0xbe, 0xbf);
+		setThrows(0xd3, 0xd4); // div-int/lit16, rem-int/lit16
+		setThrows(0xdb, 0xdc); // div-int/lit8, rem-int/lit8
+		setThrows(0xfa, 0xff);
+	}
+	
+	private final MethodCode code;
+	
+	private final int[] units;
+	
+	private final Set<String> failures = new LinkedHashSet<String>();
+	
+	// whether an instruction (not a payload) starts at the address
+	private final boolean[] instructionStarts;
+	
+	// the payload type starting at the address, 0 for none
+	private final int[] payloadStarts;
+	
+	// register categories before each instruction, null if not reached (yet)
+	private final byte[][] states;
+	
+	// whether the address is in the worklist
+	private final boolean[] queued;
+	
+	private CodeVerifier(MethodCode code) {
+		this.code = code;
+		this.units = code.getCodeUnits();
+		this.instructionStarts = new boolean[units.length + 1];
+		this.payloadStarts = new int[units.length + 1];
+		this.states = new byte[units.length][];
+		this.queued = new boolean[units.length];
+	}
+	
+	private static void setThrows(int firstOpcode, int lastOpcode) {
+		for (int opcode = firstOpcode; opcode <= lastOpcode; opcode++) {
+			THROWS[opcode] = true;
+		}
+	}
+	
+	// the failures, like "register v3 is undefined at 0x000c", empty if the code is fine
+	static List<String> verify(MethodCode code) {
+		CodeVerifier verifier = new CodeVerifier(code);
+		verifier.verify();
+		return new ArrayList<String>(verifier.failures);
+	}
+	
+	private void verify() {
+		if (!findInstructions()) {
+			return;
+		}
+		for (int address = 0; address < units.length; address++) {
+			if (instructionStarts[address]) {
+				checkTargets(address);
+			}
+		}
+		checkTryBlocks();
+		if (failures.isEmpty()) {
+			flowRegisters();
+		}
+	}
+	
+	private void fail(int address, String message) {
+		if (failures.size() < MAX_FAILURES) {
+			failures.add(String.format("%s at 0x%04x", message, address));
+		}
+	}
+	
+	private boolean findInstructions() {
+		int address = 0;
+		while (address < units.length) {
+			int width = getPayloadWidth(address);
+			if (width > 0) {
+				payloadStarts[address] = units[address];
+			} else {
+				width = Instructions.getWidth(units[address] & 0xFF);
+				if (width == 0) {
+					fail(address, String.format("invalid opcode 0x%02x", units[address] & 0xFF));
+					return false;
+				}
+				instructionStarts[address] = true;
+			}
+			if (address + width > units.length) {
+				fail(address, "instruction runs past the end of the code");
+				return false;
+			}
+			address += width;
+		}
+		if (units.length == 0) {
+			fail(0, "code is empty");
+			return false;
+		}
+		return true;
+	}
+	
+	private int getPayloadWidth(int address) {
+		if (address + 1 >= units.length) {
+			return 0;
+		}
+		int size = units[address + 1];
+		if (units[address] == PACKED_SWITCH_PAYLOAD) {
+			return size * 2 + 4;
+		} else if (units[address] == SPARSE_SWITCH_PAYLOAD) {
+			return size * 4 + 2;
+		} else if (units[address] == FILL_ARRAY_DATA_PAYLOAD && address + 3 < units.length) {
+			long elements = (units[address + 2] | ((long) units[address + 3] << 16));
+			return (int) Math.min((elements * size + 1) / 2 + 4, Integer.MAX_VALUE);
+		}
+		return 0;
+	}
+	
+	private void checkTargets(int address) {
+		int opcode = units[address] & 0xFF;
+		if (opcode == 0x0a || opcode == 0x0b || opcode == 0x0c) {
+			checkMoveResult(address, opcode);
+		} else if (opcode == 0x26 || opcode == 0x2b || opcode == 0x2c) {
+			int payloadAddress = address + getInt(address + 1);
+			int expectedPayload = opcode == 0x26 ? FILL_ARRAY_DATA_PAYLOAD : opcode == 0x2b ? PACKED_SWITCH_PAYLOAD : SPARSE_SWITCH_PAYLOAD;
+			if (payloadAddress < 0 || payloadAddress >= units.length || payloadStarts[payloadAddress] != expectedPayload) {
+				fail(address, String.format("payload offset does not point to a payload of type 0x%04x", expectedPayload));
+			} else if (payloadAddress % 2 != 0) {
+				fail(address, "payload is not 4-byte aligned");
+			} else if (opcode != 0x26) {
+				checkSwitchTargets(address, payloadAddress);
+			}
+		} else {
+			for (int target : getBranchTargets(address)) {
+				checkTarget(address, target);
+			}
+		}
+	}
+	
+	private void checkTarget(int address, int target) {
+		if (target < 0 || target >= units.length || !instructionStarts[target]) {
+			fail(address, String.format("branch target 0x%04x is no instruction", target));
+		}
+	}
+	
+	private void checkSwitchTargets(int address, int payloadAddress) {
+		int size = units[payloadAddress + 1];
+		if (units[payloadAddress] == SPARSE_SWITCH_PAYLOAD) {
+			for (int keyIdx = 1; keyIdx < size; keyIdx++) {
+				if (getInt(payloadAddress + 2 + keyIdx * 2) <= getInt(payloadAddress + 2 + (keyIdx - 1) * 2)) {
+					fail(address, "keys of sparse switch are not sorted ascending");
+					break;
+				}
+			}
+		}
+		for (int target : getSwitchTargets(address, payloadAddress)) {
+			checkTarget(address, target);
+		}
+	}
+	
+	private int[] getSwitchTargets(int address, int payloadAddress) {
+		int size = units[payloadAddress + 1];
+		// packed: type, size and first key (2 units), then the targets; sparse: type, size, the keys, then the targets
+		int targetsStart = payloadAddress + (units[payloadAddress] == PACKED_SWITCH_PAYLOAD ? 4 : 2 + size * 2);
+		int[] targets = new int[size];
+		for (int targetIdx = 0; targetIdx < size; targetIdx++) {
+			targets[targetIdx] = address + getInt(targetsStart + targetIdx * 2);
+		}
+		return targets;
+	}
+	
+	// targets of goto and if-*, empty for other instructions
+	private int[] getBranchTargets(int address) {
+		int opcode = units[address] & 0xFF;
+		if (opcode == 0x28) {
+			return new int[] { address + (byte) (units[address] >> 8) };
+		} else if (opcode == 0x29 || (opcode >= 0x32 && opcode <= 0x3d)) {
+			return new int[] { address + (short) units[address + 1] };
+		} else if (opcode == 0x2a) {
+			return new int[] { address + getInt(address + 1) };
+		}
+		return new int[0];
+	}
+	
+	private void checkMoveResult(int address, int opcode) {
+		int previous = address - 1;
+		while (previous >= 0 && !instructionStarts[previous]) {
+			previous--;
+		}
+		int previousOpcode = previous < 0 ? -1 : units[previous] & 0xFF;
+		if (previousOpcode == 0x24 || previousOpcode == 0x25) {
+			if (opcode != 0x0c) {
+				fail(address, "result of filled-new-array is moved as primitive");
+			}
+		} else if (isInvoke(previousOpcode)) {
+			String method = code.getRef(previous);
+			if (method != null && !isPolymorphicOrCustom(previousOpcode)) {
+				char returnType = method.charAt(method.indexOf(')') + 1);
+				if (returnType == 'V') {
+					fail(address, "result of a void method is moved");
+				} else if (getCategory(returnType) != (opcode == 0x0a ? PRIMITIVE : opcode == 0x0b ? WIDE : REFERENCE)) {
+					fail(address, "result is moved with the wrong category");
+				}
+			}
+		} else {
+			fail(address, "move-result does not follow an invocation");
+		}
+	}
+	
+	private void checkTryBlocks() {
+		for (MethodCode.TryBlock tryBlock : code.getTryBlocks()) {
+			int start = tryBlock.getStartAddress();
+			int end = tryBlock.getEndAddress();
+			if (start < 0 || start >= end || end > units.length || !instructionStarts[start]
+					|| (end < units.length && !instructionStarts[end] && payloadStarts[end] == 0)) {
+				fail(start, String.format("try block up to 0x%04x does not cover whole instructions", end));
+				continue;
+			}
+			for (int handlerAddress : tryBlock.getHandlerAddresses()) {
+				if (handlerAddress < 0 || handlerAddress >= units.length || !instructionStarts[handlerAddress]) {
+					fail(start, String.format("handler 0x%04x of try block is no instruction", handlerAddress));
+				}
+			}
+		}
+		for (int address = 0; address < units.length; address++) {
+			if (instructionStarts[address] && (units[address] & 0xFF) == 0x0d && !isHandler(address)) {
+				fail(address, "move-exception is not at the start of a handler");
+			}
+		}
+	}
+	
+	private boolean isHandler(int address) {
+		for (MethodCode.TryBlock tryBlock : code.getTryBlocks()) {
+			if (tryBlock.getHandlerAddresses().contains(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void flowRegisters() {
+		byte[] entryState = getEntryState();
+		if (entryState == null) {
+			return;
+		}
+		Deque<Integer> worklist = new ArrayDeque<Integer>();
+		states[0] = entryState;
+		worklist.add(0);
+		queued[0] = true;
+		while (!worklist.isEmpty() && failures.isEmpty()) {
+			int address = worklist.poll();
+			queued[address] = false;
+			byte[] state = states[address].clone();
+			int opcode = units[address] & 0xFF;
+			if (THROWS[opcode]) {
+				for (MethodCode.TryBlock tryBlock : code.getTryBlocks()) {
+					if (tryBlock.covers(address)) {
+						for (int handlerAddress : tryBlock.getHandlerAddresses()) {
+							mergeInto(handlerAddress, states[address], worklist);
+						}
+					}
+				}
+			}
+			execute(address, opcode, state);
+			for (int successor : getSuccessors(address, opcode)) {
+				mergeInto(successor, state, worklist);
+			}
+		}
+	}
+	
+	// the parameters are in the last registers, starting with "this" for non-static methods
+	private byte[] getEntryState() {
+		int registers = code.getRegisters();
+		byte[] state = new byte[registers];
+		List<Byte> parameters = new ArrayList<Byte>();
+		if (!code.isStatic()) {
+			parameters.add(REFERENCE);
+		}
+		for (char parameterType : getParameterTypes(code.getSignature())) {
+			parameters.add(getCategory(parameterType));
+		}
+		int ins = 0;
+		for (byte parameter : parameters) {
+			ins += parameter == WIDE ? 2 : 1;
+		}
+		if (ins != code.getIns() || ins > registers) {
+			fail(0, String.format("code has %d registers with %d for parameters, but the parameters need %d", registers, code.getIns(), ins));
+			return null;
+		}
+		int register = registers - ins;
+		for (byte parameter : parameters) {
+			write(0, state, register, parameter);
+			register += parameter == WIDE ? 2 : 1;
+		}
+		return state;
+	}
+	
+	private void mergeInto(int address, byte[] state, Deque<Integer> worklist) {
+		byte[] targetState = states[address];
+		if (targetState == null) {
+			states[address] = state.clone();
+			worklist.add(address);
+			queued[address] = true;
+			return;
+		}
+		boolean changed = false;
+		for (int register = 0; register < state.length; register++) {
+			byte merged = merge(targetState[register], state[register]);
+			if (merged != targetState[register]) {
+				targetState[register] = merged;
+				changed = true;
+			}
+		}
+		if (changed && !queued[address]) {
+			worklist.add(address);
+			queued[address] = true;
+		}
+	}
+	
+	private static byte merge(byte category, byte otherCategory) {
+		if (category == otherCategory) {
+			return category;
+		} else if ((category == ZERO && otherCategory == PRIMITIVE) || (category == PRIMITIVE && otherCategory == ZERO)) {
+			return PRIMITIVE;
+		} else if ((category == ZERO && otherCategory == REFERENCE) || (category == REFERENCE && otherCategory == ZERO)) {
+			return REFERENCE;
+		}
+		return CONFLICT;
+	}
+	
+	private int[] getSuccessors(int address, int opcode) {
+		int width = Instructions.getWidth(opcode);
+		if (opcode >= 0x0e && opcode <= 0x11 || opcode == 0x27) { // return*, throw
+			return new int[0];
+		} else if (opcode >= 0x28 && opcode <= 0x2a) { // goto*
+			return getBranchTargets(address);
+		} else if (opcode == 0x2b || opcode == 0x2c) {
+			int[] switchTargets = getSwitchTargets(address, address + getInt(address + 1));
+			int[] successors = Arrays.copyOf(switchTargets, switchTargets.length + 1);
+			successors[switchTargets.length] = getFallthrough(address, width);
+			return successors;
+		} else if (opcode >= 0x32 && opcode <= 0x3d) {
+			return new int[] { getBranchTargets(address)[0], getFallthrough(address, width) };
+		}
+		return new int[] { getFallthrough(address, width) };
+	}
+	
+	// the next instruction, reporting a failure if there is none
+	private int getFallthrough(int address, int width) {
+		int next = address + width;
+		if (next >= units.length || !instructionStarts[next]) {
+			fail(address, "execution continues past the end of the code");
+			return address; // merging into itself does not change anything
+		}
+		return next;
+	}
+	
+	// checks the read registers, and updates the written ones
+	private void execute(int address, int opcode, byte[] state) {
+		int unit = units[address];
+		int a4 = (unit >> 8) & 0xF;
+		int b4 = unit >> 12;
+		int aa = unit >> 8;
+		if (opcode >= 0x01 && opcode <= 0x09) { // moves
+			byte category = opcode <= 0x03 ? PRIMITIVE : opcode <= 0x06 ? WIDE : REFERENCE;
+			int[] registers = opcode % 3 == 1 ? new int[] { a4, b4 }
+					: opcode % 3 == 2 ? new int[] { aa, units[address + 1] } : new int[] { units[address + 1], units[address + 2] };
+			byte read = read(address, state, registers[1], category);
+			write(address, state, registers[0], category == WIDE ? WIDE : read == ZERO ? ZERO : category);
+		} else if (opcode == 0x0a) {
+			write(address, state, aa, PRIMITIVE);
+		} else if (opcode == 0x0b) {
+			write(address, state, aa, WIDE);
+		} else if (opcode == 0x0c || opcode == 0x0d) {
+			write(address, state, aa, REFERENCE);
+		} else if (opcode == 0x0e) {
+			checkReturn(address, 'V');
+		} else if (opcode >= 0x0f && opcode <= 0x11) {
+			byte category = opcode == 0x0f ? PRIMITIVE : opcode == 0x10 ? WIDE : REFERENCE;
+			read(address, state, aa, category);
+			checkReturn(address, category == PRIMITIVE ? 'I' : category == WIDE ? 'J' : 'L');
+		} else if (opcode == 0x12) {
+			write(address, state, a4, b4 == 0 ? ZERO : PRIMITIVE);
+		} else if (opcode == 0x13 || opcode == 0x15) {
+			write(address, state, aa, units[address + 1] == 0 ? ZERO : PRIMITIVE);
+		} else if (opcode == 0x14) {
+			write(address, state, aa, getInt(address + 1) == 0 ? ZERO : PRIMITIVE);
+		} else if (opcode >= 0x16 && opcode <= 0x19) {
+			write(address, state, aa, WIDE);
+		} else if (opcode >= 0x1a && opcode <= 0x1c || opcode == 0x22 || opcode == 0xfe || opcode == 0xff) {
+			write(address, state, aa, REFERENCE);
+		} else if (opcode == 0x1d || opcode == 0x1e || opcode == 0x26 || opcode == 0x27) { // monitors, fill-array-data, throw
+			read(address, state, aa, REFERENCE);
+		} else if (opcode == 0x1f) {
+			read(address, state, aa, REFERENCE);
+		} else if (opcode == 0x20 || opcode == 0x21) { // instance-of, array-length
+			read(address, state, b4, REFERENCE);
+			write(address, state, a4, PRIMITIVE);
+		} else if (opcode == 0x23) { // new-array
+			read(address, state, b4, PRIMITIVE);
+			write(address, state, a4, REFERENCE);
+		} else if (opcode == 0x24 || opcode == 0x25) { // filled-new-array(/range)
+			for (int register : getInvokeRegisters(address, opcode == 0x25)) {
+				read(address, state, register, ANY_NARROW);
+			}
+		} else if (opcode == 0x2b || opcode == 0x2c) {
+			read(address, state, aa, PRIMITIVE);
+		} else if (opcode >= 0x2d && opcode <= 0x31) { // cmp*
+			byte category = opcode <= 0x2e ? PRIMITIVE : WIDE;
+			read(address, state, units[address + 1] & 0xFF, category);
+			read(address, state, units[address + 1] >> 8, category);
+			write(address, state, aa, PRIMITIVE);
+		} else if (opcode >= 0x32 && opcode <= 0x37) { // if-test
+			byte category = opcode <= 0x33 ? ANY_NARROW : PRIMITIVE;
+			read(address, state, a4, category);
+			read(address, state, b4, category);
+		} else if (opcode >= 0x38 && opcode <= 0x3d) { // if-testz
+			read(address, state, aa, opcode <= 0x39 ? ANY_NARROW : PRIMITIVE);
+		} else if (opcode >= 0x44 && opcode <= 0x51) { // aget*, aput*
+			byte category = opcode == 0x45 || opcode == 0x4c ? WIDE : opcode == 0x46 || opcode == 0x4d ? REFERENCE : PRIMITIVE;
+			read(address, state, units[address + 1] & 0xFF, REFERENCE);
+			read(address, state, units[address + 1] >> 8, PRIMITIVE);
+			if (opcode <= 0x4a) {
+				write(address, state, aa, category);
+			} else {
+				read(address, state, aa, category);
+			}
+		} else if (opcode >= 0x52 && opcode <= 0x6d) { // iget*, iput*, sget*, sput*
+			int kind = (opcode - 0x52) % 7; // plain, wide, object, boolean, byte, char, short
+			byte category = kind == 1 ? WIDE : kind == 2 ? REFERENCE : PRIMITIVE;
+			boolean isInstance = opcode <= 0x5f;
+			boolean isGet = isInstance ? opcode <= 0x58 : opcode <= 0x66;
+			int valueRegister = isInstance ? a4 : aa;
+			if (isInstance) {
+				read(address, state, b4, REFERENCE);
+			}
+			if (isGet) {
+				write(address, state, valueRegister, category);
+			} else {
+				read(address, state, valueRegister, category);
+			}
+		} else if (isInvoke(opcode)) {
+			readInvokeArguments(address, opcode, state);
+		} else if (opcode >= 0x7b && opcode <= 0x8f) { // unary operations
+			byte[] categories = getUnaryCategories(opcode);
+			read(address, state, b4, categories[1]);
+			write(address, state, a4, categories[0]);
+		} else if (opcode >= 0x90 && opcode <= 0xaf) { // binary operations
+			byte[] categories = getBinaryCategories(opcode - 0x90);
+			read(address, state, units[address + 1] & 0xFF, categories[0]);
+			read(address, state, units[address + 1] >> 8, categories[1]);
+			write(address, state, aa, categories[0]);
+		} else if (opcode >= 0xb0 && opcode <= 0xcf) { // binary operations in place
+			byte[] categories = getBinaryCategories(opcode - 0xb0);
+			read(address, state, a4, categories[0]);
+			read(address, state, b4, categories[1]);
+			write(address, state, a4, categories[0]);
+		} else if (opcode >= 0xd0 && opcode <= 0xd7) { // binary operations with 16-bit literal
+			read(address, state, b4, PRIMITIVE);
+			write(address, state, a4, PRIMITIVE);
+		} else if (opcode >= 0xd8 && opcode <= 0xe2) { // binary operations with 8-bit literal
+			read(address, state, units[address + 1] & 0xFF, PRIMITIVE);
+			write(address, state, aa, PRIMITIVE);
+		}
+	}
+	
+	// the categories of result and operand
+	private static byte[] getUnaryCategories(int opcode) {
+		switch (opcode) {
+		case 0x7d: // neg-long
+		case 0x7e: // not-long
+		case 0x80: // neg-double
+		case 0x86: // long-to-double
+		case 0x8b: // double-to-long
+			return new byte[] { WIDE, WIDE };
+		case 0x81: // int-to-long
+		case 0x83: // int-to-double
+		case 0x88: // float-to-long
+		case 0x89: // float-to-double
+			return new byte[] { WIDE, PRIMITIVE };
+		case 0x84: // long-to-int
+		case 0x85: // long-to-float
+		case 0x8a: // double-to-int
+		case 0x8c: // double-to-float
+			return new byte[] { PRIMITIVE, WIDE };
+		default:
+			return new byte[] { PRIMITIVE, PRIMITIVE };
+		}
+	}
+	
+	// the categories of result / first operand and second operand, by operation: 11 int, 11 long, 5 float, 5 double ones
+	private static byte[] getBinaryCategories(int operation) {
+		if (operation >= 0x0b && operation <= 0x15) {
+			boolean isShift = operation >= 0x13;
+			return new byte[] { WIDE, isShift ? PRIMITIVE : WIDE };
+		} else if (operation >= 0x1b) {
+			return new byte[] { WIDE, WIDE };
+		}
+		return new byte[] { PRIMITIVE, PRIMITIVE };
+	}
+	
+	private void readInvokeArguments(int address, int opcode, byte[] state) {
+		boolean isRange = opcode >= 0x74 && opcode <= 0x78 || opcode == 0xfb || opcode == 0xfd;
+		int[] registers = getInvokeRegisters(address, isRange);
+		String method = code.getRef(address);
+		if (method == null || isPolymorphicOrCustom(opcode)) {
+			// the arguments follow a proto or a call site, so only check that they are defined
+			for (int register : registers) {
+				if (register < state.length && (state[register] == UNDEFINED || state[register] == CONFLICT)) {
+					read(address, state, register, ANY_NARROW);
+				}
+			}
+			return;
+		}
+		List<Byte> arguments = new ArrayList<Byte>();
+		if (opcode != 0x71 && opcode != 0x77) { // not invoke-static(/range)
+			arguments.add(REFERENCE);
+		}
+		for (char parameterType : getParameterTypes(method)) {
+			arguments.add(getCategory(parameterType));
+		}
+		int registerIdx = 0;
+		for (byte argument : arguments) {
+			if (registerIdx >= registers.length) {
+				break;
+			}
+			read(address, state, registers[registerIdx], argument);
+			registerIdx += argument == WIDE ? 2 : 1;
+		}
+		if (registerIdx != registers.length) {
+			fail(address, String.format("invocation of %s passes %d registers, but needs %d", method, registers.length, registerIdx));
+		}
+	}
+	
+	// the argument registers of invoke-* and filled-new-array (format 35c or 3rc)
+	private int[] getInvokeRegisters(int address, boolean isRange) {
+		int unit = units[address];
+		if (isRange) {
+			int count = unit >> 8;
+			int[] registers = new int[count];
+			for (int registerIdx = 0; registerIdx < count; registerIdx++) {
+				registers[registerIdx] = units[address + 2] + registerIdx;
+			}
+			return registers;
+		}
+		int count = unit >> 12;
+		int registerUnit = units[address + 2];
+		int[] allRegisters = { registerUnit & 0xF, (registerUnit >> 4) & 0xF, (registerUnit >> 8) & 0xF, registerUnit >> 12, (unit >> 8) & 0xF };
+		return Arrays.copyOf(allRegisters, Math.min(count, allRegisters.length));
+	}
+	
+	private void checkReturn(int address, char returnType) {
+		String signature = code.getSignature();
+		char expectedType = signature.charAt(signature.indexOf(')') + 1);
+		if (getReturnCategory(expectedType) != getReturnCategory(returnType)) {
+			fail(address, "return does not match the return type " + signature.substring(signature.indexOf(')') + 1));
+		}
+	}
+	
+	private static byte getReturnCategory(char type) {
+		return type == 'V' ? UNDEFINED : getCategory(type);
+	}
+	
+	// returns the category the register had
+	private byte read(int address, byte[] state, int register, byte expected) {
+		if (register >= state.length || (expected == WIDE && register + 1 >= state.length)) {
+			fail(address, String.format("register v%d is out of range", register));
+			return CONFLICT;
+		}
+		byte category = state[register];
+		if (category == UNDEFINED) {
+			fail(address, String.format("register v%d is undefined", register));
+		} else if (category == CONFLICT) {
+			fail(address, String.format("register v%d has different categories on different paths", register));
+		} else if (expected == WIDE) {
+			if (category != WIDE_LOW || state[register + 1] != WIDE_HIGH) {
+				fail(address, String.format("register pair v%d/v%d holds no wide value", register, register + 1));
+			}
+		} else if (category == WIDE_LOW || category == WIDE_HIGH) {
+			fail(address, String.format("register v%d holds half of a wide value", register));
+		} else if (expected == PRIMITIVE && category == REFERENCE) {
+			fail(address, String.format("register v%d holds a reference, but a primitive is expected", register));
+		} else if (expected == REFERENCE && category == PRIMITIVE) {
+			fail(address, String.format("register v%d holds a primitive, but a reference is expected", register));
+		}
+		return category;
+	}
+	
+	// writing one half of a wide pair breaks the other half
+	private void write(int address, byte[] state, int register, byte category) {
+		int size = category == WIDE ? 2 : 1;
+		if (register + size > state.length) {
+			fail(address, String.format("register v%d is out of range", register));
+			return;
+		}
+		if (state[register] == WIDE_HIGH && register > 0) {
+			state[register - 1] = CONFLICT;
+		}
+		if (state[register + size - 1] == WIDE_LOW && register + size < state.length) {
+			state[register + size] = CONFLICT;
+		}
+		if (category == WIDE) {
+			state[register] = WIDE_LOW;
+			state[register + 1] = WIDE_HIGH;
+		} else {
+			state[register] = category;
+		}
+	}
+	
+	private int getInt(int address) {
+		return units[address] | (units[address + 1] << 16);
+	}
+	
+	private static boolean isInvoke(int opcode) {
+		return opcode >= 0x6e && opcode <= 0x72 || opcode >= 0x74 && opcode <= 0x78 || opcode >= 0xfa && opcode <= 0xfd;
+	}
+	
+	private static boolean isPolymorphicOrCustom(int opcode) {
+		return opcode >= 0xfa && opcode <= 0xfd;
+	}
+	
+	// the first character of each parameter type, like "IL[J" for (ILjava/lang/String;[IJ)V
+	private static List<Character> getParameterTypes(String signature) {
+		List<Character> parameterTypes = new ArrayList<Character>();
+		int position = signature.indexOf('(') + 1;
+		while (signature.charAt(position) != ')') {
+			char type = signature.charAt(position);
+			parameterTypes.add(type);
+			while (signature.charAt(position) == '[') {
+				position++;
+			}
+			if (signature.charAt(position) == 'L') {
+				position = signature.indexOf(';', position);
+			}
+			position++;
+		}
+		return parameterTypes;
+	}
+	
+	private static byte getCategory(char type) {
+		if (type == 'J' || type == 'D') {
+			return WIDE;
+		} else if (type == 'L' || type == '[') {
+			return REFERENCE;
+		}
+		return PRIMITIVE;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Compares the dex files of an original APK with the ones converted by Soot, flagging methods whose registers or
+ * code units grew by more than the threshold, e.g. since the local packer (jb.lp) did not pack their locals well.
+ */
+public class DexComparison {
+	
+	// small methods always grow by a high ratio, so ignore growth below this
+	private static final int MIN_INCREASE = 2;
+	
+	private final DexStats original;
+	
+	private final DexStats converted;
+	
+	private final List<Regression> regressions = new ArrayList<Regression>();
+	
+	// methods of the original APK not in the converted one
+	private int missingMethods = 0;
+	
+	// threshold as ratio, e.g. 0.25 flags methods growing by more than 25%
+	public DexComparison(DexStats original, DexStats converted, double threshold) {
+		this.original = original;
+		this.converted = converted;
+		for (Map.Entry<String, MethodStats> originalMethod : original.getMethods().entrySet()) {
+			MethodStats convertedMethod = converted.getMethods().get(originalMethod.getKey());
+			if (convertedMethod == null) {
+				missingMethods++;
+				continue;
+			}
+			MethodStats originalStats = originalMethod.getValue();
+			if (grew(originalStats.getRegisters(), convertedMethod.getRegisters(), threshold)
+					|| grew(originalStats.getCodeUnits(), convertedMethod.getCodeUnits(), threshold)) {
+				regressions.add(new Regression(originalMethod.getKey(), originalStats, convertedMethod));
+			}
+		}
+	}
+	
+	private static boolean grew(int originalValue, int convertedValue, double threshold) {
+		return convertedValue - originalValue >= MIN_INCREASE && convertedValue > originalValue * (1 + threshold);
+	}
+	
+	public DexStats getOriginal() {
+		return original;
+	}
+	
+	public DexStats getConverted() {
+		return converted;
+	}
+	
+	public List<Regression> getRegressions() {
+		return regressions;
+	}
+	
+	public int getMissingMethods() {
+		return missingMethods;
+	}
+	
+	public static class Regression {
+		
+		private final String method;
+		
+		private final MethodStats original;
+		
+		private final MethodStats converted;
+		
+		private Regression(String method, MethodStats original, MethodStats converted) {
+			this.method = method;
+			this.original = original;
+			this.converted = converted;
+		}
+		
+		public String getMethod() {
+			return method;
+		}
+		
+		public MethodStats getOriginal() {
+			return original;
+		}
+		
+		public MethodStats getConverted() {
+			return converted;
+		}
+		
+		@Override
+		public String toString() {
+			return method + ": " + original + " -> " + converted;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Corpus-wide footprint of Soot's dex output: one CSV line per tested APK and Soot release, appended to a file,
+ * so the footprint can be tracked release over release. Call main with the file to print the totals per release.
+ */
+public class DexFootprint {
+	
+	private static final String SEPARATOR = ",";
+	
+	private static final String[] COLUMNS = new String[] { "release", "apk", "methods", "registers", "instructions",
+			"codeUnits", "moves", "consts", "strings", "types", "methodRefs" };
+	
+	// the columns after release and APK are stored for the original and the converted APK
+	private static final int FIRST_VALUE_COLUMN = 2;
+	
+	// synchronized, so parallel lanes neither interleave lines nor both write the header
+	public static synchronized void record(Path footprintPath, String release, String apkName, DexComparison comparison) {
+		StringBuilder line = new StringBuilder();
+		line.append(release).append(SEPARATOR).append(apkName);
+		appendValues(line, comparison.getOriginal());
+		appendValues(line, comparison.getConverted());
+		line.append(SEPARATOR).append(comparison.getRegressions().size());
+		try {
+			boolean isNew = !Files.exists(footprintPath);
+			try (BufferedWriter writer = Files.newBufferedWriter(footprintPath, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				if (isNew) {
+					writer.write(getHeader());
+					writer.newLine();
+				}
+				writer.write(line.toString());
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while recording dex footprint", e);
+		}
+	}
+	
+	private static String getHeader() {
+		StringBuilder header = new StringBuilder(COLUMNS[0] + SEPARATOR + COLUMNS[1]);
+		for (String prefix : new String[] { "original.", "converted." }) {
+			for (int columnIdx = FIRST_VALUE_COLUMN; columnIdx < COLUMNS.length; columnIdx++) {
+				header.append(SEPARATOR).append(prefix).append(COLUMNS[columnIdx]);
+			}
+		}
+		return header.append(SEPARATOR).append("regressedMethods").toString();
+	}
+	
+	private static void appendValues(StringBuilder line, DexStats stats) {
+		long[] values = new long[] { stats.getMethods().size(), stats.getTotalRegisters(), stats.getTotalInstructions(),
+				stats.getTotalCodeUnits(), stats.getTotalMoves(), stats.getTotalConsts(), stats.getStrings(),
+				stats.getTypes(), stats.getMethodRefs() };
+		for (long value : values) {
+			line.append(SEPARATOR).append(value);
+		}
+	}
+	
+	// usage: <footprint file, default "./dex-footprint.csv">
+	public static void main(String[] args) throws IOException {
+		Path footprintPath = Paths.get(args.length == 0 ? "./dex-footprint.csv" : args[0]);
+		// the newest line per release and APK counts, in case an APK was tested several times
+		Map<String, Map<String, String[]>> linesByRelease = new LinkedHashMap<String, Map<String, String[]>>();
+		List<String> lines = Files.readAllLines(footprintPath, StandardCharsets.UTF_8);
+		for (String line : lines.subList(1, lines.size())) {
+			String[] values = line.split(SEPARATOR);
+			if (!linesByRelease.containsKey(values[0])) {
+				linesByRelease.put(values[0], new TreeMap<String, String[]>());
+			}
+			linesByRelease.get(values[0]).put(values[1], values);
+		}
+		int valueCount = COLUMNS.length - FIRST_VALUE_COLUMN;
+		for (Map.Entry<String, Map<String, String[]>> release : linesByRelease.entrySet()) {
+			long[] totals = new long[valueCount * 2 + 1];
+			for (String[] values : release.getValue().values()) {
+				for (int valueIdx = 0; valueIdx < totals.length; valueIdx++) {
+					totals[valueIdx] += Long.parseLong(values[FIRST_VALUE_COLUMN + valueIdx]);
+				}
+			}
+			System.out.println(release.getKey() + " (" + release.getValue().size() + " APKs, "
+					+ totals[valueCount * 2] + " regressed methods):");
+			for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
+				long originalTotal = totals[valueIdx];
+				long convertedTotal = totals[valueCount + valueIdx];
+				double growth = originalTotal == 0 ? 0 : (convertedTotal - originalTotal) * 100.0 / originalTotal;
+				System.out.println(String.format("  %-12s %12d -> %12d (%+.1f%%)", COLUMNS[FIRST_VALUE_COLUMN + valueIdx],
+						originalTotal, convertedTotal, growth));
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import history.Digests;
+
+/*
+ * Per-class hashes of all dex files of an APK, independent of the order of the pools in the dex files.
+ * Two APKs with the same digest have the same classes with the same code, so they behave the same.
+ */
+public class DexHashes {
+	
+	// hash by class descriptor like "Lcom/example/Foo;", in alphabetical order
+	private final Map<String, String> classHashes = new TreeMap<String, String>();
+	
+	public static DexHashes of(Path apk) {
+		DexHashes hashes = new DexHashes();
+		for (byte[] dexFile : DexReader.readDexFiles(apk)) {
+			new DexReader(dexFile).readHashesInto(hashes);
+		}
+		return hashes;
+	}
+	
+	void addClass(String descriptor, String hash) {
+		classHashes.put(descriptor, hash);
+	}
+	
+	public Map<String, String> getClassHashes() {
+		return classHashes;
+	}
+	
+	// one hash over all classes
+	public String getDigest() {
+		StringBuilder allHashes = new StringBuilder();
+		for (Map.Entry<String, String> classHash : classHashes.entrySet()) {
+			allHashes.append(classHash.getKey()).append(' ').append(classHash.getValue()).append('\n');
+		}
+		return Digests.sha256(allHashes.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	// classes with different hashes, or only in one of the APKs
+	public Set<String> getChangedClasses(DexHashes other) {
+		Set<String> changedClasses = new TreeSet<String>();
+		for (Map.Entry<String, String> classHash : classHashes.entrySet()) {
+			if (!classHash.getValue().equals(other.classHashes.get(classHash.getKey()))) {
+				changedClasses.add(classHash.getKey());
+			}
+		}
+		for (String descriptor : other.classHashes.keySet()) {
+			if (!classHashes.containsKey(descriptor)) {
+				changedClasses.add(descriptor);
+			}
+		}
+		return changedClasses;
+	}
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import static dex.Instructions.FILL_ARRAY_DATA_PAYLOAD;
+import static dex.Instructions.PACKED_SWITCH_PAYLOAD;
+import static dex.Instructions.SPARSE_SWITCH_PAYLOAD;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import history.Digests;
+
+/*
+ * Minimal reader for the dex format (see source.android.com/devices/tech/dalvik/dex-format.html),
+ * reading only what DexStats, DexHashes and DexVerifier need: the pool sizes from the header and the class definitions with their code items.
+ */
+class DexReader {
+	
+	private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+	
+	private static final int MAGIC_LENGTH = 8;
+	
+	private static final int STRING_IDS_OFFSET = 0x38;
+	
+	private static final int TYPE_IDS_OFFSET = 0x40;
+	
+	private static final int PROTO_IDS_OFFSET = 0x48;
+	
+	private static final int FIELD_IDS_OFFSET = 0x50;
+	
+	private static final int METHOD_IDS_OFFSET = 0x58;
+	
+	private static final int CLASS_DEFS_OFFSET = 0x60;
+	
+	private static final int FIELD_ID_SIZE = 8;
+	
+	private static final int PROTO_ID_SIZE = 12;
+	
+	private static final int METHOD_ID_SIZE = 8;
+	
+	private static final int CLASS_DEF_SIZE = 32;
+	
+	private static final int CODE_ITEM_HEADER_SIZE = 16;
+	
+	private static final int NO_OFFSET = 0;
+	
+	private static final int NO_INDEX = -1;
+	
+	// what the index in the second code unit of an instruction refers to
+	private static final int NO_REF = 0;
+	
+	private static final int STRING_REF = 1;
+	
+	private static final int TYPE_REF = 2;
+	
+	private static final int FIELD_REF = 3;
+	
+	private static final int METHOD_REF = 4;
+	
+	// the kind of index of each instruction, by opcode
+	private static final int[] REFS = new int[256];
+	
+	static {
+		// call sites, method handles and the proto of invoke-polymorphic stay indices, Soot does not emit them
+		setRef(0x1a, 0x1b, STRING_REF); // const-string(/jumbo)
+		setRef(0x1c, 0x1c, TYPE_REF); // const-class
+		setRef(0x1f, 0x20, TYPE_REF); // check-cast, instance-of
+		setRef(0x22, 0x25, TYPE_REF); // new-instance, new-array, filled-new-array(/range)
+		setRef(0x52, 0x6d, FIELD_REF); // iget*, iput*, sget*, sput*
+		setRef(0x6e, 0x72, METHOD_REF); // invoke-*
+		setRef(0x74, 0x78, METHOD_REF); // invoke-*/range
+		setRef(0xfa, 0xfb, METHOD_REF); // invoke-polymorphic(/range)
+	}
+	
+	private final ByteBuffer dex;
+	
+	DexReader(byte[] dex) {
+		this.dex = ByteBuffer.wrap(dex).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	private static void setRef(int firstOpcode, int lastOpcode, int ref) {
+		for (int opcode = firstOpcode; opcode <= lastOpcode; opcode++) {
+			REFS[opcode] = ref;
+		}
+	}
+	
+	// unused opcodes are skipped like a nop
+	private static int getWidth(int opcode) {
+		return Math.max(1, Instructions.getWidth(opcode));
+	}
+	
+	// the contents of all dex files of the APK (classes.dex, classes2.dex, ...)
+	static List<byte[]> readDexFiles(Path apk) {
+		List<byte[]> dexFiles = new ArrayList<byte[]>();
+		try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(apk))) {
+			ZipEntry entry = zip.getNextEntry();
+			while (entry != null) {
+				if (DEX_ENTRY.matcher(entry.getName()).matches()) {
+					dexFiles.add(readFully(zip));
+				}
+				entry = zip.getNextEntry();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading dex files of " + apk, e);
+		}
+		return dexFiles;
+	}
+	
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read = in.read(buffer);
+		while (read != -1) {
+			bytes.write(buffer, 0, read);
+			read = in.read(buffer);
+		}
+		return bytes.toByteArray();
+	}
+	
+	private void checkMagic() {
+		if (dex.get(0) != 'd' || dex.get(1) != 'e' || dex.get(2) != 'x' || dex.get(MAGIC_LENGTH - 1) != 0) {
+			throw new RuntimeException("no dex file, magic is missing");
+		}
+	}
+	
+	void readInto(DexStats stats) {
+		try {
+			checkMagic();
+			int classDefCount = dex.getInt(CLASS_DEFS_OFFSET);
+			stats.addDexFile(dex.capacity(), dex.getInt(STRING_IDS_OFFSET), dex.getInt(TYPE_IDS_OFFSET), dex.getInt(PROTO_IDS_OFFSET),
+					dex.getInt(FIELD_IDS_OFFSET), dex.getInt(METHOD_IDS_OFFSET), classDefCount);
+			int classDefsStart = dex.getInt(CLASS_DEFS_OFFSET + 4);
+			for (int classDefIdx = 0; classDefIdx < classDefCount; classDefIdx++) {
+				int classDataOffset = dex.getInt(classDefsStart + classDefIdx * CLASS_DEF_SIZE + 24);
+				if (classDataOffset != NO_OFFSET) {
+					readClassData(classDataOffset, stats);
+				}
+			}
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			throw new RuntimeException("dex file is truncated or malformed", e);
+		}
+	}
+	
+	private void readClassData(int offset, DexStats stats) {
+		dex.position(offset);
+		int staticFields = readUleb128();
+		int instanceFields = readUleb128();
+		int directMethods = readUleb128();
+		int virtualMethods = readUleb128();
+		for (int fieldIdx = 0; fieldIdx < staticFields + instanceFields; fieldIdx++) {
+			readUleb128(); // field index difference
+			readUleb128(); // access flags
+		}
+		readMethods(directMethods, stats);
+		readMethods(virtualMethods, stats);
+	}
+	
+	// reads the encoded methods at the current position, leaving the position after them
+	private void readMethods(int count, DexStats stats) {
+		int methodIdx = 0;
+		for (int encodedMethodIdx = 0; encodedMethodIdx < count; encodedMethodIdx++) {
+			methodIdx += readUleb128(); // the first is absolute, the others are differences
+			readUleb128(); // access flags
+			int codeOffset = readUleb128();
+			if (codeOffset == NO_OFFSET) {
+				continue; // abstract or native
+			}
+			int position = dex.position();
+			stats.addMethod(getMethodSignature(methodIdx), readCode(codeOffset));
+			dex.position(position);
+		}
+	}
+	
+	private MethodStats readCode(int offset) {
+		int registers = dex.getShort(offset) & 0xFFFF;
+		int ins = dex.getShort(offset + 2) & 0xFFFF;
+		int outs = dex.getShort(offset + 4) & 0xFFFF;
+		int tries = dex.getShort(offset + 6) & 0xFFFF;
+		int codeUnits = dex.getInt(offset + 12);
+		int instructionsStart = offset + CODE_ITEM_HEADER_SIZE;
+		int instructions = 0;
+		int moves = 0;
+		int consts = 0;
+		int codeUnitIdx = 0;
+		while (codeUnitIdx < codeUnits) {
+			int codeUnit = dex.getShort(instructionsStart + codeUnitIdx * 2) & 0xFFFF;
+			int opcode = codeUnit & 0xFF;
+			int payloadWidth = getPayloadWidth(codeUnit, instructionsStart + codeUnitIdx * 2);
+			if (payloadWidth > 0) {
+				codeUnitIdx += payloadWidth;
+				continue;
+			}
+			instructions++;
+			if (opcode >= 0x01 && opcode <= 0x09) {
+				moves++;
+			} else if (opcode >= 0x12 && opcode <= 0x1c) {
+				consts++;
+			}
+			codeUnitIdx += getWidth(opcode);
+		}
+		return new MethodStats(registers, ins, outs, tries, instructions, codeUnits, moves, consts);
+	}
+	
+	/*
+	 * Hashes a canonical form of each class definition: indices into the string, type, field and method pools
+	 * are replaced by what they refer to, since they change whenever anything is added to the pools.
+	 * Debug info, annotations and static values are left out, they do not change the behaviour of the code.
+	 */
+	void readHashesInto(DexHashes hashes) {
+		try {
+			checkMagic();
+			int classDefCount = dex.getInt(CLASS_DEFS_OFFSET);
+			int classDefsStart = dex.getInt(CLASS_DEFS_OFFSET + 4);
+			for (int classDefIdx = 0; classDefIdx < classDefCount; classDefIdx++) {
+				int classDef = classDefsStart + classDefIdx * CLASS_DEF_SIZE;
+				ByteArrayOutputStream canonical = new ByteArrayOutputStream();
+				writeInt(canonical, dex.getInt(classDef + 4)); // access flags
+				int superclassIdx = dex.getInt(classDef + 8);
+				writeString(canonical, superclassIdx == NO_INDEX ? "" : getType(superclassIdx));
+				int interfacesOffset = dex.getInt(classDef + 12);
+				if (interfacesOffset != NO_OFFSET) {
+					int interfaceCount = dex.getInt(interfacesOffset);
+					for (int interfaceIdx = 0; interfaceIdx < interfaceCount; interfaceIdx++) {
+						writeString(canonical, getType(dex.getShort(interfacesOffset + 4 + interfaceIdx * 2) & 0xFFFF));
+					}
+				}
+				int classDataOffset = dex.getInt(classDef + 24);
+				if (classDataOffset != NO_OFFSET) {
+					writeClassData(classDataOffset, canonical);
+				}
+				hashes.addClass(getType(dex.getInt(classDef)), Digests.sha256(canonical.toByteArray()));
+			}
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			throw new RuntimeException("dex file is truncated or malformed", e);
+		}
+	}
+	
+	private void writeClassData(int offset, ByteArrayOutputStream canonical) {
+		dex.position(offset);
+		int staticFields = readUleb128();
+		int instanceFields = readUleb128();
+		int directMethods = readUleb128();
+		int virtualMethods = readUleb128();
+		writeFields(staticFields, canonical);
+		writeFields(instanceFields, canonical);
+		writeMethods(directMethods, canonical);
+		writeMethods(virtualMethods, canonical);
+	}
+	
+	private void writeFields(int count, ByteArrayOutputStream canonical) {
+		writeInt(canonical, count);
+		int fieldIdx = 0;
+		for (int encodedFieldIdx = 0; encodedFieldIdx < count; encodedFieldIdx++) {
+			fieldIdx += readUleb128(); // the first is absolute, the others are differences
+			writeString(canonical, getFieldSignature(fieldIdx));
+			writeInt(canonical, readUleb128()); // access flags
+		}
+	}
+	
+	private void writeMethods(int count, ByteArrayOutputStream canonical) {
+		writeInt(canonical, count);
+		int methodIdx = 0;
+		for (int encodedMethodIdx = 0; encodedMethodIdx < count; encodedMethodIdx++) {
+			methodIdx += readUleb128();
+			writeString(canonical, getMethodSignature(methodIdx));
+			writeInt(canonical, readUleb128()); // access flags
+			int codeOffset = readUleb128();
+			if (codeOffset != NO_OFFSET) {
+				int position = dex.position();
+				writeCode(codeOffset, canonical);
+				dex.position(position);
+			}
+		}
+	}
+	
+	private void writeCode(int offset, ByteArrayOutputStream canonical) {
+		int tries = dex.getShort(offset + 6) & 0xFFFF;
+		writeInt(canonical, dex.getShort(offset) & 0xFFFF); // registers
+		writeInt(canonical, dex.getShort(offset + 2) & 0xFFFF); // ins
+		writeInt(canonical, tries);
+		int codeUnits = dex.getInt(offset + 12);
+		int instructionsStart = offset + CODE_ITEM_HEADER_SIZE;
+		int codeUnitIdx = 0;
+		while (codeUnitIdx < codeUnits) {
+			int position = instructionsStart + codeUnitIdx * 2;
+			int codeUnit = dex.getShort(position) & 0xFFFF;
+			int opcode = codeUnit & 0xFF;
+			int width = getPayloadWidth(codeUnit, position);
+			int ref = width > 0 ? NO_REF : REFS[opcode];
+			if (width == 0) {
+				width = getWidth(opcode);
+			}
+			// jump targets and payload offsets are relative, so they only change along with the code
+			int rawStart = 0;
+			if (ref != NO_REF) {
+				writeInt(canonical, codeUnit);
+				int index = dex.getShort(position + 2) & 0xFFFF;
+				rawStart = 2;
+				if (opcode == 0x1b) { // const-string/jumbo has a 32-bit index
+					index = dex.getInt(position + 2);
+					rawStart = 3;
+				}
+				writeString(canonical, resolve(ref, index));
+			}
+			for (int rawIdx = rawStart; rawIdx < width; rawIdx++) {
+				writeInt(canonical, dex.getShort(position + rawIdx * 2) & 0xFFFF);
+			}
+			codeUnitIdx += width;
+		}
+		// the try items are 4-byte aligned, followed by the handlers
+		int triesStart = instructionsStart + codeUnits * 2 + (codeUnits % 2) * 2;
+		int handlersStart = triesStart + tries * 8;
+		for (int tryIdx = 0; tryIdx < tries; tryIdx++) {
+			int tryItem = triesStart + tryIdx * 8;
+			writeInt(canonical, dex.getInt(tryItem)); // start address
+			writeInt(canonical, dex.getShort(tryItem + 4) & 0xFFFF); // instruction count
+			writeHandlers(handlersStart + (dex.getShort(tryItem + 6) & 0xFFFF), canonical);
+		}
+	}
+	
+	private void writeHandlers(int offset, ByteArrayOutputStream canonical) {
+		dex.position(offset);
+		int size = readSleb128(); // not positive if there is a catch-all handler
+		writeInt(canonical, size);
+		for (int handlerIdx = 0; handlerIdx < Math.abs(size); handlerIdx++) {
+			writeString(canonical, getType(readUleb128()));
+			writeInt(canonical, readUleb128()); // handler address
+		}
+		if (size <= 0) {
+			writeInt(canonical, readUleb128()); // catch-all address
+		}
+	}
+	
+	private String resolve(int ref, int index) {
+		switch (ref) {
+		case STRING_REF:
+			return getString(index);
+		case TYPE_REF:
+			return getType(index);
+		case FIELD_REF:
+			return getFieldSignature(index);
+		default:
+			return getMethodSignature(index);
+		}
+	}
+	
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+	
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		writeInt(out, value.length());
+		for (int charIdx = 0; charIdx < value.length(); charIdx++) {
+			out.write(value.charAt(charIdx) >>> 8);
+			out.write(value.charAt(charIdx));
+		}
+	}
+	
+	// the classes with their members, and the code of their methods with the indices resolved
+	void readCodesInto(Map<String, ClassInfo> classes, List<MethodCode> codes) {
+		try {
+			checkMagic();
+			int classDefCount = dex.getInt(CLASS_DEFS_OFFSET);
+			int classDefsStart = dex.getInt(CLASS_DEFS_OFFSET + 4);
+			for (int classDefIdx = 0; classDefIdx < classDefCount; classDefIdx++) {
+				int classDef = classDefsStart + classDefIdx * CLASS_DEF_SIZE;
+				int superclassIdx = dex.getInt(classDef + 8);
+				ClassInfo classInfo = new ClassInfo(getType(dex.getInt(classDef)), superclassIdx == NO_INDEX ? null : getType(superclassIdx));
+				int interfacesOffset = dex.getInt(classDef + 12);
+				if (interfacesOffset != NO_OFFSET) {
+					int interfaceCount = dex.getInt(interfacesOffset);
+					for (int interfaceIdx = 0; interfaceIdx < interfaceCount; interfaceIdx++) {
+						classInfo.addInterface(getType(dex.getShort(interfacesOffset + 4 + interfaceIdx * 2) & 0xFFFF));
+					}
+				}
+				int classDataOffset = dex.getInt(classDef + 24);
+				if (classDataOffset != NO_OFFSET) {
+					readClassData(classDataOffset, classInfo, codes);
+				}
+				classes.put(classInfo.getDescriptor(), classInfo);
+			}
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			throw new RuntimeException("dex file is truncated or malformed", e);
+		}
+	}
+	
+	private void readClassData(int offset, ClassInfo classInfo, List<MethodCode> codes) {
+		dex.position(offset);
+		int staticFields = readUleb128();
+		int instanceFields = readUleb128();
+		int directMethods = readUleb128();
+		int virtualMethods = readUleb128();
+		int fieldIdx = 0;
+		for (int encodedFieldIdx = 0; encodedFieldIdx < staticFields + instanceFields; encodedFieldIdx++) {
+			if (encodedFieldIdx == staticFields) {
+				fieldIdx = 0; // the instance fields start again with an absolute index
+			}
+			fieldIdx += readUleb128();
+			readUleb128(); // access flags
+			classInfo.addField(getMember(getFieldSignature(fieldIdx)));
+		}
+		readMethods(directMethods, classInfo, codes);
+		readMethods(virtualMethods, classInfo, codes);
+	}
+	
+	private void readMethods(int count, ClassInfo classInfo, List<MethodCode> codes) {
+		int methodIdx = 0;
+		for (int encodedMethodIdx = 0; encodedMethodIdx < count; encodedMethodIdx++) {
+			methodIdx += readUleb128();
+			int accessFlags = readUleb128();
+			int codeOffset = readUleb128();
+			String signature = getMethodSignature(methodIdx);
+			classInfo.addMethod(getMember(signature));
+			if (codeOffset != NO_OFFSET) {
+				int position = dex.position();
+				codes.add(readMethodCode(codeOffset, signature, accessFlags));
+				dex.position(position);
+			}
+		}
+	}
+	
+	// "Lcom/example/Foo;->bar(I)V" to "bar(I)V"
+	private static String getMember(String signature) {
+		return signature.substring(signature.indexOf("->") + 2);
+	}
+	
+	private MethodCode readMethodCode(int offset, String signature, int accessFlags) {
+		int tries = dex.getShort(offset + 6) & 0xFFFF;
+		int codeUnitCount = dex.getInt(offset + 12);
+		int instructionsStart = offset + CODE_ITEM_HEADER_SIZE;
+		int[] codeUnits = new int[codeUnitCount];
+		for (int codeUnitIdx = 0; codeUnitIdx < codeUnitCount; codeUnitIdx++) {
+			codeUnits[codeUnitIdx] = dex.getShort(instructionsStart + codeUnitIdx * 2) & 0xFFFF;
+		}
+		MethodCode code = new MethodCode(signature, accessFlags, dex.getShort(offset) & 0xFFFF, dex.getShort(offset + 2) & 0xFFFF, codeUnits);
+		int address = 0;
+		while (address < codeUnitCount) {
+			int opcode = codeUnits[address] & 0xFF;
+			int payloadWidth = getPayloadWidth(codeUnits[address], instructionsStart + address * 2);
+			if (payloadWidth > 0) {
+				address += payloadWidth;
+				continue;
+			}
+			if (REFS[opcode] != NO_REF && address + 1 < codeUnitCount) {
+				int index = codeUnits[address + 1];
+				if (opcode == 0x1b && address + 2 < codeUnitCount) {
+					index |= codeUnits[address + 2] << 16;
+				}
+				if (isValidIndex(REFS[opcode], index)) {
+					code.addRef(address, resolve(REFS[opcode], index));
+				}
+			}
+			address += getWidth(opcode);
+		}
+		int triesStart = instructionsStart + codeUnitCount * 2 + (codeUnitCount % 2) * 2;
+		int handlersStart = triesStart + tries * 8;
+		for (int tryIdx = 0; tryIdx < tries; tryIdx++) {
+			int tryItem = triesStart + tryIdx * 8;
+			MethodCode.TryBlock tryBlock = new MethodCode.TryBlock(dex.getInt(tryItem), dex.getShort(tryItem + 4) & 0xFFFF);
+			dex.position(handlersStart + (dex.getShort(tryItem + 6) & 0xFFFF));
+			int size = readSleb128();
+			for (int handlerIdx = 0; handlerIdx < Math.abs(size); handlerIdx++) {
+				readUleb128(); // type
+				tryBlock.addHandlerAddress(readUleb128());
+			}
+			if (size <= 0) {
+				tryBlock.addHandlerAddress(readUleb128());
+			}
+			code.addTryBlock(tryBlock);
+		}
+		return code;
+	}
+	
+	private boolean isValidIndex(int ref, int index) {
+		switch (ref) {
+		case STRING_REF:
+			return index >= 0 && index < dex.getInt(STRING_IDS_OFFSET);
+		case TYPE_REF:
+			return index >= 0 && index < dex.getInt(TYPE_IDS_OFFSET);
+		case FIELD_REF:
+			return index >= 0 && index < dex.getInt(FIELD_IDS_OFFSET);
+		default:
+			return index >= 0 && index < dex.getInt(METHOD_IDS_OFFSET);
+		}
+	}
+	
+	// returns 0 if the code unit does not start a payload
+	private int getPayloadWidth(int codeUnit, int position) {
+		if (codeUnit == PACKED_SWITCH_PAYLOAD) {
+			int size = dex.getShort(position + 2) & 0xFFFF;
+			return size * 2 + 4;
+		} else if (codeUnit == SPARSE_SWITCH_PAYLOAD) {
+			int size = dex.getShort(position + 2) & 0xFFFF;
+			return size * 4 + 2;
+		} else if (codeUnit == FILL_ARRAY_DATA_PAYLOAD) {
+			int elementWidth = dex.getShort(position + 2) & 0xFFFF;
+			long size = dex.getInt(position + 4) & 0xFFFFFFFFL;
+			return (int) ((size * elementWidth + 1) / 2 + 4);
+		}
+		return 0;
+	}
+	
+	private String getMethodSignature(int methodIdx) {
+		int methodId = dex.getInt(METHOD_IDS_OFFSET + 4) + methodIdx * METHOD_ID_SIZE;
+		int classIdx = dex.getShort(methodId) & 0xFFFF;
+		int protoIdx = dex.getShort(methodId + 2) & 0xFFFF;
+		int nameIdx = dex.getInt(methodId + 4);
+		int protoId = dex.getInt(PROTO_IDS_OFFSET + 4) + protoIdx * PROTO_ID_SIZE;
+		int returnTypeIdx = dex.getInt(protoId + 4);
+		int parametersOffset = dex.getInt(protoId + 8);
+		StringBuilder signature = new StringBuilder();
+		signature.append(getType(classIdx)).append("->").append(getString(nameIdx)).append('(');
+		if (parametersOffset != NO_OFFSET) {
+			int parameterCount = dex.getInt(parametersOffset);
+			for (int parameterIdx = 0; parameterIdx < parameterCount; parameterIdx++) {
+				signature.append(getType(dex.getShort(parametersOffset + 4 + parameterIdx * 2) & 0xFFFF));
+			}
+		}
+		return signature.append(')').append(getType(returnTypeIdx)).toString();
+	}
+	
+	private String getFieldSignature(int fieldIdx) {
+		int fieldId = dex.getInt(FIELD_IDS_OFFSET + 4) + fieldIdx * FIELD_ID_SIZE;
+		int classIdx = dex.getShort(fieldId) & 0xFFFF;
+		int typeIdx = dex.getShort(fieldId + 2) & 0xFFFF;
+		int nameIdx = dex.getInt(fieldId + 4);
+		return getType(classIdx) + "->" + getString(nameIdx) + ":" + getType(typeIdx);
+	}
+	
+	private String getType(int typeIdx) {
+		int descriptorIdx = dex.getInt(dex.getInt(TYPE_IDS_OFFSET + 4) + typeIdx * 4);
+		return getString(descriptorIdx);
+	}
+	
+	private String getString(int stringIdx) {
+		int position = dex.position();
+		dex.position(dex.getInt(dex.getInt(STRING_IDS_OFFSET + 4) + stringIdx * 4));
+		int length = readUleb128(); // in UTF-16 code units
+		StringBuilder string = new StringBuilder(length);
+		for (int charIdx = 0; charIdx < length; charIdx++) {
+			string.append(readMutf8Char());
+		}
+		dex.position(position);
+		return string.toString();
+	}
+	
+	// modified UTF-8: at most 3 bytes per char, supplementary characters are encoded as surrogate pairs
+	private char readMutf8Char() {
+		int first = dex.get() & 0xFF;
+		if (first < 0x80) {
+			return (char) first;
+		} else if ((first & 0xE0) == 0xC0) {
+			return (char) (((first & 0x1F) << 6) | (dex.get() & 0x3F));
+		}
+		int second = dex.get() & 0x3F;
+		return (char) (((first & 0x0F) << 12) | (second << 6) | (dex.get() & 0x3F));
+	}
+	
+	private int readSleb128() {
+		int result = 0;
+		int shift = 0;
+		int current;
+		do {
+			current = dex.get() & 0xFF;
+			result |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0 && shift < 35);
+		if (shift < 32 && (current & 0x40) != 0) {
+			result |= -1 << shift; // sign extension
+		}
+		return result;
+	}
+	
+	private int readUleb128() {
+		int result = 0;
+		int shift = 0;
+		int current;
+		do {
+			current = dex.get() & 0xFF;
+			result |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0 && shift < 35);
+		return result;
+	}
+}
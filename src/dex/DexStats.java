@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Pool sizes and per-method code sizes of all dex files of an APK (classes.dex, classes2.dex, ...).
+ * Methods are identified by their signature like "Lcom/example/Foo;->bar(ILjava/lang/String;)V",
+ * which Soot keeps, so original and converted methods can be compared.
+ */
+public class DexStats {
+	
+	private final Map<String, MethodStats> methods = new TreeMap<String, MethodStats>();
+	
+	private int dexFiles = 0;
+	
+	private long dexBytes = 0;
+	
+	private int strings = 0;
+	
+	private int types = 0;
+	
+	private int protos = 0;
+	
+	private int fields = 0;
+	
+	private int methodRefs = 0;
+	
+	private int classes = 0;
+	
+	public static DexStats of(Path apk) {
+		DexStats stats = new DexStats();
+		for (byte[] dexFile : DexReader.readDexFiles(apk)) {
+			new DexReader(dexFile).readInto(stats);
+		}
+		return stats;
+	}
+	
+	void addDexFile(int bytes, int strings, int types, int protos, int fields, int methodRefs, int classes) {
+		this.dexFiles++;
+		this.dexBytes += bytes;
+		this.strings += strings;
+		this.types += types;
+		this.protos += protos;
+		this.fields += fields;
+		this.methodRefs += methodRefs;
+		this.classes += classes;
+	}
+	
+	void addMethod(String signature, MethodStats methodStats) {
+		methods.put(signature, methodStats);
+	}
+	
+	// methods with code by signature, in alphabetical order
+	public Map<String, MethodStats> getMethods() {
+		return methods;
+	}
+	
+	public int getDexFiles() {
+		return dexFiles;
+	}
+	
+	public long getDexBytes() {
+		return dexBytes;
+	}
+	
+	public int getStrings() {
+		return strings;
+	}
+	
+	public int getTypes() {
+		return types;
+	}
+	
+	public int getProtos() {
+		return protos;
+	}
+	
+	public int getFields() {
+		return fields;
+	}
+	
+	public int getMethodRefs() {
+		return methodRefs;
+	}
+	
+	public int getClasses() {
+		return classes;
+	}
+	
+	public long getTotalRegisters() {
+		long total = 0;
+		for (MethodStats method : methods.values()) {
+			total += method.getRegisters();
+		}
+		return total;
+	}
+	
+	public long getTotalInstructions() {
+		long total = 0;
+		for (MethodStats method : methods.values()) {
+			total += method.getInstructions();
+		}
+		return total;
+	}
+	
+	public long getTotalCodeUnits() {
+		long total = 0;
+		for (MethodStats method : methods.values()) {
+			total += method.getCodeUnits();
+		}
+		return total;
+	}
+	
+	public long getTotalMoves() {
+		long total = 0;
+		for (MethodStats method : methods.values()) {
+			total += method.getMoves();
+		}
+		return total;
+	}
+	
+	public long getTotalConsts() {
+		long total = 0;
+		for (MethodStats method : methods.values()) {
+			total += method.getConsts();
+		}
+		return total;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d dex file(s), %d classes, %d methods with code, %d strings, %d types, %d protos, "
+				+ "%d field refs, %d method refs, %d registers, %d instructions, %d code units, %d moves, %d consts",
+				dexFiles, classes, methods.size(), strings, types, protos, fields, methodRefs, getTotalRegisters(),
+				getTotalInstructions(), getTotalCodeUnits(), getTotalMoves(), getTotalConsts());
+	}
+}
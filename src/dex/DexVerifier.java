@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Static verification of the dex files of an APK on the host: the code of each method (see CodeVerifier), and the
+ * field and method references, which should resolve against the classes of the APK and android.jar. Only code
+ * failures are hard ones: an unresolved reference is a warning, since the VM only fails when it is used, and
+ * android.jar may lack members of the device's actual framework.
+ * The original APK runs on the emulator, so only failures in methods which pass in the original APK are reported
+ * for the converted one. This leaves out the references to missing, but unused libraries, and the few things
+ * the verifier does differently than the VM.
+ */
+public class DexVerifier {
+	
+	private final Path androidJar;
+	
+	public DexVerifier(Path androidJar) {
+		this.androidJar = androidJar;
+	}
+	
+	// failures in methods of the converted APK which have none in the original APK
+	public List<Failure> verifyConverted(Path originalApk, Path convertedApk) {
+		List<Failure> convertedFailures = verify(convertedApk);
+		if (convertedFailures.isEmpty()) {
+			return convertedFailures;
+		}
+		Set<String> originalFailingMethods = new HashSet<String>();
+		for (Failure originalFailure : verify(originalApk)) {
+			originalFailingMethods.add(originalFailure.getMethod());
+		}
+		List<Failure> newFailures = new ArrayList<Failure>();
+		for (Failure convertedFailure : convertedFailures) {
+			if (!originalFailingMethods.contains(convertedFailure.getMethod())) {
+				newFailures.add(convertedFailure);
+			}
+		}
+		return newFailures;
+	}
+	
+	public List<Failure> verify(Path apk) {
+		Map<String, ClassInfo> classes = new HashMap<String, ClassInfo>();
+		List<MethodCode> codes = new ArrayList<MethodCode>();
+		for (byte[] dexFile : DexReader.readDexFiles(apk)) {
+			new DexReader(dexFile).readCodesInto(classes, codes);
+		}
+		Map<String, ClassInfo> androidClasses = AndroidJar.getClasses(androidJar);
+		List<Failure> failures = new ArrayList<Failure>();
+		for (MethodCode code : codes) {
+			for (String message : CodeVerifier.verify(code)) {
+				failures.add(new Failure(code.getSignature(), message, true));
+			}
+			for (String ref : getMemberRefs(code)) {
+				if (!resolves(ref, classes, androidClasses)) {
+					failures.add(new Failure(code.getSignature(), "unresolved reference " + ref, false));
+				}
+			}
+		}
+		return failures;
+	}
+	
+	// the field and method references, like "Lcom/example/Foo;->bar(I)V" or "Lcom/example/Foo;->count:I"
+	private static Set<String> getMemberRefs(MethodCode code) {
+		Set<String> refs = new HashSet<String>();
+		for (int address = 0; address < code.getCodeUnits().length; address++) {
+			String ref = code.getRef(address);
+			if (ref != null && ref.contains("->")) {
+				refs.add(ref);
+			}
+		}
+		return refs;
+	}
+	
+	/*
+	 * Looks for the member in the class, its superclasses and interfaces. If a class of these is unknown,
+	 * the reference counts as resolved, since the member might be in there.
+	 */
+	private static boolean resolves(String ref, Map<String, ClassInfo> classes, Map<String, ClassInfo> androidClasses) {
+		int separator = ref.indexOf("->");
+		String descriptor = ref.substring(0, separator);
+		String member = ref.substring(separator + 2);
+		if (descriptor.startsWith("[")) {
+			return true; // members of arrays, like clone() and length
+		}
+		boolean isField = member.contains(":");
+		Deque<String> toVisit = new ArrayDeque<String>();
+		Set<String> visited = new HashSet<String>();
+		toVisit.add(descriptor);
+		while (!toVisit.isEmpty()) {
+			String current = toVisit.poll();
+			if (!visited.add(current)) {
+				continue;
+			}
+			ClassInfo classInfo = classes.get(current);
+			if (classInfo == null) {
+				classInfo = androidClasses.get(current);
+			}
+			if (classInfo == null) {
+				return !current.equals(descriptor); // an unknown referenced class does not resolve, an unknown superclass might
+			}
+			if ((isField ? classInfo.getFields() : classInfo.getMethods()).contains(member)) {
+				return true;
+			}
+			if (classInfo.getSuperclass() != null) {
+				toVisit.add(classInfo.getSuperclass());
+			}
+			toVisit.addAll(classInfo.getInterfaces());
+		}
+		return false;
+	}
+	
+	public static class Failure {
+		
+		private final String method;
+		
+		private final String message;
+		
+		// false for warnings, which do not reject the APK
+		private final boolean hard;
+		
+		Failure(String method, String message, boolean hard) {
+			this.method = method;
+			this.message = message;
+			this.hard = hard;
+		}
+		
+		public String getMethod() {
+			return method;
+		}
+		
+		public String getMessage() {
+			return message;
+		}
+		
+		public boolean isHard() {
+			return hard;
+		}
+		
+		@Override
+		public String toString() {
+			return method + ": " + message;
+		}
+	}
+}
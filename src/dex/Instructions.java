@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+// widths of the dex instructions and the payload pseudo-instructions, for DexReader and CodeVerifier
+class Instructions {
+	
+	// pseudo-instructions, starting with a nop opcode
+	static final int PACKED_SWITCH_PAYLOAD = 0x0100;
+	
+	static final int SPARSE_SWITCH_PAYLOAD = 0x0200;
+	
+	static final int FILL_ARRAY_DATA_PAYLOAD = 0x0300;
+	
+	// width of each instruction in 16-bit code units, by opcode (0 for unused opcodes)
+	private static final int[] WIDTHS = new int[256];
+	
+	static {
+		setWidth(0x00, 0x01, 1); // nop, move
+		setWidth(0x02, 0x02, 2); // move/from16
+		setWidth(0x03, 0x03, 3); // move/16
+		setWidth(0x04, 0x04, 1); // move-wide
+		setWidth(0x05, 0x05, 2); // move-wide/from16
+		setWidth(0x06, 0x06, 3); // move-wide/16
+		setWidth(0x07, 0x07, 1); // move-object
+		setWidth(0x08, 0x08, 2); // move-object/from16
+		setWidth(0x09, 0x09, 3); // move-object/16
+		setWidth(0x0a, 0x12, 1); // move-result*, move-exception, return*, const/4
+		setWidth(0x13, 0x13, 2); // const/16
+		setWidth(0x14, 0x14, 3); // const
+		setWidth(0x15, 0x16, 2); // const/high16, const-wide/16
+		setWidth(0x17, 0x17, 3); // const-wide/32
+		setWidth(0x18, 0x18, 5); // const-wide
+		setWidth(0x19, 0x1a, 2); // const-wide/high16, const-string
+		setWidth(0x1b, 0x1b, 3); // const-string/jumbo
+		setWidth(0x1c, 0x1c, 2); // const-class
+		setWidth(0x1d, 0x1e, 1); // monitor-enter, monitor-exit
+		setWidth(0x1f, 0x20, 2); // check-cast, instance-of
+		setWidth(0x21, 0x21, 1); // array-length
+		setWidth(0x22, 0x23, 2); // new-instance, new-array
+		setWidth(0x24, 0x26, 3); // filled-new-array(/range), fill-array-data
+		setWidth(0x27, 0x28, 1); // throw, goto
+		setWidth(0x29, 0x29, 2); // goto/16
+		setWidth(0x2a, 0x2c, 3); // goto/32, packed-switch, sparse-switch
+		setWidth(0x2d, 0x3d, 2); // cmp*, if-*
+		setWidth(0x44, 0x6d, 2); // aget*, aput*, iget*, iput*, sget*, sput*
+		setWidth(0x6e, 0x72, 3); // invoke-*
+		setWidth(0x74, 0x78, 3); // invoke-*/range
+		setWidth(0x7b, 0x8f, 1); // unary operations
+		setWidth(0x90, 0xaf, 2); // binary operations
+		setWidth(0xb0, 0xcf, 1); // binary operations in place
+		setWidth(0xd0, 0xe2, 2); // binary operations with literals
+		setWidth(0xfa, 0xfb, 4); // invoke-polymorphic(/range)
+		setWidth(0xfc, 0xfd, 3); // invoke-custom(/range)
+		setWidth(0xfe, 0xff, 2); // const-method-handle, const-method-type
+	}
+	
+	private static void setWidth(int firstOpcode, int lastOpcode, int width) {
+		for (int opcode = firstOpcode; opcode <= lastOpcode; opcode++) {
+			WIDTHS[opcode] = width;
+		}
+	}
+	
+	static int getWidth(int opcode) {
+		return WIDTHS[opcode];
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// the code item of one method, with the indices of its instructions resolved, for the CodeVerifier
+class MethodCode {
+	
+	static final int ACC_STATIC = 0x8;
+	
+	private final String signature;
+	
+	private final int accessFlags;
+	
+	private final int registers;
+	
+	private final int ins;
+	
+	private final int[] codeUnits;
+	
+	private final List<TryBlock> tryBlocks = new ArrayList<TryBlock>();
+	
+	// string, type, field or method (signature) by address of the referring instruction
+	private final Map<Integer, String> refs = new HashMap<Integer, String>();
+	
+	MethodCode(String signature, int accessFlags, int registers, int ins, int[] codeUnits) {
+		this.signature = signature;
+		this.accessFlags = accessFlags;
+		this.registers = registers;
+		this.ins = ins;
+		this.codeUnits = codeUnits;
+	}
+	
+	void addTryBlock(TryBlock tryBlock) {
+		tryBlocks.add(tryBlock);
+	}
+	
+	void addRef(int address, String ref) {
+		refs.put(address, ref);
+	}
+	
+	String getSignature() {
+		return signature;
+	}
+	
+	boolean isStatic() {
+		return (accessFlags & ACC_STATIC) != 0;
+	}
+	
+	int getRegisters() {
+		return registers;
+	}
+	
+	int getIns() {
+		return ins;
+	}
+	
+	int[] getCodeUnits() {
+		return codeUnits;
+	}
+	
+	List<TryBlock> getTryBlocks() {
+		return tryBlocks;
+	}
+	
+	// null if the instruction has no index or its index is out of range
+	String getRef(int address) {
+		return refs.get(address);
+	}
+	
+	// addresses in code units, like in the try items of the dex format
+	static class TryBlock {
+		
+		private final int startAddress;
+		
+		private final int codeUnits;
+		
+		// including the catch-all handler, if any
+		private final List<Integer> handlerAddresses = new ArrayList<Integer>();
+		
+		TryBlock(int startAddress, int codeUnits) {
+			this.startAddress = startAddress;
+			this.codeUnits = codeUnits;
+		}
+		
+		void addHandlerAddress(int handlerAddress) {
+			handlerAddresses.add(handlerAddress);
+		}
+		
+		int getStartAddress() {
+			return startAddress;
+		}
+		
+		int getEndAddress() {
+			return startAddress + codeUnits;
+		}
+		
+		List<Integer> getHandlerAddresses() {
+			return handlerAddresses;
+		}
+		
+		boolean covers(int address) {
+			return address >= startAddress && address < getEndAddress();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dex;
+
+// size of one method's code in a dex file
+public class MethodStats {
+	
+	private final int registers;
+	
+	private final int ins;
+	
+	private final int outs;
+	
+	private final int tries;
+	
+	// without the payloads of switches and array data, which are counted in the code units only
+	private final int instructions;
+	
+	private final int codeUnits;
+	
+	// register to register moves, without move-result and move-exception
+	private final int moves;
+	
+	private final int consts;
+	
+	MethodStats(int registers, int ins, int outs, int tries, int instructions, int codeUnits, int moves, int consts) {
+		this.registers = registers;
+		this.ins = ins;
+		this.outs = outs;
+		this.tries = tries;
+		this.instructions = instructions;
+		this.codeUnits = codeUnits;
+		this.moves = moves;
+		this.consts = consts;
+	}
+	
+	public int getRegisters() {
+		return registers;
+	}
+	
+	public int getIns() {
+		return ins;
+	}
+	
+	public int getOuts() {
+		return outs;
+	}
+	
+	public int getTries() {
+		return tries;
+	}
+	
+	public int getInstructions() {
+		return instructions;
+	}
+	
+	public int getCodeUnits() {
+		return codeUnits;
+	}
+	
+	public int getMoves() {
+		return moves;
+	}
+	
+	public int getConsts() {
+		return consts;
+	}
+	
+	public double getMoveRatio() {
+		return instructions == 0 ? 0 : (double) moves / instructions;
+	}
+	
+	public double getConstRatio() {
+		return instructions == 0 ? 0 : (double) consts / instructions;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d registers, %d instructions, %d code units, %.0f%% moves, %.0f%% consts", registers,
+				instructions, codeUnits, getMoveRatio() * 100, getConstRatio() * 100);
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import history.Phase;
+import history.Verdict;
+import main.ApkResult;
+import main.MainTesting;
+
+/*
+ * Owns the queue of APKs and their results for workers on other hosts (see Worker), which lease one APK at a time.
+ * A worker has to renew its lease with heartbeats while testing; if it does not, e.g. since its host died,
+ * the lease expires and the APK is handed to the next worker asking for one.
+ * The results are recorded here like in a local run, so history and summary log stay on the coordinator.
+ */
+public class Coordinator {
+	
+	private static final Logger LOG = LogManager.getLogger(Coordinator.class);
+	
+	// how often an APK is handed out again after its lease expired, before it gets the verdict ERROR
+	private static final int MAX_LEASES_PER_APK = 3;
+	
+	// how long workers are told to wait, if all remaining APKs are leased
+	private static final long WAIT_MILLIS = 5000;
+	
+	private static final int ACCEPT_TIMEOUT_MILLIS = 1000;
+	
+	private final int port;
+	
+	private final long leaseMillis;
+	
+	// in the order the APKs are handed out, expired APKs are put in front again
+	private final Deque<Job> pendingJobs = new ArrayDeque<Job>();
+	
+	private final Map<Long, Lease> leases = new HashMap<Long, Lease>();
+	
+	private long nextLeaseId = 1;
+	
+	private int unfinishedJobs;
+	
+	public Coordinator(int port, List<Path> orderedApks, long leaseMillis) {
+		this.port = port;
+		this.leaseMillis = leaseMillis;
+		for (Path apk : orderedApks) {
+			pendingJobs.add(new Job(apk));
+		}
+		this.unfinishedJobs = orderedApks.size();
+	}
+	
+	// serves workers until all APKs have a result
+	public void run() {
+		try (ServerSocket serverSocket = new ServerSocket(port)) {
+			serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+			LOG.info("coordinating {} APKs on port {}", unfinishedJobs, serverSocket.getLocalPort());
+			while (!isFinished()) {
+				expireLeases();
+				try {
+					serveInBackground(serverSocket.accept());
+				} catch (SocketTimeoutException e) {
+					// only there to expire leases and check for the end regularly
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while coordinating workers", e);
+		}
+		LOG.info("all APKs have a result");
+	}
+	
+	private void serveInBackground(final Socket socket) {
+		Thread connectionThread = new Thread("coordinator-" + socket.getRemoteSocketAddress()) {
+			@Override
+			public void run() {
+				try {
+					serve(socket);
+				} catch (EOFException e) {
+					LOG.info("worker at {} disconnected", socket.getRemoteSocketAddress());
+				} catch (IOException e) {
+					LOG.warn("IOException while serving worker at " + socket.getRemoteSocketAddress(), e);
+				} finally {
+					closeQuietly(socket);
+				}
+			}
+		};
+		connectionThread.setDaemon(true);
+		connectionThread.start();
+	}
+	
+	private void serve(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		String workerId = socket.getRemoteSocketAddress().toString();
+		while (true) {
+			String command = Protocol.readString(in);
+			if (command.equals(Protocol.HELLO)) {
+				workerId = Protocol.readString(in);
+				LOG.info("worker {} connected from {}", workerId, socket.getRemoteSocketAddress());
+				Protocol.writeString(out, Protocol.OK);
+			} else if (command.equals(Protocol.LEASE)) {
+				sendJob(out, workerId);
+			} else if (command.equals(Protocol.HEARTBEAT)) {
+				boolean renewed = renewLease(in.readLong());
+				Protocol.writeString(out, renewed ? Protocol.OK : Protocol.EXPIRED);
+			} else if (command.equals(Protocol.RESULT)) {
+				long leaseId = in.readLong();
+				Verdict verdict = Verdict.valueOf(Protocol.readString(in));
+				int runs = in.readInt();
+				int disagreeingRuns = in.readInt();
+				Map<Phase, Long> durationsMillis = Protocol.readDurations(in);
+				String failureLog = Protocol.readString(in);
+				Map<String, List<Double>> samples = Protocol.readSamples(in);
+				boolean accepted = completeLease(leaseId, verdict, runs, disagreeingRuns, durationsMillis, failureLog, samples);
+				Protocol.writeString(out, accepted ? Protocol.OK : Protocol.EXPIRED);
+			} else {
+				throw new IOException("unknown command from worker " + workerId + ": " + command);
+			}
+			out.flush();
+		}
+	}
+	
+	private void sendJob(DataOutputStream out, String workerId) throws IOException {
+		Lease lease = leaseNextJob(workerId);
+		if (lease == null) {
+			if (isFinished()) {
+				Protocol.writeString(out, Protocol.DONE);
+			} else {
+				Protocol.writeString(out, Protocol.WAIT);
+				out.writeLong(WAIT_MILLIS);
+			}
+			return;
+		}
+		Path apk = lease.job.apk;
+		LOG.info("leasing {} to worker {} (lease {}, attempt {})", apk, workerId, lease.id, lease.job.leaseCount);
+		Protocol.writeString(out, Protocol.JOB);
+		out.writeLong(lease.id);
+		Protocol.writeString(out, apk.getFileName().toString());
+		// the worker starts its heartbeats after the transfer, so the lease only starts expiring then
+		try {
+			long size = Files.size(apk);
+			out.writeLong(size);
+			try (InputStream apkStream = Files.newInputStream(apk)) {
+				Protocol.copy(apkStream, out, size);
+			}
+			out.flush();
+		} finally {
+			renewLease(lease.id);
+		}
+	}
+	
+	private synchronized Lease leaseNextJob(String workerId) {
+		Job job = pendingJobs.poll();
+		if (job == null) {
+			return null;
+		}
+		job.leaseCount++;
+		// does not expire while the APK is transferred, see sendJob
+		Lease lease = new Lease(nextLeaseId++, job, workerId, Long.MAX_VALUE);
+		leases.put(lease.id, lease);
+		MainTesting.getProgress().start(job.apk, workerId);
+		return lease;
+	}
+	
+	private synchronized boolean renewLease(long leaseId) {
+		Lease lease = leases.get(leaseId);
+		if (lease == null) {
+			return false;
+		}
+		lease.expiresAtMillis = System.currentTimeMillis() + leaseMillis;
+		return true;
+	}
+	
+	// returns false if the lease already expired, then the APK's result comes from another worker
+	private synchronized boolean completeLease(long leaseId, Verdict verdict, int runs, int disagreeingRuns,
+			Map<Phase, Long> durationsMillis, String failureLog, Map<String, List<Double>> samples) {
+		Lease lease = leases.remove(leaseId);
+		if (lease == null) {
+			LOG.warn("dropping result {} of expired lease {}", verdict, leaseId);
+			return false;
+		}
+		ApkResult result = new ApkResult(lease.job.apk);
+		result.setVerdict(verdict);
+		result.setRuns(runs, disagreeingRuns);
+		for (Map.Entry<Phase, Long> duration : durationsMillis.entrySet()) {
+			result.setDurationMillis(duration.getKey(), duration.getValue());
+		}
+		result.setFailureLog(failureLog);
+		for (Map.Entry<String, List<Double>> namedSamples : samples.entrySet()) {
+			for (double value : namedSamples.getValue()) {
+				result.addSample(namedSamples.getKey(), value);
+			}
+		}
+		if (!failureLog.isEmpty()) {
+			LOG.info("failure log of worker {} for {}:\n{}", lease.workerId, lease.job.apk, failureLog);
+		}
+		finish(result);
+		return true;
+	}
+	
+	private synchronized void expireLeases() {
+		long now = System.currentTimeMillis();
+		Iterator<Lease> leaseIterator = leases.values().iterator();
+		while (leaseIterator.hasNext()) {
+			Lease lease = leaseIterator.next();
+			if (lease.expiresAtMillis > now) {
+				continue;
+			}
+			leaseIterator.remove();
+			Job job = lease.job;
+			if (job.leaseCount < MAX_LEASES_PER_APK) {
+				LOG.warn("lease {} of worker {} for {} expired, reassigning it", lease.id, lease.workerId, job.apk);
+				pendingJobs.addFirst(job);
+				MainTesting.getProgress().requeue(job.apk);
+			} else {
+				LOG.warn("lease {} of worker {} for {} expired, giving up after {} leases", lease.id, lease.workerId,
+						job.apk, job.leaseCount);
+				ApkResult result = new ApkResult(job.apk);
+				result.setVerdict(Verdict.ERROR);
+				result.setFailureLog("leases expired " + job.leaseCount + " times");
+				finish(result);
+			}
+		}
+	}
+	
+	private synchronized void finish(ApkResult result) {
+		MainTesting.recordResult(result);
+		unfinishedJobs--;
+	}
+	
+	private synchronized boolean isFinished() {
+		return unfinishedJobs == 0;
+	}
+	
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			LOG.debug("IOException while closing worker connection", e);
+		}
+	}
+	
+	private static class Job {
+		
+		private final Path apk;
+		
+		private int leaseCount = 0;
+		
+		private Job(Path apk) {
+			this.apk = apk;
+		}
+	}
+	
+	private static class Lease {
+		
+		private final long id;
+		
+		private final Job job;
+		
+		private final String workerId;
+		
+		private long expiresAtMillis;
+		
+		private Lease(long id, Job job, String workerId, long expiresAtMillis) {
+			this.id = id;
+			this.job = job;
+			this.workerId = workerId;
+			this.expiresAtMillis = expiresAtMillis;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import history.Phase;
+
+/*
+ * The TCP protocol between coordinator and workers. The worker sends requests, the coordinator answers each
+ * with exactly one reply. Messages are a command string followed by its fields, strings as length and UTF-8 bytes:
+ *
+ * HELLO <worker id>                                     -> OK
+ * LEASE                                                 -> JOB <lease id> <APK name> <size> <APK bytes>, WAIT <millis> or DONE
+ * HEARTBEAT <lease id>                                  -> OK or EXPIRED
+ * RESULT <lease id> <verdict> <runs> <disagreeing runs> <durations> <failure log> <samples> -> OK or EXPIRED
+ *
+ * The durations are their count followed by pairs of phase name and milliseconds,
+ * the samples are their count followed by their name, number of values and the values.
+ */
+class Protocol {
+	
+	static final String HELLO = "HELLO";
+	
+	static final String LEASE = "LEASE";
+	
+	static final String JOB = "JOB";
+	
+	static final String WAIT = "WAIT";
+	
+	static final String DONE = "DONE";
+	
+	static final String HEARTBEAT = "HEARTBEAT";
+	
+	static final String RESULT = "RESULT";
+	
+	static final String OK = "OK";
+	
+	static final String EXPIRED = "EXPIRED";
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	// unlike writeUTF, not limited to 64 KB, which long failure logs might exceed
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	static void writeDurations(DataOutputStream out, Map<Phase, Long> durationsMillis) throws IOException {
+		out.writeInt(durationsMillis.size());
+		for (Map.Entry<Phase, Long> duration : durationsMillis.entrySet()) {
+			writeString(out, duration.getKey().name());
+			out.writeLong(duration.getValue());
+		}
+	}
+	
+	static Map<Phase, Long> readDurations(DataInputStream in) throws IOException {
+		Map<Phase, Long> durationsMillis = new EnumMap<Phase, Long>(Phase.class);
+		int count = in.readInt();
+		for (int durationIdx = 0; durationIdx < count; durationIdx++) {
+			Phase phase = Phase.valueOf(readString(in));
+			durationsMillis.put(phase, in.readLong());
+		}
+		return durationsMillis;
+	}
+	
+	static void writeSamples(DataOutputStream out, Map<String, List<Double>> samples) throws IOException {
+		out.writeInt(samples.size());
+		for (Map.Entry<String, List<Double>> namedSamples : samples.entrySet()) {
+			writeString(out, namedSamples.getKey());
+			out.writeInt(namedSamples.getValue().size());
+			for (double value : namedSamples.getValue()) {
+				out.writeDouble(value);
+			}
+		}
+	}
+	
+	static Map<String, List<Double>> readSamples(DataInputStream in) throws IOException {
+		Map<String, List<Double>> samples = new TreeMap<String, List<Double>>();
+		int count = in.readInt();
+		for (int samplesIdx = 0; samplesIdx < count; samplesIdx++) {
+			String name = readString(in);
+			int valueCount = in.readInt();
+			List<Double> values = new ArrayList<Double>(valueCount);
+			for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
+				values.add(in.readDouble());
+			}
+			samples.put(name, values);
+		}
+		return samples;
+	}
+	
+	// copies exactly size bytes, so the stream can be used for further messages afterwards
+	static void copy(InputStream in, OutputStream out, long size) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long remaining = size;
+		while (remaining > 0) {
+			int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (read == -1) {
+				throw new IOException("stream ended with " + remaining + " of " + size + " bytes missing");
+			}
+			out.write(buffer, 0, read);
+			remaining -= read;
+		}
+	}
+}
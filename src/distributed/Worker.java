@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import main.ApkResult;
+import main.Emulator;
+import main.MainTesting;
+
+/*
+ * Tests APKs leased from a Coordinator with the local emulator, like MainTesting does for local APKs (including
+ * reruns, if todex.maxRuns allows them), and sends back verdict, runs, phase durations and failure log.
+ * Several workers can share one host, as long as each has its own work folder and emulator.
+ */
+public class Worker {
+	
+	private static final Logger LOG = LogManager.getLogger(Worker.class);
+	
+	private final String host;
+	
+	private final int port;
+	
+	private final String workerId;
+	
+	// the leased APKs are stored here, named like on the coordinator, so converted APKs get the same names
+	private final Path workDir;
+	
+	private final long heartbeatMillis;
+	
+	private final Emulator emulator = new Emulator();
+	
+	private DataInputStream in;
+	
+	private DataOutputStream out;
+	
+	public Worker(String host, int port, String workerId, Path workDir, long heartbeatMillis) {
+		this.host = host;
+		this.port = port;
+		this.workerId = workerId;
+		this.workDir = workDir;
+		this.heartbeatMillis = heartbeatMillis;
+	}
+	
+	// tests leased APKs until the coordinator has no more
+	public void run() throws InterruptedException {
+		try (Socket socket = new Socket(host, port)) {
+			Files.createDirectories(workDir);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			request(Protocol.HELLO, workerId);
+			LOG.info("worker {} connected to coordinator at {}:{}", workerId, host, port);
+			while (leaseAndTestApk()) {
+				// until done
+			}
+		} catch (EOFException e) {
+			LOG.info("coordinator at {}:{} closed the connection", host, port);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while working for coordinator at " + host + ":" + port, e);
+		}
+		LOG.info("worker {} is done", workerId);
+	}
+	
+	// returns false if there are no more APKs
+	private boolean leaseAndTestApk() throws IOException, InterruptedException {
+		long leaseId;
+		Path apk;
+		synchronized (this) {
+			Protocol.writeString(out, Protocol.LEASE);
+			out.flush();
+			String reply = Protocol.readString(in);
+			if (reply.equals(Protocol.DONE)) {
+				return false;
+			} else if (reply.equals(Protocol.WAIT)) {
+				Thread.sleep(in.readLong());
+				return true;
+			}
+			leaseId = in.readLong();
+			apk = workDir.resolve(Protocol.readString(in)).toAbsolutePath();
+			try (OutputStream apkStream = Files.newOutputStream(apk)) {
+				Protocol.copy(in, apkStream, in.readLong());
+			}
+		}
+		LOG.info("testing {} (lease {})", apk, leaseId);
+		HeartbeatThread heartbeatThread = new HeartbeatThread(leaseId);
+		heartbeatThread.start();
+		ApkResult result;
+		try {
+			result = MainTesting.testApkRerunningIfEnabled(emulator, apk);
+		} finally {
+			heartbeatThread.interrupt();
+			heartbeatThread.join();
+		}
+		sendResult(leaseId, result);
+		Files.deleteIfExists(apk);
+		return true;
+	}
+	
+	private synchronized void sendResult(long leaseId, ApkResult result) throws IOException {
+		Protocol.writeString(out, Protocol.RESULT);
+		out.writeLong(leaseId);
+		Protocol.writeString(out, result.getVerdict().name());
+		out.writeInt(result.getRuns());
+		out.writeInt(result.getDisagreeingRuns());
+		Protocol.writeDurations(out, result.getDurationsMillis());
+		Protocol.writeString(out, result.getFailureLog());
+		Protocol.writeSamples(out, result.getSamples());
+		out.flush();
+		if (Protocol.readString(in).equals(Protocol.EXPIRED)) {
+			LOG.warn("lease {} expired before its result was sent, it was dropped", leaseId);
+		}
+	}
+	
+	// returns false if the lease expired
+	private synchronized boolean sendHeartbeat(long leaseId) throws IOException {
+		Protocol.writeString(out, Protocol.HEARTBEAT);
+		out.writeLong(leaseId);
+		out.flush();
+		return Protocol.readString(in).equals(Protocol.OK);
+	}
+	
+	private synchronized void request(String command, String argument) throws IOException {
+		Protocol.writeString(out, command);
+		Protocol.writeString(out, argument);
+		out.flush();
+		String reply = Protocol.readString(in);
+		if (!reply.equals(Protocol.OK)) {
+			throw new IOException("coordinator replied " + reply + " to " + command);
+		}
+	}
+	
+	// keeps the lease while the (single-threaded) test runs
+	private class HeartbeatThread extends Thread {
+		
+		private final long leaseId;
+		
+		private HeartbeatThread(long leaseId) {
+			super("heartbeat-" + leaseId);
+			this.leaseId = leaseId;
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted()) {
+					Thread.sleep(heartbeatMillis);
+					if (!sendHeartbeat(leaseId)) {
+						LOG.warn("lease {} expired, the result will be dropped", leaseId);
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				// test is finished
+			} catch (IOException e) {
+				LOG.warn("IOException while sending heartbeat for lease " + leaseId, e);
+			}
+		}
+	}
+}
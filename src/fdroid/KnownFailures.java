@@ -45,19 +45,11 @@ public class KnownFailures {
 		/*
 		 * errors due to the environment
 		 */
-		// "Failure [INSTALL_FAILED_MISSING_SHARED_LIBRARY]" / "Package X requires unavailable shared library com.google.android.maps; failing!"
-		environmentFailApks.add("net.codechunk.speedofsound_8.apk");
-		environmentFailApks.add("to.networld.android.divedroid_1.apk");
-		environmentFailApks.add("OpenGPSTracker_1.3.2-osmupdate.apk");
-		environmentFailApks.add("org.mixare_20.apk");
-		environmentFailApks.add("com.showmehills_4.apk");
-		// "java.lang.UnsatisfiedLinkError: Couldn't load X: findLibrary returned null"
-		environmentFailApks.add("com.jecelyin.editor_32.apk");
-		environmentFailApks.add("eu.domob.anacam_10100.apk");
-		environmentFailApks.add("net.tedstein.AndroSS_17.apk");
-		environmentFailApks.add("com.dozingcatsoftware.bouncy_11.apk");
-		environmentFailApks.add("org.coolreader_509.apk");
-		environmentFailApks.add("org.eehouse.android.xw4_31.apk");
+		/*
+		 * missing shared libraries like com.google.android.maps and native libraries for other ABIs
+		 * ("java.lang.UnsatisfiedLinkError: Couldn't load X: findLibrary returned null") are found
+		 * by main.Preflight, so only list failures here which cannot be seen in the APK itself
+		 */
 		// "java.io.FileNotFoundException: /mnt/sdcard/zoffcc/applications/aagtl/config/cookie.txt: open failed: ENOENT (No such file or directory)"
 		environmentFailApks.add("com.zoffcc.applications.aagtl_31.apk");
 		// "java.io.FileNotFoundException: /proc/net/xt_qtaguid/stats: open failed: ENOENT (No such file or directory)"
@@ -83,9 +75,7 @@ public class KnownFailures {
 		/*
 		 * errors due to soot shortcomings
 		 */
-		// these use API level 16 (like the field android.content.pm.ActivityInfo.parentActivityName), which we do not have an android.jar for yet
-		sootShortcomingsFailApks.add("org.andstatus.app_61.apk");
-		sootShortcomingsFailApks.add("CSipSimple-0.04-01.apk");
+		// APKs targeting a newer API level than our android.jar (like 16, with ActivityInfo.parentActivityName) are found by main.Preflight
 		// leads to an InternalTypingException, see http://www.sable.mcgill.ca/pipermail/soot-list/2012-October/004916.html
 		sootShortcomingsFailApks.add("com.drismo_17.apk");
 		/*
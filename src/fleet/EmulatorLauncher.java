@@ -0,0 +1,26 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fleet;
+
+// starts and kills the emulators of a Fleet
+public interface EmulatorLauncher {
+	
+	// starts a headless emulator with the console port (so its serial is "emulator-<port>"), without waiting for its boot
+	void launch(int port);
+	
+	void kill(String serial);
+}
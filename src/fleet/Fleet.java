@@ -0,0 +1,354 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fleet;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+import main.Settings;
+import os.Commands;
+
+/*
+ * Headless emulators started on demand: tests acquire an emulator and release it afterwards. The fleet grows
+ * with the tests waiting for an emulator, as long as the host has CPU and memory left, and shrinks when
+ * emulators idle. After each test, the emulator is probed (see HealthProbe), and unhealthy or aged ones
+ * are drained and killed, so a long campaign does not slow down on degrading emulators.
+ */
+public class Fleet {
+	
+	private static final Logger LOG = LogManager.getLogger(Fleet.class);
+	
+	private static final Marker SUMMARY_MARKER = MarkerManager.getMarker("SUMMARY");
+	
+	private static final int FIRST_PORT = 5554;
+	
+	// adb looks for emulators on the ports up to 5585
+	private static final int LAST_PORT = 5584;
+	
+	// boots failing in a row, after which no more emulators are launched
+	private static final int MAX_FAILED_BOOTS = 3;
+	
+	private static final long BOOT_POLL_MILLIS = 2000;
+	
+	private final EmulatorLauncher launcher;
+	
+	private final HealthProbe probe = new HealthProbe(Settings.getMinFreeDataKb());
+	
+	private final int minEmulators = Settings.getFleetMinEmulators();
+	
+	private final int maxEmulators = Settings.getFleetMaxEmulators();
+	
+	// all emulators which are not retired, guarded by this like all mutable state
+	private final List<FleetEmulator> emulators = new ArrayList<FleetEmulator>();
+	
+	// of the emulators and of the retired ones still shutting down
+	private final Set<Integer> usedPorts = new HashSet<Integer>();
+	
+	private int failedBoots = 0;
+	
+	private int launches = 0;
+	
+	private int retirements = 0;
+	
+	private boolean shutdown = false;
+	
+	public Fleet(EmulatorLauncher launcher) {
+		this.launcher = launcher;
+	}
+	
+	/*
+	 * waits for an idle emulator, launching one if the fleet is below the demand of this test and the ones
+	 * waiting for it. Throws an Error if emulators fail to boot repeatedly, like the single Emulator does.
+	 */
+	public FleetEmulator acquire(int waitingTests) throws InterruptedException {
+		while (true) {
+			int demand;
+			boolean needsEmulator;
+			synchronized (this) {
+				if (shutdown) {
+					throw new IllegalStateException("fleet is shut down");
+				}
+				FleetEmulator idleEmulator = findEmulator(FleetEmulator.State.IDLE);
+				if (idleEmulator != null) {
+					idleEmulator.setState(FleetEmulator.State.BUSY);
+					return idleEmulator;
+				}
+				if (failedBoots >= MAX_FAILED_BOOTS && emulators.isEmpty()) {
+					throw new Error("no running emulator found, the last " + failedBoots + " emulator(s) of the fleet did not boot");
+				}
+				demand = countEmulators(FleetEmulator.State.BUSY) + 1 + waitingTests;
+				needsEmulator = scale(demand);
+			}
+			if (needsEmulator) {
+				launch(demand, Commands.getDevices());
+			}
+			synchronized (this) {
+				if (findEmulator(FleetEmulator.State.IDLE) == null && !shutdown) {
+					wait(BOOT_POLL_MILLIS);
+				}
+			}
+		}
+	}
+	
+	// probes the emulator after a test and either keeps it or retires it
+	public void release(FleetEmulator emulator, int waitingTests) {
+		emulator.countTest();
+		String recycleReason = getRecycleReason(emulator);
+		int demand;
+		boolean needsEmulator;
+		synchronized (this) {
+			if (!recycleReason.isEmpty()) {
+				retire(emulator, recycleReason);
+			} else if (emulator.getState() == FleetEmulator.State.DRAINING) {
+				retire(emulator, "drained");
+			} else {
+				emulator.setState(FleetEmulator.State.IDLE);
+			}
+			demand = countEmulators(FleetEmulator.State.BUSY) + waitingTests;
+			needsEmulator = scale(demand);
+			notifyAll();
+		}
+		if (needsEmulator) {
+			launch(demand, Commands.getDevices());
+		}
+	}
+	
+	// kills the emulator once it is not running a test anymore
+	public synchronized void drain(String serial) {
+		for (FleetEmulator emulator : new ArrayList<FleetEmulator>(emulators)) {
+			if (!emulator.getSerial().equals(serial)) {
+				continue;
+			}
+			if (emulator.getState() == FleetEmulator.State.IDLE) {
+				retire(emulator, "drained");
+			} else {
+				emulator.setState(FleetEmulator.State.DRAINING);
+			}
+		}
+	}
+	
+	// drains all emulators and waits until they are shut down
+	public synchronized void shutdown() throws InterruptedException {
+		shutdown = true;
+		for (FleetEmulator emulator : new ArrayList<FleetEmulator>(emulators)) {
+			drain(emulator.getSerial());
+		}
+		while (!usedPorts.isEmpty()) {
+			wait();
+		}
+		LOG.info(SUMMARY_MARKER, "fleet shut down after {} launch(es) and {} retirement(s) of emulators", launches, retirements);
+	}
+	
+	public synchronized int size() {
+		return emulators.size();
+	}
+	
+	private String getRecycleReason(FleetEmulator emulator) {
+		int maxTests = Settings.getEmulatorMaxTests();
+		if (emulator.getTestCount() >= maxTests) {
+			return "ran " + emulator.getTestCount() + " test(s)";
+		}
+		long maxAgeMillis = Settings.getEmulatorMaxAgeMillis();
+		if (emulator.getAgeMillis() >= maxAgeMillis) {
+			return "running for " + emulator.getAgeMillis() / 60000 + " minute(s)";
+		}
+		return probe.probe(emulator.getSerial());
+	}
+	
+	/*
+	 * retires idle emulators above the demand, and returns whether another emulator should be launched for it
+	 * (limited by fleet size and host headroom). Listing the devices for a launch takes adb, so that is left
+	 * to the caller, without holding the fleet.
+	 */
+	private boolean scale(int demand) {
+		if (shutdown) {
+			return false;
+		}
+		int target = Math.max(minEmulators, Math.min(maxEmulators, demand));
+		while (emulators.size() > target) {
+			FleetEmulator idleEmulator = findEmulator(FleetEmulator.State.IDLE);
+			if (idleEmulator == null) {
+				break;
+			}
+			retire(idleEmulator, "not needed anymore");
+		}
+		if (emulators.size() >= target || failedBoots >= MAX_FAILED_BOOTS) {
+			return false;
+		}
+		// without any emulator, one is launched even on a busy host, otherwise no test could run at all
+		return emulators.isEmpty() || hasHeadroom(countEmulators(FleetEmulator.State.BOOTING));
+	}
+	
+	// the devices are listed before, the fleet may have changed since then
+	private synchronized void launch(int demand, String devices) {
+		if (!scale(demand)) {
+			return;
+		}
+		int port = findFreePort(devices);
+		if (port == -1) {
+			LOG.warn("no free emulator port left, fleet stays at {} emulator(s)", emulators.size());
+			return;
+		}
+		final FleetEmulator emulator = new FleetEmulator(port);
+		emulators.add(emulator);
+		usedPorts.add(port);
+		launches++;
+		LOG.info("launching emulator {}, fleet has {} emulator(s) now", emulator, emulators.size());
+		Thread bootThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				boot(emulator);
+			}
+		}, "fleetBoot-" + emulator);
+		bootThread.setDaemon(true);
+		bootThread.start();
+	}
+	
+	private void boot(FleetEmulator emulator) {
+		boolean booted = false;
+		try {
+			launcher.launch(emulator.getPort());
+			long deadline = System.currentTimeMillis() + Settings.getEmulatorBootMillis();
+			booted = probe.isBooted(emulator.getSerial());
+			while (!booted && System.currentTimeMillis() < deadline) {
+				Thread.sleep(BOOT_POLL_MILLIS);
+				booted = probe.isBooted(emulator.getSerial());
+			}
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while launching emulator " + emulator, e);
+		} catch (InterruptedException e) {
+			LOG.warn("InterruptedException while waiting for emulator {} to boot", emulator);
+		}
+		synchronized (this) {
+			if (!booted) {
+				failedBoots++;
+				retire(emulator, "did not boot in time");
+			} else if (emulator.getState() == FleetEmulator.State.DRAINING || shutdown) {
+				failedBoots = 0;
+				retire(emulator, "drained");
+			} else {
+				failedBoots = 0;
+				LOG.info("emulator {} booted", emulator);
+				emulator.setState(FleetEmulator.State.IDLE);
+			}
+			notifyAll();
+		}
+	}
+	
+	private void retire(final FleetEmulator emulator, String reason) {
+		emulators.remove(emulator);
+		retirements++;
+		LOG.info(SUMMARY_MARKER, "retiring emulator {} after {} test(s): {}", emulator, emulator.getTestCount(), reason);
+		Thread killThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					launcher.kill(emulator.getSerial());
+				} catch (RuntimeException e) {
+					LOG.warn("RuntimeException while killing emulator " + emulator, e);
+				}
+				synchronized (Fleet.this) {
+					usedPorts.remove(emulator.getPort());
+					Fleet.this.notifyAll();
+				}
+			}
+		}, "fleetKill-" + emulator);
+		killThread.setDaemon(true);
+		killThread.start();
+	}
+	
+	// -1 if all ports are taken, by the fleet or by emulators started otherwise
+	private int findFreePort(String devices) {
+		for (int port = FIRST_PORT; port <= LAST_PORT; port += 2) {
+			if (!usedPorts.contains(port) && !devices.contains("emulator-" + port + "\t")) {
+				return port;
+			}
+		}
+		return -1;
+	}
+	
+	// whether another emulator fits next to the running ones and the ones booting (which do not show in the load yet)
+	private boolean hasHeadroom(int booting) {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		double load = os.getSystemLoadAverage();
+		int emulatorCores = Settings.getEmulatorCores();
+		if (load >= 0 && load + (booting + 1) * emulatorCores > os.getAvailableProcessors()) {
+			LOG.debug("no CPU headroom for another emulator, load average is {}", load);
+			return false;
+		}
+		long availableMb = getAvailableMemoryMb();
+		long emulatorMb = Settings.getEmulatorMemoryMb();
+		if (availableMb != -1 && availableMb - booting * emulatorMb < emulatorMb) {
+			LOG.debug("no memory headroom for another emulator, {} MB available", availableMb);
+			return false;
+		}
+		return true;
+	}
+	
+	// from /proc/meminfo (Linux), -1 if unknown
+	private static long getAvailableMemoryMb() {
+		Path meminfo = Paths.get("/proc/meminfo");
+		if (!Files.isReadable(meminfo)) {
+			return -1;
+		}
+		try {
+			for (String line : Files.readAllLines(meminfo, StandardCharsets.US_ASCII)) {
+				// like "MemAvailable:    8123456 kB"
+				if (line.startsWith("MemAvailable:")) {
+					String kb = line.substring("MemAvailable:".length()).replace("kB", "").trim();
+					return Long.parseLong(kb) / 1024;
+				}
+			}
+		} catch (IOException e) {
+			LOG.warn("IOException while reading available memory", e);
+		}
+		return -1;
+	}
+	
+	private FleetEmulator findEmulator(FleetEmulator.State state) {
+		for (FleetEmulator emulator : emulators) {
+			if (emulator.getState() == state) {
+				return emulator;
+			}
+		}
+		return null;
+	}
+	
+	private int countEmulators(FleetEmulator.State state) {
+		int count = 0;
+		for (FleetEmulator emulator : emulators) {
+			if (emulator.getState() == state) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fleet;
+
+import main.Emulator;
+
+// one emulator of a Fleet, with the main.Emulator the tests use while they have it acquired
+public class FleetEmulator {
+	
+	public enum State {
+		// launched, but not booted yet
+		BOOTING,
+		IDLE,
+		// acquired for a test
+		BUSY,
+		// killed after the test running on it
+		DRAINING
+	}
+	
+	private final String serial;
+	
+	private final int port;
+	
+	private final long launchMillis;
+	
+	// remembers the installed packages, so it has to be a new one for every launch
+	private final Emulator emulator = new Emulator();
+	
+	private State state = State.BOOTING;
+	
+	private int testCount = 0;
+	
+	FleetEmulator(int port) {
+		this.serial = "emulator-" + port;
+		this.port = port;
+		this.launchMillis = System.currentTimeMillis();
+	}
+	
+	public String getSerial() {
+		return serial;
+	}
+	
+	int getPort() {
+		return port;
+	}
+	
+	public Emulator getEmulator() {
+		return emulator;
+	}
+	
+	State getState() {
+		return state;
+	}
+	
+	void setState(State state) {
+		this.state = state;
+	}
+	
+	int getTestCount() {
+		return testCount;
+	}
+	
+	void countTest() {
+		testCount++;
+	}
+	
+	long getAgeMillis() {
+		return System.currentTimeMillis() - launchMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return serial;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fleet;
+
+import os.Commands;
+
+/*
+ * Checks whether an emulator of the Fleet can still run tests: it has to be online for adb, booted, have
+ * free space on its data partition, and must not show a dialog for an app not responding or crashed.
+ */
+public class HealthProbe {
+	
+	// the focused window is a system dialog then
+	private static final String[] DIALOG_FOCUSES = { "Application Not Responding", "Application Error" };
+	
+	private final long minFreeDataKb;
+	
+	public HealthProbe(long minFreeDataKb) {
+		this.minFreeDataKb = minFreeDataKb;
+	}
+	
+	public boolean isBooted(String serial) {
+		try {
+			return Commands.getState(serial).trim().equals("device") && Commands.getBootCompleted(serial).trim().equals("1");
+		} catch (RuntimeException e) {
+			return false; // adb fails while the emulator is offline
+		}
+	}
+	
+	// why the emulator is unhealthy, empty if it is healthy
+	public String probe(String serial) {
+		try {
+			String state = Commands.getState(serial).trim();
+			if (!state.equals("device")) {
+				return "adb state is " + state;
+			}
+			if (!Commands.getBootCompleted(serial).trim().equals("1")) {
+				return "not booted anymore";
+			}
+			long freeDataKb = parseFreeKb(Commands.getDataPartition(serial));
+			if (freeDataKb != -1 && freeDataKb < minFreeDataKb) {
+				return "only " + freeDataKb + " KB free on /data";
+			}
+			String focus = getFocus(Commands.getWindows(serial));
+			for (String dialogFocus : DIALOG_FOCUSES) {
+				if (focus.contains(dialogFocus)) {
+					return "shows the dialog " + focus;
+				}
+			}
+		} catch (RuntimeException e) {
+			return "adb failed: " + e.getMessage();
+		}
+		return "";
+	}
+	
+	// like "Window{41b2c8e8 u0 Application Not Responding: org.example.app}", empty if not found
+	private static String getFocus(String windows) {
+		for (String line : windows.split("\n")) {
+			int focusIdx = line.indexOf("mCurrentFocus=");
+			if (focusIdx != -1) {
+				return line.substring(focusIdx + "mCurrentFocus=".length()).trim();
+			}
+		}
+		return "";
+	}
+	
+	/*
+	 * free KB on /data from "df /data", -1 if unknown. toybox prints 1K blocks like
+	 * "/dev/block/vdb 2031440 300000 1731440 15% /data", the older toolbox sizes with unit like "/data 774.9M 120.3M 654.6M 4096".
+	 */
+	static long parseFreeKb(String dfOutput) {
+		String[] lines = dfOutput.split("\n");
+		boolean isToybox = lines.length > 0 && lines[0].contains("Available");
+		for (String line : lines) {
+			String[] columns = line.trim().split("\\s+");
+			if (columns.length < 4 || !line.contains("/data")) {
+				continue;
+			}
+			try {
+				if (isToybox) {
+					return Long.parseLong(columns[3]);
+				}
+				return parseSizeKb(columns[3]);
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+	
+	private static long parseSizeKb(String size) {
+		String units = "KMG";
+		int unitIdx = units.indexOf(size.charAt(size.length() - 1));
+		if (unitIdx == -1) {
+			return Long.parseLong(size) / 1024; // bytes
+		}
+		double value = Double.parseDouble(size.substring(0, size.length() - 1));
+		return (long) (value * Math.pow(1024, unitIdx));
+	}
+}
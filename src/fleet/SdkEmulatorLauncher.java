@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fleet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import os.Commands;
+
+// launches the emulator of the Android SDK with an AVD, see Commands.startEmulator
+public class SdkEmulatorLauncher implements EmulatorLauncher {
+	
+	private static final Logger LOG = LogManager.getLogger(SdkEmulatorLauncher.class);
+	
+	// after "emu kill", before the process is destroyed
+	private static final long KILL_TIMEOUT_MILLIS = 30000;
+	
+	private static final long POLL_MILLIS = 500;
+	
+	private final String avd;
+	
+	// for the output of the emulators, one file per serial
+	private final Path outputDir;
+	
+	private final Map<String, Process> processes = new HashMap<String, Process>();
+	
+	public SdkEmulatorLauncher(String avd, Path outputDir) {
+		this.avd = avd;
+		this.outputDir = outputDir;
+	}
+	
+	@Override
+	public void launch(int port) {
+		String serial = "emulator-" + port;
+		try {
+			Files.createDirectories(outputDir);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while creating folder for emulator output " + outputDir, e);
+		}
+		Process process = Commands.startEmulator(avd, port, outputDir.resolve(serial + ".log"));
+		synchronized (processes) {
+			processes.put(serial, process);
+		}
+	}
+	
+	@Override
+	public void kill(String serial) {
+		Process process;
+		synchronized (processes) {
+			process = processes.remove(serial);
+		}
+		try {
+			Commands.killEmulator(serial);
+		} catch (RuntimeException e) {
+			LOG.warn("could not kill emulator " + serial + " via its console, waiting for its process", e);
+		}
+		if (process == null) {
+			return;
+		}
+		long deadline = System.currentTimeMillis() + KILL_TIMEOUT_MILLIS;
+		while (isAlive(process) && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(POLL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (isAlive(process)) {
+			LOG.warn("emulator {} did not shut down in time, destroying its process", serial);
+			process.destroy();
+		}
+	}
+	
+	private static boolean isAlive(Process process) {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fleet;
+
+import simulator.AdbSimulator;
+
+/*
+ * Stand-in launcher, which adds devices to an AdbSimulator instead of starting emulators, for trying
+ * the Fleet on hosts without Android SDK or KVM. Use it with os.SimulatorOS.
+ */
+public class SimulatedEmulatorLauncher implements EmulatorLauncher {
+	
+	private final AdbSimulator simulator;
+	
+	public SimulatedEmulatorLauncher(AdbSimulator simulator) {
+		this.simulator = simulator;
+	}
+	
+	@Override
+	public void launch(int port) {
+		simulator.addDevice("emulator-" + port);
+	}
+	
+	@Override
+	public void kill(String serial) {
+		simulator.removeDevice(serial);
+	}
+}
@@ -42,7 +42,10 @@ import soot.jimple.StmtSwitch;
 import soot.jimple.TableSwitchStmt;
 import soot.jimple.ThrowStmt;
 
-// Tranformer that transforms at most one statement in one body of soot's input
+/*
+ * Tranformer that transforms at most one statement in one body of soot's input. Soot may transform several
+ * bodies at once, so the state of a fuzzer (and of the operators a HigherOrderFuzzer uses) is guarded by its lock.
+ */
 public abstract class AbstractFuzzer extends BodyTransformer implements StmtSwitch {
 	
 	protected boolean hasTransformedOnce = false;
@@ -51,25 +54,44 @@ public abstract class AbstractFuzzer extends BodyTransformer implements StmtSwit
 	
 	protected final Logger LOG;
 	
+	// the body whose statements are visited, for transformations beyond the statement itself
+	protected Body body;
+	
 	public AbstractFuzzer(String name) {
 		this.name = name;
 		this.LOG = LogManager.getLogger(name);
 	}
 	
 	@Override
-	protected void internalTransform(Body b, String phaseName, @SuppressWarnings("rawtypes") Map options) {
+	protected synchronized void internalTransform(Body b, String phaseName, @SuppressWarnings("rawtypes") Map options) {
 		if (hasTransformedOnce) {
 			return;
 		}
+		mutate(b);
+	}
+	
+	// visits the statements of the body until one is transformed, returns whether one was
+	protected boolean mutate(Body b) {
+		body = b;
 		for (Unit u : b.getUnits()) {
 			if (u instanceof Stmt) {
 				u.apply(this);
 				if (hasTransformedOnce) {
-					LOG.debug("{} transformed statement {} in method {}", name, b.getMethod(), u);
-					break;
+					LOG.debug("{} transformed statement {} in method {}", name, u, b.getMethod());
+					return true;
 				}
 			}
 		}
+		return false;
+	}
+	
+	// allows transforming once more, e.g. another body for a HigherOrderFuzzer
+	public synchronized void reset() {
+		hasTransformedOnce = false;
+	}
+	
+	public String getName() {
+		return name;
 	}
 	
 	@Override
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import soot.Value;
+import soot.jimple.ConditionExpr;
+import soot.jimple.EqExpr;
+import soot.jimple.GeExpr;
+import soot.jimple.GtExpr;
+import soot.jimple.IfStmt;
+import soot.jimple.Jimple;
+import soot.jimple.LeExpr;
+import soot.jimple.LtExpr;
+import soot.jimple.NeExpr;
+
+// negates the condition of the first if statement, so the branch is taken exactly when it was not
+public class BranchInversionFuzzer extends AbstractFuzzer {
+	
+	public BranchInversionFuzzer() {
+		super("BranchInversion fuzzer");
+	}
+	
+	@Override
+	public void caseIfStmt(IfStmt stmt) {
+		Value negatedCondition = negate((ConditionExpr) stmt.getCondition());
+		if (negatedCondition != null) {
+			stmt.setCondition(negatedCondition);
+			hasTransformedOnce = true;
+		}
+	}
+	
+	private Value negate(ConditionExpr condition) {
+		Value op1 = condition.getOp1();
+		Value op2 = condition.getOp2();
+		if (condition instanceof EqExpr) {
+			return Jimple.v().newNeExpr(op1, op2);
+		} else if (condition instanceof NeExpr) {
+			return Jimple.v().newEqExpr(op1, op2);
+		} else if (condition instanceof LtExpr) {
+			return Jimple.v().newGeExpr(op1, op2);
+		} else if (condition instanceof GeExpr) {
+			return Jimple.v().newLtExpr(op1, op2);
+		} else if (condition instanceof GtExpr) {
+			return Jimple.v().newLeExpr(op1, op2);
+		} else if (condition instanceof LeExpr) {
+			return Jimple.v().newGtExpr(op1, op2);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+// off-by-one errors: increments the first integer constant, including zeros, which the IntConstantFuzzer leaves alone
+public class ConstantPerturbationFuzzer extends IntConstantFuzzer {
+	
+	public ConstantPerturbationFuzzer() {
+		super("ConstantPerturbation fuzzer");
+	}
+	
+	// booleans are only incremented from false to true
+	@Override
+	protected boolean shouldBeReplaced(int value) {
+		return true;
+	}
+	
+	@Override
+	protected int replace(int value) {
+		return value + 1;
+	}
+	
+	// incrementing only one bound would no longer match the number of targets
+	@Override
+	protected boolean replacesTableSwitchIndices() {
+		return false;
+	}
+}
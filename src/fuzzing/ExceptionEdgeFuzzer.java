@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import soot.Body;
+import soot.Trap;
+import soot.Unit;
+
+/*
+ * Shrinks the range of the first try block covering more than one statement down to its first statement,
+ * so exceptions thrown by the other statements do not reach the handler anymore.
+ * Unlike the other fuzzers, it transforms the traps of a body, not a statement.
+ */
+public class ExceptionEdgeFuzzer extends AbstractFuzzer {
+	
+	public ExceptionEdgeFuzzer() {
+		super("ExceptionEdge fuzzer");
+	}
+	
+	@Override
+	protected boolean mutate(Body b) {
+		body = b;
+		for (Trap trap : b.getTraps()) {
+			// the end unit is the first one not covered anymore
+			Unit secondUnit = b.getUnits().getSuccOf(trap.getBeginUnit());
+			if (secondUnit != null && secondUnit != trap.getEndUnit()) {
+				trap.setEndUnit(secondUnit);
+				hasTransformedOnce = true;
+				LOG.debug("{} shrank trap with handler {} in method {}", name, trap.getHandlerUnit(), b.getMethod());
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * The mutation operators, by the names used in the settings (see main.Settings.getFuzzers()).
+ * Further operators only need a public no-argument constructor and to be registered here.
+ */
+public class FuzzerRegistry {
+	
+	public static final String ALL = "all";
+	
+	private static final Map<String, Class<? extends AbstractFuzzer>> FUZZERS = new LinkedHashMap<String, Class<? extends AbstractFuzzer>>();
+	
+	static {
+		register("intConstant", IntConstantFuzzer.class);
+		register("constantPerturbation", ConstantPerturbationFuzzer.class);
+		register("branchInversion", BranchInversionFuzzer.class);
+		register("switchTargetShuffle", SwitchTargetShuffleFuzzer.class);
+		register("invokeArgumentSwap", InvokeArgumentSwapFuzzer.class);
+		register("monitor", MonitorFuzzer.class);
+		register("exceptionEdge", ExceptionEdgeFuzzer.class);
+	}
+	
+	public static void register(String name, Class<? extends AbstractFuzzer> fuzzerClass) {
+		FUZZERS.put(name, fuzzerClass);
+	}
+	
+	public static Set<String> getNames() {
+		return FUZZERS.keySet();
+	}
+	
+	public static AbstractFuzzer create(String name) {
+		Class<? extends AbstractFuzzer> fuzzerClass = FUZZERS.get(name);
+		if (fuzzerClass == null) {
+			throw new IllegalArgumentException("unknown fuzzer " + name + ", known are " + getNames());
+		}
+		try {
+			return fuzzerClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RuntimeException("Exception while creating fuzzer " + name, e);
+		}
+	}
+	
+	// new instances for the given names, "all" for all registered operators
+	public static List<AbstractFuzzer> createAll(List<String> names) {
+		List<String> selectedNames = new ArrayList<String>(names);
+		if (selectedNames.contains(ALL)) {
+			selectedNames = new ArrayList<String>(getNames());
+		}
+		List<AbstractFuzzer> fuzzers = new ArrayList<AbstractFuzzer>();
+		for (String name : selectedNames) {
+			fuzzers.add(create(name));
+		}
+		return fuzzers;
+	}
+}
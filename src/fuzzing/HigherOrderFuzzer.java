@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import soot.Body;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+/*
+ * Higher-order mutant: applies up to "order" independent mutations, each in a different method, each by one
+ * of the given operators. The methods are chosen up front from the sorted signatures of all application methods,
+ * and the operators tried on a method only depend on the seed and its signature, so the same seed gives the same
+ * mutant, whatever order Soot transforms the bodies in. A chosen method none of the operators applies to
+ * leaves the mutant with fewer mutations.
+ */
+public class HigherOrderFuzzer extends AbstractFuzzer {
+	
+	private final List<AbstractFuzzer> operators;
+	
+	private final int order;
+	
+	private final long seed;
+	
+	// "<operator name>: <method signature>" for each applied mutation
+	private final List<String> mutations = new ArrayList<String>();
+	
+	// signatures of the methods to mutate, null until the first body is transformed
+	private Set<String> chosenMethods = null;
+	
+	// chosen methods whose bodies were transformed (or tried to)
+	private int visitedMethods = 0;
+	
+	public HigherOrderFuzzer(List<AbstractFuzzer> operators, int order, long seed) {
+		super("HigherOrder fuzzer");
+		if (operators.isEmpty()) {
+			throw new IllegalArgumentException("at least one operator is needed");
+		}
+		if (order < 1) {
+			throw new IllegalArgumentException("order has to be at least 1, but was " + order);
+		}
+		this.operators = operators;
+		this.order = order;
+		this.seed = seed;
+	}
+	
+	@Override
+	protected boolean mutate(Body b) {
+		if (chosenMethods == null) {
+			chosenMethods = chooseMethods();
+		}
+		String signature = b.getMethod().getSignature();
+		if (!chosenMethods.contains(signature)) {
+			return false;
+		}
+		visitedMethods++;
+		if (visitedMethods >= chosenMethods.size()) {
+			hasTransformedOnce = true;
+		}
+		// the operators in a random order, so a method gets another one if the first does not apply
+		List<AbstractFuzzer> shuffledOperators = new ArrayList<AbstractFuzzer>(operators);
+		Collections.shuffle(shuffledOperators, new Random(seed ^ signature.hashCode()));
+		for (AbstractFuzzer operator : shuffledOperators) {
+			operator.reset();
+			if (operator.mutate(b)) {
+				mutations.add(operator.getName() + ": " + signature);
+				LOG.debug("{} applied mutation {} of {}: {}", name, mutations.size(), order, mutations.get(mutations.size() - 1));
+				return true;
+			}
+		}
+		LOG.debug("{} found no operator applying to chosen method {}", name, signature);
+		return false;
+	}
+	
+	// "order" of the concrete application methods, by a shuffle of their sorted signatures
+	private Set<String> chooseMethods() {
+		List<String> signatures = new ArrayList<String>();
+		for (SootClass applicationClass : Scene.v().getApplicationClasses()) {
+			for (SootMethod method : applicationClass.getMethods()) {
+				if (method.isConcrete()) {
+					signatures.add(method.getSignature());
+				}
+			}
+		}
+		Collections.sort(signatures);
+		Collections.shuffle(signatures, new Random(seed));
+		return new HashSet<String>(signatures.subList(0, Math.min(order, signatures.size())));
+	}
+	
+	@Override
+	public synchronized void reset() {
+		super.reset();
+		mutations.clear();
+		chosenMethods = null;
+		visitedMethods = 0;
+	}
+	
+	// a copy, since the mutations may still change while Soot transforms
+	public synchronized List<String> getMutations() {
+		return Collections.unmodifiableList(new ArrayList<String>(mutations));
+	}
+}
@@ -16,6 +16,8 @@
 
 package fuzzing;
 
+import soot.BooleanType;
+import soot.Type;
 import soot.Value;
 import soot.jimple.AssignStmt;
 import soot.jimple.BinopExpr;
@@ -34,26 +36,60 @@ public class IntConstantFuzzer extends AbstractFuzzer {
 		super("IntConstant fuzzer");
 	}
 	
+	// for fuzzers replacing the constants differently
+	protected IntConstantFuzzer(String name) {
+		super(name);
+	}
+	
+	protected boolean shouldBeReplaced(int value) {
+		return value != 0;
+	}
+	
+	protected int replace(int value) {
+		return 0;
+	}
+	
 	private boolean shouldBeReplaced(Value v) {
 		if (v instanceof IntConstant) {
 			IntConstant constant = (IntConstant) v;
-			return constant.value != 0;
+			return shouldBeReplaced(constant.value);
 		}
 		return false;
 	}
+	
+	// a boolean has to stay 0 or 1, e.g. incrementing true would store 2 into a boolean
+	private boolean shouldBeReplaced(Value v, Type type) {
+		if (!shouldBeReplaced(v)) {
+			return false;
+		}
+		if (type instanceof BooleanType) {
+			int replacement = replace(((IntConstant) v).value);
+			return replacement == 0 || replacement == 1;
+		}
+		return true;
+	}
+	
+	// whether the low and high index of a TableSwitchStmt may be replaced
+	protected boolean replacesTableSwitchIndices() {
+		return true;
+	}
+	
+	private IntConstant replace(Value v) {
+		return IntConstant.v(replace(((IntConstant) v).value));
+	}
 
 	@Override
 	public void caseAssignStmt(AssignStmt stmt) {
 		Value rhs = stmt.getRightOp();
-		if (shouldBeReplaced(rhs)) {
-			stmt.setRightOp(IntConstant.v(0));
+		if (shouldBeReplaced(rhs, stmt.getLeftOp().getType())) {
+			stmt.setRightOp(replace(rhs));
 			hasTransformedOnce = true;
 			return;
 		}
 		if (rhs instanceof NegExpr) {
 			NegExpr negExpr = (NegExpr) rhs;
 			if (shouldBeReplaced(negExpr.getOp())) {
-				negExpr.setOp(IntConstant.v(0));
+				negExpr.setOp(replace(negExpr.getOp()));
 				hasTransformedOnce = true;
 				return;
 			}
@@ -74,12 +110,12 @@ public class IntConstantFuzzer extends AbstractFuzzer {
 
 	private void replaceLeftOrRight(BinopExpr binOp) {
 		if (shouldBeReplaced(binOp.getOp1())) {
-			binOp.setOp1(IntConstant.v(0));
+			binOp.setOp1(replace(binOp.getOp1()));
 			hasTransformedOnce = true;
 			return;
 		}
 		if (shouldBeReplaced(binOp.getOp2())) {
-			binOp.setOp2(IntConstant.v(0));
+			binOp.setOp2(replace(binOp.getOp2()));
 			hasTransformedOnce = true;
 			return;
 		}
@@ -93,8 +129,8 @@ public class IntConstantFuzzer extends AbstractFuzzer {
 	private void replaceFirstArg(InvokeExpr invokeExpr) {
 		for (int argIdx = 0; argIdx < invokeExpr.getArgCount(); argIdx++) {
 			Value arg = invokeExpr.getArg(argIdx);
-			if (shouldBeReplaced(arg)) {
-				invokeExpr.setArg(argIdx, IntConstant.v(0));
+			if (shouldBeReplaced(arg, invokeExpr.getMethodRef().parameterType(argIdx))) {
+				invokeExpr.setArg(argIdx, replace(arg));
 				hasTransformedOnce = true;
 				return;
 			}
@@ -104,26 +140,36 @@ public class IntConstantFuzzer extends AbstractFuzzer {
 	@Override
 	public void caseLookupSwitchStmt(LookupSwitchStmt stmt) {
 		if (shouldBeReplaced(stmt.getKey())) {
-			stmt.setKey(IntConstant.v(0));
+			stmt.setKey(replace(stmt.getKey()));
 			hasTransformedOnce = true;
 			return;
 		}
 		// although the lookup values are primitive ints, we see them as potentially replaceable IntConstants
 		for (int lookupIdx = 0; lookupIdx < stmt.getTargetCount(); lookupIdx++) {
 			int lookupValue = stmt.getLookupValue(lookupIdx);
-			if (lookupValue != 0) {
-				stmt.setLookupValue(lookupIdx, 0);
+			// lookup values have to stay unique
+			if (shouldBeReplaced(lookupValue) && !hasLookupValue(stmt, replace(lookupValue))) {
+				stmt.setLookupValue(lookupIdx, replace(lookupValue));
 				hasTransformedOnce = true;
 				return;
 			}
 		}
 	}
+	
+	private boolean hasLookupValue(LookupSwitchStmt stmt, int value) {
+		for (int lookupIdx = 0; lookupIdx < stmt.getTargetCount(); lookupIdx++) {
+			if (stmt.getLookupValue(lookupIdx) == value) {
+				return true;
+			}
+		}
+		return false;
+	}
 
 	@Override
 	public void caseReturnStmt(ReturnStmt stmt) {
 		Value returnValue = stmt.getOp();
-		if (shouldBeReplaced(returnValue)) {
-			stmt.setOp(IntConstant.v(0));
+		if (shouldBeReplaced(returnValue, body.getMethod().getReturnType())) {
+			stmt.setOp(replace(returnValue));
 			hasTransformedOnce = true;
 			return;
 		}
@@ -132,18 +178,21 @@ public class IntConstantFuzzer extends AbstractFuzzer {
 	@Override
 	public void caseTableSwitchStmt(TableSwitchStmt stmt) {
 		if (shouldBeReplaced(stmt.getKey())) {
-			stmt.setKey(IntConstant.v(0));
+			stmt.setKey(replace(stmt.getKey()));
 			hasTransformedOnce = true;
 			return;
 		}
+		if (!replacesTableSwitchIndices()) {
+			return;
+		}
 		// although the low/high values are primitive ints, we see them as potentially replaceable IntConstants
-		if (stmt.getLowIndex() != 0) {
-			stmt.setLowIndex(0);
+		if (shouldBeReplaced(stmt.getLowIndex())) {
+			stmt.setLowIndex(replace(stmt.getLowIndex()));
 			hasTransformedOnce = true;
 			return;
 		}
-		if (stmt.getHighIndex() != 0) {
-			stmt.setHighIndex(0);
+		if (shouldBeReplaced(stmt.getHighIndex())) {
+			stmt.setHighIndex(replace(stmt.getHighIndex()));
 			hasTransformedOnce = true;
 			return;
 		}
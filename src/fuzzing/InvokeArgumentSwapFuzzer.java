@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.InvokeExpr;
+import soot.jimple.InvokeStmt;
+
+// swaps two different arguments of the same type in the first invocation having such, like in foo(width, height)
+public class InvokeArgumentSwapFuzzer extends AbstractFuzzer {
+	
+	public InvokeArgumentSwapFuzzer() {
+		super("InvokeArgumentSwap fuzzer");
+	}
+	
+	@Override
+	public void caseInvokeStmt(InvokeStmt stmt) {
+		swapArgs(stmt.getInvokeExpr());
+	}
+	
+	@Override
+	public void caseAssignStmt(AssignStmt stmt) {
+		if (stmt.getRightOp() instanceof InvokeExpr) {
+			swapArgs((InvokeExpr) stmt.getRightOp());
+		}
+	}
+	
+	private void swapArgs(InvokeExpr invokeExpr) {
+		int argCount = invokeExpr.getArgCount();
+		for (int argIdx = 0; argIdx < argCount; argIdx++) {
+			Value arg = invokeExpr.getArg(argIdx);
+			for (int otherArgIdx = argIdx + 1; otherArgIdx < argCount; otherArgIdx++) {
+				Value otherArg = invokeExpr.getArg(otherArgIdx);
+				if (arg.getType().equals(otherArg.getType()) && !arg.equals(otherArg)) {
+					invokeExpr.setArg(argIdx, otherArg);
+					invokeExpr.setArg(otherArgIdx, arg);
+					hasTransformedOnce = true;
+					return;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import soot.Unit;
+import soot.jimple.EnterMonitorStmt;
+import soot.jimple.ExitMonitorStmt;
+import soot.jimple.Jimple;
+
+/*
+ * Replaces the first monitor-enter or monitor-exit with a nop, so locking gets unbalanced:
+ * the VM has to reject the method or throw an IllegalMonitorStateException, but must not hang or crash.
+ */
+public class MonitorFuzzer extends AbstractFuzzer {
+	
+	public MonitorFuzzer() {
+		super("Monitor fuzzer");
+	}
+	
+	@Override
+	public void caseEnterMonitorStmt(EnterMonitorStmt stmt) {
+		replaceWithNop(stmt);
+	}
+	
+	@Override
+	public void caseExitMonitorStmt(ExitMonitorStmt stmt) {
+		replaceWithNop(stmt);
+	}
+	
+	// the patching chain redirects jumps and traps to the nop, visiting the statements ends right after this anyway
+	private void replaceWithNop(Unit stmt) {
+		body.getUnits().swapWith(stmt, Jimple.v().newNopStmt());
+		hasTransformedOnce = true;
+	}
+}
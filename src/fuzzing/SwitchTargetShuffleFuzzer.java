@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package fuzzing;
+
+import soot.Unit;
+import soot.jimple.LookupSwitchStmt;
+import soot.jimple.TableSwitchStmt;
+
+/*
+ * Swaps the targets of two neighbouring cases of the first switch statement with different targets,
+ * or if all cases have the same target, the first case's target with the default target.
+ */
+public class SwitchTargetShuffleFuzzer extends AbstractFuzzer {
+	
+	public SwitchTargetShuffleFuzzer() {
+		super("SwitchTargetShuffle fuzzer");
+	}
+	
+	@Override
+	public void caseLookupSwitchStmt(LookupSwitchStmt stmt) {
+		int targetCount = stmt.getTargetCount();
+		for (int targetIdx = 0; targetIdx + 1 < targetCount; targetIdx++) {
+			Unit target = stmt.getTarget(targetIdx);
+			Unit nextTarget = stmt.getTarget(targetIdx + 1);
+			if (target != nextTarget) {
+				stmt.setTarget(targetIdx, nextTarget);
+				stmt.setTarget(targetIdx + 1, target);
+				hasTransformedOnce = true;
+				return;
+			}
+		}
+		if (targetCount > 0 && stmt.getTarget(0) != stmt.getDefaultTarget()) {
+			Unit target = stmt.getTarget(0);
+			stmt.setTarget(0, stmt.getDefaultTarget());
+			stmt.setDefaultTarget(target);
+			hasTransformedOnce = true;
+		}
+	}
+	
+	@Override
+	public void caseTableSwitchStmt(TableSwitchStmt stmt) {
+		int targetCount = stmt.getTargets().size();
+		for (int targetIdx = 0; targetIdx + 1 < targetCount; targetIdx++) {
+			Unit target = stmt.getTarget(targetIdx);
+			Unit nextTarget = stmt.getTarget(targetIdx + 1);
+			if (target != nextTarget) {
+				stmt.setTarget(targetIdx, nextTarget);
+				stmt.setTarget(targetIdx + 1, target);
+				hasTransformedOnce = true;
+				return;
+			}
+		}
+		if (targetCount > 0 && stmt.getTarget(0) != stmt.getDefaultTarget()) {
+			Unit target = stmt.getTarget(0);
+			stmt.setTarget(0, stmt.getDefaultTarget());
+			stmt.setDefaultTarget(target);
+			hasTransformedOnce = true;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package history;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/*
+ * What earlier test runs found out about one APK, stored as properties file per APK, e.g. history/Foo.apk.properties.
+ * Durations are smoothed over runs, so a single slow run does not dominate the estimates for the next one.
+ */
+public class ApkHistory {
+	
+	private static final String FILE_SUFFIX = ".properties";
+	
+	private static final String DURATION_PREFIX = "duration.";
+	
+	private static final String VERDICT = "verdict";
+	
+	private static final String SIZE = "size";
+	
+	private static final String DIGEST = "digest";
+	
+	private static final String SOOT_RELEASE = "sootRelease";
+	
+	private static final String FLAKINESS = "flakiness";
+	
+	private static final double SMOOTHING = 0.5; // weight of the newest duration
+	
+	private final Path historyPath;
+	
+	private final Properties properties;
+	
+	private ApkHistory(Path historyPath, Properties properties) {
+		this.historyPath = historyPath;
+		this.properties = properties;
+	}
+	
+	public static ApkHistory load(Path historyDir, String apkName) {
+		Path historyPath = historyDir.resolve(apkName + FILE_SUFFIX);
+		Properties properties = new Properties();
+		if (Files.exists(historyPath)) {
+			try (Reader reader = Files.newBufferedReader(historyPath, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			} catch (IOException e) {
+				throw new RuntimeException("IOException while reading APK history " + historyPath, e);
+			}
+		}
+		return new ApkHistory(historyPath, properties);
+	}
+	
+	public void save() {
+		try {
+			Files.createDirectories(historyPath.getParent());
+			try (Writer writer = Files.newBufferedWriter(historyPath, StandardCharsets.UTF_8)) {
+				properties.store(writer, "test history of one APK");
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while writing APK history " + historyPath, e);
+		}
+	}
+	
+	public boolean isEmpty() {
+		return properties.isEmpty();
+	}
+	
+	// returns -1 if the phase never ran
+	public long getDurationMillis(Phase phase) {
+		return getLong(DURATION_PREFIX + phase.getKey(), -1);
+	}
+	
+	public void recordDurationMillis(Phase phase, long durationMillis) {
+		long oldDurationMillis = getDurationMillis(phase);
+		long newDurationMillis = durationMillis;
+		if (oldDurationMillis != -1) {
+			newDurationMillis = Math.round(SMOOTHING * durationMillis + (1 - SMOOTHING) * oldDurationMillis);
+		}
+		setLong(DURATION_PREFIX + phase.getKey(), newDurationMillis);
+	}
+	
+	// returns null if the APK was never tested
+	public Verdict getLastVerdict() {
+		String verdict = properties.getProperty(VERDICT);
+		return verdict == null ? null : Verdict.valueOf(verdict);
+	}
+	
+	public void recordVerdict(Verdict verdict) {
+		properties.setProperty(VERDICT, verdict.name());
+	}
+	
+	// returns -1 if unknown
+	public long getApkSize() {
+		return getLong(SIZE, -1);
+	}
+	
+	public void recordApkSize(long size) {
+		setLong(SIZE, size);
+	}
+	
+	// SHA-256 of the APK tested last, null if unknown
+	public String getDigest() {
+		return properties.getProperty(DIGEST);
+	}
+	
+	// of the APK tested last, null if unknown
+	public String getSootRelease() {
+		return properties.getProperty(SOOT_RELEASE);
+	}
+	
+	// whether the last conclusive test was of this content, converted by this Soot release
+	public boolean isTested(String digest, String sootRelease) {
+		return digest.equals(getDigest()) && sootRelease.equals(getSootRelease());
+	}
+	
+	public void recordDigest(String digest, String sootRelease) {
+		properties.setProperty(DIGEST, digest);
+		properties.setProperty(SOOT_RELEASE, sootRelease);
+	}
+	
+	// share of runs disagreeing with the APK's verdict, smoothed like the durations, 0 if unknown
+	public double getFlakiness() {
+		String flakiness = properties.getProperty(FLAKINESS);
+		return flakiness == null ? 0 : Double.parseDouble(flakiness);
+	}
+	
+	public void recordFlakiness(double flakiness) {
+		String oldFlakiness = properties.getProperty(FLAKINESS);
+		double newFlakiness = flakiness;
+		if (oldFlakiness != null) {
+			newFlakiness = SMOOTHING * flakiness + (1 - SMOOTHING) * Double.parseDouble(oldFlakiness);
+		}
+		properties.setProperty(FLAKINESS, Double.toString(newFlakiness));
+	}
+	
+	protected long getLong(String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Long.parseLong(value);
+	}
+	
+	protected void setLong(String key, long value) {
+		properties.setProperty(key, Long.toString(value));
+	}
+}
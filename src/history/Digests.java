@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package history;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// SHA-256 digests as hex strings, identifying APKs by content instead of by name
+public class Digests {
+	
+	public static String sha256(Path file) {
+		MessageDigest digest = newSha256();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read = in.read(buffer);
+			while (read != -1) {
+				digest.update(buffer, 0, read);
+				read = in.read(buffer);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while computing digest of " + file, e);
+		}
+		return toHex(digest.digest());
+	}
+	
+	public static String sha256(byte[] bytes) {
+		return toHex(newSha256().digest(bytes));
+	}
+	
+	// of the certificate an APK was signed with (v1 signature), or null if it is not signed
+	public static String signerSha256(Path apk) {
+		try (ZipFile zip = new ZipFile(apk.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (isSignatureBlock(entry.getName())) {
+					try (InputStream in = zip.getInputStream(entry)) {
+						return signerSha256(in);
+					}
+				}
+			}
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading signature of " + apk, e);
+		}
+	}
+	
+	public static boolean isSignatureBlock(String entryName) {
+		return entryName.startsWith("META-INF/") && entryName.indexOf('/', "META-INF/".length()) == -1
+				&& (entryName.endsWith(".RSA") || entryName.endsWith(".DSA") || entryName.endsWith(".EC"));
+	}
+	
+	// of the first certificate in a PKCS#7 signature block
+	public static String signerSha256(InputStream signatureBlock) {
+		try {
+			CertificateFactory factory = CertificateFactory.getInstance("X.509");
+			for (Certificate certificate : factory.generateCertificates(signatureBlock)) {
+				return sha256(certificate.getEncoded());
+			}
+			return null;
+		} catch (CertificateException e) {
+			throw new RuntimeException("CertificateException while reading signature block", e);
+		}
+	}
+	
+	private static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 not available, although every JRE has to support it", e);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package history;
+
+// the phases of testing one APK, in the order they run
+public enum Phase {
+	ORIGINAL_RUN,
+	CONVERSION,
+	// only with host ART, see main.HostArt, then conversion and host ART run before the original run
+	HOST_ART,
+	CONVERTED_RUN,
+	FUZZING;
+	
+	// whether the phase needs an emulator, or just the host
+	public boolean usesEmulator() {
+		return this != CONVERSION && this != HOST_ART;
+	}
+	
+	public String getKey() {
+		return name().toLowerCase();
+	}
+}
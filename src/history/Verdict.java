@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package history;
+
+public enum Verdict {
+	// the converted APK works like the original
+	PASSED,
+	// the original APK works, the converted does not
+	CONVERTED_FAILED,
+	// the original APK works, the converted was rejected by the static dex verification, so it was not run
+	VERIFY_FAILED,
+	// the converted dex behaved differently from the original on host ART, so neither was run on the emulator
+	HOST_ART_FAILED,
+	// the original APK does not work, so the converted was not tested
+	ORIGINAL_FAILED,
+	// the test itself failed with an exception
+	ERROR;
+	
+	public boolean isSuccess() {
+		return this == PASSED;
+	}
+	
+	// verdicts found on the host without running the converted APK, which a rerun would not change
+	public boolean isDecidedOnHost() {
+		return this == VERIFY_FAILED || this == HOST_ART_FAILED;
+	}
+	
+	// failures which might be caused by toDex and are worth a fast re-check
+	public boolean isConversionFailure() {
+		return this == CONVERTED_FAILED || this == VERIFY_FAILED || this == HOST_ART_FAILED || this == ERROR;
+	}
+}
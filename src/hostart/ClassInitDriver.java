@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package hostart;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Runs on a host build of ART, not in the framework's JVM, with the dex of an APK on its classpath (see main.HostArt).
+ * Reads one task per line from the file given as first argument:
+ * 
+ * init <class>            load and initialize the class, which verifies it and runs its static initializer
+ * call <class>#<method>   call the static method without arguments
+ * 
+ * and prints one line per task with its outcome: "ok" (with the result of a call), the classes of the thrown
+ * exception and its causes, or "timeout" if the task did not finish in the milliseconds given as second argument.
+ * It is converted to dex on its own, so it only uses java.* classes and has no nested classes.
+ */
+public class ClassInitDriver implements Runnable {
+	
+	// outcome lines start with it, so they can be told apart from what the app prints
+	public static final String PREFIX = "todex-art: ";
+	
+	public static final String DONE = "done";
+	
+	public static final String INIT = "init ";
+	
+	public static final String CALL = "call ";
+	
+	private final String task;
+	
+	// null while the task runs
+	private volatile String outcome;
+	
+	private ClassInitDriver(String task) {
+		this.task = task;
+	}
+	
+	public static void main(String[] args) throws IOException {
+		long timeoutMillis = Long.parseLong(args[1]);
+		for (String task : readTasks(args[0])) {
+			// each task in its own thread, so a hanging static initializer only costs the timeout
+			ClassInitDriver driver = new ClassInitDriver(task);
+			Thread taskThread = new Thread(driver, "todex-task");
+			taskThread.setDaemon(true);
+			taskThread.start();
+			try {
+				taskThread.join(timeoutMillis);
+			} catch (InterruptedException e) {
+				break;
+			}
+			String outcome = driver.outcome;
+			System.out.println(PREFIX + task + "\t" + (outcome == null ? "timeout" : outcome));
+		}
+		System.out.println(PREFIX + DONE);
+		System.out.flush();
+		// threads still stuck in the app's code must not keep the VM running
+		System.exit(0);
+	}
+	
+	private static List<String> readTasks(String tasksFile) throws IOException {
+		List<String> tasks = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tasksFile),
+				StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			while (line != null) {
+				if (!line.isEmpty()) {
+					tasks.add(line);
+				}
+				line = reader.readLine();
+			}
+		}
+		return tasks;
+	}
+	
+	@Override
+	public void run() {
+		outcome = execute(task);
+	}
+	
+	private static String execute(String task) {
+		ClassLoader loader = ClassInitDriver.class.getClassLoader();
+		try {
+			if (task.startsWith(INIT)) {
+				Class.forName(task.substring(INIT.length()), true, loader);
+				return "ok";
+			}
+			String target = task.substring(CALL.length());
+			int methodSeparator = target.indexOf('#');
+			Class<?> targetClass = Class.forName(target.substring(0, methodSeparator), true, loader);
+			Method method = targetClass.getDeclaredMethod(target.substring(methodSeparator + 1));
+			if (!Modifier.isStatic(method.getModifiers())) {
+				return "not static";
+			}
+			method.setAccessible(true);
+			return "ok " + describeResult(method.invoke(null));
+		} catch (InvocationTargetException e) {
+			return describe(e.getCause());
+		} catch (Throwable t) {
+			return describe(t);
+		}
+	}
+	
+	// without the messages, which may name registers or contain hash codes
+	private static String describe(Throwable throwable) {
+		StringBuilder description = new StringBuilder(throwable.getClass().getName());
+		Throwable cause = throwable.getCause();
+		while (cause != null && cause != throwable) {
+			description.append(" caused by ").append(cause.getClass().getName());
+			throwable = cause;
+			cause = throwable.getCause();
+		}
+		return description.toString();
+	}
+	
+	// values are compared, other objects only by their class, since their toString may contain hash codes
+	private static String describeResult(Object result) {
+		if (result == null || result instanceof String || result instanceof Number || result instanceof Boolean
+				|| result instanceof Character) {
+			return String.valueOf(result).replace("\n", "\\n").replace("\r", "\\r");
+		}
+		return "instance of " + result.getClass().getName();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/*
+ * Aho-Corasick automaton finding all of its patterns in a text with one pass over the text,
+ * no matter how many patterns there are.
+ */
+public class AhoCorasick {
+
+	private static final int ROOT = 0;
+
+	private final List<Map<Character, Integer>> transitions = new ArrayList<Map<Character, Integer>>();
+
+	private final List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+
+	private final int[] failures;
+
+	public AhoCorasick(List<String> patterns) {
+		newNode(); // root
+		for (int patternIdx = 0; patternIdx < patterns.size(); patternIdx++) {
+			addPattern(patterns.get(patternIdx), patternIdx);
+		}
+		this.failures = new int[transitions.size()];
+		computeFailures();
+	}
+
+	private int newNode() {
+		transitions.add(new HashMap<Character, Integer>());
+		outputs.add(new ArrayList<Integer>());
+		return transitions.size() - 1;
+	}
+
+	private void addPattern(String pattern, int patternIdx) {
+		if (pattern.isEmpty()) {
+			throw new IllegalArgumentException("empty patterns would match everything");
+		}
+		int node = ROOT;
+		for (int charIdx = 0; charIdx < pattern.length(); charIdx++) {
+			char c = pattern.charAt(charIdx);
+			Integer next = transitions.get(node).get(c);
+			if (next == null) {
+				next = newNode();
+				transitions.get(node).put(c, next);
+			}
+			node = next;
+		}
+		outputs.get(node).add(patternIdx);
+	}
+
+	// breadth-first, so the failure of a node's parent is always known before the node itself
+	private void computeFailures() {
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		for (int child : transitions.get(ROOT).values()) {
+			failures[child] = ROOT;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int node = queue.remove();
+			for (Map.Entry<Character, Integer> transition : transitions.get(node).entrySet()) {
+				char c = transition.getKey();
+				int child = transition.getValue();
+				int failure = failures[node];
+				while (failure != ROOT && !transitions.get(failure).containsKey(c)) {
+					failure = failures[failure];
+				}
+				Integer failureChild = transitions.get(failure).get(c);
+				failures[child] = failureChild == null || failureChild == child ? ROOT : failureChild;
+				// a node also matches every pattern that its failure matches (a suffix of it)
+				outputs.get(child).addAll(outputs.get(failures[child]));
+				queue.add(child);
+			}
+		}
+	}
+
+	// returns the indexes of all patterns contained in the text
+	public BitSet findAll(String text) {
+		BitSet found = new BitSet();
+		int node = ROOT;
+		for (int charIdx = 0; charIdx < text.length(); charIdx++) {
+			char c = text.charAt(charIdx);
+			while (node != ROOT && !transitions.get(node).containsKey(c)) {
+				node = failures[node];
+			}
+			Integer next = transitions.get(node).get(c);
+			node = next == null ? ROOT : next;
+			for (int patternIdx : outputs.get(node)) {
+				found.set(patternIdx);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/*
+ * The harmless log rules of a rules file. A rule is a block of "key: value" lines, ended by an empty line:
+ *
+ * name: anr-traces-permission          (required)
+ * levels: W                            (optional, any of W, E and F, default "WEF")
+ * tag: dalvikvm                        (optional, default "*" for any tag)
+ * scope: app                           (optional, "app" or "any" process, default "app")
+ * literal: Unable to open stack trace  (required, has to be contained in the message)
+ * regex: Permission denied$            (optional, has to be found in the message, too)
+ * reason: why the message is harmless  (required)
+ *
+ * Lines starting with "#" are comments. All literals are compiled into one AhoCorasick automaton,
+ * so checking a message costs one pass over the message, independent of the number of rules.
+ */
+public class HarmlessLogRules {
+
+	private final List<HarmlessRule> rules;
+
+	private final AhoCorasick literals;
+
+	private HarmlessLogRules(List<HarmlessRule> rules) {
+		this.rules = rules;
+		List<String> ruleLiterals = new ArrayList<String>();
+		for (HarmlessRule rule : rules) {
+			ruleLiterals.add(rule.getLiteral());
+		}
+		this.literals = new AhoCorasick(ruleLiterals);
+	}
+
+	public static HarmlessLogRules load(Path rulesPath) {
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(rulesPath, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading harmless log rules from " + rulesPath, e);
+		}
+		List<HarmlessRule> rules = new ArrayList<HarmlessRule>();
+		Map<String, String> ruleValues = new HashMap<String, String>();
+		int ruleStartLine = 0;
+		for (int lineIdx = 0; lineIdx < lines.size(); lineIdx++) {
+			String line = lines.get(lineIdx).trim();
+			if (line.startsWith("#")) {
+				continue;
+			}
+			if (line.isEmpty()) {
+				if (!ruleValues.isEmpty()) {
+					rules.add(createRule(ruleValues, rulesPath, ruleStartLine));
+					ruleValues.clear();
+				}
+				continue;
+			}
+			if (ruleValues.isEmpty()) {
+				ruleStartLine = lineIdx + 1;
+			}
+			int separatorIdx = line.indexOf(": ");
+			if (separatorIdx == -1) {
+				throw new RuntimeException("no 'key: value' in " + rulesPath + ", line " + (lineIdx + 1));
+			}
+			ruleValues.put(line.substring(0, separatorIdx).trim(), line.substring(separatorIdx + 2));
+		}
+		if (!ruleValues.isEmpty()) {
+			rules.add(createRule(ruleValues, rulesPath, ruleStartLine));
+		}
+		return new HarmlessLogRules(rules);
+	}
+
+	private static HarmlessRule createRule(Map<String, String> values, Path rulesPath, int line) {
+		String location = rulesPath + ", rule at line " + line;
+		for (String key : values.keySet()) {
+			if (!key.matches("name|levels|tag|scope|literal|regex|reason")) {
+				throw new RuntimeException("unknown key '" + key + "' in " + location);
+			}
+		}
+		String name = getRequired(values, "name", location);
+		String literal = getRequired(values, "literal", location);
+		// if adding new definitions for harmless errors: do not forget the reason for harmlessness...
+		String reason = getRequired(values, "reason", location);
+		String levels = getOptional(values, "levels", "WEF").replaceAll("[^WEF]", "");
+		String tag = getOptional(values, "tag", "*");
+		HarmlessRule.Scope scope;
+		try {
+			scope = HarmlessRule.Scope.valueOf(getOptional(values, "scope", "app").toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new RuntimeException("scope has to be 'app' or 'any' in " + location, e);
+		}
+		Pattern regex = null;
+		if (values.containsKey("regex")) {
+			try {
+				regex = Pattern.compile(values.get("regex"));
+			} catch (PatternSyntaxException e) {
+				throw new RuntimeException("invalid regex in " + location, e);
+			}
+		}
+		return new HarmlessRule(name, levels, tag, scope, literal, regex, reason);
+	}
+
+	private static String getRequired(Map<String, String> values, String key, String location) {
+		String value = values.get(key);
+		if (value == null || value.isEmpty()) {
+			throw new RuntimeException("missing '" + key + "' in " + location);
+		}
+		return value;
+	}
+
+	private static String getOptional(Map<String, String> values, String key, String defaultValue) {
+		String value = values.get(key);
+		return value == null ? defaultValue : value.trim();
+	}
+
+	// returns the first rule declaring the log line as harmless, or null if there is none
+	public HarmlessRule findHarmlessRule(LogLine logLine, boolean loggedByApp) {
+		BitSet candidates = literals.findAll(logLine.getMessage());
+		for (int ruleIdx = candidates.nextSetBit(0); ruleIdx != -1; ruleIdx = candidates.nextSetBit(ruleIdx + 1)) {
+			HarmlessRule rule = rules.get(ruleIdx);
+			if (rule.matches(logLine, loggedByApp)) {
+				return rule;
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return rules.size();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+import java.util.regex.Pattern;
+
+/*
+ * A rule for a warning / error log message that is harmless, i.e. not caused by the tested APK.
+ * Each rule has a literal that has to be contained in the message. The optional regex is only
+ * checked for messages containing the literal, so it can narrow the rule down cheaply.
+ */
+public class HarmlessRule {
+
+	public enum Scope {
+		// only for lines logged by the process of the tested app
+		APP,
+		// for lines logged by any process
+		ANY
+	}
+
+	private static final String ANY_TAG = "*";
+
+	private final String name;
+
+	private final String levels;
+
+	private final String tag;
+
+	private final Scope scope;
+
+	private final String literal;
+
+	private final Pattern regex;
+
+	private final String reason;
+
+	public HarmlessRule(String name, String levels, String tag, Scope scope, String literal, Pattern regex, String reason) {
+		this.name = name;
+		this.levels = levels;
+		this.tag = tag;
+		this.scope = scope;
+		this.literal = literal;
+		this.regex = regex;
+		this.reason = reason;
+	}
+
+	// only to be called if the literal was found in the message
+	public boolean matches(LogLine logLine, boolean loggedByApp) {
+		if (scope == Scope.APP && !loggedByApp) {
+			return false;
+		}
+		if (levels.indexOf(logLine.getLevel()) == -1) {
+			return false;
+		}
+		if (!tag.equals(ANY_TAG) && !tag.equals(logLine.getTag())) {
+			return false;
+		}
+		return regex == null || regex.matcher(logLine.getMessage()).find();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getLiteral() {
+		return literal;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
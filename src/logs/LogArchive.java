@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import os.LineHandler;
+
+/*
+ * Writes a log gzip-compressed into a file while it is read, for triage after the test. Only the
+ * fixed-size buffers of the writer and the compressor are in memory, however long the log is.
+ */
+public class LogArchive implements LineHandler, Closeable {
+
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	private final Path path;
+
+	private final Writer writer;
+
+	public LogArchive(Path path) {
+		this.path = path;
+		try {
+			Path dir = path.toAbsolutePath().getParent();
+			if (dir != null) {
+				Files.createDirectories(dir);
+			}
+			GZIPOutputStream gzip = new GZIPOutputStream(Files.newOutputStream(path), BUFFER_BYTES);
+			this.writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_BYTES);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while creating log archive " + path, e);
+		}
+	}
+
+	@Override
+	public void handleLine(String line) {
+		try {
+			writer.write(line);
+			writer.write('\n');
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while writing to log archive " + path, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			writer.close();
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while closing log archive " + path, e);
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/*
+ * Fingerprints of the warning / error log lines of an original APK. The converted APK only fails on lines
+ * without a fingerprint in here, so warnings the original APK logs as well are no false failures.
+ * Fingerprints are stored per APK and merged over runs, so sporadic warnings of the original APK accumulate.
+ */
+public class LogBaseline {
+
+	private static final Pattern HEX_NUMBER = Pattern.compile("0x[0-9a-fA-F]+");
+
+	private static final Pattern OBJECT_ID = Pattern.compile("@[0-9a-fA-F]{4,}");
+
+	private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+
+	private final Path baselinePath;
+
+	private final Set<String> fingerprints;
+
+	private LogBaseline(Path baselinePath, Set<String> fingerprints) {
+		this.baselinePath = baselinePath;
+		this.fingerprints = fingerprints;
+	}
+
+	public static LogBaseline load(Path baselinesDir, String apkName) {
+		Path baselinePath = baselinesDir.resolve(apkName + ".txt");
+		Set<String> fingerprints = new TreeSet<String>();
+		if (Files.exists(baselinePath)) {
+			try {
+				fingerprints.addAll(Files.readAllLines(baselinePath, StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new RuntimeException("IOException while reading log baseline " + baselinePath, e);
+			}
+		}
+		return new LogBaseline(baselinePath, fingerprints);
+	}
+
+	/*
+	 * level, tag and message without anything varying from run to run: process IDs are left out,
+	 * addresses, object IDs, timestamps and other numbers become "#"
+	 */
+	public static String fingerprint(LogLine logLine) {
+		String message = HEX_NUMBER.matcher(logLine.getMessage()).replaceAll("0x#");
+		message = OBJECT_ID.matcher(message).replaceAll("@#");
+		message = NUMBER.matcher(message).replaceAll("#");
+		return logLine.getLevel() + "/" + logLine.getTag() + ": " + message;
+	}
+
+	public boolean contains(LogLine logLine) {
+		return fingerprints.contains(fingerprint(logLine));
+	}
+
+	public void add(LogLine logLine) {
+		fingerprints.add(fingerprint(logLine));
+	}
+
+	public int size() {
+		return fingerprints.size();
+	}
+
+	public void save() {
+		try {
+			Files.createDirectories(baselinePath.getParent());
+			Files.write(baselinePath, fingerprints, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while writing log baseline " + baselinePath, e);
+		}
+	}
+}
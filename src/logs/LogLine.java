@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+// one line of the "brief" logcat format, like "W/Resources(17336): Converting to string: TypedValue{...}"
+public class LogLine {
+
+	public static final String DEFAULT_PID = "-1";
+
+	private final String line;
+
+	private final char level;
+
+	private final String tag;
+
+	private final String pid;
+
+	private final String message;
+
+	private LogLine(String line, char level, String tag, String pid, String message) {
+		this.line = line;
+		this.level = level;
+		this.tag = tag;
+		this.pid = pid;
+		this.message = message;
+	}
+
+	public static LogLine parse(String line) {
+		int headerEnd = line.indexOf("): ");
+		int pidBegin = headerEnd == -1 ? -1 : line.lastIndexOf('(', headerEnd);
+		if (line.length() < 2 || line.charAt(1) != '/' || pidBegin == -1) {
+			// no brief format (e.g. "--------- beginning of /dev/log/main"), so take it as message without level
+			return new LogLine(line, '?', "", DEFAULT_PID, line);
+		}
+		String tag = line.substring(2, pidBegin).trim();
+		String pid = line.substring(pidBegin + 1, headerEnd).trim();
+		String message = line.substring(headerEnd + 3);
+		return new LogLine(line, line.charAt(0), tag, pid, message);
+	}
+
+	public boolean isWarningOrWorse() {
+		return level == 'W' || level == 'E' || level == 'F';
+	}
+
+	public String getLine() {
+		return line;
+	}
+
+	public char getLevel() {
+		return level;
+	}
+
+	public String getTag() {
+		return tag;
+	}
+
+	public String getPid() {
+		return pid;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return line;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package logs;
+
+import os.LineHandler;
+
+// the last lines of a log in a fixed-size ring buffer, for failure reports without keeping the whole log
+public class LogTail implements LineHandler {
+
+	private final String[] lines;
+
+	// index in lines where the next line goes
+	private int next = 0;
+
+	private long lineCount = 0;
+
+	public LogTail(int maxLines) {
+		if (maxLines <= 0) {
+			throw new IllegalArgumentException("a log tail needs room for at least one line, but got " + maxLines);
+		}
+		this.lines = new String[maxLines];
+	}
+
+	@Override
+	public void handleLine(String line) {
+		lines[next] = line;
+		next = (next + 1) % lines.length;
+		lineCount++;
+	}
+
+	// how many lines were handled, including the ones which do not fit into the tail anymore
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	public boolean isEmpty() {
+		return lineCount == 0;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		long omittedLines = lineCount - lines.length;
+		if (omittedLines > 0) {
+			sb.append("[").append(omittedLines).append(" earlier line(s) omitted]\n");
+		}
+		int keptLines = (int) Math.min(lineCount, lines.length);
+		int first = (next - keptLines + lines.length) % lines.length;
+		for (int lineIdx = 0; lineIdx < keptLines; lineIdx++) {
+			sb.append(lines[(first + lineIdx) % lines.length]);
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
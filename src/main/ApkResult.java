@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import history.Phase;
+import history.Verdict;
+
+// the outcome of testing one APK
+public class ApkResult {
+	
+	private final Path apk;
+	
+	private Verdict verdict = Verdict.ERROR;
+	
+	private final Map<Phase, Long> durationsMillis = new EnumMap<Phase, Long>(Phase.class);
+	
+	// log lines or exception explaining a failure, empty if there is none
+	private String failureLog = "";
+	
+	// repeated measurements by name, like "startupMillis.original" and "startupMillis.converted"
+	private final Map<String, List<Double>> samples = new TreeMap<String, List<Double>>();
+	
+	// with reruns, how often the APK was tested and how many runs disagreed with the verdict
+	private int runs = 1;
+	
+	private int disagreeingRuns = 0;
+	
+	public ApkResult(Path apk) {
+		this.apk = apk;
+	}
+	
+	public Path getApk() {
+		return apk;
+	}
+	
+	public Verdict getVerdict() {
+		return verdict;
+	}
+	
+	public void setVerdict(Verdict verdict) {
+		this.verdict = verdict;
+	}
+	
+	public void setDurationMillis(Phase phase, long durationMillis) {
+		durationsMillis.put(phase, durationMillis);
+	}
+	
+	// only phases that ran are in here
+	public Map<Phase, Long> getDurationsMillis() {
+		return durationsMillis;
+	}
+	
+	public String getFailureLog() {
+		return failureLog;
+	}
+	
+	public void setFailureLog(String failureLog) {
+		this.failureLog = failureLog;
+	}
+	
+	public void addSample(String name, double value) {
+		if (!samples.containsKey(name)) {
+			samples.put(name, new ArrayList<Double>());
+		}
+		samples.get(name).add(value);
+	}
+	
+	// empty if there are no samples with this name
+	public List<Double> getSamples(String name) {
+		if (!samples.containsKey(name)) {
+			return Collections.emptyList();
+		}
+		return samples.get(name);
+	}
+	
+	public Map<String, List<Double>> getSamples() {
+		return samples;
+	}
+	
+	public int getRuns() {
+		return runs;
+	}
+	
+	public int getDisagreeingRuns() {
+		return disagreeingRuns;
+	}
+	
+	public void setRuns(int runs, int disagreeingRuns) {
+		this.runs = runs;
+		this.disagreeingRuns = disagreeingRuns;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+import dex.DexStats;
+import history.Digests;
+import soot.Dexpler;
+import soot.G;
+import stats.BenchmarkLog;
+import stats.SampleComparison;
+import stats.Statistics;
+
+/*
+ * Benchmark of the conversion alone, without emulator: converts a fixed set of APKs with Soot, first for warming up,
+ * then for the measured iterations. Records the time, classes, dex bytes and peak heap per APK and iteration for the
+ * Soot release (see Settings.getSootRelease()), and compares the times and peak heaps with a baseline release.
+ */
+public class Benchmark {
+	
+	private static final Logger LOG = LogManager.getLogger(Benchmark.class);
+	
+	private static final Marker SUMMARY_MARKER = MarkerManager.getMarker("SUMMARY");
+	
+	private static final double BYTES_PER_MB = 1024 * 1024;
+	
+	private static final String MILLIS = "millis";
+	
+	private static final String PEAK_HEAP_BYTES = "peakHeapBytes";
+	
+	private final List<Apk> apks = new ArrayList<Apk>();
+	
+	// samples of this release by APK name and digest (see BenchmarkLog.getApkKey)
+	private final Map<String, List<Double>> millis = new HashMap<String, List<Double>>();
+	
+	private final Map<String, List<Double>> peakHeapBytes = new HashMap<String, List<Double>>();
+	
+	private final Map<Apk, String> digests = new HashMap<Apk, String>();
+	
+	public Benchmark(List<Path> apkPaths) {
+		for (Path apkPath : apkPaths) {
+			Apk apk = new Apk(apkPath);
+			apks.add(apk);
+			digests.put(apk, Digests.sha256(apkPath));
+		}
+	}
+	
+	private String getApkKey(Apk apk) {
+		return BenchmarkLog.getApkKey(apk.getName(), digests.get(apk));
+	}
+	
+	public void run() {
+		String release = Settings.getSootRelease();
+		Path benchmarksPath = Settings.getBenchmarksPath();
+		// before recording, since this run's lines would be the last ones
+		String baseline = Settings.getBenchmarkBaseline();
+		if (baseline == null) {
+			baseline = BenchmarkLog.getPreviousRelease(benchmarksPath, release);
+		}
+		int warmups = Settings.getBenchmarkWarmups();
+		for (int warmup = 1; warmup <= warmups; warmup++) {
+			LOG.info("benchmark warmup {} of {}", warmup, warmups);
+			for (Apk apk : apks) {
+				convert(apk);
+			}
+		}
+		int iterations = Settings.getBenchmarkIterations();
+		for (int iteration = 1; iteration <= iterations; iteration++) {
+			LOG.info("benchmark iteration {} of {}", iteration, iterations);
+			runIteration(iteration, release, benchmarksPath);
+		}
+		if (baseline == null) {
+			LOG.info(SUMMARY_MARKER, "no baseline to compare the benchmark of {} with", release);
+		} else {
+			compareWithBaseline(baseline, release, benchmarksPath);
+		}
+	}
+	
+	private void runIteration(int iteration, String release, Path benchmarksPath) {
+		long iterationMillis = 0;
+		int convertedApks = 0;
+		long totalClasses = 0;
+		long totalDexBytes = 0;
+		long maxPeakHeapBytes = 0;
+		for (Apk apk : apks) {
+			// collect the garbage of the last conversion, so it does not count for this one
+			if (!Settings.isWarmScene()) {
+				// otherwise the last Scene is only released by the next conversion, after the peak was reset
+				G.reset();
+				Dexpler.reset();
+			}
+			System.gc();
+			resetPeakHeap();
+			long start = System.nanoTime();
+			Path convertedApk = convert(apk);
+			long apkMillis = (System.nanoTime() - start) / 1000000;
+			long apkPeakHeapBytes = getPeakHeap();
+			if (convertedApk == null) {
+				continue;
+			}
+			DexStats stats = DexStats.of(convertedApk);
+			LOG.info("converted {} in {} ms: {} classes, {} dex bytes, {} MB peak heap", apk.getName(), apkMillis,
+					stats.getClasses(), stats.getDexBytes(), Math.round(apkPeakHeapBytes / BYTES_PER_MB));
+			BenchmarkLog.record(benchmarksPath, release, apk.getName(), digests.get(apk), iteration, apkMillis,
+					stats.getClasses(), stats.getDexBytes(), apkPeakHeapBytes);
+			addSample(millis, getApkKey(apk), apkMillis);
+			addSample(peakHeapBytes, getApkKey(apk), apkPeakHeapBytes);
+			iterationMillis += apkMillis;
+			convertedApks++;
+			totalClasses += stats.getClasses();
+			totalDexBytes += stats.getDexBytes();
+			maxPeakHeapBytes = Math.max(maxPeakHeapBytes, apkPeakHeapBytes);
+		}
+		double seconds = Math.max(iterationMillis, 1) / 1000.0;
+		LOG.info(SUMMARY_MARKER, "benchmark iteration {} of {}: {} APK(s), {} APKs/min, {} classes/s, {} MB dex/s, "
+				+ "{} MB max peak heap", iteration, release, convertedApks, String.format("%.2f", convertedApks * 60 / seconds),
+				String.format("%.1f", totalClasses / seconds), String.format("%.3f", totalDexBytes / BYTES_PER_MB / seconds),
+				Math.round(maxPeakHeapBytes / BYTES_PER_MB));
+	}
+	
+	// returns null if the conversion failed, which is logged, but does not stop the benchmark
+	private Path convert(Apk apk) {
+		try {
+			return MainTesting.convertApkUnsigned(apk);
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while converting APK for benchmark: " + apk.getName(), e);
+			return null;
+		}
+	}
+	
+	private static void addSample(Map<String, List<Double>> samples, String apkKey, double value) {
+		if (!samples.containsKey(apkKey)) {
+			samples.put(apkKey, new ArrayList<Double>());
+		}
+		samples.get(apkKey).add(value);
+	}
+	
+	// only APKs with the same digest in the baseline are compared, the others changed since
+	private void compareWithBaseline(String baseline, String release, Path benchmarksPath) {
+		Map<String, List<Double>> baselineMillis = BenchmarkLog.getSamples(benchmarksPath, baseline, MILLIS);
+		Map<String, List<Double>> baselinePeakHeapBytes = BenchmarkLog.getSamples(benchmarksPath, baseline, PEAK_HEAP_BYTES);
+		List<Double> millisRatios = new ArrayList<Double>();
+		int comparedApks = 0;
+		int regressions = 0;
+		for (Apk apk : apks) {
+			String apkKey = getApkKey(apk);
+			if (!millis.containsKey(apkKey) || !baselineMillis.containsKey(apkKey)) {
+				continue;
+			}
+			comparedApks++;
+			// the baseline takes the place of the original APK, this release the one of the converted APK
+			SampleComparison millisComparison = new SampleComparison(MILLIS, baselineMillis.get(apkKey), millis.get(apkKey));
+			SampleComparison heapComparison = new SampleComparison(PEAK_HEAP_BYTES, baselinePeakHeapBytes.get(apkKey),
+					peakHeapBytes.get(apkKey));
+			millisRatios.add(millisComparison.getConvertedMedian() / Math.max(millisComparison.getOriginalMedian(), 1));
+			for (SampleComparison comparison : new SampleComparison[] { millisComparison, heapComparison }) {
+				if (comparison.isSignificantRegression(Settings.getSignificanceLevel())) {
+					regressions++;
+					LOG.warn(SUMMARY_MARKER, "significant conversion regression of {} against {} for {}: {}", release,
+							baseline, apk.getName(), comparison);
+				} else {
+					LOG.info("no significant conversion regression for {}: {}", apk.getName(), comparison);
+				}
+			}
+		}
+		if (comparedApks == 0) {
+			LOG.info(SUMMARY_MARKER, "baseline {} has none of the benchmarked APKs", baseline);
+			return;
+		}
+		LOG.info(SUMMARY_MARKER, "benchmark of {} against {}: {} APK(s), median time ratio {}, {} significant regression(s)",
+				release, baseline, comparedApks, String.format("%.3f", Statistics.median(millisRatios)), regressions);
+	}
+	
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	// the sum of the heap pools' peaks, which did not necessarily peak at the same time, so it is an upper bound
+	private static long getPeakHeap() {
+		long peakBytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peakBytes;
+	}
+}
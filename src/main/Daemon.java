@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import static fdroid.KnownFailures.hasKnownFailures;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import history.ApkHistory;
+import history.Digests;
+
+/*
+ * Continuous testing: watches folders for new or changed APKs and tests them as they arrive, one after the other
+ * in this JVM with the same emulator, so neither the JVM (with Soot) nor the emulator state has to warm up per batch.
+ * APKs are identified by their content digest, so copies and unchanged rewrites are not tested again
+ * (unless with another Soot release).
+ */
+public class Daemon {
+	
+	private static final Logger LOG = LogManager.getLogger(Daemon.class);
+	
+	// an APK is only taken once it did not change for this time, since copying it may take a while
+	private static final long SETTLE_MILLIS = 2000;
+	
+	private static final long POLL_MILLIS = 500;
+	
+	private final List<Path> dirs;
+	
+	private final BlockingQueue<Path> queue = new LinkedBlockingQueue<Path>();
+	
+	/*
+	 * digests of the APKs queued or being tested, so copies arriving meanwhile are not queued again.
+	 * Once tested, the history decides whether the same content is tested again.
+	 */
+	private final Map<Path, String> pendingDigests = new ConcurrentHashMap<Path, String>();
+	
+	// APKs with events, by time of their last event
+	private final Map<Path, Long> unsettledApks = new HashMap<Path, Long>();
+	
+	// keep the emulator across all APKs, so it can remember what is installed there
+	private final Emulator emulator = new Emulator();
+	
+	public Daemon(List<Path> dirs) {
+		this.dirs = dirs;
+	}
+	
+	public void run() throws InterruptedException {
+		final WatchService watchService = registerDirs();
+		Thread watcherThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(watchService);
+			}
+		}, "apkDirWatcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+		LOG.info("waiting for APKs in {}", dirs);
+		while (true) {
+			Path apk = queue.take();
+			LOG.info("testing APK from watched folder ({} more queued): {}", queue.size(), apk);
+			try {
+				MainTesting.testAndRecordApk(emulator, apk);
+			} finally {
+				pendingDigests.remove(apk);
+			}
+		}
+	}
+	
+	private WatchService registerDirs() {
+		try {
+			WatchService watchService = FileSystems.getDefault().newWatchService();
+			for (Path dir : dirs) {
+				dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+			}
+			return watchService;
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while watching folders " + dirs, e);
+		}
+	}
+	
+	private void watch(WatchService watchService) {
+		// APKs already there are tested as well, if they changed since their last test
+		scanDirs();
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				LOG.warn("InterruptedException while watching folders, stopping to watch", e);
+				return;
+			}
+			if (key != null) {
+				handleEvents(key);
+			}
+			enqueueSettledApks();
+		}
+	}
+	
+	private void handleEvents(WatchKey key) {
+		Path dir = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				LOG.warn("too many changes in watched folders, scanning them completely");
+				scanDirs();
+				continue;
+			}
+			Path apk = dir.resolve((Path) event.context());
+			if (apk.getFileName().toString().endsWith(".apk")) {
+				unsettledApks.put(apk, System.currentTimeMillis());
+			}
+		}
+		key.reset();
+	}
+	
+	private void scanDirs() {
+		for (Path dir : dirs) {
+			try (DirectoryStream<Path> apks = Files.newDirectoryStream(dir, "*.{apk}")) {
+				for (Path apk : apks) {
+					unsettledApks.put(apk, 0L); // existing APKs are settled already
+				}
+			} catch (IOException e) {
+				LOG.warn("IOException while scanning watched folder " + dir, e);
+			}
+		}
+	}
+	
+	private void enqueueSettledApks() {
+		long settledBefore = System.currentTimeMillis() - SETTLE_MILLIS;
+		Iterator<Map.Entry<Path, Long>> unsettledIter = unsettledApks.entrySet().iterator();
+		while (unsettledIter.hasNext()) {
+			Map.Entry<Path, Long> unsettled = unsettledIter.next();
+			if (unsettled.getValue() <= settledBefore) {
+				unsettledIter.remove();
+				enqueueIfNew(unsettled.getKey());
+			}
+		}
+	}
+	
+	private void enqueueIfNew(Path apk) {
+		if (!Files.isRegularFile(apk)) {
+			return; // deleted again
+		}
+		if (hasKnownFailures(apk)) {
+			LOG.info("skipping APK due to known failures: {}", apk);
+			return;
+		}
+		String digest;
+		try {
+			digest = Digests.sha256(apk);
+		} catch (RuntimeException e) {
+			LOG.warn("could not compute digest of APK, skipping it: " + apk, e);
+			return;
+		}
+		ApkHistory history = ApkHistory.load(Settings.getHistoryDir(), apk.getFileName().toString());
+		if (history.isTested(digest, Settings.getSootRelease()) || pendingDigests.containsValue(digest)) {
+			LOG.debug("skipping APK already tested or queued with the same content and Soot release: {}", apk);
+			return;
+		}
+		if (!MainTesting.passesPreflight(apk)) {
+			return;
+		}
+		LOG.info("queueing new or changed APK {}", apk);
+		pendingDigests.put(apk.toAbsolutePath(), digest);
+		queue.add(apk.toAbsolutePath());
+		MainTesting.getProgress().addQueued(1);
+	}
+}
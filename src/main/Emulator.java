@@ -16,52 +16,203 @@
 
 package main;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import history.Digests;
+import logs.LogArchive;
+import logs.LogBaseline;
+import logs.LogLine;
+import logs.LogTail;
 import os.Commands;
+import os.InstallResults;
+import os.LineHandler;
 import os.Results;
 
 public class Emulator {
 	
 	private static final Logger LOG = LogManager.getLogger(Emulator.class);
+	
+	// the package manager refuses to replace a package signed with another certificate
+	private static final String[] REPLACE_FAILURES = {"INSTALL_FAILED_UPDATE_INCOMPATIBLE", "INSTALL_FAILED_ALREADY_EXISTS", "INSTALL_PARSE_FAILED_INCONSISTENT_CERTIFICATES"};
+	
+	private static final Pattern LISTED_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+	
+	private static final Pattern SCREEN_SIZE = Pattern.compile("size: (\\d+)x(\\d+)");
+	
+	// of the default emulator skin, if "wm size" does not work
+	private static final int[] DEFAULT_SCREEN_SIZE = { 480, 800 };
+	
+	// signer digest of each package installed on the emulator ("" if not known), lazily read once and kept up to date by install(Apk)
+	private Map<String, String> installedPackages = null;
+	
+	// why the last run failed, empty if it did not
+	private String failureLog = "";
+	
+	// memory of the app during the last run, empty if it was not sampled
+	private List<Meminfo> memorySamples = new ArrayList<Meminfo>();
+	
+	// frame statistics of each round of the input script in the last run, empty if it was not played
+	private List<Gfxinfo> frameSamples = new ArrayList<Gfxinfo>();
+	
+	// of the last run, null before the first one
+	private InstallResults lastInstallResults = null;
+	
+	// compressed complete log of the last run, null if it was not archived
+	private Path logArchivePath = null;
+	
+	// width and height in pixels, lazily read once
+	private int[] screenSize = null;
 
 	public boolean run(Apk apk) {
+		return run(apk, "run", null, false);
+	}
+	
+	/*
+	 * with a baseline, warnings / errors are either recorded into it (for the original APK), or
+	 * only count if they are not in there (for the converted APK). The name of the run (like "original")
+	 * goes into the file name of the log archive.
+	 */
+	public boolean run(Apk apk, String runName, LogBaseline baseline, boolean recordBaseline) {
 		LOG.info("running APK on emulator");
+		failureLog = "";
+		logArchivePath = null;
+		memorySamples = new ArrayList<Meminfo>();
+		frameSamples = new ArrayList<Gfxinfo>();
 		assertRunning();
 		Commands.clearLogcat();
-		Results installResults = install(apk);
+		InstallResults installResults = install(apk);
+		lastInstallResults = installResults;
 		if (installResults.getOutput().contains("Failure")) {
-			handleInstallFailure(installResults);
+			handleInstallFailure(apk, runName, installResults);
 			return false;
 		} else if (apk.getMainActivity().isEmpty()) {
 			LOG.info("no main activity found in APK, skipping start after installation");
 			return true;
 		} else {
-			return startAndWatchForErrors(apk);
+			boolean succeeded = startAndWatchForErrors(apk, baseline, recordBaseline);
+			if (Settings.isLogArchiving()) {
+				readLog(apk, runName, null);
+			}
+			if (!succeeded && logArchivePath != null) {
+				failureLog += "complete log in " + logArchivePath + "\n";
+			}
+			if (succeeded && Settings.isFrameMeasuring()) {
+				frameSamples = measureFrames(apk);
+			}
+			return succeeded;
 		}
 	}
 
 	private void assertRunning() {
 		String devicesResult = Commands.getDevices();
+		String serial = Commands.getSerial();
+		if (serial != null && !devicesResult.contains(serial + "\tdevice")) {
+			// only this emulator is broken (even if it was the last one), the fleet replaces it after the test
+			throw new RuntimeException("emulator " + serial + " is not online");
+		}
 		if (devicesResult.isEmpty() || devicesResult.equals("List of devices attached \n\n")) {
 			throw new Error("no running emulator found");
 		}
 	}
 	
-	private Results install(Apk apk) {
-		LOG.info("uninstalling old APK, if there");
-		Commands.uninstall(apk.getAppPackage());
-		LOG.info("installing APK");
-		return Commands.install(apk.getPath());
+	private InstallResults install(Apk apk) {
+		String appPackage = apk.getAppPackage();
+		String signer = getSigner(apk);
+		if (!getInstalledPackages().containsKey(appPackage)) {
+			LOG.info("installing APK");
+			return installAndRemember(apk, signer);
+		}
+		String installedSigner = installedPackages.get(appPackage);
+		if (!installedSigner.isEmpty() && !installedSigner.equals(signer)) {
+			// a replace would be refused anyway, like for a converted APK after its original
+			LOG.info("already installed APK is signed differently, uninstalling it first");
+			Commands.uninstall(appPackage);
+			installedPackages.remove(appPackage);
+			return installAndRemember(apk, signer);
+		}
+		LOG.info("replacing already installed APK");
+		InstallResults replaceResults = Commands.install(apk.getPath());
+		if (isReplaceFailure(replaceResults)) {
+			LOG.info("replacing not possible (probably signed differently), uninstalling old APK first");
+			Commands.uninstall(appPackage);
+			installedPackages.remove(appPackage);
+			return installAndRemember(apk, signer);
+		}
+		if (!replaceResults.getOutput().contains("Failure")) {
+			// replacing keeps the data of the old APK, but every run has to start like a fresh installation
+			Commands.clearAppData(appPackage);
+			installedPackages.put(appPackage, signer);
+		}
+		return replaceResults;
 	}
 	
-	private void handleInstallFailure(Results installResults) {
+	private InstallResults installAndRemember(Apk apk, String signer) {
+		InstallResults installResults = Commands.install(apk.getPath());
+		if (!installResults.getOutput().contains("Failure")) {
+			installedPackages.put(apk.getAppPackage(), signer);
+		}
+		return installResults;
+	}
+	
+	// "" if the APK is not signed or its signature is unreadable, so that the replace is simply tried
+	private String getSigner(Apk apk) {
+		try {
+			String signer = Digests.signerSha256(apk.getPath());
+			return signer == null ? "" : signer;
+		} catch (RuntimeException e) {
+			LOG.warn("could not read signer of " + apk.getPath(), e);
+			return "";
+		}
+	}
+	
+	private boolean isReplaceFailure(Results installResults) {
+		String output = installResults.getOutput();
+		for (String replaceFailure : REPLACE_FAILURES) {
+			if (output.contains(replaceFailure)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private Map<String, String> getInstalledPackages() {
+		if (installedPackages == null) {
+			LOG.info("reading installed packages from emulator");
+			installedPackages = new HashMap<String, String>();
+			for (String appPackage : Commands.getInstalledPackages()) {
+				// installed before this run, signer unknown
+				installedPackages.put(appPackage, "");
+			}
+		}
+		return installedPackages;
+	}
+	
+	private void handleInstallFailure(Apk apk, String runName, Results installResults) {
 		/*
 		 * use every log line from the brief log for installation. Unfortunately the 'dalvikvm' process id
 		 * could differ from the PackageManager's, so we cannot filter by PID like during execution.
+		 * The app did not run yet, so only harmless rules with the scope "any" apply to these lines.
 		 */
-		String installFailureLog = Commands.getBriefLog(); // can be empty
+		final LogTail installFailureLog = new LogTail(Settings.getLogTailLines()); // can be empty
+		readLog(apk, runName, new LineHandler() {
+			@Override
+			public void handleLine(String line) {
+				LogLine logLine = LogLine.parse(line);
+				if (logLine.isWarningOrWorse() && LogcatWatcher.findHarmlessRule(logLine, false) != null) {
+					return;
+				}
+				installFailureLog.handleLine(line);
+			}
+		});
 		StringBuilder sb = new StringBuilder("installation of APK failed.\n");
 		
 		sb.append("output from install command was '");
@@ -73,15 +224,55 @@ public class Emulator {
 		sb.append("log output was '");
 		sb.append(installFailureLog);
 		sb.append("'");
+		if (logArchivePath != null) {
+			sb.append(", complete log in ");
+			sb.append(logArchivePath);
+		}
 		
-		LOG.error(sb.toString());
+		failureLog = sb.toString();
+		LOG.error(failureLog);
+	}
+	
+	// streams the brief log into a new archive (if enabled) and the given tail (if not null)
+	private void readLog(Apk apk, String runName, final LineHandler tail) {
+		final LogArchive archive;
+		if (Settings.isLogArchiving()) {
+			String archiveName = runName + "-" + System.currentTimeMillis() + ".log.gz";
+			archive = new LogArchive(Settings.getLogArchivesDir().resolve(apk.getName()).resolve(archiveName));
+		} else {
+			archive = null;
+		}
+		try {
+			Commands.readBriefLog(new LineHandler() {
+				@Override
+				public void handleLine(String line) {
+					if (archive != null) {
+						archive.handleLine(line);
+					}
+					if (tail != null) {
+						tail.handleLine(line);
+					}
+				}
+			});
+		} finally {
+			if (archive != null) {
+				archive.close();
+				logArchivePath = archive.getPath();
+				LOG.info("archived log of the run in {}", logArchivePath);
+			}
+		}
 	}
 	
-	private boolean startAndWatchForErrors(Apk apk) {
+	private boolean startAndWatchForErrors(Apk apk, LogBaseline baseline, boolean recordBaseline) {
 		LOG.info("starting separate log watcher thread for APK");
-		LogcatWatcher logcatWatcher = new LogcatWatcher(apk.getActivityWithPackage());
+		LogcatWatcher logcatWatcher = new LogcatWatcher(apk.getActivityWithPackage(), baseline, recordBaseline);
 		Thread watcherThread = new Thread(logcatWatcher, "logcatWatcher");
 		watcherThread.start();
+		MeminfoSampler meminfoSampler = new MeminfoSampler(apk.getAppPackage());
+		Thread samplerThread = new Thread(meminfoSampler, "meminfoSampler");
+		if (Settings.isMemorySampling()) {
+			samplerThread.start();
+		}
 		String mainActivity = apk.getMainActivity();
 		LOG.info("starting main activity in APK: {}", mainActivity);
 		Commands.startActivity(apk.getAppPackage(), mainActivity);
@@ -94,6 +285,130 @@ public class Emulator {
 			// try at least to stop the other thread, if waiting does not work
 			watcherThread.interrupt();
 		}
+		meminfoSampler.stop();
+		try {
+			samplerThread.join();
+		} catch (InterruptedException e) {
+			LOG.warn("InterruptedException waiting for memory sampler thread", e);
+			samplerThread.interrupt();
+		}
+		memorySamples = meminfoSampler.getSamples();
+		failureLog = logcatWatcher.getErrorLog();
 		return !logcatWatcher.foundError();
 	}
+	
+	/*
+	 * size of the optimized dex the device created for the installed APK in bytes, InstallResults.UNKNOWN if none
+	 * was found (e.g. since the shell has no root access). Depending on the Android version, it is in
+	 * /data/dalvik-cache (Dalvik and ART before 6.0, named after the APK path) or next to the APK (ART 6.0+).
+	 */
+	public long getOdexBytes(Apk apk) {
+		String packagePath = Commands.getPackagePath(apk.getAppPackage()).trim();
+		if (!packagePath.startsWith("package:")) {
+			return InstallResults.UNKNOWN;
+		}
+		String apkPath = packagePath.substring("package:".length());
+		String apkDir = apkPath.substring(0, apkPath.lastIndexOf('/'));
+		String cacheName = apkPath.substring(1).replace('/', '@') + "@classes.dex";
+		String candidates = apkDir + "/oat/*/base.odex " + apkDir + "/oat/*/base.vdex "
+				+ "/data/dalvik-cache/*/" + cacheName + " /data/dalvik-cache/" + cacheName;
+		long odexBytes = 0;
+		boolean found = false;
+		for (String line : Commands.listFiles(candidates).split("\n")) {
+			long fileBytes = getListedSize(line.trim());
+			if (fileBytes != InstallResults.UNKNOWN) {
+				odexBytes += fileBytes;
+				found = true;
+			}
+		}
+		return found ? odexBytes : InstallResults.UNKNOWN;
+	}
+	
+	// the size comes right before the date in "ls -l" of toolbox as well as toybox
+	private long getListedSize(String line) {
+		String[] columns = line.split("\\s+");
+		for (int columnIdx = 1; columnIdx < columns.length; columnIdx++) {
+			if (LISTED_DATE.matcher(columns[columnIdx]).matches() && columns[columnIdx - 1].matches("\\d+")) {
+				return Long.parseLong(columns[columnIdx - 1]);
+			}
+		}
+		return InstallResults.UNKNOWN;
+	}
+	
+	// plays the same input script several times on the running app, getting the frame statistics of each round
+	private List<Gfxinfo> measureFrames(Apk apk) {
+		int[] size = getScreenSize();
+		InputScript script = new InputScript(Settings.getInputSeed(), Settings.getInputEvents(), size[0], size[1]);
+		int rounds = Settings.getFrameRounds();
+		LOG.info("playing input script with {} event(s) {} time(s) for frame statistics", script.getEvents().size(), rounds);
+		List<Gfxinfo> samples = new ArrayList<Gfxinfo>();
+		for (int round = 0; round < rounds; round++) {
+			Commands.resetGfxinfo(apk.getAppPackage());
+			for (String event : script.getEvents()) {
+				Commands.input(event);
+			}
+			Gfxinfo gfxinfo = Gfxinfo.parse(Commands.getGfxinfo(apk.getAppPackage()));
+			if (gfxinfo == null) {
+				LOG.warn("no frame statistics after round {}, app not running anymore or Android too old", round + 1);
+			} else {
+				samples.add(gfxinfo);
+			}
+		}
+		return samples;
+	}
+	
+	private int[] getScreenSize() {
+		if (screenSize == null) {
+			// the override size comes last, if there is one
+			Matcher sizeMatcher = SCREEN_SIZE.matcher(Commands.getScreenSize());
+			screenSize = DEFAULT_SCREEN_SIZE;
+			while (sizeMatcher.find()) {
+				screenSize = new int[] { Integer.parseInt(sizeMatcher.group(1)), Integer.parseInt(sizeMatcher.group(2)) };
+			}
+		}
+		return screenSize;
+	}
+	
+	/*
+	 * launches the installed APK the given number of times from a stopped process, returning the launch times
+	 * in milliseconds. Launches where the activity did not come up are left out.
+	 */
+	public List<Double> measureColdStarts(Apk apk, int launches) {
+		LOG.info("measuring {} cold start(s) of APK", launches);
+		List<Double> startupMillis = new ArrayList<Double>();
+		for (int launch = 0; launch < launches; launch++) {
+			Commands.forceStop(apk.getAppPackage());
+			long launchMillis = Commands.startActivityAndWait(apk.getAppPackage(), apk.getMainActivity());
+			if (launchMillis >= 0) {
+				startupMillis.add((double) launchMillis);
+			}
+		}
+		Commands.forceStop(apk.getAppPackage());
+		if (startupMillis.size() < launches) {
+			LOG.warn("activity did not come up in {} of {} cold start(s)", launches - startupMillis.size(), launches);
+		}
+		return startupMillis;
+	}
+	
+	// null if the last run's log was not archived
+	public Path getLogArchivePath() {
+		return logArchivePath;
+	}
+	
+	public String getFailureLog() {
+		return failureLog;
+	}
+	
+	public List<Meminfo> getMemorySamples() {
+		return memorySamples;
+	}
+	
+	public List<Gfxinfo> getFrameSamples() {
+		return frameSamples;
+	}
+	
+	// null before the first run
+	public InstallResults getLastInstallResults() {
+		return lastInstallResults;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+/*
+ * Frame statistics of an app since the last reset from "dumpsys gfxinfo <package>" (Android 6 and later):
+ *
+ * Total frames rendered: 812
+ * Janky frames: 41 (5.05%)
+ * 50th percentile: 7ms
+ * 90th percentile: 13ms
+ * 95th percentile: 19ms
+ * 99th percentile: 42ms
+ */
+public class Gfxinfo {
+	
+	private static final String TOTAL_FRAMES = "Total frames rendered:";
+	
+	private static final String JANKY_FRAMES = "Janky frames:";
+	
+	private final long totalFrames;
+	
+	private final long jankyFrames;
+	
+	private final long p50FrameMillis;
+	
+	private final long p90FrameMillis;
+	
+	private final long p99FrameMillis;
+	
+	private Gfxinfo(long totalFrames, long jankyFrames, long p50FrameMillis, long p90FrameMillis, long p99FrameMillis) {
+		this.totalFrames = totalFrames;
+		this.jankyFrames = jankyFrames;
+		this.p50FrameMillis = p50FrameMillis;
+		this.p90FrameMillis = p90FrameMillis;
+		this.p99FrameMillis = p99FrameMillis;
+	}
+	
+	// returns null if there are no frame statistics, e.g. since the process is not running or Android is too old
+	public static Gfxinfo parse(String dumpsysOutput) {
+		long totalFrames = -1;
+		long jankyFrames = 0;
+		long p50FrameMillis = 0;
+		long p90FrameMillis = 0;
+		long p99FrameMillis = 0;
+		// only the first statistics count, newer Android versions repeat them per window
+		for (String line : dumpsysOutput.split("\n")) {
+			String trimmedLine = line.trim();
+			if (trimmedLine.startsWith(TOTAL_FRAMES) && totalFrames == -1) {
+				totalFrames = getFirstNumber(trimmedLine.substring(TOTAL_FRAMES.length()));
+			} else if (trimmedLine.startsWith(JANKY_FRAMES) && jankyFrames == 0) {
+				jankyFrames = getFirstNumber(trimmedLine.substring(JANKY_FRAMES.length()));
+			} else if (trimmedLine.startsWith("50th percentile:") && p50FrameMillis == 0) {
+				p50FrameMillis = getFirstNumber(trimmedLine.substring(trimmedLine.indexOf(':') + 1));
+			} else if (trimmedLine.startsWith("90th percentile:") && p90FrameMillis == 0) {
+				p90FrameMillis = getFirstNumber(trimmedLine.substring(trimmedLine.indexOf(':') + 1));
+			} else if (trimmedLine.startsWith("99th percentile:") && p99FrameMillis == 0) {
+				p99FrameMillis = getFirstNumber(trimmedLine.substring(trimmedLine.indexOf(':') + 1));
+			}
+		}
+		if (totalFrames == -1) {
+			return null;
+		}
+		return new Gfxinfo(totalFrames, jankyFrames, p50FrameMillis, p90FrameMillis, p99FrameMillis);
+	}
+	
+	// the digits at the beginning, like 41 of " 41 (5.05%)" or 7 of " 7ms"
+	private static long getFirstNumber(String text) {
+		String trimmedText = text.trim();
+		int digitsEnd = 0;
+		while (digitsEnd < trimmedText.length() && Character.isDigit(trimmedText.charAt(digitsEnd))) {
+			digitsEnd++;
+		}
+		if (digitsEnd == 0) {
+			return 0;
+		}
+		return Long.parseLong(trimmedText.substring(0, digitsEnd));
+	}
+	
+	public long getTotalFrames() {
+		return totalFrames;
+	}
+	
+	public double getJankyFramesPercent() {
+		return totalFrames == 0 ? 0 : jankyFrames * 100.0 / totalFrames;
+	}
+	
+	public long getP50FrameMillis() {
+		return p50FrameMillis;
+	}
+	
+	public long getP90FrameMillis() {
+		return p90FrameMillis;
+	}
+	
+	public long getP99FrameMillis() {
+		return p99FrameMillis;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import dex.DexHashes;
+import hostart.ClassInitDriver;
+import os.Commands;
+import os.LineHandler;
+
+/*
+ * Runs the dex of the original and the converted APK on a host build of ART, without emulator: hostart.ClassInitDriver
+ * initializes every class of the original APK in the same order and calls the entry points of
+ * Settings.getHostArtEntryPoints(). The outcomes have to be the same for both. Host ART only has the core libraries,
+ * so classes needing the Android framework fail to initialize, but in both APKs alike.
+ */
+public class HostArt {
+	
+	private static final Logger LOG = LogManager.getLogger(HostArt.class);
+	
+	private static final String DRIVER_CLASS_FILE = ClassInitDriver.class.getSimpleName() + ".class";
+	
+	private static final String NOT_REACHED = "not reached";
+	
+	// the driver dex is built once per run, by the first lane needing it
+	private static final Object DRIVER_LOCK = new Object();
+	
+	private static Path driverDex = null;
+	
+	private final Path workDir;
+	
+	private final long timeoutMillis;
+	
+	public HostArt(Path workDir, long timeoutMillis) {
+		this.workDir = workDir;
+		this.timeoutMillis = timeoutMillis;
+	}
+	
+	// empty if the converted APK behaved like the original one
+	public List<String> findDifferences(Path originalApk, Path convertedApk) {
+		Path driver = getDriverDex();
+		List<String> tasks = getTasks(originalApk);
+		Path tasksPath = workDir.resolve(originalApk.getFileName() + ".tasks");
+		try {
+			Files.createDirectories(workDir);
+			Files.write(tasksPath, tasks, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while writing host ART tasks " + tasksPath, e);
+		}
+		Map<String, String> originalOutcomes = run(driver, originalApk, tasksPath);
+		Map<String, String> convertedOutcomes = run(driver, convertedApk, tasksPath);
+		List<String> differences = new ArrayList<String>();
+		for (String task : tasks) {
+			String originalOutcome = getOutcome(originalOutcomes, task);
+			String convertedOutcome = getOutcome(convertedOutcomes, task);
+			if (!originalOutcome.equals(convertedOutcome)) {
+				differences.add(task + ": original " + originalOutcome + ", converted " + convertedOutcome);
+			}
+		}
+		LOG.info("ran {} host ART task(s) for {}, {} with different outcomes", tasks.size(), originalApk.getFileName(),
+				differences.size());
+		return differences;
+	}
+	
+	private static String getOutcome(Map<String, String> outcomes, String task) {
+		String outcome = outcomes.get(task);
+		return outcome == null ? NOT_REACHED : outcome;
+	}
+	
+	// all classes in alphabetical order, then the entry points of these classes
+	private static List<String> getTasks(Path originalApk) {
+		Set<String> descriptors = DexHashes.of(originalApk).getClassHashes().keySet();
+		List<String> classNames = new ArrayList<String>();
+		List<String> tasks = new ArrayList<String>();
+		for (String descriptor : descriptors) {
+			// like "Lcom/example/Foo;"
+			String className = descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+			classNames.add(className);
+			tasks.add(ClassInitDriver.INIT + className);
+		}
+		for (String entryPoint : Settings.getHostArtEntryPoints()) {
+			int methodSeparator = entryPoint.indexOf('#');
+			if (methodSeparator != -1 && classNames.contains(entryPoint.substring(0, methodSeparator))) {
+				tasks.add(ClassInitDriver.CALL + entryPoint);
+			}
+		}
+		return tasks;
+	}
+	
+	// the outcome by task, without the tasks that were not reached
+	private Map<String, String> run(Path driver, Path apk, Path tasksPath) {
+		final Map<String, String> outcomes = new LinkedHashMap<String, String>();
+		final List<String> appLines = new ArrayList<String>();
+		String classpath = driver + ":" + apk;
+		String args = tasksPath + " " + timeoutMillis;
+		int exitValue = Commands.runOnHostArt(classpath, ClassInitDriver.class.getName(), args, new LineHandler() {
+			@Override
+			public void handleLine(String line) {
+				if (!line.startsWith(ClassInitDriver.PREFIX)) {
+					appLines.add(line);
+					return;
+				}
+				String outcomeLine = line.substring(ClassInitDriver.PREFIX.length());
+				int outcomeSeparator = outcomeLine.indexOf('\t');
+				if (outcomeSeparator != -1) {
+					outcomes.put(outcomeLine.substring(0, outcomeSeparator), outcomeLine.substring(outcomeSeparator + 1));
+				}
+			}
+		});
+		if (exitValue != 0) {
+			// like an app calling System.exit() in a static initializer, the remaining tasks count as not reached
+			LOG.info("host ART exited with {} after {} task(s) of {}", exitValue, outcomes.size(), apk.getFileName());
+		}
+		if (outcomes.isEmpty() && !appLines.isEmpty()) {
+			LOG.warn("host ART ran no task of {}, its output ends with: {}", apk.getFileName(), appLines.get(appLines.size() - 1));
+		}
+		return outcomes;
+	}
+	
+	// hostart.ClassInitDriver converted to dex with dx, from the class file this JVM loaded it from
+	private Path getDriverDex() {
+		synchronized (DRIVER_LOCK) {
+			if (driverDex != null) {
+				return driverDex;
+			}
+			Path classesDir = workDir.resolve("driver-classes");
+			Path classFile = classesDir.resolve(ClassInitDriver.class.getPackage().getName().replace('.', '/')).resolve(DRIVER_CLASS_FILE);
+			Path dex = workDir.resolve("driver.dex");
+			try (InputStream classStream = ClassInitDriver.class.getResourceAsStream(DRIVER_CLASS_FILE)) {
+				if (classStream == null) {
+					throw new RuntimeException("class file of " + ClassInitDriver.class.getName() + " not found");
+				}
+				Files.createDirectories(classFile.getParent());
+				Files.copy(classStream, classFile, StandardCopyOption.REPLACE_EXISTING);
+				Files.deleteIfExists(dex);
+			} catch (IOException e) {
+				throw new RuntimeException("IOException while copying the host ART driver to " + classesDir, e);
+			}
+			String dxOutput = Commands.dex(classesDir, dex).getErrors();
+			if (!Files.exists(dex)) {
+				throw new RuntimeException("dx did not convert the host ART driver: " + dxOutput);
+			}
+			driverDex = dex;
+			return driverDex;
+		}
+	}
+}
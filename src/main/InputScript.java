@@ -0,0 +1,62 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * A fixed sequence of taps and swipes for "adb shell input", generated from a seed, so the original and the
+ * converted APK get exactly the same input. The events stay out of the top and bottom tenth of the screen,
+ * to keep away from the status and navigation bar.
+ */
+public class InputScript {
+	
+	private static final double SWIPE_RATIO = 0.6;
+	
+	private static final int MIN_SWIPE_MILLIS = 100;
+	
+	private static final int MAX_SWIPE_MILLIS = 400;
+	
+	private final List<String> events = new ArrayList<String>();
+	
+	public InputScript(long seed, int eventCount, int screenWidth, int screenHeight) {
+		Random random = new Random(seed);
+		for (int eventIdx = 0; eventIdx < eventCount; eventIdx++) {
+			int x = randomCoordinate(random, screenWidth);
+			int y = randomCoordinate(random, screenHeight);
+			if (random.nextDouble() < SWIPE_RATIO) {
+				int toX = randomCoordinate(random, screenWidth);
+				int toY = randomCoordinate(random, screenHeight);
+				int durationMillis = MIN_SWIPE_MILLIS + random.nextInt(MAX_SWIPE_MILLIS - MIN_SWIPE_MILLIS);
+				events.add("swipe " + x + " " + y + " " + toX + " " + toY + " " + durationMillis);
+			} else {
+				events.add("tap " + x + " " + y);
+			}
+		}
+	}
+	
+	private static int randomCoordinate(Random random, int screenLength) {
+		return screenLength / 10 + random.nextInt(Math.max(1, screenLength * 8 / 10));
+	}
+	
+	// arguments for "input", like "tap 540 960" or "swipe 100 800 100 300 250"
+	public List<String> getEvents() {
+		return events;
+	}
+}
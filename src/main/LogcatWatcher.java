@@ -16,25 +16,51 @@
 
 package main;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import logs.HarmlessLogRules;
+import logs.HarmlessRule;
+import logs.LogBaseline;
+import logs.LogLine;
+import logs.LogTail;
 import os.Commands;
+import os.LineHandler;
 
 public class LogcatWatcher implements Runnable {
 	
 	private static final Logger LOG = LogManager.getLogger(LogcatWatcher.class);
 	
-	private static final String DEFAULT_PID = "-1";
-	
 	private static final int MAX_SECS_TO_WATCH_LOG = 10;
 	
+	// loaded once, see loadHarmlessLogRules()
+	private static HarmlessLogRules harmlessLogRules = null;
+	
+	private static final int TAIL_LINES = Settings.getLogTailLines();
+	
 	private boolean foundError = false;
 	
+	private String errorLog = "";
+	
 	private final String activityName;
+	
+	// fingerprints of the original APK's warnings / errors, null if every warning / error counts
+	private final LogBaseline baseline;
+	
+	// if true, warnings / errors are added to the baseline, and only fatal ones count
+	private final boolean recordBaseline;
 
 	public LogcatWatcher(String activityName) {
+		this(activityName, null, false);
+	}
+	
+	public LogcatWatcher(String activityName, LogBaseline baseline, boolean recordBaseline) {
 		this.activityName = activityName;
+		this.baseline = baseline;
+		this.recordBaseline = recordBaseline;
 	}
 
 	@Override
@@ -81,48 +107,89 @@ public class LogcatWatcher implements Runnable {
 		return Integer.parseInt(time);
 	}
 
-	private void searchForErrorLogLines(String activityPid) {
-		String briefLog = Commands.getBriefLog();
-		if (briefLog.isEmpty()) {
-			return;
-		}
-		StringBuilder localLogLines = new StringBuilder();
-		String[] logLines = briefLog.split("\n");
-		for (String logLine : logLines) {
-			String logPid = extractPid(logLine);
-			if (activityPid.equals(logPid)) {
-				localLogLines.append(logLine);
-				localLogLines.append('\n');
+	private void searchForErrorLogLines(final String activityPid) {
+		final LogTail localLogLines = new LogTail(TAIL_LINES);
+		Commands.readBriefLog(new LineHandler() {
+			
+			// lines of the process after its first error, which still fit into the tail without losing the error
+			private int linesAfterError = -1;
+			
+			@Override
+			public void handleLine(String line) {
+				LogLine logLine = LogLine.parse(line);
+				if (!activityPid.equals(logLine.getPid())) {
+					return;
+				}
+				if (linesAfterError < TAIL_LINES / 2) {
+					localLogLines.handleLine(line);
+				}
+				if (linesAfterError >= 0) {
+					linesAfterError++;
+				}
 				if (isErrorMessage(logLine)) {
 					foundError = true;
+					if (linesAfterError == -1) {
+						linesAfterError = 0;
+					}
 				}
 			}
-		}
+		});
 		if (foundError) {
-			LOG.error("found error log lines:\n{}", localLogLines.toString());
+			errorLog = localLogLines.toString();
+			LOG.error("found error log lines:\n{}", errorLog);
 		}
 	}
 	
-	private boolean isErrorMessage(String logMessage) {
+	private boolean isErrorMessage(LogLine logLine) {
 		// threat messages other than warnings, errors and fatals as "not an error"
-		if (!logMessage.startsWith("W/") && !logMessage.startsWith("E/") && !logMessage.startsWith("F/")) {
+		if (!logLine.isWarningOrWorse()) {
 			return false;
 		}
-		// filter "harmless" warning / error messages
-		if (logMessage.endsWith("Unable to open stack trace file '/data/anr/traces.txt': Permission denied")) {
-			// not being able to write stack traces is OK, particularly if the "Permission denied" comes and goes for some reason
+		// filter "harmless" warning / error messages, see the rules file for their reasons
+		HarmlessRule harmlessRule = findHarmlessRule(logLine, true);
+		if (harmlessRule != null) {
+			LOG.debug("ignoring harmless log line due to rule {}: {}", harmlessRule, logLine);
 			return false;
 		}
-		if (logMessage.contains("Converting to string: TypedValue")) {
-			// harmless warning of unknown source, something like "W/Resources(17336): Converting to string: TypedValue{t=0x10/d=0x6 a=-1}"
-			return false;
+		if (baseline == null) {
+			return true;
+		}
+		if (recordBaseline) {
+			baseline.add(logLine);
+			return isFatal(logLine);
 		}
-		if (logMessage.contains("No known package when getting value for resource number")) {
+		if (baseline.contains(logLine)) {
+			LOG.debug("ignoring log line also logged by the original APK: {}", logLine);
 			return false;
 		}
-		// if adding new definitions for harmless errors: do not forget the reason for harmlessness...
 		return true;
 	}
+	
+	// loggedByApp is false for lines of other processes, like the package manager's during an installation
+	static HarmlessRule findHarmlessRule(LogLine logLine, boolean loggedByApp) {
+		return loadHarmlessLogRules().findHarmlessRule(logLine, loggedByApp);
+	}
+	
+	/*
+	 * called at startup, so a missing rules file (like on a worker started from another folder) stops the run
+	 * with a clear message, instead of failing the class initialization in the middle of the first test
+	 */
+	static synchronized HarmlessLogRules loadHarmlessLogRules() {
+		if (harmlessLogRules == null) {
+			Path rulesPath = Settings.getHarmlessLogRulesPath();
+			if (!Files.isRegularFile(rulesPath)) {
+				throw new RuntimeException("harmless log rules " + rulesPath.toAbsolutePath()
+						+ " not found, set the system property todex.harmlessLogRules to their file");
+			}
+			harmlessLogRules = HarmlessLogRules.load(rulesPath);
+		}
+		return harmlessLogRules;
+	}
+	
+	private boolean isFatal(LogLine logLine) {
+		// uncaught exceptions are logged as errors by the AndroidRuntime, like "E/AndroidRuntime( 1234): FATAL EXCEPTION: main"
+		return logLine.getLevel() == 'F' || (logLine.getLevel() == 'E' && logLine.getTag().equals("AndroidRuntime"));
+	}
 
 	private String getActivityPidInLog() {
 		String processActivityLog = Commands.getProcessActivityLog();
@@ -139,16 +206,12 @@ public class LogcatWatcher implements Runnable {
 		return ""; // log was not ready or message format changed, we don't know...
 	}
 	
-	private String extractPid(String briefLogEntry) {
-		int pidBegin = briefLogEntry.indexOf('(');
-		int pidEnd = briefLogEntry.indexOf(')', pidBegin);
-		if (pidBegin == -1 || pidEnd == -1) {
-			return DEFAULT_PID;
-		}
-		return briefLogEntry.substring(pidBegin + 1, pidEnd).trim();
-	}
-
 	public boolean foundError() {
 		return foundError;
 	}
+	
+	// the last log lines of the activity's process, up to and a bit after the first error, empty if none was found
+	public String getErrorLog() {
+		return errorLog;
+	}
 }
\ No newline at end of file
@@ -19,36 +19,158 @@ package main;
 import static fdroid.KnownFailures.hasKnownFailures;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 
+import dex.DexComparison;
+import dex.DexFootprint;
+import dex.DexHashes;
+import dex.DexStats;
+import dex.DexVerifier;
+import distributed.Coordinator;
+import distributed.Worker;
+import fleet.EmulatorLauncher;
+import fleet.Fleet;
+import fleet.FleetEmulator;
+import fleet.SdkEmulatorLauncher;
+import fleet.SimulatedEmulatorLauncher;
+import fuzzing.AbstractFuzzer;
+import fuzzing.FuzzerRegistry;
+import fuzzing.HigherOrderFuzzer;
+import history.ApkHistory;
+import history.Digests;
+import history.Phase;
+import history.Verdict;
+import logs.LogBaseline;
 import os.Commands;
+import os.InstallResults;
+import os.SimulatorOS;
+import progress.CampaignProgress;
+import progress.StatusServer;
+import progress.VerdictListener;
+import scheduling.ApkSampler;
+import scheduling.ApkScheduler;
 import soot.Dexpler;
 import soot.G;
 import soot.Main;
-import soot.SourceLocator;
+import soot.PackManager;
+import soot.Scene;
+import soot.Transform;
+import soot.options.Options;
+import stats.MeasurementLog;
+import stats.PassRateEstimate;
+import stats.SampleComparison;
+import stats.SequentialTest;
 
 public class MainTesting {
 	
 	private static final Logger LOG = LogManager.getLogger(MainTesting.class);
 	
 	private static final Marker SUMMARY_MARKER = MarkerManager.getMarker("SUMMARY");
+	
+	// Soot keeps its state in singletons, so parallel lanes have to convert one after another
+	private static final Object SOOT_LOCK = new Object();
+	
+	// where Soot writes the converted APKs, relative to the working directory like Soot's default
+	private static final String DEFAULT_SOOT_OUTPUT = "sootOutput";
+	
+	private static final CampaignProgress PROGRESS = new CampaignProgress();
+	
+	// with reruns, a working APK is assumed to pass at least this share of its runs, a broken one at most 1 minus it
+	private static final double WORKING_PASS_RATE = 0.8;
+	
+	// passes of APKs with at least this flakiness in their history are rerun too, not only failures
+	private static final double MIN_FLAKINESS = 0.05;
+	
+	private static final String STARTUP_MILLIS = "startupMillis";
+	
+	// transferring the APK to the device, and committing the installation there (mostly dexopt)
+	private static final String INSTALL_TRANSFER_MILLIS = "installTransferMillis";
+	
+	private static final String INSTALL_COMMIT_MILLIS = "installCommitMillis";
+	
+	private static final String INSTALL_MILLIS = "installMillis";
+	
+	// size of the optimized dex created by dexopt / dex2oat
+	private static final String ODEX_BYTES = "odexBytes";
+	
+	private static final String[] INSTALL_METRICS = { INSTALL_TRANSFER_MILLIS, INSTALL_COMMIT_MILLIS, INSTALL_MILLIS, ODEX_BYTES };
+	
+	private static final String TOTAL_PSS_KB = "totalPssKb";
+	
+	private static final String DALVIK_HEAP_PSS_KB = "dalvikHeapPssKb";
+	
+	private static final String DEX_MMAP_PSS_KB = "dexMmapPssKb";
+	
+	private static final String[] MEMORY_METRICS = { TOTAL_PSS_KB, DALVIK_HEAP_PSS_KB, DEX_MMAP_PSS_KB };
+	
+	private static final String JANKY_FRAMES_PERCENT = "jankyFramesPercent";
+	
+	private static final String P50_FRAME_MILLIS = "p50FrameMillis";
+	
+	private static final String P90_FRAME_MILLIS = "p90FrameMillis";
+	
+	private static final String P99_FRAME_MILLIS = "p99FrameMillis";
+	
+	private static final String[] FRAME_METRICS = { JANKY_FRAMES_PERCENT, P50_FRAME_MILLIS, P90_FRAME_MILLIS, P99_FRAME_MILLIS };
+	
+	// suffixes of the sample names in ApkResult
+	private static final String ORIGINAL_SAMPLES = ".original";
+	
+	private static final String CONVERTED_SAMPLES = ".converted";
 
 	// usage: <optional list of APKs to test>
 	// if the list is empty, the APKs in the folder "./fdroid" will be used
+	// usage for continuous testing: --daemon <optional list of folders to watch for new or changed APKs, default "./fdroid">
+	// usage for testing on several hosts: --coordinator <port> <optional list of APKs, default "./fdroid">
+	// and on each host: --worker <coordinator host>:<port> <optional worker ID, default host name and work folder>
+	// usage for benchmarking the conversion without emulator: --benchmark <optional list of APKs, default "./fdroid">
+	// usage for estimating the pass rate from a sample of APKs: --sample <optional list of APKs, default "./fdroid">
 	public static void main(String[] args) throws Throwable {
+		StatusServer statusServer = null;
 		try {
+			if (Settings.getStatusPort() >= 0) {
+				statusServer = new StatusServer(Settings.getStatusPort(), PROGRESS);
+				statusServer.start();
+			}
+			if (args.length == 0 || !(args[0].equals("--benchmark") || args[0].equals("--coordinator"))) {
+				// these modes watch logs on an emulator, so they need the rules from the start
+				LogcatWatcher.loadHarmlessLogRules();
+			}
 			if (args.length == 0) {
 				testFdroidApks();
+			} else if (args[0].equals("--daemon")) {
+				runDaemon(Arrays.copyOfRange(args, 1, args.length));
+			} else if (args[0].equals("--coordinator")) {
+				runCoordinator(Integer.parseInt(args[1]), Arrays.copyOfRange(args, 2, args.length));
+			} else if (args[0].equals("--worker")) {
+				runWorker(args[1], args.length > 2 ? args[2] : null);
+			} else if (args[0].equals("--benchmark")) {
+				runBenchmark(Arrays.copyOfRange(args, 1, args.length));
+			} else if (args[0].equals("--sample")) {
+				testSample(Arrays.copyOfRange(args, 1, args.length));
 			} else {
 				testCommandLineApks(args);
 			}
@@ -57,10 +179,23 @@ public class MainTesting {
 			LOG.fatal(SUMMARY_MARKER, "top-level failure", t);
 			// this log-and-throw antipattern is only "allowed" at the top-level...
 			throw t;
+		} finally {
+			if (statusServer != null) {
+				statusServer.stop();
+			}
 		}
 	}
+	
+	// of this run, for the status server
+	public static CampaignProgress getProgress() {
+		return PROGRESS;
+	}
 
 	private static void testFdroidApks() {
+		testApks(getFdroidApks());
+	}
+	
+	private static Set<Path> getFdroidApks() {
 		Set<Path> fdroidApks = new HashSet<Path>();
 		Path fdroidDir = Paths.get("./fdroid");
 		DirectoryStream<Path> apks;
@@ -75,78 +210,747 @@ public class MainTesting {
 				LOG.info(SUMMARY_MARKER, "skipping fdroid APK due to known failures: {}", apk);
 				continue;
 			}
+			if (!passesPreflight(apk)) {
+				continue;
+			}
 			fdroidApks.add(apk.toAbsolutePath());
 		}
-		testApks(fdroidApks);
+		return fdroidApks;
 	}
 	
 	private static void testCommandLineApks(String[] args) {
 		Set<Path> commandLineApks = new HashSet<Path>();
 		for (String arg : args) {
 			Path apkPath = Paths.get(arg).toAbsolutePath();
-			commandLineApks.add(apkPath);
+			if (passesPreflight(apkPath)) {
+				commandLineApks.add(apkPath);
+			}
 		}
 		testApks(commandLineApks);
 	}
+	
+	// false for APKs which cannot run in the test environment, so they are skipped before any Soot or emulator work
+	static boolean passesPreflight(Path apk) {
+		if (!Settings.isPreflight()) {
+			return true;
+		}
+		Preflight preflight;
+		try {
+			preflight = Preflight.check(apk);
+		} catch (RuntimeException e) {
+			// let the test itself show what is wrong with the APK
+			LOG.warn("RuntimeException in pre-flight check of APK " + apk, e);
+			return true;
+		}
+		if (!preflight.isRunnable()) {
+			LOG.info(SUMMARY_MARKER, "skipping APK which cannot run in the test environment: {} ({})", apk, preflight.getReason());
+			return false;
+		}
+		return true;
+	}
 
-	private static void testApks(Set<Path> apks) {
-		int numApksToTest = apks.size();
+	private static void runDaemon(String[] dirArgs) throws InterruptedException {
+		List<Path> dirs = new ArrayList<Path>();
+		for (String dirArg : dirArgs) {
+			dirs.add(Paths.get(dirArg).toAbsolutePath());
+		}
+		if (dirs.isEmpty()) {
+			dirs.add(Paths.get("./fdroid").toAbsolutePath());
+		}
+		new Daemon(dirs).run();
+	}
+	
+	private static void runCoordinator(int port, String[] apkArgs) {
+		Set<Path> apks = new HashSet<Path>();
+		for (String apkArg : apkArgs) {
+			Path apk = Paths.get(apkArg).toAbsolutePath();
+			if (passesPreflight(apk)) {
+				apks.add(apk);
+			}
+		}
+		if (apkArgs.length == 0) {
+			apks = getFdroidApks();
+		}
+		// the workers are the lanes, so hand out the longest APKs first
+		ApkScheduler scheduler = new ApkScheduler(Settings.getHistoryDir(), Settings.getSchedulingPolicy());
+		List<Path> orderedApks = scheduler.order(apks, Settings.getLanes());
+		PROGRESS.addQueued(orderedApks.size());
+		new Coordinator(port, orderedApks, Settings.getLeaseMillis()).run();
+	}
+	
+	private static void runWorker(String coordinatorAddress, String workerId) throws InterruptedException {
+		int portSeparator = coordinatorAddress.lastIndexOf(':');
+		String host = coordinatorAddress.substring(0, portSeparator);
+		int port = Integer.parseInt(coordinatorAddress.substring(portSeparator + 1));
+		Path workDir = Settings.getWorkerDir().toAbsolutePath();
+		if (workerId == null) {
+			try {
+				workerId = InetAddress.getLocalHost().getHostName() + ":" + workDir;
+			} catch (UnknownHostException e) {
+				workerId = workDir.toString();
+			}
+		}
+		// heartbeats at a third of the lease time, so one lost heartbeat does not cost the lease
+		new Worker(host, port, workerId, workDir, Settings.getLeaseMillis() / 3).run();
+	}
+	
+	private static void runBenchmark(String[] apkArgs) {
+		Set<Path> apks = new HashSet<Path>();
+		for (String apkArg : apkArgs) {
+			apks.add(Paths.get(apkArg).toAbsolutePath());
+		}
+		if (apks.isEmpty()) {
+			apks = getFdroidApks();
+		}
+		// the same order in every benchmark, so the JVM's state before each APK is comparable
+		List<Path> orderedApks = new ArrayList<Path>(apks);
+		Collections.sort(orderedApks);
+		new Benchmark(orderedApks).run();
+	}
+	
+	// tests a seeded, stratified sample of the APKs which fits the time budget, and estimates the pass rate of all
+	private static void testSample(String[] apkArgs) {
+		Set<Path> apks = new HashSet<Path>();
+		for (String apkArg : apkArgs) {
+			Path apk = Paths.get(apkArg).toAbsolutePath();
+			if (passesPreflight(apk)) {
+				apks.add(apk);
+			}
+		}
+		if (apkArgs.length == 0) {
+			apks = getFdroidApks();
+		}
+		int lanes = Settings.isFleet() ? Settings.getFleetMaxEmulators() : 1;
+		ApkSampler sampler = new ApkSampler(Settings.getHistoryDir(), Settings.getSampleSeed());
+		final ApkSampler.Sample sample = sampler.sample(apks, Settings.getSampleMinutes() * 60000, lanes);
+		final PassRateEstimate estimate = new PassRateEstimate(sample.getStratumSizes());
+		VerdictListener listener = new VerdictListener() {
+			@Override
+			public void verdict(ApkResult result) {
+				estimate.addOutcome(sample.getStratum(result.getApk()), result.getVerdict().isSuccess());
+			}
+		};
+		long startMillis = System.currentTimeMillis();
+		PROGRESS.addListener(listener);
+		try {
+			testApks(sample.getApks());
+		} finally {
+			PROGRESS.removeListener(listener);
+		}
+		LOG.info(SUMMARY_MARKER, "sample with seed {} of {} APK(s) tested in {} min: {}", Settings.getSampleSeed(), apks.size(),
+				(System.currentTimeMillis() - startMillis) / 60000, estimate);
+	}
+	
+	private static void testApks(Collection<Path> apks) {
+		ApkScheduler scheduler = new ApkScheduler(Settings.getHistoryDir(), Settings.getSchedulingPolicy());
+		// a local run tests one APK after another, todex.lanes is for the workers of a coordinator
+		int lanes = Settings.isFleet() ? Settings.getFleetMaxEmulators() : 1;
+		List<Path> orderedApks = scheduler.order(apks, lanes);
+		PROGRESS.addQueued(orderedApks.size());
+		if (Settings.isFleet()) {
+			testApksOnFleet(orderedApks);
+			return;
+		}
+		int numApksToTest = orderedApks.size();
 		LOG.info("testing {} APK(s)", numApksToTest);
 		int apkCounter = 0;
-		for (Path apk : apks) {
+		// keep the emulator across all APKs, so it can remember what is installed there
+		Emulator emulator = new Emulator();
+		for (Path apk : orderedApks) {
 			apkCounter++;
 			LOG.info("testing APK {} of {}: {}", apkCounter, numApksToTest, apk);
+			testAndRecordApk(emulator, apk);
+		}
+	}
+	
+	// one lane per emulator the fleet may start, each taking the next APK and an idle emulator for it
+	private static void testApksOnFleet(List<Path> orderedApks) {
+		LOG.info("testing {} APK(s) on a fleet of up to {} emulator(s)", orderedApks.size(), Settings.getFleetMaxEmulators());
+		final Fleet fleet = new Fleet(createLauncher());
+		final Queue<Path> queue = new ConcurrentLinkedQueue<Path>(orderedApks);
+		final AtomicReference<Error> laneError = new AtomicReference<Error>();
+		List<Thread> lanes = new ArrayList<Thread>();
+		for (int laneIdx = 0; laneIdx < Settings.getFleetMaxEmulators(); laneIdx++) {
+			Thread lane = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						testQueuedApks(fleet, queue);
+					} catch (Error e) {
+						laneError.compareAndSet(null, e);
+						LOG.error("lane stopped", e);
+					}
+				}
+			}, "lane-" + (laneIdx + 1));
+			lane.start();
+			lanes.add(lane);
+		}
+		try {
+			for (Thread lane : lanes) {
+				lane.join();
+			}
+			fleet.shutdown();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("InterruptedException while waiting for the lanes of the fleet", e);
+		}
+		if (laneError.get() != null) {
+			throw laneError.get();
+		}
+	}
+	
+	private static void testQueuedApks(Fleet fleet, Queue<Path> queue) {
+		Path apk = queue.poll();
+		while (apk != null) {
+			FleetEmulator emulator;
+			try {
+				emulator = fleet.acquire(queue.size());
+			} catch (InterruptedException e) {
+				LOG.warn("InterruptedException while waiting for an emulator, {} not tested", apk);
+				return;
+			}
+			// the commands of the test, including its watcher threads, go to this emulator
+			Commands.setSerial(emulator.getSerial());
+			LOG.info("testing APK {} on {}, {} APK(s) left", apk, emulator, queue.size());
+			boolean tested = false;
 			try {
-				boolean success = testApk(apk);
-				LOG.info(SUMMARY_MARKER, "success: {} for {}", success, apk);
-			} catch (RuntimeException e) {
-				LOG.warn("RuntimeException while testing APK", e);
-				LOG.info(SUMMARY_MARKER, "RuntimeException, see detailed log for {}", apk);
+				testAndRecordApk(emulator.getEmulator(), apk);
+				tested = true;
+			} finally {
+				if (!tested) {
+					// whatever escaped the test might have left the emulator in a bad state
+					fleet.drain(emulator.getSerial());
+				}
+				fleet.release(emulator, queue.size());
 			}
+			apk = queue.poll();
 		}
 	}
 	
-	private static boolean testApk(Path apk) {
-		Emulator emulator = new Emulator();
-		LOG.info("testing part 1/2: original APK");
+	private static EmulatorLauncher createLauncher() {
+		if (Commands.OS instanceof SimulatorOS) {
+			return new SimulatedEmulatorLauncher(((SimulatorOS) Commands.OS).getSimulator());
+		}
+		return new SdkEmulatorLauncher(Settings.getAvd(), Settings.getFleetDir());
+	}
+	
+	static ApkResult testAndRecordApk(Emulator emulator, Path apk) {
+		String serial = Commands.getSerial();
+		PROGRESS.start(apk, serial == null ? "emulator" : serial);
+		ApkResult result = testApkRerunningIfEnabled(emulator, apk);
+		recordResult(result);
+		return result;
+	}
+	
+	// tests the APK without recording the result, with reruns if Settings.getMaxRuns() allows them
+	public static ApkResult testApkRerunningIfEnabled(Emulator emulator, Path apk) {
+		return Settings.getMaxRuns() > 1 ? testApkWithReruns(emulator, apk) : testApkCatchingErrors(emulator, apk);
+	}
+	
+	/*
+	 * Reruns an APK while its verdict is inconclusive: after a failure, which might be flaky, or after a pass of an
+	 * APK which was flaky before. A sequential probability ratio test decides after each run whether the APK works
+	 * or is broken, so clear cases stop after few runs, and all after Settings.getMaxRuns(). The result is the last
+	 * run agreeing with the decision, with the durations of all runs, so the scheduler expects the reruns next time.
+	 */
+	private static ApkResult testApkWithReruns(Emulator emulator, Path apk) {
+		ApkResult firstResult = testApkCatchingErrors(emulator, apk);
+		Verdict firstVerdict = firstResult.getVerdict();
+		double flakiness = ApkHistory.load(Settings.getHistoryDir(), apk.getFileName().toString()).getFlakiness();
+		// a failing original says nothing about the conversion, so reruns would not help to judge it
+		if (firstVerdict.isDecidedOnHost() || firstVerdict == Verdict.ORIGINAL_FAILED
+				|| (firstVerdict.isSuccess() && flakiness < MIN_FLAKINESS)) {
+			return firstResult;
+		}
+		double errorRate = 1 - Settings.getRerunConfidence();
+		SequentialTest sequentialTest = new SequentialTest(WORKING_PASS_RATE, 1 - WORKING_PASS_RATE, errorRate, errorRate);
+		sequentialTest.add(firstVerdict.isSuccess());
+		List<ApkResult> results = new ArrayList<ApkResult>();
+		results.add(firstResult);
+		List<ApkResult> ignoredResults = new ArrayList<ApkResult>();
+		while (sequentialTest.getDecision() == SequentialTest.Decision.UNDECIDED
+				&& results.size() + ignoredResults.size() < Settings.getMaxRuns()) {
+			LOG.info("verdicts of {} are inconclusive, run {} of at most {}", apk, results.size() + ignoredResults.size() + 1,
+					Settings.getMaxRuns());
+			ApkResult result = testApkCatchingErrors(emulator, apk);
+			if (result.getVerdict() == Verdict.ORIGINAL_FAILED) {
+				// only its durations count
+				ignoredResults.add(result);
+			} else {
+				sequentialTest.add(result.getVerdict().isSuccess());
+				results.add(result);
+			}
+		}
+		SequentialTest.Decision decision = sequentialTest.getDecision();
+		if (decision == SequentialTest.Decision.UNDECIDED) {
+			LOG.info("verdicts of {} still inconclusive after {} run(s), taking the likelier one", apk, results.size());
+			decision = sequentialTest.getLeaning();
+		}
+		boolean passes = decision == SequentialTest.Decision.PASSES;
+		ApkResult decidingResult = null;
+		int disagreeingRuns = 0;
+		Map<Phase, Long> totalDurationsMillis = new EnumMap<Phase, Long>(Phase.class);
+		for (ApkResult result : results) {
+			if (result.getVerdict().isSuccess() == passes) {
+				decidingResult = result;
+			} else {
+				disagreeingRuns++;
+			}
+		}
+		List<ApkResult> allResults = new ArrayList<ApkResult>(results);
+		allResults.addAll(ignoredResults);
+		for (ApkResult result : allResults) {
+			for (Map.Entry<Phase, Long> duration : result.getDurationsMillis().entrySet()) {
+				Long totalMillis = totalDurationsMillis.get(duration.getKey());
+				totalDurationsMillis.put(duration.getKey(), (totalMillis == null ? 0 : totalMillis) + duration.getValue());
+			}
+		}
+		for (Map.Entry<Phase, Long> totalDuration : totalDurationsMillis.entrySet()) {
+			decidingResult.setDurationMillis(totalDuration.getKey(), totalDuration.getValue());
+		}
+		decidingResult.setRuns(results.size(), disagreeingRuns);
+		if (results.size() > 1) {
+			LOG.info(SUMMARY_MARKER, "{} after {} run(s) of {}, {} of them disagreeing", decidingResult.getVerdict(),
+					results.size(), apk, disagreeingRuns);
+		}
+		return decidingResult;
+	}
+	
+	// tests the APK, even if the test fails with an exception (then with verdict ERROR)
+	public static ApkResult testApkCatchingErrors(Emulator emulator, Path apk) {
+		ApkResult result = new ApkResult(apk);
+		try {
+			testApk(emulator, apk, result);
+		} catch (RuntimeException e) {
+			result.setVerdict(Verdict.ERROR);
+			result.setFailureLog(e.toString());
+			LOG.warn("RuntimeException while testing APK", e);
+		}
+		return result;
+	}
+	
+	// logs the summary for the result and records it in the APK's history
+	public static void recordResult(ApkResult result) {
+		Path apk = result.getApk();
+		if (result.getVerdict() == Verdict.ERROR) {
+			LOG.info(SUMMARY_MARKER, "RuntimeException, see detailed log for {}", apk);
+		} else {
+			LOG.info(SUMMARY_MARKER, "success: {} ({}) for {}", result.getVerdict().isSuccess(), result.getVerdict(), apk);
+		}
+		recordHistory(result);
+		PROGRESS.finish(result);
+	}
+	
+	private static void testApk(Emulator emulator, Path apk, ApkResult result) {
+		List<String> fuzzers = Settings.getFuzzers();
+		int parts = fuzzers.isEmpty() ? 2 : 3;
 		Apk originalApk = new Apk(apk);
-		boolean originalSucceeded = emulator.run(originalApk);
+		Apk convertedApk = null;
+		if (Settings.isHostArt()) {
+			// screen on the host first, so APKs failing there do not cost any emulator time
+			LOG.info("testing part 0/{}: converted APK on host ART", parts);
+			convertedApk = convertAndVerify(originalApk, result);
+			if (convertedApk == null || !passesHostArt(originalApk, convertedApk, result)) {
+				return;
+			}
+		}
+		LOG.info("testing part 1/{}: original APK", parts);
+		PROGRESS.startPhase(apk, Phase.ORIGINAL_RUN);
+		long phaseStart = System.nanoTime();
+		LogBaseline baseline = null;
+		if (Settings.isDifferentialLogFiltering()) {
+			baseline = LogBaseline.load(Settings.getLogBaselinesDir(), originalApk.getName());
+		}
+		boolean originalSucceeded = emulator.run(originalApk, "original", baseline, true);
+		if (originalSucceeded) {
+			addInstallSamples(emulator, originalApk, result, ORIGINAL_SAMPLES);
+			addMemorySamples(emulator, result, ORIGINAL_SAMPLES);
+			addFrameSamples(emulator, result, ORIGINAL_SAMPLES);
+			measureColdStarts(emulator, originalApk, result, ORIGINAL_SAMPLES);
+		}
+		result.setDurationMillis(Phase.ORIGINAL_RUN, getMillisSince(phaseStart));
 		if (!originalSucceeded) {
-			return false;
+			result.setVerdict(Verdict.ORIGINAL_FAILED);
+			result.setFailureLog(emulator.getFailureLog());
+			return;
+		}
+		if (baseline != null) {
+			LOG.info("log baseline of original APK has {} fingerprint(s)", baseline.size());
+			baseline.save();
+		}
+		LOG.info("testing part 2/{}: converted APK", parts);
+		if (convertedApk == null) {
+			convertedApk = convertAndVerify(originalApk, result);
+			if (convertedApk == null) {
+				return;
+			}
+		}
+		PROGRESS.startPhase(apk, Phase.CONVERTED_RUN);
+		phaseStart = System.nanoTime();
+		boolean convertedSucceeded = emulator.run(convertedApk, "converted", baseline, false);
+		result.setFailureLog(emulator.getFailureLog());
+		if (convertedSucceeded) {
+			addInstallSamples(emulator, convertedApk, result, CONVERTED_SAMPLES);
+			addMemorySamples(emulator, result, CONVERTED_SAMPLES);
+			addFrameSamples(emulator, result, CONVERTED_SAMPLES);
+			measureColdStarts(emulator, convertedApk, result, CONVERTED_SAMPLES);
+		}
+		result.setDurationMillis(Phase.CONVERTED_RUN, getMillisSince(phaseStart));
+		result.setVerdict(convertedSucceeded ? Verdict.PASSED : Verdict.CONVERTED_FAILED);
+		for (String installMetric : INSTALL_METRICS) {
+			reportDelta(result, installMetric);
+		}
+		reportSignificantRegression(result, STARTUP_MILLIS);
+		for (String memoryMetric : MEMORY_METRICS) {
+			reportMemoryGrowth(result, memoryMetric);
 		}
-		LOG.info("testing part 2/2: converted APK");
+		for (String frameMetric : FRAME_METRICS) {
+			reportSignificantRegression(result, frameMetric);
+		}
+		if (convertedSucceeded && !fuzzers.isEmpty()) {
+			LOG.info("testing part 3/3: fuzzed APKs");
+			PROGRESS.startPhase(apk, Phase.FUZZING);
+			phaseStart = System.nanoTime();
+			fuzzApk(emulator, originalApk, convertedApk, baseline, fuzzers);
+			result.setDurationMillis(Phase.FUZZING, getMillisSince(phaseStart));
+		}
+	}
+	
+	// null if the static dex verification rejected the converted APK, then the result has its verdict
+	private static Apk convertAndVerify(Apk originalApk, ApkResult result) {
+		Path apk = result.getApk();
+		PROGRESS.startPhase(apk, Phase.CONVERSION);
+		long phaseStart = System.nanoTime();
 		Apk convertedApk = convertApk(originalApk);
-		return emulator.run(convertedApk);
-		/*
-		 * TODO re-add testing part 3/3: fuzz original APK with an AbstractFuzzer and Soot, running it on the emulator:
-		 * change the method runThroughSoot(String) to conditionally include this after the resetting and before calling Soot
-		 * PackManager.v( ).getPack("jtp").add(new Transform("jtp.fuzzing", fuzzer)); // fuzzer should be an AbstractFuzzer
-		 */
+		result.setDurationMillis(Phase.CONVERSION, getMillisSince(phaseStart));
+		if (Settings.isDexAnalysis()) {
+			analyzeDex(originalApk, convertedApk);
+		}
+		if (Settings.isDexVerification()) {
+			List<DexVerifier.Failure> verifyFailures = new ArrayList<DexVerifier.Failure>();
+			for (DexVerifier.Failure verifyFailure : verifyDex(originalApk, convertedApk)) {
+				if (verifyFailure.isHard()) {
+					verifyFailures.add(verifyFailure);
+				} else {
+					LOG.warn("dex verification warning: {}", verifyFailure);
+				}
+			}
+			if (!verifyFailures.isEmpty()) {
+				LOG.warn(SUMMARY_MARKER, "static dex verification rejected {} method(s) of {}, not running it, first: {}",
+						verifyFailures.size(), apk, verifyFailures.get(0));
+				StringBuilder failureLog = new StringBuilder();
+				for (DexVerifier.Failure verifyFailure : verifyFailures) {
+					LOG.warn("dex verification failure: {}", verifyFailure);
+					failureLog.append(verifyFailure).append('\n');
+				}
+				result.setVerdict(Verdict.VERIFY_FAILED);
+				result.setFailureLog(failureLog.toString());
+				return null;
+			}
+		}
+		return convertedApk;
 	}
 	
-	private static Apk convertApk(Apk oldApk) {
-		LOG.info("converting APK");
-		Path newApk = getNewApkPath(oldApk);
+	// false if the converted dex behaved differently from the original on host ART, then the result has its verdict
+	private static boolean passesHostArt(Apk originalApk, Apk convertedApk, ApkResult result) {
+		Path apk = result.getApk();
+		PROGRESS.startPhase(apk, Phase.HOST_ART);
+		long phaseStart = System.nanoTime();
+		HostArt hostArt = new HostArt(Settings.getHostArtDir(), Settings.getHostArtTimeoutMillis());
+		List<String> differences = hostArt.findDifferences(originalApk.getPath(), convertedApk.getPath());
+		result.setDurationMillis(Phase.HOST_ART, getMillisSince(phaseStart));
+		if (differences.isEmpty()) {
+			return true;
+		}
+		LOG.warn(SUMMARY_MARKER, "converted dex of {} behaved differently on host ART in {} task(s), not running it, first: {}",
+				apk, differences.size(), differences.get(0));
+		StringBuilder failureLog = new StringBuilder();
+		for (String difference : differences) {
+			LOG.warn("host ART difference: {}", difference);
+			failureLog.append(difference).append('\n');
+		}
+		result.setVerdict(Verdict.HOST_ART_FAILED);
+		result.setFailureLog(failureLog.toString());
+		return false;
+	}
+	
+	/*
+	 * Converts the original APK with mutations and runs the mutants. The converted APK passed, so a mutant
+	 * making the VM crash or hang (instead of the app failing cleanly) is worth a look. Only reports the mutants,
+	 * so it does not change the verdict.
+	 * Mutants with the same dex as the converted APK or an earlier mutant (e.g. mutations in dead code, which Soot
+	 * removed) behave the same, so they are skipped before signing, installing and running them.
+	 */
+	private static void fuzzApk(Emulator emulator, Apk originalApk, Apk convertedApk, LogBaseline baseline, List<String> fuzzers) {
+		// the APK by digest of its dex hashes, for the equivalent mutants
+		Map<String, String> testedDigests = new HashMap<String, String>();
+		DexHashes convertedHashes = getDexHashes(convertedApk.getPath());
+		if (convertedHashes != null) {
+			testedDigests.put(convertedHashes.getDigest(), "the converted APK");
+		}
+		int mutants = Settings.getMutants();
+		int equivalentMutants = 0;
+		for (int mutantIdx = 0; mutantIdx < mutants; mutantIdx++) {
+			long seed = Settings.getFuzzingSeed() + mutantIdx;
+			HigherOrderFuzzer fuzzer = new HigherOrderFuzzer(FuzzerRegistry.createAll(fuzzers), Settings.getMutationOrder(), seed);
+			// each mutant in its own folder, so neither the converted APK nor earlier mutants are overwritten
+			Path mutantDir = getSootOutputDir().resolve("mutants").resolve(Long.toString(seed));
+			Path mutantPath = convertApkUnsigned(originalApk, fuzzer, mutantDir);
+			if (fuzzer.getMutations().isEmpty()) {
+				LOG.info("no mutation applied with seed {}, skipping the mutant", seed);
+				continue;
+			}
+			DexHashes mutantHashes = getDexHashes(mutantPath);
+			if (mutantHashes != null) {
+				String mutantDigest = mutantHashes.getDigest();
+				String equivalentApk = testedDigests.get(mutantDigest);
+				if (equivalentApk != null) {
+					LOG.info("mutant with seed {} has the same dex as {}, skipping it: {}", seed, equivalentApk, fuzzer.getMutations());
+					equivalentMutants++;
+					continue;
+				}
+				testedDigests.put(mutantDigest, "the mutant with seed " + seed);
+				if (convertedHashes != null) {
+					LOG.info("mutant with seed {} changes class(es) {}", seed, mutantHashes.getChangedClasses(convertedHashes));
+				}
+			}
+			signAndAlign(mutantPath);
+			Apk mutantApk = originalApk.withNewPath(mutantPath);
+			boolean mutantSucceeded = emulator.run(mutantApk, "mutant-" + seed, baseline, false);
+			LOG.info(SUMMARY_MARKER, "mutant with seed {} of {}: {} with mutations {}", seed, originalApk.getName(),
+					mutantSucceeded ? "survived" : "failed", fuzzer.getMutations());
+			if (!mutantSucceeded) {
+				LOG.info("failure log of mutant: {}", emulator.getFailureLog());
+			}
+		}
+		if (equivalentMutants > 0) {
+			LOG.info(SUMMARY_MARKER, "skipped {} of {} mutant(s) of {} with unchanged dex", equivalentMutants, mutants,
+					originalApk.getName());
+		}
+	}
+	
+	// null if the dex files cannot be read, then the mutants are run without checking for equivalence
+	private static DexHashes getDexHashes(Path apk) {
+		try {
+			return DexHashes.of(apk);
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while hashing dex files, not skipping equivalent mutants", e);
+			return null;
+		}
+	}
+	
+	private static void measureColdStarts(Emulator emulator, Apk apk, ApkResult result, String samplesSuffix) {
+		int launches = Settings.getColdStartLaunches();
+		if (launches == 0 || apk.getMainActivity().isEmpty()) {
+			return;
+		}
+		for (double startupMillis : emulator.measureColdStarts(apk, launches)) {
+			result.addSample(STARTUP_MILLIS + samplesSuffix, startupMillis);
+		}
+	}
+	
+	// one sample per run, measured while installing it
+	private static void addInstallSamples(Emulator emulator, Apk apk, ApkResult result, String samplesSuffix) {
+		InstallResults installResults = emulator.getLastInstallResults();
+		addKnownSample(result, INSTALL_TRANSFER_MILLIS + samplesSuffix, installResults.getTransferMillis());
+		addKnownSample(result, INSTALL_COMMIT_MILLIS + samplesSuffix, installResults.getCommitMillis());
+		addKnownSample(result, INSTALL_MILLIS + samplesSuffix, installResults.getTotalMillis());
+		addKnownSample(result, ODEX_BYTES + samplesSuffix, emulator.getOdexBytes(apk));
+	}
+	
+	private static void addKnownSample(ApkResult result, String name, long value) {
+		if (value != InstallResults.UNKNOWN) {
+			result.addSample(name, value);
+		}
+	}
+	
+	private static void addMemorySamples(Emulator emulator, ApkResult result, String samplesSuffix) {
+		for (Meminfo meminfo : emulator.getMemorySamples()) {
+			result.addSample(TOTAL_PSS_KB + samplesSuffix, meminfo.getTotalPssKb());
+			result.addSample(DALVIK_HEAP_PSS_KB + samplesSuffix, meminfo.getDalvikHeapPssKb());
+			result.addSample(DEX_MMAP_PSS_KB + samplesSuffix, meminfo.getDexMmapPssKb());
+		}
+	}
+	
+	private static void addFrameSamples(Emulator emulator, ApkResult result, String samplesSuffix) {
+		for (Gfxinfo gfxinfo : emulator.getFrameSamples()) {
+			result.addSample(JANKY_FRAMES_PERCENT + samplesSuffix, gfxinfo.getJankyFramesPercent());
+			result.addSample(P50_FRAME_MILLIS + samplesSuffix, gfxinfo.getP50FrameMillis());
+			result.addSample(P90_FRAME_MILLIS + samplesSuffix, gfxinfo.getP90FrameMillis());
+			result.addSample(P99_FRAME_MILLIS + samplesSuffix, gfxinfo.getP99FrameMillis());
+		}
+	}
+	
+	// reports if the converted APK's samples are significantly greater, i.e. worse, than the original APK's
+	private static void reportSignificantRegression(ApkResult result, String metric) {
+		SampleComparison comparison = compareSamples(result, metric);
+		if (comparison == null) {
+			return;
+		}
+		if (comparison.isSignificantRegression(Settings.getSignificanceLevel())) {
+			LOG.warn(SUMMARY_MARKER, "significant regression for {}: {}", result.getApk(), comparison);
+		} else {
+			LOG.info("no significant regression: {}", comparison);
+		}
+	}
+	
+	// for single samples, where there is nothing to test for significance
+	private static void reportDelta(ApkResult result, String metric) {
+		SampleComparison comparison = compareSamples(result, metric);
+		if (comparison == null) {
+			return;
+		}
+		double originalValue = comparison.getOriginalMedian();
+		double convertedValue = comparison.getConvertedMedian();
+		double deltaPercent = originalValue == 0 ? 0 : (convertedValue - originalValue) * 100 / originalValue;
+		LOG.info("{}: {} -> {} ({}%)", metric, Math.round(originalValue), Math.round(convertedValue), Math.round(deltaPercent));
+	}
+	
+	// memory varies less than times, so a median growing beyond the threshold is reported, significant or not
+	private static void reportMemoryGrowth(ApkResult result, String metric) {
+		SampleComparison comparison = compareSamples(result, metric);
+		if (comparison == null) {
+			return;
+		}
+		double threshold = Settings.getMemoryGrowthThreshold();
+		if (comparison.getConvertedMedian() > comparison.getOriginalMedian() * (1 + threshold)) {
+			LOG.warn(SUMMARY_MARKER, "memory grew by more than {}% for {}: {}", Math.round(threshold * 100),
+					result.getApk(), comparison);
+		} else {
+			LOG.info("memory did not grow beyond threshold: {}", comparison);
+		}
+	}
+	
+	// compares and records the converted APK's samples with the original APK's, null if one of them has none
+	private static SampleComparison compareSamples(ApkResult result, String metric) {
+		List<Double> originalSamples = result.getSamples(metric + ORIGINAL_SAMPLES);
+		List<Double> convertedSamples = result.getSamples(metric + CONVERTED_SAMPLES);
+		if (originalSamples.isEmpty() || convertedSamples.isEmpty()) {
+			return null;
+		}
+		SampleComparison comparison = new SampleComparison(metric, originalSamples, convertedSamples);
+		// the measurements are only reported, so failing to record them does not change the verdict
+		try {
+			MeasurementLog.record(Settings.getMeasurementsPath(), Settings.getSootRelease(),
+					result.getApk().getFileName().toString(), comparison);
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while recording measurements, comparing them anyway", e);
+		}
+		return comparison;
+	}
+	
+	// only reports about the converted dex files, so it does not change the verdict
+	private static void analyzeDex(Apk originalApk, Apk convertedApk) {
+		DexComparison comparison;
+		try {
+			DexStats originalStats = DexStats.of(originalApk.getPath());
+			DexStats convertedStats = DexStats.of(convertedApk.getPath());
+			comparison = new DexComparison(originalStats, convertedStats, Settings.getDexRegressionThreshold());
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while analyzing dex files, skipping the analysis", e);
+			return;
+		}
+		LOG.info("original dex: {}", comparison.getOriginal());
+		LOG.info("converted dex: {}", comparison.getConverted());
+		if (comparison.getMissingMethods() > 0) {
+			LOG.warn("{} method(s) with code are missing in the converted dex", comparison.getMissingMethods());
+		}
+		for (DexComparison.Regression regression : comparison.getRegressions()) {
+			LOG.warn("method grew in converted dex: {}", regression);
+		}
+		try {
+			DexFootprint.record(Settings.getDexFootprintPath(), Settings.getSootRelease(), originalApk.getName(),
+					comparison);
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while recording dex footprint", e);
+		}
+	}
+	
+	// failures in methods which pass in the original APK, empty if the dex files cannot be verified at all
+	private static List<DexVerifier.Failure> verifyDex(Apk originalApk, Apk convertedApk) {
+		LOG.info("verifying converted dex files");
+		DexVerifier verifier = new DexVerifier(Paths.get(Commands.OS.getAndroidJarPath()));
 		try {
-			Files.deleteIfExists(newApk);
+			return verifier.verifyConverted(originalApk.getPath(), convertedApk.getPath());
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while verifying dex files, running the converted APK anyway", e);
+			return new ArrayList<DexVerifier.Failure>();
+		}
+	}
+	
+	private static long getMillisSince(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000000;
+	}
+	
+	// remember durations and verdict, so the next campaign can schedule this APK
+	private static void recordHistory(ApkResult result) {
+		Path apk = result.getApk();
+		ApkHistory history = ApkHistory.load(Settings.getHistoryDir(), apk.getFileName().toString());
+		for (Map.Entry<Phase, Long> duration : result.getDurationsMillis().entrySet()) {
+			history.recordDurationMillis(duration.getKey(), duration.getValue());
+		}
+		history.recordVerdict(result.getVerdict());
+		try {
+			history.recordApkSize(Files.size(apk));
 		} catch (IOException e) {
-			throw new RuntimeException("IOException while deleting old converted APK", e);
+			LOG.warn("IOException while getting size of APK, keeping the old one in its history", e);
 		}
-		runThroughSoot(oldApk.getPath().toString());
+		if (result.getVerdict() != Verdict.ERROR) {
+			// an APK without conclusive test is tested again, even if unchanged
+			history.recordDigest(Digests.sha256(apk), Settings.getSootRelease());
+		}
+		// an ERROR, like an expired lease, did not judge the APK and would drag its flakiness towards 0
+		if (Settings.getMaxRuns() > 1 && result.getVerdict() != Verdict.ERROR) {
+			history.recordFlakiness(result.getDisagreeingRuns() / (double) result.getRuns());
+		}
+		history.save();
+	}
+	
+	private static Apk convertApk(Apk oldApk) {
+		Path newApk = convertApkUnsigned(oldApk);
 		signAndAlign(newApk);
 		return oldApk.withNewPath(newApk);
 	}
+	
+	// into Soot's default output folder
+	static Path convertApkUnsigned(Apk oldApk) {
+		return convertApkUnsigned(oldApk, null, getSootOutputDir());
+	}
+	
+	// the fuzzer may be null for converting without mutations
+	private static Path convertApkUnsigned(Apk oldApk, AbstractFuzzer fuzzer, Path outputDir) {
+		LOG.info("converting APK");
+		synchronized (SOOT_LOCK) {
+			Path newApk = outputDir.resolve(oldApk.getName());
+			try {
+				Files.deleteIfExists(newApk);
+			} catch (IOException e) {
+				throw new RuntimeException("IOException while deleting old converted APK", e);
+			}
+			runThroughSoot(oldApk.getPath().toString(), fuzzer, outputDir);
+			return newApk;
+		}
+	}
 
-	private static Path getNewApkPath(Apk oldApk) {
-		String sootOutput = SourceLocator.v().getOutputDir();
-		Path outputPath = Paths.get(sootOutput).toAbsolutePath();
-		return outputPath.resolve(oldApk.getName());
+	/*
+	 * not from SourceLocator, which still has the output folder of the last conversion (like a mutant's)
+	 * until the next one resets Soot
+	 */
+	private static Path getSootOutputDir() {
+		return Paths.get(DEFAULT_SOOT_OUTPUT).toAbsolutePath();
 	}
 
-	private static void runThroughSoot(String apkPath) {
+	private static void runThroughSoot(String apkPath, AbstractFuzzer fuzzer, Path outputDir) {
 		LOG.info("running APK through Soot");
+		// a fuzzer would stay in the warm Scene's packs, so fuzzing always converts cold
+		boolean isWarmSceneUsable = Settings.isWarmScene() && fuzzer == null;
+		if (isWarmSceneUsable && WarmScene.convert(apkPath)) {
+			return;
+		}
 		G.reset(); // reset globals from previous Soot run in the same JVM (including the (fuzzing) transformer, if one was added!)
 		Dexpler.reset(); //  reset dex class cache from previous Soot run
+		if (fuzzer != null) {
+			PackManager.v().getPack("jtp").add(new Transform("jtp.fuzzing", fuzzer));
+		}
 		
 		String[] sootArgs = new String[]{
 				// "-p", "jb.tr", "use-older-type-assigner:true",			// use old type assigner to prevent some stack overflow happening (commented out, since the APKs are excluded)
@@ -157,6 +961,7 @@ public class MainTesting {
 				"-allow-phantom-refs",									// allow these refs (useful for libs with missing, but unused classes referenced)
 				"-src-prec", "apk",										// assume input is an apk
 				"-output-format", "dex",								// output to dex/apk
+				"-output-dir", outputDir.toString(),					// write the APK into this folder
 				"-force-android-jar", Commands.OS.getAndroidJarPath(),	// use this android.jar
 				"-soot-classpath", apkPath,								// use given APK as soot-classpath
 				"-prepend-classpath",									// add default soot-classpath after given one
@@ -167,7 +972,22 @@ public class MainTesting {
 				 */
 				"-include", "com.sun.", "-include", "com.ibm.", "-include", "apple.awt.", "-include", "com.apple."
 		};
-		Main.main(sootArgs);
+		if (Settings.isParallelBodies()) {
+			runSootWithParallelBodies(sootArgs);
+		} else {
+			Main.main(sootArgs);
+		}
+		WarmScene.afterColdConversion(isWarmSceneUsable);
+	}
+	
+	// the steps of Soot's main, with the bodies retrieved and transformed in parallel
+	private static void runSootWithParallelBodies(String[] sootArgs) {
+		if (!Options.v().parse(sootArgs)) {
+			throw new RuntimeException("Soot did not accept the arguments " + Arrays.toString(sootArgs));
+		}
+		Scene.v().loadNecessaryClasses();
+		ParallelBodies.runPacks(Settings.getBodyThreads());
+		PackManager.v().writeOutput();
 	}
 	
 	private static void signAndAlign(Path apk) {
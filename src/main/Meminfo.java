@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+/*
+ * Memory of an app process from "dumpsys meminfo <package>", in KB of proportional set size (PSS).
+ * Only the rows of the first table are read, which look like:
+ *
+ *                    Pss  Private  Private  Swapped     Heap     Heap     Heap
+ *                  Total    Dirty    Clean    Dirty     Size    Alloc     Free
+ *   Dalvik Heap     3456     3400        0        0    12288     9000     3288
+ *     .dex mmap      812        0      540        0
+ *         TOTAL    21345    15000     2000        0    20480    15000     5480
+ */
+public class Meminfo {
+	
+	private static final String TOTAL_ROW = "TOTAL";
+	
+	private static final String DALVIK_HEAP_ROW = "Dalvik Heap";
+	
+	private static final String DEX_MMAP_ROW = ".dex mmap";
+	
+	private final long totalPssKb;
+	
+	private final long dalvikHeapPssKb;
+	
+	private final long dexMmapPssKb;
+	
+	private Meminfo(long totalPssKb, long dalvikHeapPssKb, long dexMmapPssKb) {
+		this.totalPssKb = totalPssKb;
+		this.dalvikHeapPssKb = dalvikHeapPssKb;
+		this.dexMmapPssKb = dexMmapPssKb;
+	}
+	
+	// returns null if there is no TOTAL row, e.g. since the process is not running (anymore)
+	public static Meminfo parse(String dumpsysOutput) {
+		long totalPssKb = -1;
+		long dalvikHeapPssKb = 0;
+		long dexMmapPssKb = 0;
+		for (String line : dumpsysOutput.split("\n")) {
+			String trimmedLine = line.trim();
+			// the app summary of newer Android versions has a row "TOTAL:", which is not meant here
+			if (totalPssKb == -1 && trimmedLine.matches(TOTAL_ROW + "\\s+\\d.*")) {
+				totalPssKb = getFirstValue(trimmedLine, TOTAL_ROW);
+			} else if (trimmedLine.startsWith(DALVIK_HEAP_ROW)) {
+				dalvikHeapPssKb = getFirstValue(trimmedLine, DALVIK_HEAP_ROW);
+			} else if (trimmedLine.startsWith(DEX_MMAP_ROW)) {
+				dexMmapPssKb = getFirstValue(trimmedLine, DEX_MMAP_ROW);
+			}
+		}
+		if (totalPssKb == -1) {
+			return null;
+		}
+		return new Meminfo(totalPssKb, dalvikHeapPssKb, dexMmapPssKb);
+	}
+	
+	private static long getFirstValue(String row, String rowName) {
+		String[] values = row.substring(rowName.length()).trim().split("\\s+");
+		try {
+			return Long.parseLong(values[0]);
+		} catch (NumberFormatException e) {
+			return 0; // empty row
+		}
+	}
+	
+	public long getTotalPssKb() {
+		return totalPssKb;
+	}
+	
+	public long getDalvikHeapPssKb() {
+		return dalvikHeapPssKb;
+	}
+	
+	public long getDexMmapPssKb() {
+		return dexMmapPssKb;
+	}
+}
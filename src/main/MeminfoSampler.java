@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import os.Commands;
+
+// samples the memory of an app while the LogcatWatcher watches it, until stopped
+public class MeminfoSampler implements Runnable {
+	
+	private static final Logger LOG = LogManager.getLogger(MeminfoSampler.class);
+	
+	private static final long SAMPLE_INTERVAL_MILLIS = 1000;
+	
+	private final String appPackage;
+	
+	private final List<Meminfo> samples = new ArrayList<Meminfo>();
+	
+	private volatile boolean stopped = false;
+	
+	public MeminfoSampler(String appPackage) {
+		this.appPackage = appPackage;
+	}
+	
+	@Override
+	public void run() {
+		LOG.info("started sampling memory of {}", appPackage);
+		while (!stopped) {
+			Meminfo meminfo = Meminfo.parse(Commands.getMeminfo(appPackage));
+			if (meminfo != null) {
+				synchronized (samples) {
+					samples.add(meminfo);
+				}
+			}
+			try {
+				Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+		LOG.info("stopped sampling memory of {}, got {} sample(s)", appPackage, getSamples().size());
+	}
+	
+	public void stop() {
+		stopped = true;
+	}
+	
+	public List<Meminfo> getSamples() {
+		synchronized (samples) {
+			return new ArrayList<Meminfo>(samples);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fuzzing.AbstractFuzzer;
+import soot.PackManager;
+import soot.PhaseOptions;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Transform;
+
+/*
+ * Experimental: runs Soot's packs like PackManager.runPacks(), but first retrieves the bodies of all application
+ * methods and then applies the jtp pack to them in a fork-join pool, instead of method by method. Retrieving
+ * a body runs jb (with Dexpler), which changes Scene-wide state like the type map, the local numberer and the
+ * resolver without synchronization, so the bodies are retrieved on one thread. Only the jtp transforms run
+ * in the pool, which therefore have to change nothing but the body they get. Fuzzers run afterwards on one
+ * thread, in the same method order as without this mode.
+ */
+class ParallelBodies {
+	
+	private static final Logger LOG = LogManager.getLogger(ParallelBodies.class);
+	
+	private static final String JTP = "jtp";
+	
+	// a task with fewer methods is not split anymore
+	private static final int MIN_METHODS_TO_SPLIT = 16;
+	
+	// between loading the necessary classes and writing the output
+	static void runPacks(int threads) {
+		long start = System.nanoTime();
+		List<SootMethod> methods = getConcreteApplicationMethods();
+		for (SootMethod method : methods) {
+			method.retrieveActiveBody();
+		}
+		long retrieveMillis = (System.nanoTime() - start) / 1000000;
+		// built up front, so the transforms in the pool only read them
+		Scene.v().getActiveHierarchy();
+		Scene.v().getOrMakeFastHierarchy();
+		boolean isJtpEnabled = PhaseOptions.getBoolean(PhaseOptions.v().getPhaseOptions(JTP), "enabled");
+		List<Transform> parallelTransforms = new ArrayList<Transform>();
+		List<Transform> fuzzingTransforms = new ArrayList<Transform>();
+		if (isJtpEnabled) {
+			for (Transform transform : PackManager.v().getPack(JTP)) {
+				if (transform.getTransformer() instanceof AbstractFuzzer) {
+					fuzzingTransforms.add(transform);
+				} else {
+					parallelTransforms.add(transform);
+				}
+			}
+		}
+		if (!parallelTransforms.isEmpty()) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				pool.invoke(new BodiesTask(methods, 0, methods.size(), parallelTransforms));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		for (Transform fuzzingTransform : fuzzingTransforms) {
+			for (SootMethod method : methods) {
+				fuzzingTransform.apply(method.getActiveBody());
+			}
+		}
+		LOG.info("retrieved {} bodies in {} ms, transformed them with {} thread(s) in {} ms", methods.size(), retrieveMillis,
+				threads, (System.nanoTime() - start) / 1000000 - retrieveMillis);
+		// jtp is done already, and the bodies are retrieved, so runPacks only runs the later packs
+		PhaseOptions.v().setPhaseOption(JTP, "enabled:false");
+		try {
+			PackManager.v().runPacks();
+		} finally {
+			PhaseOptions.v().setPhaseOption(JTP, "enabled:" + isJtpEnabled);
+		}
+	}
+	
+	// in the order of PackManager.runPacks(): application classes, then methods as declared
+	private static List<SootMethod> getConcreteApplicationMethods() {
+		List<SootMethod> methods = new ArrayList<SootMethod>();
+		for (SootClass applicationClass : Scene.v().getApplicationClasses()) {
+			for (SootMethod method : applicationClass.getMethods()) {
+				if (method.isConcrete()) {
+					methods.add(method);
+				}
+			}
+		}
+		return methods;
+	}
+	
+	// transforms the retrieved bodies of methods [from, to), splitting the range in halves for the pool
+	private static class BodiesTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final List<SootMethod> methods;
+		
+		private final int from;
+		
+		private final int to;
+		
+		private final List<Transform> transforms;
+		
+		private BodiesTask(List<SootMethod> methods, int from, int to, List<Transform> transforms) {
+			this.methods = methods;
+			this.from = from;
+			this.to = to;
+			this.transforms = transforms;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from < MIN_METHODS_TO_SPLIT) {
+				for (int methodIdx = from; methodIdx < to; methodIdx++) {
+					for (Transform transform : transforms) {
+						transform.apply(methods.get(methodIdx).getActiveBody());
+					}
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new BodiesTask(methods, from, middle, transforms), new BodiesTask(methods, middle, to, transforms));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import os.Commands;
+
+/*
+ * Static checks of an APK before any Soot or emulator work, finding APKs which cannot run in the test
+ * environment anyway (and used to be listed by hand in fdroid.KnownFailures):
+ * - a required shared library which the emulator does not have, like com.google.android.maps
+ * - native libraries, but none for an ABI of the emulator
+ * - a target API level above the one of the android.jar Soot uses
+ */
+public class Preflight {
+	
+	// like "uses-library:'com.google.android.maps'", optional ones are listed as "uses-library-not-required:'...'"
+	private static final Pattern USES_LIBRARY = Pattern.compile("^uses-library:'([^']*)'", Pattern.MULTILINE);
+	
+	private static final Pattern TARGET_SDK = Pattern.compile("^targetSdkVersion:'([^']*)'", Pattern.MULTILINE);
+	
+	// like ".../android-platforms/android-15/android.jar"
+	private static final Pattern ANDROID_JAR_API = Pattern.compile("android-(\\d+)");
+	
+	private static final Pattern NATIVE_LIBRARY = Pattern.compile("lib/([^/]+)/[^/]+\\.so");
+	
+	private final String reason;
+	
+	private Preflight(String reason) {
+		this.reason = reason;
+	}
+	
+	public static Preflight check(Path apkPath) {
+		String packageInfo = Commands.getPackageInfo(apkPath);
+		if (!packageInfo.startsWith("package:")) {
+			return new Preflight("aapt could not read the manifest");
+		}
+		return check(packageInfo, getZipEntries(apkPath), getAndroidJarApi());
+	}
+	
+	// packageInfo is the output of "aapt dump badging", androidJarApi -1 if unknown
+	static Preflight check(String packageInfo, List<String> zipEntries, int androidJarApi) {
+		List<String> sharedLibraries = Settings.getSharedLibraries();
+		Matcher usesLibrary = USES_LIBRARY.matcher(packageInfo);
+		while (usesLibrary.find()) {
+			if (!sharedLibraries.contains(usesLibrary.group(1))) {
+				return new Preflight("requires the shared library " + usesLibrary.group(1) + ", the emulator only has " + sharedLibraries);
+			}
+		}
+		Set<String> nativeAbis = new TreeSet<String>();
+		for (String zipEntry : zipEntries) {
+			Matcher nativeLibrary = NATIVE_LIBRARY.matcher(zipEntry);
+			if (nativeLibrary.matches()) {
+				nativeAbis.add(nativeLibrary.group(1));
+			}
+		}
+		List<String> abis = Settings.getAbis();
+		if (!nativeAbis.isEmpty() && !containsAny(nativeAbis, abis)) {
+			return new Preflight("has native libraries for " + nativeAbis + " only, the emulator runs " + abis);
+		}
+		Matcher targetSdk = TARGET_SDK.matcher(packageInfo);
+		// preview versions have a code name instead of a number, those are not checked
+		if (androidJarApi != -1 && targetSdk.find() && targetSdk.group(1).matches("\\d+")) {
+			int targetApi = Integer.parseInt(targetSdk.group(1));
+			if (targetApi > androidJarApi) {
+				return new Preflight("targets API level " + targetApi + ", but android.jar is only for API level " + androidJarApi);
+			}
+		}
+		return new Preflight("");
+	}
+	
+	private static boolean containsAny(Set<String> nativeAbis, List<String> abis) {
+		for (String abi : abis) {
+			if (nativeAbis.contains(abi)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static List<String> getZipEntries(Path apkPath) {
+		List<String> zipEntries = new ArrayList<String>();
+		try (ZipFile apk = new ZipFile(apkPath.toFile())) {
+			Enumeration<? extends ZipEntry> entries = apk.entries();
+			while (entries.hasMoreElements()) {
+				zipEntries.add(entries.nextElement().getName());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while listing the entries of APK " + apkPath, e);
+		}
+		return zipEntries;
+	}
+	
+	// the API level of the android.jar, -1 if neither set nor part of its path
+	private static int getAndroidJarApi() {
+		int androidJarApi = Settings.getAndroidJarApi();
+		if (androidJarApi != -1) {
+			return androidJarApi;
+		}
+		Matcher api = ANDROID_JAR_API.matcher(Commands.OS.getAndroidJarPath());
+		return api.find() ? Integer.parseInt(api.group(1)) : -1;
+	}
+	
+	public boolean isRunnable() {
+		return reason.isEmpty();
+	}
+	
+	// why the APK cannot run in the test environment, empty if it can
+	public String getReason() {
+		return reason;
+	}
+}
\ No newline at end of file
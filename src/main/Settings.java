@@ -0,0 +1,349 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import scheduling.ApkScheduler;
+import soot.Main;
+
+// settings of the framework, which can be changed with system properties like -Dtodex.harmlessLogRules=my-rules.txt
+public class Settings {
+	
+	private static final String PREFIX = "todex.";
+	
+	public static Path getHarmlessLogRulesPath() {
+		return getPath("harmlessLogRules", "./harmless-logs.txt");
+	}
+	
+	// compare the converted APK's warnings / errors with the original APK's, instead of failing on every one
+	public static boolean isDifferentialLogFiltering() {
+		return getBoolean("differentialLogs", true);
+	}
+	
+	public static Path getLogBaselinesDir() {
+		return getPath("logBaselines", "./baselines");
+	}
+	
+	// write the complete log of every run gzip-compressed into this folder, one subfolder per APK
+	public static boolean isLogArchiving() {
+		return getBoolean("logArchiving", true);
+	}
+	
+	public static Path getLogArchivesDir() {
+		return getPath("logArchives", "./log-archives");
+	}
+	
+	// how many log lines are kept in memory for failure logs
+	public static int getLogTailLines() {
+		return Integer.getInteger(PREFIX + "logTailLines", 200);
+	}
+	
+	// skip APKs which cannot run in the test environment, see Preflight
+	public static boolean isPreflight() {
+		return getBoolean("preflight", true);
+	}
+	
+	// shared libraries (<uses-library>) available on the emulator
+	public static List<String> getSharedLibraries() {
+		return getList("sharedLibraries", "android.test.runner");
+	}
+	
+	// ABIs of the emulator, for native libraries in the APKs
+	public static List<String> getAbis() {
+		return getList("abis", "armeabi-v7a,armeabi");
+	}
+	
+	// API level of the android.jar, by default taken from its path like ".../android-15/android.jar"
+	public static int getAndroidJarApi() {
+		return Integer.getInteger(PREFIX + "androidJarApi", -1);
+	}
+	
+	public static Path getHistoryDir() {
+		return getPath("history", "./history");
+	}
+	
+	// one of longest_first, failing_first and name
+	public static ApkScheduler.Policy getSchedulingPolicy() {
+		return ApkScheduler.Policy.valueOf(System.getProperty(PREFIX + "order", "longest_first").toUpperCase());
+	}
+	
+	// wall-clock minutes for testing the sample of the sampling mode, which is sized by the estimated test durations
+	public static long getSampleMinutes() {
+		return Long.getLong(PREFIX + "sampleMinutes", 10);
+	}
+	
+	// the same seed gives the same sample of the same APKs
+	public static long getSampleSeed() {
+		return Long.getLong(PREFIX + "sampleSeed", 1);
+	}
+	
+	// runs per APK at most: failed or flaky verdicts are rerun until a sequential test decides, see MainTesting
+	public static int getMaxRuns() {
+		return Integer.getInteger(PREFIX + "maxRuns", 1);
+	}
+	
+	// probability that a rerun verdict is right, for a working APK as well as for a broken one
+	public static double getRerunConfidence() {
+		return Double.parseDouble(System.getProperty(PREFIX + "rerunConfidence", "0.95"));
+	}
+	
+	// how many workers test APKs in parallel for a coordinator, each with its own emulator
+	public static int getLanes() {
+		return Integer.getInteger(PREFIX + "lanes", 1);
+	}
+	
+	// test on headless emulators started on demand, see fleet.Fleet, instead of the one running emulator
+	public static boolean isFleet() {
+		return getBoolean("fleet", false);
+	}
+	
+	public static int getFleetMinEmulators() {
+		return Integer.getInteger(PREFIX + "fleetMin", 1);
+	}
+	
+	// also the number of APKs tested in parallel
+	public static int getFleetMaxEmulators() {
+		return Integer.getInteger(PREFIX + "fleetMax", 4);
+	}
+	
+	// of the emulators the fleet starts, created beforehand with the AVD manager
+	public static String getAvd() {
+		return System.getProperty(PREFIX + "avd", "todex");
+	}
+	
+	// for the output of the emulators the fleet starts
+	public static Path getFleetDir() {
+		return getPath("fleetDir", "./fleet");
+	}
+	
+	public static long getEmulatorBootMillis() {
+		return Long.getLong(PREFIX + "emulatorBootSeconds", 300) * 1000;
+	}
+	
+	// emulators are replaced by fresh ones after this many tests or minutes
+	public static int getEmulatorMaxTests() {
+		return Integer.getInteger(PREFIX + "emulatorMaxTests", 100);
+	}
+	
+	public static long getEmulatorMaxAgeMillis() {
+		return Long.getLong(PREFIX + "emulatorMaxAgeMinutes", 240) * 60 * 1000;
+	}
+	
+	// an emulator with less free space on /data is replaced
+	public static long getMinFreeDataKb() {
+		return Long.getLong(PREFIX + "minFreeDataKb", 100 * 1024);
+	}
+	
+	// what an emulator needs of the host, for deciding whether another one fits
+	public static int getEmulatorCores() {
+		return Integer.getInteger(PREFIX + "emulatorCores", 2);
+	}
+	
+	public static long getEmulatorMemoryMb() {
+		return Long.getLong(PREFIX + "emulatorMemoryMb", 2048);
+	}
+	
+	// how long a worker may test an APK without a heartbeat, before the coordinator hands it to another worker
+	public static long getLeaseMillis() {
+		return Long.getLong(PREFIX + "leaseMillis", 60000);
+	}
+	
+	// where a worker stores the APKs leased from the coordinator
+	public static Path getWorkerDir() {
+		return getPath("workerDir", "./worker");
+	}
+	
+	// serve the progress of the run over HTTP on this port, see progress.StatusServer, -1 for not serving it
+	public static int getStatusPort() {
+		return Integer.getInteger(PREFIX + "statusPort", -1);
+	}
+	
+	// compare the dex files of original and converted APK, see package dex
+	public static boolean isDexAnalysis() {
+		return getBoolean("dexAnalysis", true);
+	}
+	
+	// verify the converted dex files on the host, and skip running the converted APK if they fail, see dex.DexVerifier
+	public static boolean isDexVerification() {
+		return getBoolean("dexVerification", true);
+	}
+	
+	// run original and converted dex on host ART before the emulator, and only run APKs behaving the same there, see HostArt
+	public static boolean isHostArt() {
+		return getBoolean("hostArt", false);
+	}
+	
+	// for the driver dex and the task files of host ART
+	public static Path getHostArtDir() {
+		return getPath("hostArtDir", "./host-art");
+	}
+	
+	// how long one class initialization or entry point call may take on host ART
+	public static long getHostArtTimeoutMillis() {
+		return Long.getLong(PREFIX + "hostArtTimeoutMillis", 5000);
+	}
+	
+	// static methods without arguments called on host ART, like "com.example.Codec#selfTest", if the APK has the class
+	public static List<String> getHostArtEntryPoints() {
+		return getList("hostArtEntryPoints", "");
+	}
+	
+	// growth ratio of registers or code units above which a converted method is reported
+	public static double getDexRegressionThreshold() {
+		return Double.parseDouble(System.getProperty(PREFIX + "dexRegressionThreshold", "0.25"));
+	}
+	
+	public static Path getDexFootprintPath() {
+		return getPath("dexFootprint", "./dex-footprint.csv");
+	}
+	
+	// name of the Soot release in the dex footprint, by default the name of the jar Soot was loaded from
+	public static String getSootRelease() {
+		String release = System.getProperty(PREFIX + "sootRelease");
+		if (release != null) {
+			return release;
+		}
+		CodeSource sootSource = Main.class.getProtectionDomain().getCodeSource();
+		if (sootSource == null) {
+			return "unknown";
+		}
+		String sootLocation = sootSource.getLocation().getPath();
+		if (sootLocation.endsWith("/")) {
+			sootLocation = sootLocation.substring(0, sootLocation.length() - 1);
+		}
+		return sootLocation.substring(sootLocation.lastIndexOf('/') + 1);
+	}
+	
+	// how often the original and converted APK are launched for comparing their startup times, 0 (default) for never
+	public static int getColdStartLaunches() {
+		return Integer.getInteger(PREFIX + "coldStarts", 0);
+	}
+	
+	// p-value below which a difference between original and converted APK counts as significant
+	public static double getSignificanceLevel() {
+		return Double.parseDouble(System.getProperty(PREFIX + "significanceLevel", "0.05"));
+	}
+	
+	// sample "dumpsys meminfo" of the app while watching its log
+	public static boolean isMemorySampling() {
+		return getBoolean("meminfo", true);
+	}
+	
+	// growth ratio of the converted APK's median memory above which it is reported
+	public static double getMemoryGrowthThreshold() {
+		return Double.parseDouble(System.getProperty(PREFIX + "memoryGrowthThreshold", "0.2"));
+	}
+	
+	// comparisons of original and converted samples, like startup times and memory, one line per APK and metric
+	public static Path getMeasurementsPath() {
+		return getPath("measurements", "./measurements.csv");
+	}
+	
+	// play an input script on the started app and compare the frame statistics of "dumpsys gfxinfo" (Android 6+)
+	public static boolean isFrameMeasuring() {
+		return getBoolean("gfxinfo", false);
+	}
+	
+	// the same seed gives the same input script for original and converted APK
+	public static long getInputSeed() {
+		return Long.getLong(PREFIX + "inputSeed", 1);
+	}
+	
+	public static int getInputEvents() {
+		return Integer.getInteger(PREFIX + "inputEvents", 20);
+	}
+	
+	// how often the input script is played per APK, each round giving one sample
+	public static int getFrameRounds() {
+		return Integer.getInteger(PREFIX + "gfxinfoRounds", 5);
+	}
+	
+	// experimental: keep android.jar loaded in Soot's Scene between conversions, see WarmScene
+	public static boolean isWarmScene() {
+		return getBoolean("warmScene", false);
+	}
+	
+	// experimental: transform the method bodies of an APK in parallel during its conversion, see ParallelBodies
+	public static boolean isParallelBodies() {
+		return getBoolean("parallelBodies", false);
+	}
+	
+	public static int getBodyThreads() {
+		return Integer.getInteger(PREFIX + "bodyThreads", Runtime.getRuntime().availableProcessors());
+	}
+	
+	// conversions per APK before measuring in the benchmark mode, for warming up the JIT and caches
+	public static int getBenchmarkWarmups() {
+		return Integer.getInteger(PREFIX + "benchmarkWarmups", 1);
+	}
+	
+	public static int getBenchmarkIterations() {
+		return Integer.getInteger(PREFIX + "benchmarkIterations", 5);
+	}
+	
+	public static Path getBenchmarksPath() {
+		return getPath("benchmarks", "./benchmarks.csv");
+	}
+	
+	// Soot release to compare the benchmark with, null for the last other release in the benchmarks file
+	public static String getBenchmarkBaseline() {
+		return System.getProperty(PREFIX + "benchmarkBaseline");
+	}
+	
+	// comma-separated names of fuzzing.FuzzerRegistry, or "all", empty for no fuzzing of the original APK
+	public static List<String> getFuzzers() {
+		return getList("fuzzers", "");
+	}
+	
+	// how many mutations (in different methods) one mutant carries
+	public static int getMutationOrder() {
+		return Integer.getInteger(PREFIX + "mutationOrder", 1);
+	}
+	
+	// how many mutants are run per APK
+	public static int getMutants() {
+		return Integer.getInteger(PREFIX + "mutants", 1);
+	}
+	
+	// mutant i of an APK uses seed + i, so the same seed gives the same mutants
+	public static long getFuzzingSeed() {
+		return Long.getLong(PREFIX + "fuzzingSeed", 1);
+	}
+	
+	private static List<String> getList(String name, String defaultList) {
+		List<String> values = new ArrayList<String>();
+		for (String value : System.getProperty(PREFIX + name, defaultList).split(",")) {
+			if (!value.trim().isEmpty()) {
+				values.add(value.trim());
+			}
+		}
+		return values;
+	}
+	
+	private static boolean getBoolean(String name, boolean defaultValue) {
+		return Boolean.parseBoolean(System.getProperty(PREFIX + name, Boolean.toString(defaultValue)));
+	}
+	
+	private static Path getPath(String name, String defaultPath) {
+		return Paths.get(System.getProperty(PREFIX + name, defaultPath));
+	}
+}
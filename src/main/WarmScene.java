@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import soot.Dexpler;
+import soot.PackManager;
+import soot.Scene;
+import soot.SootClass;
+import soot.options.Options;
+
+/*
+ * Experimental: converts APKs without resetting Soot's globals, so the classes of android.jar stay loaded and resolved
+ * in the Scene between the conversions. Only the classes of the last APK (application and phantom classes),
+ * the hierarchies and the Dexpler caches are dropped. Soot was not designed for this, so if a warm conversion fails
+ * and the following cold one works, only cold conversions follow.
+ */
+class WarmScene {
+	
+	private static final Logger LOG = LogManager.getLogger(WarmScene.class);
+	
+	// whether the Scene holds android.jar and the classes of exactly one converted APK
+	private static boolean isWarm = false;
+	
+	private static boolean hasWarmFailed = false;
+	
+	private static boolean isBroken = false;
+	
+	// converts the APK in the warm Scene, returns false if there is none, then the caller has to convert cold
+	static boolean convert(String apkPath) {
+		hasWarmFailed = false;
+		if (!isWarm) {
+			return false;
+		}
+		isWarm = false; // until this conversion worked
+		try {
+			unloadApkClasses();
+			Dexpler.reset();
+			Options.v().set_soot_classpath(apkPath);
+			Options.v().set_process_dir(Collections.singletonList(apkPath));
+			Scene.v().setSootClassPath(null); // computed again from the options, with android.jar after the APK
+			Scene.v().loadNecessaryClasses();
+			if (Settings.isParallelBodies()) {
+				ParallelBodies.runPacks(Settings.getBodyThreads());
+			} else {
+				PackManager.v().runPacks();
+			}
+			PackManager.v().writeOutput();
+		} catch (RuntimeException e) {
+			LOG.warn("RuntimeException while converting in the warm Scene, converting cold", e);
+			hasWarmFailed = true;
+			return false;
+		}
+		isWarm = true;
+		LOG.info("converted in the warm Scene, keeping {} library classes", Scene.v().getLibraryClasses().size());
+		return true;
+	}
+	
+	// after a cold conversion with Soot's main, which can be reused if no transformers were added
+	static void afterColdConversion(boolean isReusable) {
+		if (hasWarmFailed) {
+			LOG.warn("the cold conversion worked after the warm one failed, converting cold from now on");
+			isBroken = true;
+		}
+		isWarm = isReusable && !isBroken;
+	}
+	
+	private static void unloadApkClasses() {
+		List<SootClass> apkClasses = new ArrayList<SootClass>(Scene.v().getApplicationClasses());
+		// phantom classes of the last APK might be real ones in the next APK
+		apkClasses.addAll(Scene.v().getPhantomClasses());
+		for (SootClass apkClass : apkClasses) {
+			Scene.v().removeClass(apkClass);
+		}
+		Scene.v().releaseActiveHierarchy();
+		Scene.v().releaseFastHierarchy();
+	}
+}
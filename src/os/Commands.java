@@ -21,9 +21,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -37,6 +40,23 @@ public class Commands {
 	
 	private static final String DEFAULT_ADB_PATH = OS.getAdbPath();
 	
+	// device the commands of a thread (and the threads it starts) go to, null for the only one attached
+	private static final InheritableThreadLocal<String> SERIAL = new InheritableThreadLocal<String>();
+	
+	public static void setSerial(String serial) {
+		SERIAL.set(serial);
+	}
+	
+	// null if the commands go to the only device attached
+	public static String getSerial() {
+		return SERIAL.get();
+	}
+	
+	private static String getAdbPath() {
+		String serial = SERIAL.get();
+		return serial == null ? DEFAULT_ADB_PATH : DEFAULT_ADB_PATH + " -s " + serial;
+	}
+	
 	public static String getPackageInfo(Path apkPath) {
 		// dump short package info for APK %s
 		String aaptCmd = OS.getAaptPath() + " dump badging %s";
@@ -66,23 +86,129 @@ public class Commands {
 	
 	public static String getEmulatorTime() {
 		// get epoch time
-		String getTimeCmd = DEFAULT_ADB_PATH + " shell date +\"%s\"";
+		String getTimeCmd = getAdbPath() + " shell date +\"%s\"";
 		Results timeResults = execAndGetResults(getTimeCmd);
 		return timeResults.getOutput();
 	}
 	
-	public static Results install(Path path) {
+	public static InstallResults install(Path path) {
+		long apkSize;
+		try {
+			apkSize = Files.size(path);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while getting size of APK " + path, e);
+		}
+		long installStart = System.nanoTime();
+		/*
+		 * The session commands exit with 1 on failures since API level 24 (with shell_v2), like a replace refused
+		 * for another signer, so their exit values are not taken as failures of the command itself.
+		 */
+		// create a package manager session for (re)installing an APK with %d bytes
+		String createCmd = getAdbPath() + " shell pm install-create -r -S %d";
+		Results createResults = execAndGetResultsOfAnyExit(String.format(createCmd, apkSize));
+		String sessionId = extractSessionId(createResults.getOutput());
+		if (sessionId.isEmpty()) {
+			// sessions are only known since API level 21, so fall back to pushing the APK to /data/local/tmp
+			LOG.debug("no install session created, falling back to legacy install: {}", createResults.getOutput());
+			long legacyStart = System.nanoTime();
+			Results legacyResults = installLegacy(path);
+			return new InstallResults(legacyResults, InstallResults.UNKNOWN, InstallResults.UNKNOWN, getMillisSince(legacyStart));
+		}
+		// stream %d bytes of the APK from stdin into session %s, without copying it to the device first
+		long transferStart = System.nanoTime();
+		String writeCmd = getAdbPath() + " exec-in pm install-write -S %d %s base.apk -";
+		Results writeResults = execWithInputAndGetResultsOfAnyExit(String.format(writeCmd, apkSize, sessionId), path);
+		long transferMillis = getMillisSince(transferStart);
+		if (!writeResults.getOutput().startsWith("Success")) {
+			abandonInstallSession(sessionId);
+			Results failure = new Results("Failure [streaming APK failed: " + writeResults.getOutput().trim() + "]\n", writeResults.getErrors());
+			return new InstallResults(failure, transferMillis, InstallResults.UNKNOWN, getMillisSince(installStart));
+		}
+		// commit session %s, which does the actual installation including dexopt
+		long commitStart = System.nanoTime();
+		String commitCmd = getAdbPath() + " shell pm install-commit %s";
+		Results commitResults = withFailureOutput(execAndGetResultsOfAnyExit(String.format(commitCmd, sessionId)));
+		return new InstallResults(commitResults, transferMillis, getMillisSince(commitStart), getMillisSince(installStart));
+	}
+	
+	private static long getMillisSince(long startNanos) {
+		return (System.nanoTime() - startNanos) / 1000000;
+	}
+	
+	private static Results installLegacy(Path path) {
 		// (re)install file %s
-		String installCmd = DEFAULT_ADB_PATH + " install -r %s";
-		return execAndGetResults(String.format(installCmd, path.toString()));
+		String installCmd = getAdbPath() + " install -r %s";
+		return withFailureOutput(execAndGetResultsOfAnyExit(String.format(installCmd, path.toString())));
+	}
+	
+	// the callers look for "Failure" in the output, which a failing command does not always print there
+	private static Results withFailureOutput(Results results) {
+		if (results.getExitValue() == 0 || results.getOutput().contains("Failure")) {
+			return results;
+		}
+		String failure = "Failure [exit value " + results.getExitValue() + ": " + results.getErrors().trim() + "]\n";
+		return new Results(results.getOutput() + failure, results.getErrors(), results.getExitValue());
+	}
+	
+	private static void abandonInstallSession(String sessionId) {
+		// throw away the partially written session %s
+		String abandonCmd = getAdbPath() + " shell pm install-abandon %s";
+		execAndGetResultsOfAnyExit(String.format(abandonCmd, sessionId));
+	}
+	
+	private static String extractSessionId(String createOutput) {
+		// something like "Success: created install session [1234567]"
+		if (!createOutput.startsWith("Success")) {
+			return "";
+		}
+		int idBegin = createOutput.indexOf('[');
+		int idEnd = createOutput.indexOf(']', idBegin);
+		if (idBegin == -1 || idEnd == -1) {
+			return "";
+		}
+		return createOutput.substring(idBegin + 1, idEnd);
+	}
+	
+	public static String getPackagePath(String appPackage) {
+		// print the path of the installed APK of package %s, like "package:/data/app/com.example-1/base.apk"
+		String pathCmd = getAdbPath() + " shell pm path %s";
+		Results pathResults = execAndGetResults(String.format(pathCmd, appPackage));
+		return pathResults.getOutput();
+	}
+	
+	public static String listFiles(String paths) {
+		// list files %s in long format with their sizes, globs are expanded on the device, missing files are no failure
+		String listCmd = getAdbPath() + " shell ls -l %s 2>/dev/null || true";
+		Results listResults = execAndGetResults(String.format(listCmd, paths));
+		return listResults.getOutput();
 	}
 	
 	public static void uninstall(String appPackage) {
 		// uninstall package %s
-		String uninstallCmd = DEFAULT_ADB_PATH + " uninstall %s";
+		String uninstallCmd = getAdbPath() + " uninstall %s";
 		execAndGetResults(String.format(uninstallCmd, appPackage));
 	}
 	
+	public static void clearAppData(String appPackage) {
+		// delete all data of package %s, as if it was freshly installed
+		String clearCmd = getAdbPath() + " shell pm clear %s";
+		execAndGetResults(String.format(clearCmd, appPackage));
+	}
+	
+	public static Set<String> getInstalledPackages() {
+		// list all installed packages, one "package:<name>" per line
+		String listCmd = getAdbPath() + " shell pm list packages";
+		Results listResults = execAndGetResults(listCmd);
+		Set<String> packages = new HashSet<String>();
+		for (String line : listResults.getOutput().split("\n")) {
+			String trimmedLine = line.trim();
+			if (trimmedLine.startsWith("package:")) {
+				packages.add(trimmedLine.substring("package:".length()));
+			}
+		}
+		return packages;
+	}
+	
 	public static String getDevices() {
 		// list known devices
 		String devicesCmd = DEFAULT_ADB_PATH + " devices";
@@ -92,30 +218,167 @@ public class Commands {
 	
 	public static void clearLogcat() {
 		// clear logs
-		String clearLogcatCmd = DEFAULT_ADB_PATH + " logcat -c";
+		String clearLogcatCmd = getAdbPath() + " logcat -c";
 		execAndGetResults(clearLogcatCmd);
 	}
 	
 	public static void startActivity(String appPackage, String mainActivity) {
 		// tell ActivityManager to start the "main intent" of activity %s/%s
-		String startCmd = DEFAULT_ADB_PATH + " shell am start -a android.intent.action.MAIN -c android.intent.category.LAUNCHER -n %s/%s";
+		String startCmd = getAdbPath() + " shell am start -a android.intent.action.MAIN -c android.intent.category.LAUNCHER -n %s/%s";
 		execAndGetResults(String.format(startCmd, appPackage, mainActivity));
 	}
 	
-	public static String getBriefLog() {
-		// get brief log, terminating logcat thereafter
-		String briefLogCmd = DEFAULT_ADB_PATH + " logcat -v brief -d";
-		Results briefLog = execAndGetResults(briefLogCmd);
-		return briefLog.getOutput();
+	// returns the time until the activity was displayed in milliseconds, -1 if it did not come up
+	public static long startActivityAndWait(String appPackage, String mainActivity) {
+		// like startActivity, but wait (-W) for the activity to be displayed and print the launch times
+		String startCmd = getAdbPath() + " shell am start -W -a android.intent.action.MAIN -c android.intent.category.LAUNCHER -n %s/%s";
+		Results startResults = execAndGetResults(String.format(startCmd, appPackage, mainActivity));
+		for (String line : startResults.getOutput().split("\n")) {
+			String trimmedLine = line.trim();
+			if (trimmedLine.startsWith("TotalTime:")) {
+				return Long.parseLong(trimmedLine.substring("TotalTime:".length()).trim());
+			}
+		}
+		return -1;
+	}
+	
+	public static String getMeminfo(String appPackage) {
+		// dump memory usage of the process of package %s in KB
+		String meminfoCmd = getAdbPath() + " shell dumpsys meminfo %s";
+		Results meminfo = execAndGetResults(String.format(meminfoCmd, appPackage));
+		return meminfo.getOutput();
+	}
+	
+	public static String getScreenSize() {
+		// print the screen size in pixels, like "Physical size: 1080x1920"
+		String sizeCmd = getAdbPath() + " shell wm size";
+		Results size = execAndGetResults(sizeCmd);
+		return size.getOutput();
+	}
+	
+	public static void input(String event) {
+		// inject input event %s, like "tap 540 960"
+		String inputCmd = getAdbPath() + " shell input %s";
+		execAndGetResults(String.format(inputCmd, event));
+	}
+	
+	public static void resetGfxinfo(String appPackage) {
+		// reset the frame statistics of package %s
+		String resetCmd = getAdbPath() + " shell dumpsys gfxinfo %s reset";
+		execAndGetResults(String.format(resetCmd, appPackage));
+	}
+	
+	public static String getGfxinfo(String appPackage) {
+		// dump the frame statistics of package %s since the last reset
+		String gfxinfoCmd = getAdbPath() + " shell dumpsys gfxinfo %s";
+		Results gfxinfo = execAndGetResults(String.format(gfxinfoCmd, appPackage));
+		return gfxinfo.getOutput();
+	}
+	
+	public static void forceStop(String appPackage) {
+		// stop all processes of package %s, so its next start is a cold one
+		String forceStopCmd = getAdbPath() + " shell am force-stop %s";
+		execAndGetResults(String.format(forceStopCmd, appPackage));
+	}
+	
+	public static void readBriefLog(LineHandler handler) {
+		// get brief log line by line, terminating logcat thereafter
+		String briefLogCmd = getAdbPath() + " logcat -v brief -d";
+		execAndHandleLines(briefLogCmd, handler);
 	}
 	
 	public static String getProcessActivityLog() {
 		// dump and exit logcat logger, use short "process" format, filter for entries with tag "ActivityManager" which level is >= info
-		String processLogCmd = DEFAULT_ADB_PATH + " logcat -v process -d ActivityManager:I *:S";
+		String processLogCmd = getAdbPath() + " logcat -v process -d ActivityManager:I *:S";
 		Results processLog = execAndGetResults(processLogCmd);
 		return processLog.getOutput();
 	}
 	
+	/*
+	 * starts a headless emulator for the AVD %s with console port %d (so its serial is "emulator-<port>"), with
+	 * a wiped data partition. It runs until it is killed, with its output going to the given file.
+	 */
+	public static Process startEmulator(String avd, int port, Path output) {
+		String emulatorCmd = OS.getEmulatorPath() + " -avd %s -port %d -no-window -no-audio -no-boot-anim -wipe-data";
+		String command = String.format(emulatorCmd, avd, port);
+		LOG.debug("starting emulator with {}", command);
+		ProcessBuilder builder = new ProcessBuilder(command.split(" "));
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(ProcessBuilder.Redirect.appendTo(output.toFile()));
+		try {
+			return builder.start();
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while starting emulator " + command, e);
+		}
+	}
+	
+	public static void killEmulator(String serial) {
+		// tell emulator %s via its console to shut down
+		String killCmd = DEFAULT_ADB_PATH + " -s %s emu kill";
+		execAndGetResults(String.format(killCmd, serial));
+	}
+	
+	public static String getState(String serial) {
+		// print "device" if %s is online, fails if it is not
+		String stateCmd = DEFAULT_ADB_PATH + " -s %s get-state";
+		Results state = execAndGetResults(String.format(stateCmd, serial));
+		return state.getOutput();
+	}
+	
+	public static String getBootCompleted(String serial) {
+		// print "1" once %s has booted
+		String bootCmd = DEFAULT_ADB_PATH + " -s %s shell getprop sys.boot_completed";
+		Results bootCompleted = execAndGetResults(String.format(bootCmd, serial));
+		return bootCompleted.getOutput();
+	}
+	
+	public static String getDataPartition(String serial) {
+		// print size, used and free space of the data partition of %s
+		String dfCmd = DEFAULT_ADB_PATH + " -s %s shell df /data";
+		Results df = execAndGetResults(String.format(dfCmd, serial));
+		return df.getOutput();
+	}
+	
+	public static String getWindows(String serial) {
+		// dump the windows of %s, including the focused one, which is a dialog for ANRs and crashes
+		String windowsCmd = DEFAULT_ADB_PATH + " -s %s shell dumpsys window windows";
+		Results windows = execAndGetResults(String.format(windowsCmd, serial));
+		return windows.getOutput();
+	}
+	
+	public static Results dex(Path classesDir, Path dexPath) {
+		// convert the class files in folder %2$s into the dex file %1$s
+		String dxCmd = OS.getDxPath() + " --dex --output=%s %s";
+		return execAndGetResults(String.format(dxCmd, dexPath, classesDir));
+	}
+	
+	/*
+	 * runs the class %2$s with classpath %1$s (dex or APK files separated by ":") and arguments %3$s on host ART,
+	 * handling the lines it and the app print. Returns its exit value, which is up to the app.
+	 */
+	public static int runOnHostArt(String classpath, String mainClass, String args, LineHandler handler) {
+		String artCmd = OS.getArtPath() + " -cp %s %s %s";
+		String command = String.format(artCmd, classpath, mainClass, args);
+		LOG.debug("executing command {} on host ART", command);
+		ProcessBuilder builder = new ProcessBuilder(command.split(" "));
+		// ART logs verification failures to stderr, which must not fill up its pipe while stdout is read
+		builder.redirectErrorStream(true);
+		Process proc;
+		try {
+			proc = builder.start();
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while executing command " + command, e);
+		}
+		try {
+			handleLines(proc.getInputStream(), handler);
+			return proc.waitFor();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("InterruptedException while waiting for host ART to terminate", e);
+		} finally {
+			proc.destroy();
+		}
+	}
+	
 	private static void waitForProcess(Process proc) {
 		LOG.debug("waiting for process to terminate");
 		int exitValue;
@@ -137,6 +400,18 @@ public class Commands {
 		return new Results(output, errors);
 	}
 	
+	// like getResults, but with the exit value instead of failing on one other than 0
+	private static Results getResultsOfAnyExit(Process proc) {
+		LOG.debug("getting results from process, whatever its exit value");
+		String output = getLines(proc.getInputStream());
+		String errors = getLines(proc.getErrorStream());
+		try {
+			return new Results(output, errors, proc.waitFor());
+		} catch (InterruptedException e) {
+			throw new RuntimeException("InterruptedException while waiting for the process to terminate", e);
+		}
+	}
+	
 	private static String getLines(InputStream in) {
 		StringBuilder lines = new StringBuilder();
 		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
@@ -154,6 +429,56 @@ public class Commands {
 		return lines.toString();
 	}
 	
+	// like getLines, but without collecting the lines
+	private static void handleLines(InputStream in, LineHandler handler) {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		try {
+			String line = reader.readLine();
+			while (line != null) {
+				handler.handleLine(line);
+				line = reader.readLine();
+			}
+			reader.close();
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading input lines", e);
+		}
+	}
+	
+	private static void execAndHandleLines(String command, LineHandler handler) {
+		LOG.debug("executing command {}, handling its output line by line", command);
+		Process proc;
+		try {
+			proc = Runtime.getRuntime().exec(command);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while executing command " + command, e);
+		}
+		try {
+			handleLines(proc.getInputStream(), handler);
+		} catch (RuntimeException e) {
+			proc.destroy();
+			throw e;
+		}
+		getLines(proc.getErrorStream());
+		waitForProcess(proc);
+	}
+	
+	private static Results execWithInputAndGetResultsOfAnyExit(String command, Path input) {
+		LOG.debug("executing command {} with input from {}", command, input);
+		Process proc;
+		try {
+			proc = Runtime.getRuntime().exec(command);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while executing command " + command, e);
+		}
+		try (OutputStream procIn = proc.getOutputStream()) {
+			Files.copy(input, procIn);
+		} catch (IOException e) {
+			proc.destroy();
+			throw new RuntimeException("IOException while writing " + input + " to command " + command, e);
+		}
+		return getResultsOfAnyExit(proc);
+	}
+	
 	private static Results execAndGetResults(String command) {
 		LOG.debug("executing command {}", command);
 		Process proc;
@@ -164,4 +489,15 @@ public class Commands {
 		}
 		return getResults(proc);
 	}
-}
\ No newline at end of file
+	
+	private static Results execAndGetResultsOfAnyExit(String command) {
+		LOG.debug("executing command {}", command);
+		Process proc;
+		try {
+			proc = Runtime.getRuntime().exec(command);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while executing command " + command, e);
+		}
+		return getResultsOfAnyExit(proc);
+	}
+}
@@ -27,6 +27,21 @@ public class ExampleOS implements OperatingSystem {
 		return "/Users/thomas/ma/soot/android-platforms/android-15/android.jar";
 	}
 
+	@Override
+	public String getEmulatorPath() {
+		return sdkPath + "tools/emulator";
+	}
+
+	@Override
+	public String getDxPath() {
+		return sdkPath + "platform-tools/dx";
+	}
+
+	@Override
+	public String getArtPath() {
+		return "/home/thomas/aosp/out/host/linux-x86/bin/art";
+	}
+
 	@Override
 	public String getZipalignPath() {
 		return sdkPath + "tools/zipalign";
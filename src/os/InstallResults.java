@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package os;
+
+/*
+ * Results of an installation, with the time for transferring the APK and for committing it, which is mostly dexopt.
+ * The legacy installation (before API level 21) does both in one command, so only its total time is known.
+ */
+public class InstallResults extends Results {
+	
+	public static final long UNKNOWN = -1;
+	
+	private final long transferMillis;
+	
+	private final long commitMillis;
+	
+	private final long totalMillis;
+	
+	public InstallResults(Results results, long transferMillis, long commitMillis, long totalMillis) {
+		super(results.getOutput(), results.getErrors(), results.getExitValue());
+		this.transferMillis = transferMillis;
+		this.commitMillis = commitMillis;
+		this.totalMillis = totalMillis;
+	}
+	
+	public long getTransferMillis() {
+		return transferMillis;
+	}
+	
+	public long getCommitMillis() {
+		return commitMillis;
+	}
+	
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+}
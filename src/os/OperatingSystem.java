@@ -28,4 +28,13 @@ public interface OperatingSystem {
 	String getJarsignerPath();
 	
 	String getAndroidJarPath();
+	
+	// of the SDK emulator, for starting headless emulators in a fleet.Fleet
+	String getEmulatorPath();
+	
+	// of the SDK's dx, for converting class files to dex
+	String getDxPath();
+	
+	// of the "art" script of a host build of AOSP (Linux only), for running dex on the host, see main.HostArt
+	String getArtPath();
 }
@@ -22,9 +22,17 @@ public class Results {
 	
 	private final String errors;
 	
+	// of the command, 0 unless it was run by a variant which does not fail on other exit values
+	private final int exitValue;
+	
 	public Results(String output, String errors) {
+		this(output, errors, 0);
+	}
+	
+	public Results(String output, String errors, int exitValue) {
 		this.output = output;
 		this.errors = errors;
+		this.exitValue = exitValue;
 	}
 	
 	public String getOutput() {
@@ -34,4 +42,8 @@ public class Results {
 	public String getErrors() {
 		return errors;
 	}
+	
+	public int getExitValue() {
+		return exitValue;
+	}
 }
\ No newline at end of file
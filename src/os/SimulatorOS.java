@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package os;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import simulator.AdbSimulator;
+
+/*
+ * Runs the tests against simulated emulators: starts a simulator.AdbSimulator in this JVM
+ * and lets the adb client of the given OS talk to it instead of the real adb server.
+ * Use it in Commands.OS like: new SimulatorOS(new ExampleOS(), Paths.get("simulator.properties"))
+ */
+public class SimulatorOS implements OperatingSystem {
+
+	private final OperatingSystem os;
+
+	private final AdbSimulator simulator;
+
+	public SimulatorOS(OperatingSystem os, Path script) {
+		this.os = os;
+		try {
+			this.simulator = new AdbSimulator(0, AdbSimulator.loadScript(script)); // any free port
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while starting adb simulator", e);
+		}
+		simulator.startInBackground();
+	}
+
+	public AdbSimulator getSimulator() {
+		return simulator;
+	}
+
+	@Override
+	public String getZipalignPath() {
+		return os.getZipalignPath();
+	}
+
+	@Override
+	public String getAdbPath() {
+		return os.getAdbPath() + " -P " + simulator.getPort();
+	}
+
+	@Override
+	public String getAaptPath() {
+		return os.getAaptPath();
+	}
+
+	@Override
+	public String getJarsignerPath() {
+		return os.getJarsignerPath();
+	}
+
+	@Override
+	public String getAndroidJarPath() {
+		return os.getAndroidJarPath();
+	}
+
+	@Override
+	public String getEmulatorPath() {
+		return os.getEmulatorPath();
+	}
+	
+	@Override
+	public String getDxPath() {
+		return os.getDxPath();
+	}
+	
+	@Override
+	public String getArtPath() {
+		return os.getArtPath();
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package progress;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import history.Phase;
+import history.Verdict;
+import main.ApkResult;
+import stats.Statistics;
+
+/*
+ * Progress of the running campaign: queued APKs, the APK and phase of each lane (emulator or worker),
+ * throughput, phase durations and the verdicts so far. Updated by the lanes, read by the StatusServer.
+ */
+public class CampaignProgress {
+	
+	private static final Logger LOG = LogManager.getLogger(CampaignProgress.class);
+	
+	// the throughput is measured over the APKs finished in this time
+	private static final long THROUGHPUT_WINDOW_MILLIS = 60 * 60 * 1000;
+	
+	// the latest durations per phase kept for the percentiles
+	private static final int MAX_DURATIONS = 500;
+	
+	private final long startMillis = System.currentTimeMillis();
+	
+	private int queued = 0;
+	
+	// in the order the APKs were started
+	private final Map<Path, InFlight> inFlight = new LinkedHashMap<Path, InFlight>();
+	
+	// end times of the APKs finished in the throughput window
+	private final Deque<Long> finishMillis = new ArrayDeque<Long>();
+	
+	private final Map<Phase, Deque<Double>> durationsMillis = new EnumMap<Phase, Deque<Double>>(Phase.class);
+	
+	private final Map<Verdict, Integer> verdictCounts = new EnumMap<Verdict, Integer>(Verdict.class);
+	
+	private final List<VerdictListener> listeners = new CopyOnWriteArrayList<VerdictListener>();
+	
+	public CampaignProgress() {
+		for (Phase phase : Phase.values()) {
+			durationsMillis.put(phase, new ArrayDeque<Double>());
+		}
+		for (Verdict verdict : Verdict.values()) {
+			verdictCounts.put(verdict, 0);
+		}
+	}
+	
+	public synchronized void addQueued(int apks) {
+		queued += apks;
+	}
+	
+	// the APK left the queue and is tested in the given lane, like an emulator serial or a worker ID
+	public synchronized void start(Path apk, String lane) {
+		queued = Math.max(0, queued - 1);
+		inFlight.put(apk, new InFlight(lane, System.currentTimeMillis()));
+	}
+	
+	public synchronized void startPhase(Path apk, Phase phase) {
+		InFlight apkInFlight = inFlight.get(apk);
+		if (apkInFlight != null) {
+			apkInFlight.phase = phase;
+			apkInFlight.phaseStartMillis = System.currentTimeMillis();
+		}
+	}
+	
+	// the APK goes back into the queue without a result, like after an expired lease
+	public synchronized void requeue(Path apk) {
+		inFlight.remove(apk);
+		queued++;
+	}
+	
+	public void finish(ApkResult result) {
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			inFlight.remove(result.getApk());
+			finishMillis.addLast(now);
+			expireFinishMillis(now);
+			for (Map.Entry<Phase, Long> duration : result.getDurationsMillis().entrySet()) {
+				Deque<Double> phaseDurations = durationsMillis.get(duration.getKey());
+				phaseDurations.addLast((double) duration.getValue());
+				if (phaseDurations.size() > MAX_DURATIONS) {
+					phaseDurations.removeFirst();
+				}
+			}
+			verdictCounts.put(result.getVerdict(), verdictCounts.get(result.getVerdict()) + 1);
+		}
+		// outside of the lock, so a slow listener does not block the lanes
+		for (VerdictListener listener : listeners) {
+			try {
+				listener.verdict(result);
+			} catch (RuntimeException e) {
+				LOG.warn("RuntimeException in verdict listener", e);
+			}
+		}
+	}
+	
+	public void addListener(VerdictListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(VerdictListener listener) {
+		listeners.remove(listener);
+	}
+	
+	private void expireFinishMillis(long now) {
+		while (!finishMillis.isEmpty() && finishMillis.peekFirst() < now - THROUGHPUT_WINDOW_MILLIS) {
+			finishMillis.removeFirst();
+		}
+	}
+	
+	// APKs per hour in the throughput window, or since the start if that was later
+	private double getApksPerHour(long now) {
+		long windowMillis = Math.min(THROUGHPUT_WINDOW_MILLIS, now - startMillis);
+		if (finishMillis.isEmpty() || windowMillis <= 0) {
+			return 0;
+		}
+		return finishMillis.size() * 3600000.0 / windowMillis;
+	}
+	
+	public synchronized String toJson() {
+		long now = System.currentTimeMillis();
+		expireFinishMillis(now);
+		double apksPerHour = getApksPerHour(now);
+		int remaining = queued + inFlight.size();
+		StringBuilder json = new StringBuilder();
+		json.append("{\"timeMillis\":").append(now);
+		json.append(",\"runningSeconds\":").append((now - startMillis) / 1000);
+		json.append(",\"queued\":").append(queued);
+		json.append(",\"inFlight\":[");
+		String separator = "";
+		for (Map.Entry<Path, InFlight> apkInFlight : inFlight.entrySet()) {
+			InFlight lane = apkInFlight.getValue();
+			json.append(separator).append("{\"lane\":").append(Json.quote(lane.lane));
+			json.append(",\"apk\":").append(Json.quote(apkInFlight.getKey().toString()));
+			json.append(",\"phase\":").append(lane.phase == null ? "null" : Json.quote(lane.phase.getKey()));
+			json.append(",\"apkSeconds\":").append((now - lane.startMillis) / 1000);
+			json.append(",\"phaseSeconds\":").append((now - lane.phaseStartMillis) / 1000).append('}');
+			separator = ",";
+		}
+		json.append("],\"apksPerHour\":").append(Json.number(apksPerHour));
+		json.append(",\"etaSeconds\":").append(apksPerHour > 0 ? Json.number(Math.round(remaining / apksPerHour * 3600)) : "null");
+		json.append(",\"verdicts\":{");
+		separator = "";
+		for (Map.Entry<Verdict, Integer> verdictCount : verdictCounts.entrySet()) {
+			json.append(separator).append(Json.quote(verdictCount.getKey().name())).append(':').append(verdictCount.getValue());
+			separator = ",";
+		}
+		json.append("},\"phaseMillis\":{");
+		separator = "";
+		for (Map.Entry<Phase, Deque<Double>> phaseDurations : durationsMillis.entrySet()) {
+			List<Double> durations = new ArrayList<Double>(phaseDurations.getValue());
+			json.append(separator).append(Json.quote(phaseDurations.getKey().getKey()));
+			json.append(":{\"count\":").append(durations.size());
+			json.append(",\"p50\":").append(Json.number(Statistics.percentile(durations, 50)));
+			json.append(",\"p90\":").append(Json.number(Statistics.percentile(durations, 90)));
+			json.append(",\"p99\":").append(Json.number(Statistics.percentile(durations, 99))).append('}');
+			separator = ",";
+		}
+		return json.append("}}").toString();
+	}
+	
+	// one line, for a server-sent event
+	public static String toJson(ApkResult result) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"apk\":").append(Json.quote(result.getApk().toString()));
+		json.append(",\"verdict\":").append(Json.quote(result.getVerdict().name()));
+		json.append(",\"phaseMillis\":{");
+		String separator = "";
+		for (Map.Entry<Phase, Long> duration : result.getDurationsMillis().entrySet()) {
+			json.append(separator).append(Json.quote(duration.getKey().getKey())).append(':').append(duration.getValue());
+			separator = ",";
+		}
+		return json.append("}}").toString();
+	}
+	
+	private static class InFlight {
+		
+		private final String lane;
+		
+		private final long startMillis;
+		
+		// null until the first phase started
+		private Phase phase;
+		
+		private long phaseStartMillis;
+		
+		private InFlight(String lane, long startMillis) {
+			this.lane = lane;
+			this.startMillis = startMillis;
+			this.phaseStartMillis = startMillis;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package progress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import main.ApkResult;
+
+/*
+ * Serves the progress of the running campaign over HTTP:
+ * 
+ * /status    the CampaignProgress as JSON
+ * /verdicts  a stream of server-sent events, one "verdict" event with JSON data per tested APK
+ * 
+ * For example: curl http://localhost:8080/status or curl -N http://localhost:8080/verdicts
+ */
+public class StatusServer {
+	
+	private static final Logger LOG = LogManager.getLogger(StatusServer.class);
+	
+	// a comment line is sent on idle event streams, so proxies and clients do not close them
+	private static final long KEEPALIVE_SECONDS = 15;
+	
+	// events an event stream may fall behind before it is closed
+	private static final int MAX_PENDING_EVENTS = 1000;
+	
+	private final CampaignProgress progress;
+	
+	private final HttpServer server;
+	
+	private final ExecutorService executor;
+	
+	public StatusServer(int port, CampaignProgress progress) {
+		this.progress = progress;
+		try {
+			this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while opening status port " + port, e);
+		}
+		// each event stream occupies one thread, and none of them must keep the JVM alive
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "statusServer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/status", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serveStatus(exchange);
+			}
+		});
+		server.createContext("/verdicts", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serveVerdicts(exchange);
+			}
+		});
+	}
+	
+	public void start() {
+		server.start();
+		LOG.info("serving campaign status on port {}", getPort());
+	}
+	
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+	
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+	
+	private void serveStatus(HttpExchange exchange) throws IOException {
+		byte[] body = progress.toJson().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+	
+	private void serveVerdicts(HttpExchange exchange) throws IOException {
+		final BlockingQueue<String> events = new LinkedBlockingQueue<String>(MAX_PENDING_EVENTS);
+		VerdictListener listener = new VerdictListener() {
+			@Override
+			public void verdict(ApkResult result) {
+				// a full queue means a stuck client, which is closed below instead of blocking the lanes
+				events.offer(CampaignProgress.toJson(result));
+			}
+		};
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0); // chunked, until the client disconnects
+		progress.addListener(listener);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			while (events.remainingCapacity() > 0) {
+				String event = events.poll(KEEPALIVE_SECONDS, TimeUnit.SECONDS);
+				String message = event == null ? ": keepalive\n\n" : "event: verdict\ndata: " + event + "\n\n";
+				out.write(message.getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+			LOG.warn("closing verdict stream of {}, it fell {} events behind", exchange.getRemoteAddress(), MAX_PENDING_EVENTS);
+		} catch (IOException e) {
+			LOG.debug("verdict stream of {} closed", exchange.getRemoteAddress());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			progress.removeListener(listener);
+			exchange.close();
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package scheduling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import history.ApkHistory;
+import history.Verdict;
+import os.Commands;
+
+/*
+ * Picks a subset of the APKs which fits a time budget, for a fast estimate of the pass rate of the whole corpus.
+ * The APKs are split into strata by dex size, minimum API level and verdict of their last run, and each stratum
+ * gets a share of the sample proportional to its size, at least one APK while the budget lasts. Within a stratum,
+ * the APKs are taken in a random order from the seed, so the same seed and corpus give the same sample.
+ */
+public class ApkSampler {
+	
+	private static final Logger LOG = LogManager.getLogger(ApkSampler.class);
+	
+	private static final long[] DEX_BYTES_BOUNDS = { 512 * 1024, 2 * 1024 * 1024 };
+	
+	private static final String[] DEX_BYTES_LABELS = { "dex<512K", "dex<2M", "dex>=2M" };
+	
+	private static final int[] MIN_SDK_BOUNDS = { 10, 19 };
+	
+	private static final String[] MIN_SDK_LABELS = { "api<=10", "api<=19", "api>19" };
+	
+	private static final Pattern MIN_SDK = Pattern.compile("^sdkVersion:'(\\d+)'", Pattern.MULTILINE);
+	
+	private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+	
+	private final Path historyDir;
+	
+	private final long seed;
+	
+	public ApkSampler(Path historyDir, long seed) {
+		this.historyDir = historyDir;
+		this.seed = seed;
+	}
+	
+	// budgetMillis is the wall-clock time for testing the sample on the given number of lanes
+	public Sample sample(Collection<Path> apks, long budgetMillis, int lanes) {
+		Map<Path, ApkHistory> histories = new HashMap<Path, ApkHistory>();
+		for (Path apk : apks) {
+			histories.put(apk, ApkHistory.load(historyDir, apk.getFileName().toString()));
+		}
+		DurationEstimator estimator = new DurationEstimator(histories.values());
+		// sorted by name before shuffling, so the order the APKs were found in does not matter
+		List<Path> sortedApks = new ArrayList<Path>(apks);
+		Collections.sort(sortedApks);
+		final Map<String, List<Path>> strata = new TreeMap<String, List<Path>>();
+		Map<Path, String> apkStrata = new HashMap<Path, String>();
+		for (Path apk : sortedApks) {
+			String stratum = getStratum(apk, histories.get(apk));
+			if (!strata.containsKey(stratum)) {
+				strata.put(stratum, new ArrayList<Path>());
+			}
+			strata.get(stratum).add(apk);
+			apkStrata.put(apk, stratum);
+		}
+		Random random = new Random(seed);
+		for (List<Path> stratumApks : strata.values()) {
+			Collections.shuffle(stratumApks, random);
+		}
+		// the largest strata get their first APK first, in case the budget does not cover all strata
+		List<String> stratumOrder = new ArrayList<String>(strata.keySet());
+		Collections.sort(stratumOrder, new Comparator<String>() {
+			@Override
+			public int compare(String stratum1, String stratum2) {
+				int largest = Integer.compare(strata.get(stratum2).size(), strata.get(stratum1).size());
+				return largest != 0 ? largest : stratum1.compareTo(stratum2);
+			}
+		});
+		Map<String, Integer> taken = new HashMap<String, Integer>();
+		Map<String, Boolean> closed = new HashMap<String, Boolean>();
+		for (String stratum : stratumOrder) {
+			taken.put(stratum, 0);
+			closed.put(stratum, false);
+		}
+		List<Path> sampledApks = new ArrayList<Path>();
+		long leftMillis = budgetMillis * lanes;
+		while (true) {
+			// the open stratum with the smallest share sampled so far
+			String nextStratum = null;
+			double nextShare = Double.MAX_VALUE;
+			for (String stratum : stratumOrder) {
+				double share = taken.get(stratum) / (double) strata.get(stratum).size();
+				if (!closed.get(stratum) && share < nextShare) {
+					nextStratum = stratum;
+					nextShare = share;
+				}
+			}
+			if (nextStratum == null) {
+				break;
+			}
+			List<Path> stratumApks = strata.get(nextStratum);
+			int stratumTaken = taken.get(nextStratum);
+			Path apk = stratumApks.get(stratumTaken);
+			long estimateMillis = estimator.estimateMillis(histories.get(apk), getSize(apk));
+			// taking a shorter APK of the stratum instead would favour short APKs, so the stratum is done
+			if (estimateMillis > leftMillis) {
+				closed.put(nextStratum, true);
+				continue;
+			}
+			leftMillis -= estimateMillis;
+			sampledApks.add(apk);
+			taken.put(nextStratum, stratumTaken + 1);
+			closed.put(nextStratum, stratumTaken + 1 == stratumApks.size());
+		}
+		Map<String, Integer> stratumSizes = new TreeMap<String, Integer>();
+		for (Map.Entry<String, List<Path>> stratum : strata.entrySet()) {
+			stratumSizes.put(stratum.getKey(), stratum.getValue().size());
+			LOG.info("stratum {}: sampled {} of {} APK(s)", stratum.getKey(), taken.get(stratum.getKey()), stratum.getValue().size());
+		}
+		LOG.info("sampled {} of {} APK(s) with seed {}, estimated {} of {} lane-minute(s)", sampledApks.size(), apks.size(),
+				seed, (budgetMillis * lanes - leftMillis) / 60000, budgetMillis * lanes / 60000);
+		return new Sample(sampledApks, apkStrata, stratumSizes);
+	}
+	
+	// like "dex<2M/api<=10/passed"
+	private static String getStratum(Path apk, ApkHistory history) {
+		return getDexBytesLabel(getDexBytes(apk)) + "/" + getMinSdkLabel(getMinSdk(apk)) + "/" + getHistoryLabel(history);
+	}
+	
+	private static String getDexBytesLabel(long dexBytes) {
+		for (int boundIdx = 0; boundIdx < DEX_BYTES_BOUNDS.length; boundIdx++) {
+			if (dexBytes < DEX_BYTES_BOUNDS[boundIdx]) {
+				return DEX_BYTES_LABELS[boundIdx];
+			}
+		}
+		return DEX_BYTES_LABELS[DEX_BYTES_LABELS.length - 1];
+	}
+	
+	// minSdk -1 for unknown
+	private static String getMinSdkLabel(int minSdk) {
+		if (minSdk == -1) {
+			return "api?";
+		}
+		for (int boundIdx = 0; boundIdx < MIN_SDK_BOUNDS.length; boundIdx++) {
+			if (minSdk <= MIN_SDK_BOUNDS[boundIdx]) {
+				return MIN_SDK_LABELS[boundIdx];
+			}
+		}
+		return MIN_SDK_LABELS[MIN_SDK_LABELS.length - 1];
+	}
+	
+	// the past failure category: toDex failed it, it passed, or it never got as far as a conversion
+	private static String getHistoryLabel(ApkHistory history) {
+		Verdict lastVerdict = history.getLastVerdict();
+		if (lastVerdict == null) {
+			return "untested";
+		}
+		if (lastVerdict.isConversionFailure()) {
+			return "failed";
+		}
+		return lastVerdict.isSuccess() ? "passed" : "originalFailed";
+	}
+	
+	// uncompressed size of all dex files in the APK
+	private static long getDexBytes(Path apk) {
+		long dexBytes = 0;
+		try (ZipFile zip = new ZipFile(apk.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				if (DEX_ENTRY.matcher(entry.getName()).matches() && entry.getSize() > 0) {
+					dexBytes += entry.getSize();
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading the dex sizes of APK " + apk, e);
+		}
+		return dexBytes;
+	}
+	
+	// -1 if aapt cannot read it
+	private static int getMinSdk(Path apk) {
+		Matcher minSdk = MIN_SDK.matcher(Commands.getPackageInfo(apk));
+		return minSdk.find() ? Integer.parseInt(minSdk.group(1)) : -1;
+	}
+	
+	private static long getSize(Path apk) {
+		try {
+			return Files.size(apk);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while getting size of APK " + apk, e);
+		}
+	}
+	
+	public static class Sample {
+		
+		private final List<Path> apks;
+		
+		private final Map<Path, String> apkStrata;
+		
+		private final Map<String, Integer> stratumSizes;
+		
+		private Sample(List<Path> apks, Map<Path, String> apkStrata, Map<String, Integer> stratumSizes) {
+			this.apks = apks;
+			this.apkStrata = apkStrata;
+			this.stratumSizes = stratumSizes;
+		}
+		
+		// in the order they were sampled
+		public List<Path> getApks() {
+			return apks;
+		}
+		
+		public String getStratum(Path apk) {
+			return apkStrata.get(apk);
+		}
+		
+		// number of APKs of the whole corpus per stratum
+		public Map<String, Integer> getStratumSizes() {
+			return stratumSizes;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package scheduling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import history.ApkHistory;
+import history.Verdict;
+
+/*
+ * Orders the APKs of a campaign. Longest-processing-time-first is a list schedule: whichever lane
+ * (a conversion worker with its emulator) gets free takes the longest APK left, so a long APK never
+ * starts last and stretches the whole campaign. The makespan is at most 4/3 of the optimum.
+ */
+public class ApkScheduler {
+	
+	private static final Logger LOG = LogManager.getLogger(ApkScheduler.class);
+	
+	public enum Policy {
+		// longest estimated duration first, minimizing the campaign's makespan
+		LONGEST_FIRST,
+		// APKs failing in their last run first (longest first among them), for fast feedback on fixes
+		FAILING_FIRST,
+		// by file name, as a stable order for comparisons
+		NAME
+	}
+	
+	private final Path historyDir;
+	
+	private final Policy policy;
+	
+	public ApkScheduler(Path historyDir, Policy policy) {
+		this.historyDir = historyDir;
+		this.policy = policy;
+	}
+	
+	public List<Path> order(Collection<Path> apks, int lanes) {
+		final Map<Path, ApkHistory> histories = new HashMap<Path, ApkHistory>();
+		for (Path apk : apks) {
+			histories.put(apk, ApkHistory.load(historyDir, apk.getFileName().toString()));
+		}
+		DurationEstimator estimator = new DurationEstimator(histories.values());
+		final Map<Path, Long> estimatesMillis = new HashMap<Path, Long>();
+		for (Path apk : apks) {
+			estimatesMillis.put(apk, estimator.estimateMillis(histories.get(apk), getSize(apk)));
+		}
+		List<Path> orderedApks = new ArrayList<Path>(apks);
+		Collections.sort(orderedApks, new Comparator<Path>() {
+			@Override
+			public int compare(Path apk1, Path apk2) {
+				if (policy == Policy.NAME) {
+					return apk1.getFileName().toString().compareTo(apk2.getFileName().toString());
+				}
+				if (policy == Policy.FAILING_FIRST) {
+					int failing = Boolean.compare(isFailing(histories.get(apk2)), isFailing(histories.get(apk1)));
+					if (failing != 0) {
+						return failing;
+					}
+				}
+				int longest = Long.compare(estimatesMillis.get(apk2), estimatesMillis.get(apk1));
+				return longest != 0 ? longest : apk1.compareTo(apk2);
+			}
+		});
+		logMakespan(orderedApks, estimatesMillis, lanes);
+		return orderedApks;
+	}
+	
+	private boolean isFailing(ApkHistory history) {
+		Verdict lastVerdict = history.getLastVerdict();
+		return lastVerdict != null && lastVerdict.isConversionFailure();
+	}
+	
+	private long getSize(Path apk) {
+		try {
+			return Files.size(apk);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while getting size of APK " + apk, e);
+		}
+	}
+	
+	// simulates the list schedule: every APK goes to the lane getting free first
+	private void logMakespan(List<Path> orderedApks, Map<Path, Long> estimatesMillis, int lanes) {
+		long[] laneLoadsMillis = new long[lanes];
+		long totalMillis = 0;
+		for (Path apk : orderedApks) {
+			int freeLane = 0;
+			for (int lane = 1; lane < lanes; lane++) {
+				if (laneLoadsMillis[lane] < laneLoadsMillis[freeLane]) {
+					freeLane = lane;
+				}
+			}
+			laneLoadsMillis[freeLane] += estimatesMillis.get(apk);
+			totalMillis += estimatesMillis.get(apk);
+		}
+		long makespanMillis = 0;
+		for (long laneLoadMillis : laneLoadsMillis) {
+			makespanMillis = Math.max(makespanMillis, laneLoadMillis);
+		}
+		LOG.info("ordered {} APK(s) {}, estimated {} min in total, {} min makespan on {} lane(s)",
+				orderedApks.size(), policy, totalMillis / 60000, makespanMillis / 60000, lanes);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package scheduling;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import history.ApkHistory;
+import history.Phase;
+
+/*
+ * Estimates how long testing an APK takes: from its own history if it was tested before,
+ * otherwise from its size, using the milliseconds per byte of all APKs with a history.
+ */
+public class DurationEstimator {
+	
+	private static final double BYTES_PER_MB = 1024 * 1024;
+	
+	// used as long as there is no history at all
+	private static final long DEFAULT_RUN_MILLIS = 20000;
+	
+	private static final double DEFAULT_CONVERSION_MILLIS_PER_MB = 30000;
+	
+	private final Map<Phase, Double> millisPerByte = new EnumMap<Phase, Double>(Phase.class);
+	
+	public DurationEstimator(Iterable<ApkHistory> histories) {
+		for (Phase phase : Phase.values()) {
+			long totalMillis = 0;
+			long totalBytes = 0;
+			for (ApkHistory history : histories) {
+				long durationMillis = history.getDurationMillis(phase);
+				long size = history.getApkSize();
+				if (durationMillis != -1 && size > 0) {
+					totalMillis += durationMillis;
+					totalBytes += size;
+				}
+			}
+			if (totalBytes > 0) {
+				millisPerByte.put(phase, (double) totalMillis / totalBytes);
+			}
+		}
+	}
+	
+	public long estimateMillis(ApkHistory history, long apkSize) {
+		long totalMillis = 0;
+		for (Phase phase : Phase.values()) {
+			totalMillis += estimateMillis(history, apkSize, phase);
+		}
+		return totalMillis;
+	}
+	
+	public long estimateMillis(ApkHistory history, long apkSize, Phase phase) {
+		long durationMillis = history.getDurationMillis(phase);
+		if (durationMillis != -1) {
+			return durationMillis;
+		}
+		Double phaseMillisPerByte = millisPerByte.get(phase);
+		if (phaseMillisPerByte != null) {
+			return Math.round(phaseMillisPerByte * apkSize);
+		}
+		if (phase == Phase.FUZZING || phase == Phase.HOST_ART) {
+			return 0; // fuzzing and host ART are off by default
+		}
+		if (phase == Phase.CONVERSION) {
+			return Math.round(DEFAULT_CONVERSION_MILLIS_PER_MB * apkSize / BYTES_PER_MB);
+		}
+		return DEFAULT_RUN_MILLIS;
+	}
+}
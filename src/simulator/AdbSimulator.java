@@ -0,0 +1,384 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simulator;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * In-JVM replacement for the adb server with its emulators. It speaks the adb server protocol on a local port,
+ * so the unchanged adb client (as called by os.Commands) talks to simulated devices instead of real ones.
+ * Use it with os.SimulatorOS, or standalone with "adb -P <port>". The simulator is configured by a script,
+ * see PackageBehaviour for the per-package keys. Additional keys are:
+ *
+ * simulator.devices=1              number of devices, named emulator-5554, emulator-5556, ...
+ * simulator.timeScale=1            device time per real time, e.g. 10 for devices running 10 times faster
+ * simulator.adbVersion=41          version the adb client expects, otherwise it kills and restarts "its" server
+ * simulator.seed=0                 seed for the log contents
+ * simulator.dataKb=2000000         size of each device's data partition, as reported by "df /data"
+ * simulator.dataLeakKbPerStart=0   space each app start takes on the data partition for good, for degrading devices
+ */
+public class AdbSimulator implements Runnable {
+
+	private static final Logger LOG = LogManager.getLogger(AdbSimulator.class);
+
+	public static final int DEFAULT_PORT = 5037;
+
+	private static final int FIRST_EMULATOR_PORT = 5554;
+
+	// packet ids of the shell_v2 protocol
+	private static final int SHELL_STDOUT = 1;
+
+	private static final int SHELL_EXIT = 3;
+
+	private final ServerSocket serverSocket;
+
+	private final Properties script;
+
+	private final SimulatedClock clock;
+
+	private final int adbVersion;
+
+	private final long seed;
+
+	private final Map<String, SimulatedDevice> devices = new LinkedHashMap<String, SimulatedDevice>();
+
+	private volatile boolean running = true;
+
+	public AdbSimulator(int port, Properties script) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.script = script;
+		this.clock = new SimulatedClock(Double.parseDouble(script.getProperty("simulator.timeScale", "1").trim()));
+		this.adbVersion = Integer.parseInt(script.getProperty("simulator.adbVersion", "41").trim());
+		this.seed = Long.parseLong(script.getProperty("simulator.seed", "0").trim());
+		int deviceCount = Integer.parseInt(script.getProperty("simulator.devices", "1").trim());
+		for (int deviceIdx = 0; deviceIdx < deviceCount; deviceIdx++) {
+			addDevice("emulator-" + (FIRST_EMULATOR_PORT + 2 * deviceIdx));
+		}
+	}
+
+	// usage: <script> <optional port>
+	public static void main(String[] args) throws IOException {
+		Properties script = loadScript(Paths.get(args[0]));
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+		new AdbSimulator(port, script).run();
+	}
+
+	public static Properties loadScript(Path scriptPath) {
+		Properties script = new Properties();
+		try (Reader scriptReader = Files.newBufferedReader(scriptPath, StandardCharsets.UTF_8)) {
+			script.load(scriptReader);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading simulator script " + scriptPath, e);
+		}
+		return script;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public SimulatedDevice addDevice(String serial) {
+		synchronized (devices) {
+			SimulatedDevice device = new SimulatedDevice(serial, script, clock, seed + devices.size());
+			devices.put(serial, device);
+			return device;
+		}
+	}
+
+	public void removeDevice(String serial) {
+		synchronized (devices) {
+			SimulatedDevice device = devices.remove(serial);
+			if (device != null) {
+				device.setOnline(false);
+			}
+		}
+	}
+
+	public SimulatedDevice getDevice(String serial) {
+		synchronized (devices) {
+			return devices.get(serial);
+		}
+	}
+
+	private List<SimulatedDevice> getDevices() {
+		synchronized (devices) {
+			return new ArrayList<SimulatedDevice>(devices.values());
+		}
+	}
+
+	public void startInBackground() {
+		Thread serverThread = new Thread(this, "adbSimulator");
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	@Override
+	public void run() {
+		LOG.info("adb simulator listening on port {} with {} device(s)", getPort(), getDevices().size());
+		while (running) {
+			final Socket connection;
+			try {
+				connection = serverSocket.accept();
+			} catch (IOException e) {
+				if (running) {
+					LOG.warn("IOException while accepting adb connection", e);
+				}
+				continue;
+			}
+			Thread connectionThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					handle(connection);
+				}
+			}, "adbSimulatorConnection");
+			connectionThread.setDaemon(true);
+			connectionThread.start();
+		}
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			LOG.warn("IOException while closing adb simulator socket", e);
+		}
+	}
+
+	private void handle(Socket connection) {
+		try (Socket socket = connection) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			SimulatedDevice transport = null;
+			while (true) {
+				String request = readRequest(in);
+				if (request == null) {
+					return;
+				}
+				LOG.debug("adb request {}", request);
+				if (request.startsWith("host")) {
+					HostRequest hostRequest = new HostRequest(request);
+					if (hostRequest.service.startsWith("transport") || hostRequest.service.startsWith("tport")) {
+						transport = selectTransport(hostRequest, out);
+						if (transport == null) {
+							return;
+						}
+					} else {
+						handleHostService(hostRequest, out);
+						return;
+					}
+				} else if (request.startsWith("shell:") || request.startsWith("exec:")) {
+					if (transport == null || !transport.isOnline()) {
+						fail(out, "device offline (no transport)");
+						return;
+					}
+					out.write(okay());
+					transport.execute(request.substring(request.indexOf(':') + 1), in, out);
+					return;
+				} else if (request.startsWith("shell,")) {
+					// like "shell,v2,raw:pm install-commit 1", with the output and exit value in packets
+					if (transport == null || !transport.isOnline()) {
+						fail(out, "device offline (no transport)");
+						return;
+					}
+					out.write(okay());
+					int exitValue = transport.execute(request.substring(request.indexOf(':') + 1), in, new ShellV2OutputStream(out));
+					writeShellPacket(out, SHELL_EXIT, new byte[] { (byte) exitValue });
+					return;
+				} else {
+					fail(out, "unknown service " + request);
+					return;
+				}
+			}
+		} catch (IOException e) {
+			LOG.debug("IOException in adb simulator connection, client probably gone", e);
+		}
+	}
+
+	// request is a 4 digit hex length followed by the actual request
+	private String readRequest(DataInputStream in) throws IOException {
+		byte[] length = new byte[4];
+		try {
+			in.readFully(length);
+		} catch (EOFException e) {
+			return null;
+		}
+		byte[] request = new byte[Integer.parseInt(new String(length, StandardCharsets.US_ASCII), 16)];
+		in.readFully(request);
+		return new String(request, StandardCharsets.UTF_8);
+	}
+
+	private SimulatedDevice selectTransport(HostRequest hostRequest, OutputStream out) throws IOException {
+		String serial = hostRequest.serial;
+		String service = hostRequest.service;
+		if (service.startsWith("transport:")) {
+			serial = service.substring("transport:".length());
+		} else if (service.startsWith("tport:serial:")) {
+			serial = service.substring("tport:serial:".length());
+		}
+		SimulatedDevice device = findDevice(serial);
+		if (device == null) {
+			fail(out, serial == null ? "no devices/emulators found" : "device '" + serial + "' not found");
+			return null;
+		}
+		out.write(okay());
+		if (service.startsWith("tport")) {
+			// newer clients expect the transport ID as 8 byte little endian number
+			byte[] transportId = new byte[8];
+			transportId[0] = 1;
+			out.write(transportId);
+		}
+		out.flush();
+		return device;
+	}
+
+	private SimulatedDevice findDevice(String serial) {
+		List<SimulatedDevice> onlineDevices = new ArrayList<SimulatedDevice>();
+		for (SimulatedDevice device : getDevices()) {
+			if (device.isOnline()) {
+				onlineDevices.add(device);
+			}
+		}
+		if (serial == null) {
+			// like adb, "any" device only works if there is exactly one
+			return onlineDevices.size() == 1 ? onlineDevices.get(0) : null;
+		}
+		SimulatedDevice device = getDevice(serial);
+		return device != null && device.isOnline() ? device : null;
+	}
+
+	private void handleHostService(HostRequest hostRequest, OutputStream out) throws IOException {
+		String service = hostRequest.service;
+		if (service.equals("version")) {
+			okayWithPayload(out, String.format("%04x", adbVersion));
+		} else if (service.equals("devices") || service.equals("devices-l")) {
+			StringBuilder deviceList = new StringBuilder();
+			for (SimulatedDevice device : getDevices()) {
+				deviceList.append(device.getSerial()).append('\t').append(device.isOnline() ? "device" : "offline").append('\n');
+			}
+			okayWithPayload(out, deviceList.toString());
+		} else if (service.equals("features") || service.equals("host-features")) {
+			// only shell_v2 (for exit values), so the client uses the plain protocols for everything else
+			okayWithPayload(out, "shell_v2");
+		} else if (service.equals("get-state") || service.equals("get-serialno")) {
+			SimulatedDevice device = findDevice(hostRequest.serial);
+			if (device == null) {
+				fail(out, "device not found");
+			} else {
+				okayWithPayload(out, service.equals("get-state") ? "device" : device.getSerial());
+			}
+		} else if (service.equals("kill")) {
+			out.write(okay());
+			out.flush();
+			stop();
+		} else {
+			fail(out, "unsupported host service " + service);
+		}
+	}
+
+	private byte[] okay() {
+		return "OKAY".getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private void okayWithPayload(OutputStream out, String payload) throws IOException {
+		byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+		out.write(okay());
+		out.write(String.format("%04x", payloadBytes.length).getBytes(StandardCharsets.US_ASCII));
+		out.write(payloadBytes);
+		out.flush();
+	}
+
+	// id, 4 byte little endian length and data
+	private static void writeShellPacket(OutputStream out, int id, byte[] data) throws IOException {
+		int length = data.length;
+		out.write(new byte[] { (byte) id, (byte) length, (byte) (length >> 8), (byte) (length >> 16), (byte) (length >> 24) });
+		out.write(data);
+		out.flush();
+	}
+
+	private void fail(OutputStream out, String message) throws IOException {
+		byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+		out.write("FAIL".getBytes(StandardCharsets.US_ASCII));
+		out.write(String.format("%04x", messageBytes.length).getBytes(StandardCharsets.US_ASCII));
+		out.write(messageBytes);
+		out.flush();
+	}
+
+	// wraps everything written into stdout packets of the shell_v2 protocol
+	private static class ShellV2OutputStream extends FilterOutputStream {
+
+		private ShellV2OutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			byte[] data = new byte[len];
+			System.arraycopy(b, off, data, 0, len);
+			writeShellPacket(out, SHELL_STDOUT, data);
+		}
+	}
+
+	// splits e.g. "host-serial:emulator-5554:get-state" into serial and service
+	private static class HostRequest {
+
+		private final String serial;
+
+		private final String service;
+
+		private HostRequest(String request) {
+			String prefix = request.substring(0, request.indexOf(':'));
+			String rest = request.substring(prefix.length() + 1);
+			if (prefix.equals("host-serial")) {
+				int serialEnd = rest.lastIndexOf(':');
+				this.serial = rest.substring(0, serialEnd);
+				this.service = rest.substring(serialEnd + 1);
+			} else {
+				this.serial = null;
+				this.service = rest.equals("transport-any") || rest.equals("tport:any") ? rest.replace("-any", "").replace(":any", "") : rest;
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simulator;
+
+// one line in the log buffer of a simulated device
+public class LogEntry {
+
+	private final long sequence;
+
+	private final char level;
+
+	private final String tag;
+
+	private final int pid;
+
+	private final String message;
+
+	public LogEntry(long sequence, char level, String tag, int pid, String message) {
+		this.sequence = sequence;
+		this.level = level;
+		this.tag = tag;
+		this.pid = pid;
+		this.message = message;
+	}
+
+	public String format(String format) {
+		switch (format) {
+		case "process":
+			// like "I(  148) Start proc ...  (ActivityManager)"
+			return String.format("%c(%5d) %s  (%s)", level, pid, message, tag);
+		case "brief":
+		default:
+			// like "W/Resources( 1234): Converting to string: ..."
+			return String.format("%c/%-8s(%5d): %s", level, tag, pid, message);
+		}
+	}
+
+	public static int levelRank(char level) {
+		return "VDIWEFS".indexOf(level);
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public char getLevel() {
+		return level;
+	}
+
+	public String getTag() {
+		return tag;
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import history.Digests;
+
+/*
+ * Reads the package name from the binary AndroidManifest.xml of a streamed APK, and its signer,
+ * since the simulated package manager only gets the bytes, not the aapt output.
+ */
+public class ManifestReader {
+
+	private static final String MANIFEST_ENTRY = "AndroidManifest.xml";
+
+	private static final int CHUNK_STRING_POOL = 0x0001;
+
+	private static final int CHUNK_START_TAG = 0x0102;
+
+	private static final int UTF8_FLAG = 1 << 8;
+
+	// with an empty package name if the stream is no APK or has none, and an empty signer if it is not signed
+	public static StreamedApk read(InputStream apkStream) throws IOException {
+		StreamedApk apk = new StreamedApk();
+		ZipInputStream zip = new ZipInputStream(apkStream);
+		ZipEntry entry = zip.getNextEntry();
+		while (entry != null) {
+			if (entry.getName().equals(MANIFEST_ENTRY)) {
+				apk.appPackage = readPackage(readFully(zip));
+			} else if (Digests.isSignatureBlock(entry.getName()) && apk.signer.isEmpty()) {
+				String signer = Digests.signerSha256(zip);
+				apk.signer = signer == null ? "" : signer;
+			}
+			entry = zip.getNextEntry();
+		}
+		return apk;
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read = in.read(buffer);
+		while (read != -1) {
+			bytes.write(buffer, 0, read);
+			read = in.read(buffer);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String readPackage(byte[] manifest) {
+		ByteBuffer buffer = ByteBuffer.wrap(manifest).order(ByteOrder.LITTLE_ENDIAN);
+		String[] strings = new String[0];
+		int chunkStart = 8; // skip the XML file header
+		while (chunkStart + 8 <= manifest.length) {
+			int chunkType = buffer.getShort(chunkStart) & 0xFFFF;
+			int chunkSize = buffer.getInt(chunkStart + 4);
+			if (chunkSize <= 0) {
+				break;
+			}
+			if (chunkType == CHUNK_STRING_POOL) {
+				strings = readStringPool(buffer, chunkStart);
+			} else if (chunkType == CHUNK_START_TAG) {
+				String packageName = readPackageAttribute(buffer, chunkStart, strings);
+				if (packageName != null) {
+					return packageName;
+				}
+			}
+			chunkStart += chunkSize;
+		}
+		return "";
+	}
+
+	private static String readPackageAttribute(ByteBuffer buffer, int chunkStart, String[] strings) {
+		// chunk header (8 bytes), line number and comment (8 bytes), namespace and name (8 bytes)
+		int tagName = buffer.getInt(chunkStart + 20);
+		if (!"manifest".equals(stringAt(strings, tagName))) {
+			return null;
+		}
+		int attributeStart = chunkStart + 16 + (buffer.getShort(chunkStart + 24) & 0xFFFF);
+		int attributeSize = buffer.getShort(chunkStart + 26) & 0xFFFF;
+		int attributeCount = buffer.getShort(chunkStart + 28) & 0xFFFF;
+		for (int attributeIdx = 0; attributeIdx < attributeCount; attributeIdx++) {
+			int attribute = attributeStart + attributeIdx * attributeSize;
+			if ("package".equals(stringAt(strings, buffer.getInt(attribute + 4)))) {
+				return stringAt(strings, buffer.getInt(attribute + 8));
+			}
+		}
+		return "";
+	}
+
+	private static String stringAt(String[] strings, int index) {
+		if (index < 0 || index >= strings.length) {
+			return null;
+		}
+		return strings[index];
+	}
+
+	private static String[] readStringPool(ByteBuffer buffer, int chunkStart) {
+		int stringCount = buffer.getInt(chunkStart + 8);
+		int flags = buffer.getInt(chunkStart + 16);
+		int stringsStart = chunkStart + buffer.getInt(chunkStart + 20);
+		int offsetsStart = chunkStart + (buffer.getShort(chunkStart + 2) & 0xFFFF);
+		boolean utf8 = (flags & UTF8_FLAG) != 0;
+		String[] strings = new String[stringCount];
+		for (int stringIdx = 0; stringIdx < stringCount; stringIdx++) {
+			int stringStart = stringsStart + buffer.getInt(offsetsStart + stringIdx * 4);
+			strings[stringIdx] = utf8 ? readUtf8(buffer, stringStart) : readUtf16(buffer, stringStart);
+		}
+		return strings;
+	}
+
+	private static String readUtf8(ByteBuffer buffer, int position) {
+		// the UTF-16 length comes first, then the UTF-8 length, each in one or two bytes
+		position += (buffer.get(position) & 0x80) != 0 ? 2 : 1;
+		int length = buffer.get(position) & 0xFF;
+		if ((length & 0x80) != 0) {
+			length = ((length & 0x7F) << 8) | (buffer.get(position + 1) & 0xFF);
+			position++;
+		}
+		position++;
+		byte[] bytes = new byte[length];
+		for (int byteIdx = 0; byteIdx < length; byteIdx++) {
+			bytes[byteIdx] = buffer.get(position + byteIdx);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String readUtf16(ByteBuffer buffer, int position) {
+		int length = buffer.getShort(position) & 0xFFFF;
+		if ((length & 0x8000) != 0) {
+			length = ((length & 0x7FFF) << 16) | (buffer.getShort(position + 2) & 0xFFFF);
+			position += 2;
+		}
+		position += 2;
+		char[] chars = new char[length];
+		for (int charIdx = 0; charIdx < length; charIdx++) {
+			chars[charIdx] = buffer.getChar(position + charIdx * 2);
+		}
+		return new String(chars);
+	}
+
+	public static class StreamedApk {
+
+		private String appPackage = "";
+
+		private String signer = "";
+
+		public String getAppPackage() {
+			return appPackage;
+		}
+
+		public String getSigner() {
+			return signer;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simulator;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/*
+ * Scripted behaviour of one package on a simulated device. A script is a properties file with keys
+ * "<package>.<behaviour>" (or "*.<behaviour>" for the defaults of all packages), for example:
+ *
+ * *.startupMillis=400
+ * *.logLinesPerSecond=20
+ * org.example.app.crashAfterMillis=2500
+ * org.example.app.crashRuns=2
+ *
+ * Keys starting with "device." are device properties (see SimulatedDevice) and not handled here.
+ */
+public class PackageBehaviour {
+
+	private static final String ALL_PACKAGES = "*";
+
+	private static final String ALL_RUNS = "*";
+
+	// time between "am start" and the activity being displayed
+	private final long startupMillis;
+
+	// how many lines the app logs, on average
+	private final double logLinesPerSecond;
+
+	// which share of the logged lines are warnings
+	private final double warningRatio;
+
+	// time after start when the app crashes, -1 for never
+	private final long crashAfterMillis;
+
+	// in which runs (counted per package, 1-based) the app crashes, "*" for all
+	private final Set<String> crashRuns;
+
+	// fixed process ID, 0 for the next free one
+	private final int pid;
+
+	// time the package manager needs for committing an installation
+	private final long installMillis;
+
+	// failure reported by the package manager when installing, empty for none
+	private final String installFailure;
+
+	// memory of the running app, as reported by dumpsys meminfo
+	private final long pssKb;
+
+	// median time to render a frame
+	private final long frameMillis;
+
+	// which share of the rendered frames is janky
+	private final double jankRatio;
+
+	private PackageBehaviour(Properties script, String appPackage) {
+		this.startupMillis = Long.parseLong(get(script, appPackage, "startupMillis", "300"));
+		this.logLinesPerSecond = Double.parseDouble(get(script, appPackage, "logLinesPerSecond", "5"));
+		this.warningRatio = Double.parseDouble(get(script, appPackage, "warningRatio", "0"));
+		this.crashAfterMillis = Long.parseLong(get(script, appPackage, "crashAfterMillis", "-1"));
+		this.crashRuns = new HashSet<String>();
+		for (String run : get(script, appPackage, "crashRuns", ALL_RUNS).split(",")) {
+			crashRuns.add(run.trim());
+		}
+		this.pid = Integer.parseInt(get(script, appPackage, "pid", "0"));
+		this.installMillis = Long.parseLong(get(script, appPackage, "installMillis", "500"));
+		this.installFailure = get(script, appPackage, "installFailure", "");
+		this.pssKb = Long.parseLong(get(script, appPackage, "pssKb", "20000"));
+		this.frameMillis = Long.parseLong(get(script, appPackage, "frameMillis", "8"));
+		this.jankRatio = Double.parseDouble(get(script, appPackage, "jankRatio", "0.05"));
+	}
+
+	public static PackageBehaviour of(Properties script, String appPackage) {
+		return new PackageBehaviour(script, appPackage);
+	}
+
+	private static String get(Properties script, String appPackage, String behaviour, String defaultValue) {
+		String packageValue = script.getProperty(appPackage + "." + behaviour);
+		if (packageValue != null) {
+			return packageValue.trim();
+		}
+		return script.getProperty(ALL_PACKAGES + "." + behaviour, defaultValue).trim();
+	}
+
+	public long getStartupMillis() {
+		return startupMillis;
+	}
+
+	public double getLogLinesPerSecond() {
+		return logLinesPerSecond;
+	}
+
+	public double getWarningRatio() {
+		return warningRatio;
+	}
+
+	public boolean crashesInRun(int run) {
+		return crashAfterMillis >= 0 && (crashRuns.contains(ALL_RUNS) || crashRuns.contains(Integer.toString(run)));
+	}
+
+	public long getCrashAfterMillis() {
+		return crashAfterMillis;
+	}
+
+	public int getPid() {
+		return pid;
+	}
+
+	public long getInstallMillis() {
+		return installMillis;
+	}
+
+	public String getInstallFailure() {
+		return installFailure;
+	}
+
+	public long getPssKb() {
+		return pssKb;
+	}
+
+	public long getFrameMillis() {
+		return frameMillis;
+	}
+
+	public double getJankRatio() {
+		return jankRatio;
+	}
+}
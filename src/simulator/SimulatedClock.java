@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simulator;
+
+/*
+ * Device time of the simulated devices. With a time scale above 1, the devices run faster than real time,
+ * e.g. the 10 seconds of log watching only take one second with a time scale of 10.
+ */
+public class SimulatedClock {
+
+	private final long startMillis = System.currentTimeMillis();
+
+	private final long startNanos = System.nanoTime();
+
+	private final double timeScale;
+
+	public SimulatedClock(double timeScale) {
+		if (timeScale <= 0) {
+			throw new IllegalArgumentException("time scale has to be positive, but was " + timeScale);
+		}
+		this.timeScale = timeScale;
+	}
+
+	public long currentTimeMillis() {
+		long realElapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+		return startMillis + (long) (realElapsedMillis * timeScale);
+	}
+
+	// sleep the given device time, which might be a lot shorter in real time
+	public void sleep(long deviceMillis) {
+		long realMillis = (long) (deviceMillis / timeScale);
+		try {
+			Thread.sleep(realMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
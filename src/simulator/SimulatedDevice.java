@@ -0,0 +1,831 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package simulator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * A simulated device, interpreting the shell commands os.Commands sends to a real emulator:
+ * date, logcat, am start/force-stop, pm install-create/-write/-commit, pm list/clear/uninstall, getprop,
+ * dumpsys meminfo/gfxinfo/window, df /data, wm size and input tap/swipe.
+ * Apps do not run, but log according to their PackageBehaviour in the device time of the SimulatedClock.
+ */
+public class SimulatedDevice {
+
+	private static final Logger LOG = LogManager.getLogger(SimulatedDevice.class);
+
+	private static final String DEVICE_PROPERTY_PREFIX = "device.";
+
+	private static final int SYSTEM_PID = 148;
+
+	private static final int FIRST_APP_PID = 1000;
+
+	private static final int APP_UID = 10040;
+
+	// roughly what fits into the 256 KB of the main log buffer
+	private static final int MAX_LOG_ENTRIES = 5000;
+
+	private static final long STREAM_POLL_MILLIS = 20;
+
+	private static final String SCREEN_SIZE = "1080x1920";
+
+	private static final int FRAMES_PER_TAP = 10;
+
+	private static final int FRAMES_PER_SWIPE = 30;
+
+	// of the data partition after booting
+	private static final long DATA_USED_KB = 300000;
+
+	private final String serial;
+
+	private final Properties script;
+
+	private final SimulatedClock clock;
+
+	private final Random random;
+
+	private final Map<String, String> properties = new HashMap<String, String>();
+
+	private final Map<String, PackageBehaviour> installedPackages = new HashMap<String, PackageBehaviour>();
+
+	// signer digest of each installed package, empty for unsigned ones
+	private final Map<String, String> installedSigners = new HashMap<String, String>();
+
+	private final Map<String, Integer> runCounts = new HashMap<String, Integer>();
+
+	private final Map<Integer, InstallSession> installSessions = new HashMap<Integer, InstallSession>();
+
+	private final Map<String, SimulatedProcess> processes = new HashMap<String, SimulatedProcess>();
+
+	private final Deque<LogEntry> log = new ArrayDeque<LogEntry>();
+
+	private long nextSequence = 0;
+
+	private int nextPid = FIRST_APP_PID;
+
+	private int nextSessionId = 1;
+
+	private volatile boolean online = true;
+
+	// size of the data partition
+	private final long dataKb;
+
+	// what every app start leaves on the data partition (tombstones, caches, ...), for degrading devices
+	private final long dataLeakKbPerStart;
+
+	private long dataUsedKb = DATA_USED_KB;
+
+	// component of the last started activity, null if its process was stopped
+	private String focusedComponent = null;
+
+	public SimulatedDevice(String serial, Properties script, SimulatedClock clock, long seed) {
+		this.serial = serial;
+		this.script = script;
+		this.clock = clock;
+		this.random = new Random(seed);
+		this.dataKb = Long.parseLong(script.getProperty("simulator.dataKb", "2000000").trim());
+		this.dataLeakKbPerStart = Long.parseLong(script.getProperty("simulator.dataLeakKbPerStart", "0").trim());
+		properties.put("ro.product.cpu.abi", "x86");
+		properties.put("ro.build.version.sdk", "21");
+		properties.put("sys.boot_completed", "1");
+		for (String key : script.stringPropertyNames()) {
+			if (key.startsWith(DEVICE_PROPERTY_PREFIX)) {
+				properties.put(key.substring(DEVICE_PROPERTY_PREFIX.length()), script.getProperty(key).trim());
+			}
+		}
+	}
+
+	public String getSerial() {
+		return serial;
+	}
+
+	public boolean isOnline() {
+		return online;
+	}
+
+	public void setOnline(boolean online) {
+		this.online = online;
+	}
+
+	// returns the exit value, which only reaches the client with the shell_v2 protocol
+	public int execute(String command, InputStream in, OutputStream out) throws IOException {
+		List<String> args = tokenize(command);
+		LOG.debug("{} executing {}", serial, args);
+		if (args.isEmpty()) {
+			write(out, "");
+			return 0;
+		}
+		String program = args.get(0);
+		List<String> programArgs = args.subList(1, args.size());
+		switch (program) {
+		case "date":
+			write(out, date(programArgs));
+			break;
+		case "logcat":
+			logcat(programArgs, in, out);
+			break;
+		case "am":
+			write(out, am(programArgs));
+			break;
+		case "pm":
+			return writePmOutput(out, pm(programArgs, in));
+		case "cmd":
+			if (!programArgs.isEmpty() && programArgs.get(0).equals("package")) {
+				return writePmOutput(out, pm(programArgs.subList(1, programArgs.size()), in));
+			}
+			write(out, "cmd: unknown service\n");
+			return 1;
+		case "getprop":
+			write(out, getprop(programArgs));
+			break;
+		case "dumpsys":
+			write(out, dumpsys(programArgs));
+			break;
+		case "df":
+			write(out, df());
+			break;
+		case "wm":
+			boolean sizeAsked = !programArgs.isEmpty() && programArgs.get(0).equals("size");
+			write(out, sizeAsked ? "Physical size: " + SCREEN_SIZE + "\n" : "");
+			break;
+		case "input":
+			write(out, input(programArgs));
+			break;
+		default:
+			write(out, "/system/bin/sh: " + program + ": not found\n");
+			return 127;
+		}
+		return 0;
+	}
+
+	private void write(OutputStream out, String output) throws IOException {
+		out.write(output.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	// like the package manager since API level 24, which exits with 1 after printing a failure
+	private int writePmOutput(OutputStream out, String output) throws IOException {
+		write(out, output);
+		return output.startsWith("Failure") || output.startsWith("Error") ? 1 : 0;
+	}
+
+	/*
+	 * shell-like splitting respecting quotes. The adb client prepends logcat with
+	 * something like "export ANDROID_LOG_TAGS="" ; exec", which is dropped here.
+	 */
+	static List<String> tokenize(String command) {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		boolean inToken = false;
+		char quote = 0;
+		for (int charIdx = 0; charIdx < command.length(); charIdx++) {
+			char c = command.charAt(charIdx);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				} else {
+					token.append(c);
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+				inToken = true;
+			} else if (c == '\\' && charIdx + 1 < command.length()) {
+				token.append(command.charAt(++charIdx));
+				inToken = true;
+			} else if (Character.isWhitespace(c) || c == ';') {
+				if (inToken) {
+					tokens.add(token.toString());
+					token.setLength(0);
+					inToken = false;
+				}
+				if (c == ';') {
+					tokens.clear();
+				}
+			} else {
+				token.append(c);
+				inToken = true;
+			}
+		}
+		if (inToken) {
+			tokens.add(token.toString());
+		}
+		if (!tokens.isEmpty() && tokens.get(0).equals("exec")) {
+			tokens.remove(0);
+		}
+		return tokens;
+	}
+
+	private String date(List<String> args) {
+		long now = clock.currentTimeMillis();
+		for (String arg : args) {
+			if (arg.contains("%s")) {
+				return (now / 1000) + "\n";
+			}
+		}
+		return new Date(now) + "\n";
+	}
+
+	private synchronized String getprop(List<String> args) {
+		if (!args.isEmpty()) {
+			String value = properties.get(args.get(0));
+			return (value == null ? "" : value) + "\n";
+		}
+		StringBuilder allProperties = new StringBuilder();
+		for (String name : new TreeSet<String>(properties.keySet())) {
+			allProperties.append('[').append(name).append("]: [").append(properties.get(name)).append("]\n");
+		}
+		return allProperties.toString();
+	}
+
+	// --- dumpsys ---
+
+	private String dumpsys(List<String> args) {
+		if (args.size() == 2 && args.get(0).equals("meminfo")) {
+			return meminfo(args.get(1));
+		} else if (args.size() >= 2 && args.get(0).equals("gfxinfo")) {
+			return gfxinfo(args.get(1), args.size() > 2 && args.get(2).equals("reset"));
+		} else if (!args.isEmpty() && args.get(0).equals("window")) {
+			return window();
+		}
+		return "Can't find service: " + (args.isEmpty() ? "" : args.get(0)) + "\n";
+	}
+
+	// the rows main.Meminfo reads, with the PSS varying by a few percent between samples
+	private synchronized String meminfo(String appPackage) {
+		advance();
+		SimulatedProcess process = processes.get(appPackage);
+		if (process == null) {
+			return "No process found for: " + appPackage + "\n";
+		}
+		long totalPssKb = Math.round(process.behaviour.getPssKb() * (0.97 + random.nextDouble() * 0.06));
+		StringBuilder meminfo = new StringBuilder();
+		meminfo.append("Applications Memory Usage (kB):\n");
+		meminfo.append("** MEMINFO in pid ").append(process.pid).append(" [").append(appPackage).append("] **\n");
+		meminfo.append("                   Pss  Private  Private  Swapped     Heap     Heap     Heap\n");
+		meminfo.append("                 Total    Dirty    Clean    Dirty     Size    Alloc     Free\n");
+		meminfo.append("                ------   ------   ------   ------   ------   ------   ------\n");
+		meminfo.append(String.format("   Dalvik Heap %8d %8d        0        0\n", totalPssKb * 2 / 5, totalPssKb * 2 / 5));
+		meminfo.append(String.format("     .dex mmap %8d        0 %8d        0\n", totalPssKb / 20, totalPssKb / 20));
+		meminfo.append(String.format("         TOTAL %8d %8d %8d        0\n", totalPssKb, totalPssKb * 4 / 5, totalPssKb / 10));
+		return meminfo.toString();
+	}
+
+	private synchronized String gfxinfo(String appPackage, boolean reset) {
+		advance();
+		SimulatedProcess process = processes.get(appPackage);
+		if (process == null) {
+			return "No process found for: " + appPackage + "\n";
+		}
+		StringBuilder gfxinfo = new StringBuilder();
+		gfxinfo.append("Applications Graphics Acceleration Info:\n");
+		gfxinfo.append("** Graphics info for pid ").append(process.pid).append(" [").append(appPackage).append("] **\n\n");
+		long frameMillis = process.behaviour.getFrameMillis();
+		double jankyPercent = process.frames == 0 ? 0 : process.jankyFrames * 100.0 / process.frames;
+		gfxinfo.append("Total frames rendered: ").append(process.frames).append('\n');
+		gfxinfo.append(String.format(Locale.ROOT, "Janky frames: %d (%.2f%%)\n", process.jankyFrames, jankyPercent));
+		gfxinfo.append("50th percentile: ").append(frameMillis).append("ms\n");
+		gfxinfo.append("90th percentile: ").append(frameMillis * 2).append("ms\n");
+		gfxinfo.append("95th percentile: ").append(frameMillis * 3).append("ms\n");
+		// the slowest frames are the janky ones
+		gfxinfo.append("99th percentile: ").append(jankyPercent >= 1 ? frameMillis * 6 : frameMillis * 4).append("ms\n");
+		if (reset) {
+			process.frames = 0;
+			process.jankyFrames = 0;
+			return "";
+		}
+		return gfxinfo.toString();
+	}
+
+	// --- input ---
+
+	// every event renders some frames in all running apps (normally only the tested one), some of them janky
+	private synchronized String input(List<String> args) {
+		if (args.isEmpty() || !(args.get(0).equals("tap") || args.get(0).equals("swipe"))) {
+			return "Error: Unknown command: " + (args.isEmpty() ? "" : args.get(0)) + "\n";
+		}
+		advance();
+		int frames = args.get(0).equals("tap") ? FRAMES_PER_TAP : FRAMES_PER_SWIPE;
+		for (SimulatedProcess process : processes.values()) {
+			for (int frameIdx = 0; frameIdx < frames; frameIdx++) {
+				process.frames++;
+				if (random.nextDouble() < process.behaviour.getJankRatio()) {
+					process.jankyFrames++;
+				}
+			}
+		}
+		return "";
+	}
+
+	// the focused window, like "mCurrentFocus=Window{41b2c8e8 u0 org.example.app/.MainActivity}"
+	private synchronized String window() {
+		String focus = focusedComponent == null ? "null" : "Window{41b2c8e8 u0 " + focusedComponent + "}";
+		return "WINDOW MANAGER WINDOWS (dumpsys window windows)\n  mCurrentFocus=" + focus + "\n";
+	}
+
+	// in the format of toybox
+	private synchronized String df() {
+		long freeKb = dataKb - dataUsedKb;
+		return "Filesystem      1K-blocks    Used Available Use% Mounted on\n"
+				+ String.format("/dev/block/vdb %10d %7d %9d %3d%% /data\n", dataKb, dataUsedKb, freeKb, 100 * dataUsedKb / dataKb);
+	}
+
+	// --- logcat ---
+
+	private void logcat(List<String> args, InputStream in, OutputStream out) throws IOException {
+		String format = "brief";
+		boolean dump = false;
+		Map<String, Character> filters = new HashMap<String, Character>();
+		for (int argIdx = 0; argIdx < args.size(); argIdx++) {
+			String arg = args.get(argIdx);
+			if (arg.equals("-c")) {
+				clearLog();
+				return;
+			} else if (arg.equals("-d")) {
+				dump = true;
+			} else if (arg.equals("-v") && argIdx + 1 < args.size()) {
+				format = args.get(++argIdx);
+			} else if (arg.equals("-b") && argIdx + 1 < args.size()) {
+				argIdx++; // there is only the main buffer
+			} else if (!arg.startsWith("-") && arg.contains(":")) {
+				String[] filterSpec = arg.split(":", 2);
+				filters.put(filterSpec[0], filterSpec[1].isEmpty() ? 'V' : filterSpec[1].charAt(0));
+			}
+		}
+		AtomicBoolean clientGone = new AtomicBoolean(false);
+		if (!dump) {
+			watchForClosedStream(in, clientGone);
+		}
+		long nextSequenceToWrite = 0;
+		do {
+			List<LogEntry> entries = getLogEntriesFrom(nextSequenceToWrite);
+			StringBuilder lines = new StringBuilder();
+			for (LogEntry entry : entries) {
+				if (isVisible(entry, filters)) {
+					lines.append(entry.format(format)).append('\n');
+				}
+				nextSequenceToWrite = entry.getSequence() + 1;
+			}
+			if (lines.length() > 0 || dump) {
+				// writing fails as soon as the client has gone, ending the stream
+				write(out, lines.toString());
+			}
+			if (!dump) {
+				sleepQuietly(STREAM_POLL_MILLIS);
+			}
+		} while (!dump && online && !clientGone.get());
+	}
+
+	// the client only closes its connection when it stops streaming the log, so there is nothing to read until then
+	private void watchForClosedStream(final InputStream in, final AtomicBoolean streamClosed) {
+		Thread closeWatcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (in.read() != -1) {
+						// ignore input to logcat
+					}
+				} catch (IOException e) {
+					LOG.debug("IOException while watching logcat connection, assuming it closed", e);
+				}
+				streamClosed.set(true);
+			}
+		}, "logcatCloseWatcher");
+		closeWatcher.setDaemon(true);
+		closeWatcher.start();
+	}
+
+	private boolean isVisible(LogEntry entry, Map<String, Character> filters) {
+		Character minLevel = filters.get(entry.getTag());
+		if (minLevel == null) {
+			minLevel = filters.get("*");
+		}
+		if (minLevel == null) {
+			minLevel = 'V';
+		}
+		return LogEntry.levelRank(entry.getLevel()) >= LogEntry.levelRank(minLevel);
+	}
+
+	private synchronized List<LogEntry> getLogEntriesFrom(long sequence) {
+		advance();
+		List<LogEntry> entries = new ArrayList<LogEntry>();
+		for (LogEntry entry : log) {
+			if (entry.getSequence() >= sequence) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	private synchronized void clearLog() {
+		advance();
+		log.clear();
+	}
+
+	private void log(char level, String tag, int pid, String message) {
+		log.addLast(new LogEntry(nextSequence++, level, tag, pid, message));
+		if (log.size() > MAX_LOG_ENTRIES) {
+			log.removeFirst();
+		}
+	}
+
+	// let every running app log what it would have logged until now
+	private void advance() {
+		long now = clock.currentTimeMillis();
+		Iterator<SimulatedProcess> processIter = processes.values().iterator();
+		while (processIter.hasNext()) {
+			SimulatedProcess process = processIter.next();
+			if (!process.advanceTo(now)) {
+				processIter.remove();
+			}
+		}
+	}
+
+	// --- am ---
+
+	private String am(List<String> args) {
+		if (args.isEmpty()) {
+			return "usage: am [subcommand] [options]\n";
+		}
+		switch (args.get(0)) {
+		case "start":
+			return startActivity(args);
+		case "force-stop":
+		case "kill":
+			if (args.size() > 1) {
+				stopProcess(args.get(args.size() - 1));
+			}
+			return "";
+		default:
+			return "Error: unknown command '" + args.get(0) + "'\n";
+		}
+	}
+
+	private String startActivity(List<String> args) {
+		String component = "";
+		boolean wait = false;
+		for (int argIdx = 1; argIdx < args.size(); argIdx++) {
+			if (args.get(argIdx).equals("-n") && argIdx + 1 < args.size()) {
+				component = args.get(++argIdx);
+			} else if (args.get(argIdx).equals("-W")) {
+				wait = true;
+			}
+		}
+		int slashIdx = component.indexOf('/');
+		if (slashIdx == -1) {
+			return "Error: no component given\n";
+		}
+		String appPackage = component.substring(0, slashIdx);
+		String activity = component.substring(slashIdx + 1);
+		if (activity.startsWith(appPackage + ".")) {
+			// shorten like the ActivityManager does
+			activity = activity.substring(appPackage.length());
+		}
+		String shortComponent = appPackage + "/" + activity;
+		StringBuilder output = new StringBuilder("Starting: Intent { act=android.intent.action.MAIN cat=[android.intent.category.LAUNCHER] cmp=" + shortComponent + " }\n");
+		SimulatedProcess process;
+		synchronized (this) {
+			advance();
+			PackageBehaviour behaviour = installedPackages.get(appPackage);
+			if (behaviour == null) {
+				output.append("Error type 3\nError: Activity class {").append(component).append("} does not exist.\n");
+				return output.toString();
+			}
+			if (processes.containsKey(appPackage)) {
+				output.append("Warning: Activity not started, its current task has been brought to the front\n");
+				return output.toString();
+			}
+			int run = runCounts.containsKey(appPackage) ? runCounts.get(appPackage) + 1 : 1;
+			runCounts.put(appPackage, run);
+			int pid = behaviour.getPid() != 0 ? behaviour.getPid() : nextPid++;
+			process = new SimulatedProcess(appPackage, shortComponent, pid, run, behaviour, clock.currentTimeMillis());
+			processes.put(appPackage, process);
+			focusedComponent = shortComponent;
+			dataUsedKb = Math.min(dataKb, dataUsedKb + dataLeakKbPerStart);
+			log('I', "ActivityManager", SYSTEM_PID, "Start proc " + appPackage + " for activity " + shortComponent + ": pid=" + pid + " uid=" + APP_UID + " gids={50040, 3003}");
+		}
+		if (wait) {
+			long startupMillis = process.behaviour.getStartupMillis();
+			clock.sleep(startupMillis);
+			if (process.crashesBeforeDisplay()) {
+				output.append("Status: timeout\nActivity: ").append(shortComponent).append("\nComplete\n");
+			} else {
+				output.append("Status: ok\nActivity: ").append(shortComponent);
+				output.append("\nThisTime: ").append(startupMillis);
+				output.append("\nTotalTime: ").append(startupMillis);
+				output.append("\nWaitTime: ").append(startupMillis + 5);
+				output.append("\nComplete\n");
+			}
+		}
+		return output.toString();
+	}
+
+	private synchronized void stopProcess(String appPackage) {
+		advance();
+		SimulatedProcess process = processes.remove(appPackage);
+		if (process != null) {
+			if (process.component.equals(focusedComponent)) {
+				focusedComponent = null;
+			}
+			log('I', "ActivityManager", SYSTEM_PID, "Force stopping package " + appPackage + " uid=" + APP_UID);
+		}
+	}
+
+	// --- pm ---
+
+	private String pm(List<String> args, InputStream in) throws IOException {
+		if (args.isEmpty()) {
+			return "usage: pm [subcommand] [options]\n";
+		}
+		switch (args.get(0)) {
+		case "list":
+			return listPackages();
+		case "path":
+			return packagePath(args.get(args.size() - 1));
+		case "clear":
+			return clearPackage(args.get(args.size() - 1));
+		case "uninstall":
+			return uninstall(args.get(args.size() - 1));
+		case "install-create":
+			return createSession(args);
+		case "install-write":
+			return writeSession(args, in);
+		case "install-commit":
+			return commitSession(Integer.parseInt(args.get(1)));
+		case "install-abandon":
+			return abandonSession(Integer.parseInt(args.get(1)));
+		default:
+			return "Error: unknown command '" + args.get(0) + "'\n";
+		}
+	}
+
+	private synchronized String listPackages() {
+		StringBuilder packages = new StringBuilder();
+		for (String appPackage : new TreeSet<String>(installedPackages.keySet())) {
+			packages.append("package:").append(appPackage).append('\n');
+		}
+		return packages.toString();
+	}
+
+	private synchronized String packagePath(String appPackage) {
+		if (!installedPackages.containsKey(appPackage)) {
+			return "";
+		}
+		return "package:/data/app/" + appPackage + "-1/base.apk\n";
+	}
+
+	private synchronized String clearPackage(String appPackage) {
+		if (!installedPackages.containsKey(appPackage)) {
+			return "Failed\n";
+		}
+		stopProcess(appPackage);
+		return "Success\n";
+	}
+
+	private synchronized String uninstall(String appPackage) {
+		if (installedPackages.remove(appPackage) == null) {
+			return "Failure [DELETE_FAILED_INTERNAL_ERROR]\n";
+		}
+		installedSigners.remove(appPackage);
+		stopProcess(appPackage);
+		return "Success\n";
+	}
+
+	private synchronized String createSession(List<String> args) {
+		int sessionId = nextSessionId++;
+		installSessions.put(sessionId, new InstallSession(args.contains("-r")));
+		return "Success: created install session [" + sessionId + "]\n";
+	}
+
+	private String writeSession(List<String> args, InputStream in) throws IOException {
+		// pm install-write -S <size> <session> <name> -
+		long size = Long.parseLong(args.get(args.indexOf("-S") + 1));
+		int sessionId = Integer.parseInt(args.get(args.indexOf("-S") + 2));
+		InputStream apkStream = new LimitedInputStream(in, size);
+		ManifestReader.StreamedApk apk = ManifestReader.read(apkStream);
+		while (apkStream.skip(size) > 0) {
+			// drain whatever the zip reader did not need
+		}
+		synchronized (this) {
+			InstallSession session = installSessions.get(sessionId);
+			if (session == null) {
+				return "Error: invalid session " + sessionId + "\n";
+			}
+			session.appPackage = apk.getAppPackage();
+			session.signer = apk.getSigner();
+		}
+		return "Success: streamed " + size + " bytes\n";
+	}
+
+	private String commitSession(int sessionId) {
+		InstallSession session;
+		PackageBehaviour behaviour;
+		synchronized (this) {
+			session = installSessions.remove(sessionId);
+			if (session == null) {
+				return "Failure [INSTALL_FAILED_INVALID_SESSION]\n";
+			}
+			if (session.appPackage.isEmpty()) {
+				return "Failure [INSTALL_PARSE_FAILED_NOT_APK]\n";
+			}
+			if (installedPackages.containsKey(session.appPackage) && !session.replace) {
+				return "Failure [INSTALL_FAILED_ALREADY_EXISTS]\n";
+			}
+			String installedSigner = installedSigners.get(session.appPackage);
+			if (installedSigner != null && !installedSigner.equals(session.signer)) {
+				return "Failure [INSTALL_FAILED_UPDATE_INCOMPATIBLE: Package " + session.appPackage
+						+ " signatures do not match the previously installed version; ignoring!]\n";
+			}
+			behaviour = PackageBehaviour.of(script, session.appPackage);
+		}
+		clock.sleep(behaviour.getInstallMillis());
+		if (!behaviour.getInstallFailure().isEmpty()) {
+			return "Failure [" + behaviour.getInstallFailure() + "]\n";
+		}
+		synchronized (this) {
+			stopProcess(session.appPackage);
+			installedPackages.put(session.appPackage, behaviour);
+			installedSigners.put(session.appPackage, session.signer);
+		}
+		return "Success\n";
+	}
+
+	private synchronized String abandonSession(int sessionId) {
+		installSessions.remove(sessionId);
+		return "Success\n";
+	}
+
+	private static void sleepQuietly(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class InstallSession {
+
+		private final boolean replace;
+
+		private String appPackage = "";
+
+		private String signer = "";
+
+		private InstallSession(boolean replace) {
+			this.replace = replace;
+		}
+	}
+
+	private static class LimitedInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		private LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b != -1) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			byte[] buffer = new byte[8192];
+			long skipped = 0;
+			while (skipped < n) {
+				int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (read == -1) {
+					break;
+				}
+				skipped += read;
+			}
+			return skipped;
+		}
+
+		@Override
+		public void close() {
+			// the connection is closed by the simulator, not by the zip reader
+		}
+	}
+
+	// an app process, logging lazily whenever the device is asked for its log
+	private class SimulatedProcess {
+
+		private final String appPackage;
+
+		private final String component;
+
+		private final int pid;
+
+		private final PackageBehaviour behaviour;
+
+		private final long startMillis;
+
+		private final boolean crashes;
+
+		private boolean displayed = false;
+
+		private long linesLogged = 0;
+
+		// rendered since the last "dumpsys gfxinfo <package> reset"
+		private long frames = 0;
+
+		private long jankyFrames = 0;
+
+		private SimulatedProcess(String appPackage, String component, int pid, int run, PackageBehaviour behaviour, long startMillis) {
+			this.appPackage = appPackage;
+			this.component = component;
+			this.pid = pid;
+			this.behaviour = behaviour;
+			this.startMillis = startMillis;
+			this.crashes = behaviour.crashesInRun(run);
+		}
+
+		private boolean crashesBeforeDisplay() {
+			return crashes && behaviour.getCrashAfterMillis() < behaviour.getStartupMillis();
+		}
+
+		// returns false if the process died until now
+		private boolean advanceTo(long now) {
+			long displayMillis = startMillis + behaviour.getStartupMillis();
+			long crashMillis = crashes ? startMillis + behaviour.getCrashAfterMillis() : Long.MAX_VALUE;
+			if (!displayed && now >= displayMillis && displayMillis <= crashMillis) {
+				log('I', "ActivityManager", SYSTEM_PID, "Displayed " + component + ": +" + behaviour.getStartupMillis() + "ms");
+				displayed = true;
+			}
+			if (displayed) {
+				long loggingMillis = Math.min(now, crashMillis) - displayMillis;
+				long linesToLog = (long) (loggingMillis * behaviour.getLogLinesPerSecond() / 1000);
+				while (linesLogged < linesToLog) {
+					linesLogged++;
+					if (random.nextDouble() < behaviour.getWarningRatio()) {
+						log('W', "SimulatedApp", pid, "simulated warning " + linesLogged);
+					} else {
+						log('D', "SimulatedApp", pid, "simulated log line " + linesLogged);
+					}
+				}
+			}
+			if (now >= crashMillis) {
+				log('E', "AndroidRuntime", pid, "FATAL EXCEPTION: main");
+				log('E', "AndroidRuntime", pid, "java.lang.RuntimeException: simulated crash of " + appPackage);
+				log('I', "ActivityManager", SYSTEM_PID, "Process " + appPackage + " (pid " + pid + ") has died.");
+				return false;
+			}
+			return true;
+		}
+	}
+}
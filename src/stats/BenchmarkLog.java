@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stats;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Record of the conversion benchmarks (see main.Benchmark): one CSV line per APK, measured iteration and Soot release,
+ * appended to a file. APKs are identified by name and digest, so only measurements of the same APK are compared.
+ */
+public class BenchmarkLog {
+	
+	private static final String SEPARATOR = ",";
+	
+	private static final String HEADER = "release,apk,digest,iteration,millis,classes,dexBytes,peakHeapBytes";
+	
+	private static final List<String> COLUMNS = Arrays.asList(HEADER.split(SEPARATOR));
+	
+	public static void record(Path benchmarksPath, String release, String apkName, String digest, int iteration,
+			long millis, int classes, long dexBytes, long peakHeapBytes) {
+		String line = String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%d,%d", release, apkName, digest, iteration,
+				millis, classes, dexBytes, peakHeapBytes);
+		try {
+			boolean isNew = !Files.exists(benchmarksPath);
+			try (BufferedWriter writer = Files.newBufferedWriter(benchmarksPath, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				if (isNew) {
+					writer.write(HEADER);
+					writer.newLine();
+				}
+				writer.write(line);
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while recording benchmark", e);
+		}
+	}
+	
+	// the last release in the file other than the given one, null if there is none
+	public static String getPreviousRelease(Path benchmarksPath, String release) {
+		String previousRelease = null;
+		for (String[] values : readLines(benchmarksPath)) {
+			if (!values[0].equals(release)) {
+				previousRelease = values[0];
+			}
+		}
+		return previousRelease;
+	}
+	
+	// the values of the column (like "millis") of the release, by APK name and digest like "foo.apk 3fa2..."
+	public static Map<String, List<Double>> getSamples(Path benchmarksPath, String release, String column) {
+		int columnIdx = COLUMNS.indexOf(column);
+		if (columnIdx == -1) {
+			throw new IllegalArgumentException("unknown column " + column + ", known are " + COLUMNS);
+		}
+		Map<String, List<Double>> samples = new HashMap<String, List<Double>>();
+		for (String[] values : readLines(benchmarksPath)) {
+			if (values[0].equals(release)) {
+				String apk = getApkKey(values[1], values[2]);
+				if (!samples.containsKey(apk)) {
+					samples.put(apk, new ArrayList<Double>());
+				}
+				samples.get(apk).add(Double.parseDouble(values[columnIdx]));
+			}
+		}
+		return samples;
+	}
+	
+	public static String getApkKey(String apkName, String digest) {
+		return apkName + " " + digest;
+	}
+	
+	private static List<String[]> readLines(Path benchmarksPath) {
+		if (!Files.exists(benchmarksPath)) {
+			return Collections.emptyList();
+		}
+		List<String> lines;
+		try {
+			lines = Files.readAllLines(benchmarksPath, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while reading benchmarks", e);
+		}
+		List<String[]> valueLines = new ArrayList<String[]>();
+		for (String line : lines.subList(1, lines.size())) {
+			valueLines.add(line.split(SEPARATOR));
+		}
+		return valueLines;
+	}
+}
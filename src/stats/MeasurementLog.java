@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stats;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Corpus-wide record of the SampleComparisons: one CSV line per tested APK, metric and Soot release, appended to
+ * a file. Call main with the file to print per release and metric how the converted APKs compare to the originals.
+ */
+public class MeasurementLog {
+	
+	private static final String SEPARATOR = ",";
+	
+	private static final String HEADER = "release,apk,metric,original.median,converted.median,original.p95,"
+			+ "converted.p95,pValue";
+	
+	// synchronized, so parallel lanes neither interleave lines nor both write the header
+	public static synchronized void record(Path measurementsPath, String release, String apkName, SampleComparison comparison) {
+		String line = String.format(Locale.ROOT, "%s,%s,%s,%.3f,%.3f,%.3f,%.3f,%.6f", release, apkName,
+				comparison.getMetric(), comparison.getOriginalMedian(), comparison.getConvertedMedian(),
+				comparison.getOriginalP95(), comparison.getConvertedP95(), comparison.getPValue());
+		try {
+			boolean isNew = !Files.exists(measurementsPath);
+			try (BufferedWriter writer = Files.newBufferedWriter(measurementsPath, StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+				if (isNew) {
+					writer.write(HEADER);
+					writer.newLine();
+				}
+				writer.write(line);
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("IOException while recording measurements", e);
+		}
+	}
+	
+	// usage: <measurements file, default "./measurements.csv"> <optional significance level, default 0.05>
+	public static void main(String[] args) throws IOException {
+		Path measurementsPath = Paths.get(args.length == 0 ? "./measurements.csv" : args[0]);
+		double significanceLevel = args.length < 2 ? 0.05 : Double.parseDouble(args[1]);
+		// the newest line per release, metric and APK counts, in case an APK was tested several times
+		Map<String, Map<String, String[]>> linesByGroup = new LinkedHashMap<String, Map<String, String[]>>();
+		List<String> lines = Files.readAllLines(measurementsPath, StandardCharsets.UTF_8);
+		for (String line : lines.subList(1, lines.size())) {
+			String[] values = line.split(SEPARATOR);
+			String group = values[0] + " " + values[2];
+			if (!linesByGroup.containsKey(group)) {
+				linesByGroup.put(group, new LinkedHashMap<String, String[]>());
+			}
+			linesByGroup.get(group).put(values[1], values);
+		}
+		for (Map.Entry<String, Map<String, String[]>> group : linesByGroup.entrySet()) {
+			List<Double> ratios = new ArrayList<Double>();
+			int regressions = 0;
+			for (String[] values : group.getValue().values()) {
+				double originalMedian = Double.parseDouble(values[3]);
+				double convertedMedian = Double.parseDouble(values[4]);
+				if (originalMedian > 0) {
+					ratios.add(convertedMedian / originalMedian);
+				}
+				if (Double.parseDouble(values[7]) < significanceLevel && convertedMedian > originalMedian) {
+					regressions++;
+				}
+			}
+			System.out.println(String.format(Locale.ROOT,
+					"%s: %d APKs, converted / original median: %.3f (p95 of APKs: %.3f), %d significant regression(s)",
+					group.getKey(), group.getValue().size(), Statistics.median(ratios),
+					Statistics.percentile(ratios, 95), regressions));
+		}
+	}
+}
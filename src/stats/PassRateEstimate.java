@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Estimates the pass rate of a corpus from a stratified sample: the pass rates of the strata, weighted by their
+ * share of the corpus. The 95% confidence interval uses the normal approximation with a finite population
+ * correction, and each stratum's variance is estimated with one pass and one failure added, so a small stratum
+ * where all APKs passed does not count as certain.
+ */
+public class PassRateEstimate {
+	
+	// two-sided 95%
+	private static final double Z = 1.96;
+	
+	// APKs in the corpus per stratum
+	private final Map<String, Integer> stratumSizes;
+	
+	private final Map<String, Integer> tested = new HashMap<String, Integer>();
+	
+	private final Map<String, Integer> passed = new HashMap<String, Integer>();
+	
+	public PassRateEstimate(Map<String, Integer> stratumSizes) {
+		this.stratumSizes = stratumSizes;
+	}
+	
+	public synchronized void addOutcome(String stratum, boolean apkPassed) {
+		tested.put(stratum, get(tested, stratum) + 1);
+		passed.put(stratum, get(passed, stratum) + (apkPassed ? 1 : 0));
+	}
+	
+	private static int get(Map<String, Integer> counts, String stratum) {
+		Integer count = counts.get(stratum);
+		return count == null ? 0 : count;
+	}
+	
+	public synchronized int getTested() {
+		int total = 0;
+		for (int stratumTested : tested.values()) {
+			total += stratumTested;
+		}
+		return total;
+	}
+	
+	// APKs in the strata with at least one outcome
+	private int getCoveredSize() {
+		int coveredSize = 0;
+		for (String stratum : tested.keySet()) {
+			coveredSize += stratumSizes.get(stratum);
+		}
+		return coveredSize;
+	}
+	
+	// the share of the corpus in strata with at least one outcome, the estimate is only for those
+	public synchronized double getCoveredShare() {
+		int corpusSize = 0;
+		for (int stratumSize : stratumSizes.values()) {
+			corpusSize += stratumSize;
+		}
+		return corpusSize == 0 ? 0 : getCoveredSize() / (double) corpusSize;
+	}
+	
+	// NaN without outcomes
+	public synchronized double getPassRate() {
+		if (tested.isEmpty()) {
+			return Double.NaN;
+		}
+		double passRate = 0;
+		for (String stratum : tested.keySet()) {
+			passRate += getWeight(stratum) * passed.get(stratum) / tested.get(stratum);
+		}
+		return passRate;
+	}
+	
+	public synchronized double getLowerBound() {
+		return Math.max(0, getPassRate() - Z * Math.sqrt(getVariance()));
+	}
+	
+	public synchronized double getUpperBound() {
+		return Math.min(1, getPassRate() + Z * Math.sqrt(getVariance()));
+	}
+	
+	private double getWeight(String stratum) {
+		return stratumSizes.get(stratum) / (double) getCoveredSize();
+	}
+	
+	private double getVariance() {
+		double variance = 0;
+		for (String stratum : tested.keySet()) {
+			int stratumTested = tested.get(stratum);
+			double smoothedPassRate = (passed.get(stratum) + 1) / (double) (stratumTested + 2);
+			double unsampledShare = 1 - stratumTested / (double) stratumSizes.get(stratum);
+			double weight = getWeight(stratum);
+			variance += weight * weight * unsampledShare * smoothedPassRate * (1 - smoothedPassRate) / stratumTested;
+		}
+		return variance;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("pass rate %.1f%% (95%% confidence interval %.1f%% to %.1f%%) from %d APK(s), covering %.0f%% of the corpus",
+				getPassRate() * 100, getLowerBound() * 100, getUpperBound() * 100, getTested(), getCoveredShare() * 100);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stats;
+
+import java.util.List;
+
+// compares repeated measurements of the original and the converted APK, where greater values are worse
+public class SampleComparison {
+	
+	private final String metric;
+	
+	private final List<Double> original;
+	
+	private final List<Double> converted;
+	
+	private final double pValue;
+	
+	public SampleComparison(String metric, List<Double> original, List<Double> converted) {
+		this.metric = metric;
+		this.original = original;
+		this.converted = converted;
+		this.pValue = Statistics.mannWhitneyGreaterPValue(converted, original);
+	}
+	
+	public String getMetric() {
+		return metric;
+	}
+	
+	public double getOriginalMedian() {
+		return Statistics.median(original);
+	}
+	
+	public double getConvertedMedian() {
+		return Statistics.median(converted);
+	}
+	
+	public double getOriginalP95() {
+		return Statistics.percentile(original, 95);
+	}
+	
+	public double getConvertedP95() {
+		return Statistics.percentile(converted, 95);
+	}
+	
+	// probability of the converted values being this much greater by chance
+	public double getPValue() {
+		return pValue;
+	}
+	
+	public boolean isSignificantRegression(double significanceLevel) {
+		return pValue < significanceLevel && getConvertedMedian() > getOriginalMedian();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: median %.1f -> %.1f, p95 %.1f -> %.1f, p = %.4f (%d vs. %d samples)", metric,
+				getOriginalMedian(), getConvertedMedian(), getOriginalP95(), getConvertedP95(), pValue,
+				original.size(), converted.size());
+	}
+}
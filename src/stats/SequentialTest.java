@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stats;
+
+/*
+ * Wald's sequential probability ratio test on the outcomes of repeated runs: does the tested thing pass with
+ * probability passRate (it works, failures are flaky) or with failRate (it is broken, passes are flaky)? After each
+ * outcome, the log-likelihood ratio of both hypotheses is compared with bounds from the error probabilities, so it
+ * stops after as few runs as the outcomes allow.
+ */
+public class SequentialTest {
+	
+	public enum Decision {
+		PASSES,
+		FAILS,
+		// more runs are needed
+		UNDECIDED
+	}
+	
+	// the steps of a pass and a failure may cancel out to a rounding error instead of 0
+	private static final double TOLERANCE = 1e-9;
+	
+	private final double passStep;
+	
+	private final double failStep;
+	
+	private final double upperBound;
+	
+	private final double lowerBound;
+	
+	private double logLikelihoodRatio = 0;
+	
+	/*
+	 * passRate > failRate are the pass probabilities under both hypotheses, alpha is the probability of deciding
+	 * PASSES for a broken one, beta the probability of deciding FAILS for a working one.
+	 */
+	public SequentialTest(double passRate, double failRate, double alpha, double beta) {
+		if (passRate <= failRate || failRate <= 0 || passRate >= 1) {
+			throw new IllegalArgumentException("need 0 < failRate < passRate < 1, but were " + failRate + " and " + passRate);
+		}
+		this.passStep = Math.log(passRate / failRate);
+		this.failStep = Math.log((1 - passRate) / (1 - failRate));
+		this.upperBound = Math.log((1 - beta) / alpha);
+		this.lowerBound = Math.log(beta / (1 - alpha));
+	}
+	
+	public void add(boolean passed) {
+		logLikelihoodRatio += passed ? passStep : failStep;
+	}
+	
+	public Decision getDecision() {
+		if (logLikelihoodRatio >= upperBound - TOLERANCE) {
+			return Decision.PASSES;
+		}
+		if (logLikelihoodRatio <= lowerBound + TOLERANCE) {
+			return Decision.FAILS;
+		}
+		return Decision.UNDECIDED;
+	}
+	
+	// for stopping without a decision: which hypothesis the outcomes so far favour, PASSES on a tie
+	public Decision getLeaning() {
+		return logLikelihoodRatio >= -TOLERANCE ? Decision.PASSES : Decision.FAILS;
+	}
+}
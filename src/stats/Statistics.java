@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Thomas Pilot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// descriptive statistics and the Mann-Whitney U test for comparing repeated measurements
+public class Statistics {
+	
+	// up to this many values in both samples together, the exact distribution of U is used
+	private static final int MAX_EXACT_VALUES = 40;
+	
+	public static double median(List<Double> values) {
+		return percentile(values, 50);
+	}
+	
+	// with linear interpolation between the closest ranks, NaN for no values
+	public static double percentile(List<Double> values, double percent) {
+		if (values.isEmpty()) {
+			return Double.NaN;
+		}
+		List<Double> sorted = new ArrayList<Double>(values);
+		Collections.sort(sorted);
+		double rank = percent / 100 * (sorted.size() - 1);
+		int lowerRank = (int) Math.floor(rank);
+		int upperRank = (int) Math.ceil(rank);
+		double fraction = rank - lowerRank;
+		return sorted.get(lowerRank) * (1 - fraction) + sorted.get(upperRank) * fraction;
+	}
+	
+	/*
+	 * one-sided Mann-Whitney U test: the probability of a U at least this high, if the values of both samples came
+	 * from the same distribution. A low p-value means the values in "greater" tend to be greater than in "other".
+	 * It does not assume normally distributed values, which launch times are not (they have long tails).
+	 */
+	public static double mannWhitneyGreaterPValue(List<Double> greater, List<Double> other) {
+		if (greater.isEmpty() || other.isEmpty()) {
+			return 1;
+		}
+		double u = 0; // pairs where "greater" is greater, ties count half
+		boolean hasTies = false;
+		for (double greaterValue : greater) {
+			for (double otherValue : other) {
+				if (greaterValue > otherValue) {
+					u += 1;
+				} else if (greaterValue == otherValue) {
+					u += 0.5;
+					hasTies = true;
+				}
+			}
+		}
+		if (!hasTies && greater.size() + other.size() <= MAX_EXACT_VALUES) {
+			return exactPValue((int) u, greater.size(), other.size());
+		}
+		return normalPValue(u, greater, other);
+	}
+	
+	// counts the orderings of both samples with a U of at least u, which are equally likely without ties
+	private static double exactPValue(int u, int greaterSize, int otherSize) {
+		double[] distribution = getUDistribution(greaterSize, otherSize);
+		double atLeastU = 0;
+		double total = 0;
+		for (int uValue = 0; uValue < distribution.length; uValue++) {
+			total += distribution[uValue];
+			if (uValue >= u) {
+				atLeastU += distribution[uValue];
+			}
+		}
+		return atLeastU / total;
+	}
+	
+	/*
+	 * number of orderings per U value. The greatest of all values is either from the first sample, then it is
+	 * greater than all of the second, or from the second sample, then it adds nothing to U.
+	 */
+	private static double[] getUDistribution(int greaterSize, int otherSize) {
+		double[][][] distributions = new double[greaterSize + 1][otherSize + 1][];
+		for (int greaterIdx = 0; greaterIdx <= greaterSize; greaterIdx++) {
+			for (int otherIdx = 0; otherIdx <= otherSize; otherIdx++) {
+				double[] distribution = new double[greaterIdx * otherIdx + 1];
+				if (greaterIdx == 0 || otherIdx == 0) {
+					distribution[0] = 1;
+				} else {
+					double[] greatestFromGreater = distributions[greaterIdx - 1][otherIdx];
+					double[] greatestFromOther = distributions[greaterIdx][otherIdx - 1];
+					for (int uValue = 0; uValue < greatestFromGreater.length; uValue++) {
+						distribution[uValue + otherIdx] += greatestFromGreater[uValue];
+					}
+					for (int uValue = 0; uValue < greatestFromOther.length; uValue++) {
+						distribution[uValue] += greatestFromOther[uValue];
+					}
+				}
+				distributions[greaterIdx][otherIdx] = distribution;
+			}
+		}
+		return distributions[greaterSize][otherSize];
+	}
+	
+	// normal approximation with tie and continuity correction
+	private static double normalPValue(double u, List<Double> greater, List<Double> other) {
+		int n1 = greater.size();
+		int n2 = other.size();
+		int n = n1 + n2;
+		List<Double> all = new ArrayList<Double>(greater);
+		all.addAll(other);
+		Collections.sort(all);
+		double tieCorrection = 0;
+		int tieStart = 0;
+		for (int valueIdx = 1; valueIdx <= n; valueIdx++) {
+			if (valueIdx == n || !all.get(valueIdx).equals(all.get(tieStart))) {
+				double ties = valueIdx - tieStart;
+				tieCorrection += ties * ties * ties - ties;
+				tieStart = valueIdx;
+			}
+		}
+		double mean = n1 * (double) n2 / 2;
+		double variance = n1 * (double) n2 / 12 * ((n + 1) - tieCorrection / (n * (double) (n - 1)));
+		if (variance <= 0) {
+			return u > mean ? 0 : 1; // all values equal
+		}
+		double z = (u - mean - 0.5) / Math.sqrt(variance);
+		return 1 - normalCdf(z);
+	}
+	
+	// Abramowitz and Stegun 7.1.26, accurate to about 1e-7
+	private static double normalCdf(double z) {
+		double x = Math.abs(z) / Math.sqrt(2);
+		double t = 1 / (1 + 0.3275911 * x);
+		double erf = 1 - ((((1.061405429 * t - 1.453152027) * t + 1.421413741) * t - 0.284496736) * t + 0.254829592) * t
+				* Math.exp(-x * x);
+		return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+	}
+}